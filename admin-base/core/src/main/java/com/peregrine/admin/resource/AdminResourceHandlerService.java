@@ -68,7 +68,6 @@ import static com.peregrine.commons.util.PerConstants.PER_REPLICATION_REF;
 
 import static com.peregrine.commons.util.PerUtil.convertToMap;
 import static com.peregrine.commons.util.PerUtil.getBoolean;
-import static com.peregrine.commons.util.PerUtil.getChildIndex;
 import static com.peregrine.commons.util.PerUtil.getClassOrNull;
 import static com.peregrine.commons.util.PerUtil.getComponentVariableNameFromString;
 import static com.peregrine.commons.util.PerUtil.getFirstChild;
@@ -2138,21 +2137,24 @@ public class AdminResourceHandlerService
     }
 
     private void updateObjectList(Resource parent, List listProperties) throws ManagementException {
-        Resource previousSibling = null;
-        for (int i = 0; i < listProperties.size(); i++) {
-            Object item = listProperties.get(i);
+        // Create, update and delete the items in one pass and order them afterwards in as few moves as possible
+        Set<String> listed = new LinkedHashSet<>();
+        for (Object item : listProperties) {
             if (item instanceof Map) {
                 Map itemProperties = (Map) item;
-                Resource temp = updateListItem(parent, itemProperties, i, previousSibling);
-                previousSibling = temp != null ? temp : previousSibling;
+                String itemName = updateListItem(parent, itemProperties);
+                if (itemName != null) {
+                    listed.add(itemName);
+                }
             } else {
                 throw new ManagementException(String.format(OBJECT_LIST_WITH_UNSUPPORTED_ITEM, item, (item == null ? "null" : item.getClass().getName())));
             }
         }
+        reorderListItems(parent, listed);
     }
 
-    private Resource updateListItem(Resource parent, Map itemProperties, int position, Resource previousSibling) throws ManagementException {
-        Resource answer;
+    /** @return Name of the item or null if it was deleted **/
+    private String updateListItem(Resource parent, Map itemProperties) throws ManagementException {
         final String itemName = getString(itemProperties, NAME);
         if (isEmpty(itemName)) {
             throw new ManagementException(String.format(ITEM_NAME_MISSING, itemProperties, parent.getPath()));
@@ -2160,85 +2162,61 @@ public class AdminResourceHandlerService
         Resource resourceListItem = parent.getChild(itemName);
         // Handle new item
         if (resourceListItem == null) {
-            answer = createListItem(parent, itemName, itemProperties, previousSibling);
+            createListItem(parent, itemName, itemProperties);
+        } else if (getBoolean(itemProperties, DELETION_PROPERTY_NAME, false)) {
+            try {
+                logger.trace("Remove List Child: '{}' ('{}')", itemName, resourceListItem.getPath());
+                parent.getResourceResolver().delete(resourceListItem);
+            } catch (PersistenceException e) {
+                throw new ManagementException(String.format(FAILED_TO_DELETE, resourceListItem.getPath()), e);
+            }
+            return null;
         } else {
-            answer = handleExistingItem(parent, resourceListItem, itemProperties, position, previousSibling);
+            updateResourceTree(resourceListItem, itemProperties);
         }
-        return answer;
+        return itemName;
     }
 
-    private Resource createListItem(Resource parent, String itemName, Map itemProperties, Resource previousSibling) throws ManagementException {
+    private void createListItem(Resource parent, String itemName, Map itemProperties) throws ManagementException {
         Object val = itemProperties.get(SLING_RESOURCE_TYPE);
         String resourceType = val == null ? null : (String) val;
         itemProperties.remove(NAME);
         itemProperties.remove(SLING_RESOURCE_TYPE);
         itemProperties.remove(JCR_PRIMARY_TYPE);
         Resource answer = createNode(parent, itemName, NT_UNSTRUCTURED, resourceType);
-        // Move the child to the correct position
-        if (previousSibling == null) {
-            // No saved last resource item so we need to place it as the first entry
-            Iterator<Resource> it = parent.getChildren().iterator();
-            Resource first = it.hasNext() ? it.next() : null;
-            // If there are no items then ignore it (it will be first
-            if (first != null) {
-                moveNode(answer, first, false, true);
-            }
-        } else {
-            // There is a resource item -> move the new one after the last one
-            moveNode(answer, previousSibling, false, false);
-        }
         // Now update the child with any remaining properties
         ModifiableValueMap newChildProperties = getModifiableProperties(answer, false);
         for (Object childPropertyKey : itemProperties.keySet()) {
             newChildProperties.put(childPropertyKey + "", itemProperties.get(childPropertyKey));
         }
-        return answer;
     }
 
-    private Resource handleExistingItem(Resource parent, Resource child, Map itemProperties, int position, Resource previousSibling) throws ManagementException {
-        Resource answer = null;
-        boolean deleted = false;
-        // Get index of the matching resource child to compare with the index in the list
-        int index = getChildIndex(parent, child);
-        String name = child.getName();
-        if (getBoolean(itemProperties, DELETION_PROPERTY_NAME, false)) {
+    /**
+     * Orders the listed items first in the order of the list followed by the children that were
+     * not listed in their current order. Only the children outside of the longest run that is already
+     * in the right order are moved.
+     */
+    private void reorderListItems(Resource parent, Set<String> listed) throws ManagementException {
+        List<String> current = new ArrayList<>();
+        List<String> unlisted = new ArrayList<>();
+        for (Resource child : parent.getChildren()) {
+            String name = child.getName();
+            current.add(name);
+            if (!listed.contains(name)) {
+                unlisted.add(name);
+            }
+        }
+        List<String> desired = new ArrayList<>(listed);
+        desired.addAll(unlisted);
+        for (ChildOrderPlan.Move move : ChildOrderPlan.create(current, desired)) {
             try {
-                logger.trace("Remove List Child: '{}' ('{}')", name, child.getPath());
-                parent.getResourceResolver().delete(child);
-                deleted = true;
-            } catch (PersistenceException e) {
-                throw new ManagementException(String.format(FAILED_TO_DELETE, previousSibling.getPath()), e);
-            }
-        }
-        if (!deleted) {
-            updateResourceTree(child, itemProperties);
-            // Check order
-            if (position != index) {
-                if (previousSibling == null) {
-                    // No saved last resource item so we need to place it as the first entry
-                    Iterator<Resource> it = parent.getChildren().iterator();
-                    Resource first = it.hasNext() ? it.next() : null;
-                    // If there are no items then ignore it (it will be first
-                    if (first != null) {
-                        moveNode(child, first, false, true);
-                    }
-                } else {
-                    // We only have to move if this wasn't already the first item due to deletion
-                    boolean doMove = false;
-                    Iterator<Resource> ir = parent.getChildren().iterator();
-                    if (ir.hasNext() && !doMove) {
-                        if (!previousSibling.getName().equals(ir.next().getName())) {
-                            doMove = true;
-                        }
-                    }
-                    if (doMove) {
-                        moveNode(child, previousSibling, false, false);
-                    }
-                }
+                logger.trace("Order List Child: '{}'", move);
+                // No successor means it is moved to the end
+                resourceRelocation.reorder(parent, move.getName(), move.getBefore(), move.getBefore() != null);
+            } catch (RepositoryException e) {
+                throw new ManagementException(String.format(REORDER_EXCEPTION, move.getName(), move.getBefore()), e);
             }
-            answer = child;
         }
-        return answer;
     }
 
     private void copyStubs(Resource source, Resource target, String folderName, List superTypes) throws ManagementException {
@@ -0,0 +1,114 @@
+package com.peregrine.admin.resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates the fewest reorder operations that turn the current order of the children
+ * of a resource into the desired order.
+ *
+ * The children that form the longest increasing subsequence of their desired positions
+ * keep their place and only the others are moved. Each move places a child right before
+ * its desired successor (or at the end) which matches the JCR orderBefore() operation.
+ */
+final class ChildOrderPlan {
+
+    private ChildOrderPlan() {
+    }
+
+    /**
+     * @param current Names of the children in their current order
+     * @param desired Names of the same children in the desired order
+     * @return Moves to be applied in the given order which is empty if the order is already the desired one
+     * @throws IllegalArgumentException If the desired names are not the same as the current ones
+     */
+    static List<Move> create(List<String> current, List<String> desired) {
+        if (current.size() != desired.size()) {
+            throw new IllegalArgumentException("Current: " + current + " and desired: " + desired + " children differ");
+        }
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < desired.size(); i++) {
+            positions.put(desired.get(i), i);
+        }
+        int[] sequence = new int[current.size()];
+        for (int i = 0; i < current.size(); i++) {
+            Integer position = positions.get(current.get(i));
+            if (position == null) {
+                throw new IllegalArgumentException("Current child: " + current.get(i) + " is not part of the desired order: " + desired);
+            }
+            sequence[i] = position;
+        }
+        boolean[] stays = new boolean[desired.size()];
+        for (int position : longestIncreasingSubsequence(sequence)) {
+            stays[position] = true;
+        }
+        // Going backwards the successor of a child is always at its final place when the child is moved
+        List<Move> answer = new ArrayList<>();
+        for (int i = desired.size() - 1; i >= 0; i--) {
+            if (!stays[i]) {
+                answer.add(new Move(desired.get(i), i + 1 < desired.size() ? desired.get(i + 1) : null));
+            }
+        }
+        return answer;
+    }
+
+    /** @return Values of the longest strictly increasing subsequence of the given distinct values (n log n) **/
+    private static List<Integer> longestIncreasingSubsequence(int[] values) {
+        // Index of the smallest last value of an increasing subsequence of each length
+        int[] tails = new int[values.length];
+        int[] predecessors = new int[values.length];
+        int length = 0;
+        for (int i = 0; i < values.length; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            predecessors[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        List<Integer> answer = new ArrayList<>(length);
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+            answer.add(values[i]);
+        }
+        Collections.reverse(answer);
+        return answer;
+    }
+
+    /** Moves a child before another child or to the end **/
+    static final class Move {
+        private final String name;
+        private final String before;
+
+        private Move(String name, String before) {
+            this.name = name;
+            this.before = before;
+        }
+
+        /** @return Name of the child to be moved **/
+        String getName() {
+            return name;
+        }
+
+        /** @return Name of the child it is placed before or null if it is moved to the end **/
+        String getBefore() {
+            return before;
+        }
+
+        @Override
+        public String toString() {
+            return name + " -> " + (before == null ? "end" : before);
+        }
+    }
+}
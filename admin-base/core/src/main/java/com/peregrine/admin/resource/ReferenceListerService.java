@@ -33,6 +33,8 @@ import static com.peregrine.commons.util.PerUtil.listMissingParents;
 import static java.util.Objects.isNull;
 
 import com.google.common.collect.Lists;
+import com.peregrine.admin.resource.ReferencedByIndex.IndexedReference;
+import com.peregrine.commons.util.OrderedResourceSet;
 import com.peregrine.commons.util.PerUtil.MissingOrOutdatedResourceChecker;
 import com.peregrine.replication.Reference;
 import com.peregrine.replication.ReferenceLister;
@@ -46,6 +48,8 @@ import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
 import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
@@ -90,6 +94,10 @@ public class ReferenceListerService
     private List<String> referencePrefixList = new ArrayList<>();
     private List<String> referencedByRootList = new ArrayList<>();
 
+    // Used for the Referenced By lists once it is built, until then the content is traversed
+    @org.osgi.service.component.annotations.Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    volatile ReferencedByIndex referencedByIndex;
+
     @Override
     public List<Resource> getReferenceList(boolean transitive, Resource resource, boolean deep) {
         return getReferenceList(transitive, resource, deep, null, null);
@@ -97,10 +105,18 @@ public class ReferenceListerService
 
     @Override
     public List<Resource> getReferenceList(boolean transitive, Resource resource, boolean deep, Resource source, Resource target) {
-        List<Resource> answer = new ArrayList<>();
+        return getReferenceList(transitive, Collections.singletonList(resource), deep, source, target);
+    }
+
+    @Override
+    public List<Resource> getReferenceList(boolean transitive, Collection<Resource> resources, boolean deep, Resource source, Resource target) {
+        // The found references are also the visited ones so they are only traversed once for all the given resources
+        OrderedResourceSet answer = new OrderedResourceSet();
         TraversingContext context = new TraversingContext().setTransitive(transitive).setDeep(deep);
-        checkResource(resource, context, answer, source, target);
-        return answer;
+        for(Resource resource: resources) {
+            checkResource(resource, context, answer, source, target);
+        }
+        return answer.toList();
     }
 
     @Override
@@ -112,6 +128,17 @@ public class ReferenceListerService
         final List<Reference> answer = new ArrayList<>();
         final ResourceResolver resourceResolver = resource.getResourceResolver();
         final String path = resource.getPath();
+        final ReferencedByIndex index = referencedByIndex;
+        if (isIndexUsable(index, resourceResolver)) {
+            for (final IndexedReference reference : index.getReferencedBy(path)) {
+                if (isInReferencedByRoots(reference.getResourcePath())) {
+                    addIndexedReference(resourceResolver, reference, answer);
+                }
+            }
+
+            return answer;
+        }
+
         referencedByRootList.stream()
                 .map(resourceResolver::getResource)
                 .filter(Objects::nonNull)
@@ -119,16 +146,52 @@ public class ReferenceListerService
         return answer;
     }
 
+    /**
+     * The index only knows the committed changes it already observed. Pending changes of the caller
+     * or changes the index did not apply yet (like the ones just saved before a move or rename)
+     * are only found by traversing the content
+     */
+    private boolean isIndexUsable(final ReferencedByIndex index, final ResourceResolver resourceResolver) {
+        return index != null
+            && !resourceResolver.hasChanges()
+            && index.isUpToDate()
+            && referencedByRootList.stream().allMatch(index::isIndexed);
+    }
+
+    private boolean isInReferencedByRoots(final String path) {
+        for (final String root : referencedByRootList) {
+            if (path.startsWith(root + SLASH)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds the reference found in the index if the resource is visible to the caller and the property
+     * still contains the path as the index might not have seen the latest changes yet
+     */
+    private void addIndexedReference(final ResourceResolver resourceResolver, final IndexedReference reference, final List<Reference> response) {
+        final Resource resource = resourceResolver.getResource(reference.getResourcePath());
+        if (resource != null) {
+            final Object value = resource.getValueMap().get(reference.getPropertyName());
+            if (reference.getReferencePath().equals(value + "")) {
+                addReference(resource, reference.getPropertyName(), response);
+            }
+        }
+    }
+
     /**
      * Check the given Resource if it has a reference
      *
      * @param resource Resource to check for references
      * @param context Traversing Context telling if this is transitive, deep traverse and if the paths are allowed (for non-deep copy) and if they are not already visited
-     * @param response List containing the found references. It will contain any given resource only once
+     * @param response Set containing the found references in the order they were found
      * @param source Optional root resource of the source. If source and target is provided then missing parents are added as well
      * @param target Optional root resource of the target
      */
-    private void checkResource(Resource resource, TraversingContext context, List<Resource> response, Resource source, Resource target) {
+    private void checkResource(Resource resource, TraversingContext context, OrderedResourceSet response, Resource source, Resource target) {
         if(resource != null) {
             parseProperties(resource, context, response, source, target);
             Resource jcrContent = resource.getChild(JCR_CONTENT);
@@ -154,11 +217,11 @@ public class ReferenceListerService
      * Go through the given resources children and check their properties and their children
      * @param resource Parent resource (call is ignored if null)
      * @param context Traversing context
-     * @param response List containing the found references. It will contain any given resource only once
+     * @param response Set containing the found references in the order they were found
      * @param source Optional root resource of the source. If source and target is provided then missing parents are added as well
      * @param target Optional root resource of the target
      */
-    private void traverseTree(Resource resource, TraversingContext context, List<Resource> response, Resource source, Resource target) {
+    private void traverseTree(Resource resource, TraversingContext context, OrderedResourceSet response, Resource source, Resource target) {
         if(resource != null) {
             for(Resource child : resource.getChildren()) {
                 parseProperties(child, context, response, source, target);
@@ -172,11 +235,11 @@ public class ReferenceListerService
      * and add them if they are found. If transitive we check the reference resource as well
      * @param resource Resource which properties are checked here
      * @param context Traversing Context
-     * @param response List containing the found references. It will contain any given resource only once
+     * @param response Set containing the found references in the order they were found
      * @param source Optional root resource of the source. If source and target is provided then missing parents are added as well
      * @param target Optional root resource of the target
      */
-    private void parseProperties(Resource resource, TraversingContext context, List<Resource> response, Resource source, Resource target) {
+    private void parseProperties(Resource resource, TraversingContext context, OrderedResourceSet response, Resource source, Resource target) {
         ValueMap properties = resource.getValueMap();
         for(Object item: properties.values()) {
             String value = item + "";
@@ -192,7 +255,7 @@ public class ReferenceListerService
                     }
                     if(child != null) {
                         // Check if the resource is not already listed in there
-                        if(containsResource(response, child)) {
+                        if(response.containsPath(child.getPath())) {
                             log.trace("Resource is already in the list: '{}'", child);
                         } else {
                             if(source  != null && target != null) {
@@ -205,24 +268,13 @@ public class ReferenceListerService
                             }
                         }
                     }
+                    // Any other matching prefix would find the same resource
+                    break;
                 }
             }
         }
     }
 
-    /** Checks if the given list already contains the given resource by path **/
-    private boolean containsResource(List<Resource> resources, Resource check) {
-        boolean answer = false;
-        String checkPath = check.getPath();
-        for(Resource item: resources) {
-            if(item.getPath().equals(checkPath)) {
-                answer = true;
-                break;
-            }
-        }
-        return answer;
-    }
-
     /**
      * This traverses the resource's children to look for referenced by resources. Call is ignored
      * if resource or reference path is not defined
@@ -253,37 +305,48 @@ public class ReferenceListerService
                 String name = entry.getKey();
                 String value = entry.getValue() + "";
                 if(referencePath.equals(value)) {
-                    // Find the node
-                    boolean found = false;
-                    Resource temp = resource;
-                    while(true) {
-                        if(temp.getName().equals(JCR_CONTENT)) {
-                            Resource parent = temp.getParent();
-                            if(parent != null) {
-                                if(!response.contains(parent)) {
-                                    response.add(new Reference(parent, name, resource));
-                                }
-                                found = true;
-                            } else {
-                                log.warn("JCR Content Node: '{}' found but no parent", temp.getPath());
-                            }
-                            break;
-                        } else {
-                            temp = temp.getParent();
-                            if(temp == null) {
-                                break;
-                            }
-                        }
-                    }
-                    if(!found) {
-                        // No JCR Content node found so just use this one
-                        if(!response.contains(resource)) {
-                            response.add(new Reference(resource, name, resource));
-                        }
+                    addReference(resource, name, response);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the reference to the given property of the resource. The reference points to the parent
+     * of the closest JCR Content ancestor if there is one and otherwise to the resource itself
+     * @param resource Resource containing the property
+     * @param name Name of the property
+     * @param response List of the references found
+     */
+    private void addReference(Resource resource, String name, List<Reference> response) {
+        // Find the node
+        boolean found = false;
+        Resource temp = resource;
+        while(true) {
+            if(temp.getName().equals(JCR_CONTENT)) {
+                Resource parent = temp.getParent();
+                if(parent != null) {
+                    if(!response.contains(parent)) {
+                        response.add(new Reference(parent, name, resource));
                     }
+                    found = true;
+                } else {
+                    log.warn("JCR Content Node: '{}' found but no parent", temp.getPath());
+                }
+                break;
+            } else {
+                temp = temp.getParent();
+                if(temp == null) {
+                    break;
                 }
             }
         }
+        if(!found) {
+            // No JCR Content node found so just use this one
+            if(!response.contains(resource)) {
+                response.add(new Reference(resource, name, resource));
+            }
+        }
     }
 
     @Activate
@@ -0,0 +1,100 @@
+package com.peregrine.admin.resource;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import java.util.List;
+
+/**
+ * Index of the properties that reference a given path. It is kept up to date
+ * with the changes in the repository so that the resources referencing a path
+ * can be found without traversing the whole content.
+ */
+public interface ReferencedByIndex {
+
+    /**
+     * @param path Root path of the resources to be looked up
+     * @return True if the index is built and covers all resources below the given path
+     */
+    boolean isIndexed(String path);
+
+    /**
+     * @return True if the index is built and all the changes observed so far are applied. Changes that
+     *         are committed but not observed yet are never known to the index
+     */
+    boolean isUpToDate();
+
+    /**
+     * @param path Path that is referenced
+     * @return All indexed properties which value is the given path ordered by their resource path
+     */
+    List<IndexedReference> getReferencedBy(String path);
+
+    /** Property of a resource that references a path **/
+    final class IndexedReference {
+        private final String resourcePath;
+        private final String propertyName;
+        private final String referencePath;
+
+        public IndexedReference(String resourcePath, String propertyName, String referencePath) {
+            this.resourcePath = resourcePath;
+            this.propertyName = propertyName;
+            this.referencePath = referencePath;
+        }
+
+        /** Path of the resource that contains the property **/
+        public String getResourcePath() {
+            return resourcePath;
+        }
+
+        /** Name of the property that contains the reference **/
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        /** Path that is referenced **/
+        public String getReferencePath() {
+            return referencePath;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) { return true; }
+            if(!(o instanceof IndexedReference)) { return false; }
+            IndexedReference that = (IndexedReference) o;
+            return resourcePath.equals(that.resourcePath) && propertyName.equals(that.propertyName) && referencePath.equals(that.referencePath);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * resourcePath.hashCode() + propertyName.hashCode()) + referencePath.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return resourcePath + "@" + propertyName + "->" + referencePath;
+        }
+    }
+}
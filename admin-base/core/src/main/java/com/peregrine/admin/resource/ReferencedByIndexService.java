@@ -0,0 +1,381 @@
+package com.peregrine.admin.resource;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import static com.peregrine.admin.util.AdminConstants.PEREGRINE_SERVICE_NAME;
+import static com.peregrine.commons.util.PerConstants.SLASH;
+import static com.peregrine.commons.util.PerUtil.EQUALS;
+import static com.peregrine.commons.util.PerUtil.loginService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps an in-memory index from the referenced paths to the properties referencing them.
+ * The index is built in the background when the service is activated and afterwards
+ * updated with the observed changes of the indexed roots. Until it is built the
+ * Reference Lister falls back to traversing the content.
+ */
+@Component(
+    configurationPolicy = ConfigurationPolicy.OPTIONAL,
+    service = { ReferencedByIndex.class, ResourceChangeListener.class, ReferencedByIndexServiceMBean.class },
+    immediate = true,
+    property = {
+        ResourceChangeListener.PATHS + EQUALS + ReferencedByIndexService.DEFAULT_ROOT,
+        ResourceChangeListener.CHANGES + EQUALS + "ADDED",
+        ResourceChangeListener.CHANGES + EQUALS + "CHANGED",
+        ResourceChangeListener.CHANGES + EQUALS + "REMOVED",
+        ReferencedByIndexService.JMX_OBJECT_NAME + EQUALS + "com.peregrine.admin:type=ReferencedByIndex"
+    }
+)
+@Designate(ocd = ReferencedByIndexService.Configuration.class)
+public class ReferencedByIndexService
+    implements ReferencedByIndex, ResourceChangeListener, ReferencedByIndexServiceMBean
+{
+    static final String DEFAULT_ROOT = "/content";
+    static final String JMX_OBJECT_NAME = "jmx.objectname";
+
+    @ObjectClassDefinition(
+        name = "Peregrine: Referenced By Index",
+        description = "Index of the resources referencing a given path used to find the Referenced By list"
+    )
+    @interface Configuration {
+        @AttributeDefinition(
+            name = "Indexed Roots",
+            description = "List of Roots which resources are indexed",
+            required = true
+        )
+        String[] resource_paths() default DEFAULT_ROOT;
+    }
+
+    private static final Comparator<IndexedReference> BY_RESOURCE_PATH =
+        Comparator.comparing(IndexedReference::getResourcePath).thenComparing(IndexedReference::getPropertyName);
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    @SuppressWarnings("unused")
+    ResourceResolverFactory resourceResolverFactory;
+
+    // Resource Path -> (Property Name -> Reference) to find the references to be replaced when a resource changes
+    private final ConcurrentSkipListMap<String, Map<String, IndexedReference>> references = new ConcurrentSkipListMap<>();
+    // Referenced Path -> References
+    private final Map<String, Set<IndexedReference>> referencedBy = new ConcurrentHashMap<>();
+    // Changed paths observed while the index is built. They are applied again once the build is done
+    private final Set<String> changedDuringBuild = new HashSet<>();
+    private final AtomicLong appliedChangesCount = new AtomicLong();
+    // Observed changes that are not applied yet
+    private final AtomicInteger pendingChangesCount = new AtomicInteger();
+
+    private List<String> roots = Collections.emptyList();
+    private ExecutorService executor;
+    private volatile boolean ready = false;
+    private volatile boolean building = false;
+    private volatile long lastBuildDuration = -1;
+
+    @Activate
+    @SuppressWarnings("unused")
+    void activate(Configuration configuration) {
+        setup(configuration);
+        executor = Executors.newSingleThreadExecutor();
+        rebuild();
+    }
+
+    @Modified
+    @SuppressWarnings("unused")
+    void modified(Configuration configuration) {
+        setup(configuration);
+        rebuild();
+    }
+
+    @Deactivate
+    @SuppressWarnings("unused")
+    void deactivate() {
+        ready = false;
+        executor.shutdownNow();
+    }
+
+    private void setup(Configuration configuration) {
+        List<String> list = new ArrayList<>();
+        for(String root: configuration.resource_paths()) {
+            if(root != null && !root.isEmpty()) {
+                log.debug("Add Indexed Root: '{}'", root);
+                list.add(root);
+            }
+        }
+        roots = list;
+    }
+
+    @Override
+    public boolean isIndexed(String path) {
+        if(!ready || path == null) {
+            return false;
+        }
+        for(String root: roots) {
+            if(isSameOrDescendant(path, root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isUpToDate() {
+        return ready && pendingChangesCount.get() == 0;
+    }
+
+    @Override
+    public List<IndexedReference> getReferencedBy(String path) {
+        Set<IndexedReference> set = referencedBy.get(path);
+        if(set == null) {
+            return Collections.emptyList();
+        }
+        List<IndexedReference> answer = new ArrayList<>(set);
+        answer.sort(BY_RESOURCE_PATH);
+        return answer;
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        pendingChangesCount.addAndGet(changes.size());
+        try {
+            applyChanges(changes);
+        } finally {
+            pendingChangesCount.addAndGet(-changes.size());
+        }
+    }
+
+    private void applyChanges(List<ResourceChange> changes) {
+        synchronized(changedDuringBuild) {
+            if(building) {
+                for(ResourceChange change: changes) {
+                    changedDuringBuild.add(change.getPath());
+                }
+            }
+        }
+        try(ResourceResolver resourceResolver = loginService(resourceResolverFactory, PEREGRINE_SERVICE_NAME)) {
+            for(ResourceChange change: changes) {
+                applyChange(resourceResolver, change.getPath(), change.getType());
+            }
+        } catch(LoginException e) {
+            log.error("Failed to update the Referenced By Index, rebuild it", e);
+            rebuild();
+        }
+    }
+
+    void applyChange(ResourceResolver resourceResolver, String path, ChangeType type) {
+        appliedChangesCount.incrementAndGet();
+        Resource resource = type == ChangeType.REMOVED ? null : resourceResolver.getResource(path);
+        synchronized(references) {
+            if(resource == null) {
+                removeTree(path);
+            } else if(type == ChangeType.ADDED) {
+                // Added resources might come with their children (copy or move)
+                removeTree(path);
+                indexTree(resource);
+            } else {
+                index(resource);
+            }
+        }
+    }
+
+    @Override
+    public void rebuild() {
+        ExecutorService service = executor;
+        if(service != null && !service.isShutdown()) {
+            // The index is outdated until the rebuild is done
+            ready = false;
+            service.execute(this::build);
+        }
+    }
+
+    /** Builds the index from scratch and applies the changes that happened meanwhile afterwards **/
+    void build() {
+        long start = System.currentTimeMillis();
+        ready = false;
+        synchronized(changedDuringBuild) {
+            building = true;
+            changedDuringBuild.clear();
+        }
+        synchronized(references) {
+            references.clear();
+            referencedBy.clear();
+        }
+        try {
+            try(ResourceResolver resourceResolver = loginService(resourceResolverFactory, PEREGRINE_SERVICE_NAME)) {
+                for(String root: roots) {
+                    Resource resource = resourceResolver.getResource(root);
+                    if(resource != null) {
+                        indexTree(resource);
+                    }
+                }
+            }
+            Set<String> changedPaths;
+            synchronized(changedDuringBuild) {
+                building = false;
+                changedPaths = new HashSet<>(changedDuringBuild);
+                changedDuringBuild.clear();
+            }
+            // The traversal might have seen an outdated state of these paths
+            try(ResourceResolver resourceResolver = loginService(resourceResolverFactory, PEREGRINE_SERVICE_NAME)) {
+                for(String path: changedPaths) {
+                    applyChange(resourceResolver, path, ChangeType.ADDED);
+                }
+            }
+            lastBuildDuration = System.currentTimeMillis() - start;
+            ready = !Thread.currentThread().isInterrupted();
+            log.info("Referenced By Index built in {} ms with {} referenced paths", lastBuildDuration, referencedBy.size());
+        } catch(LoginException | RuntimeException e) {
+            building = false;
+            log.error("Failed to build the Referenced By Index, the Referenced By lists are found by traversing the content", e);
+        }
+    }
+
+    private void indexTree(Resource resource) {
+        if(Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        synchronized(references) {
+            index(resource);
+        }
+        for(Resource child: resource.getChildren()) {
+            indexTree(child);
+        }
+    }
+
+    /** Replaces the references of the given resource with its current properties. Must be called holding the lock **/
+    private void index(Resource resource) {
+        String path = resource.getPath();
+        Map<String, IndexedReference> found = null;
+        for(Map.Entry<String, Object> entry: resource.getValueMap().entrySet()) {
+            Object value = entry.getValue();
+            // Only single value string properties can contain a path
+            if(value instanceof String && ((String) value).startsWith(SLASH)) {
+                if(found == null) {
+                    found = new HashMap<>();
+                }
+                found.put(entry.getKey(), new IndexedReference(path, entry.getKey(), (String) value));
+            }
+        }
+        Map<String, IndexedReference> previous = found == null ? references.remove(path) : references.put(path, found);
+        if(previous != null) {
+            unlink(previous.values());
+        }
+        if(found != null) {
+            for(IndexedReference reference: found.values()) {
+                referencedBy.computeIfAbsent(reference.getReferencePath(), key -> ConcurrentHashMap.newKeySet()).add(reference);
+            }
+        }
+    }
+
+    /** Removes the references of the resource with the given path and all its descendants. Must be called holding the lock **/
+    private void removeTree(String path) {
+        Map<String, IndexedReference> removed = references.remove(path);
+        if(removed != null) {
+            unlink(removed.values());
+        }
+        // All descendants are between "<path>/" and "<path>0" as '0' follows '/'
+        Map<String, Map<String, IndexedReference>> descendants = references.subMap(path + SLASH, path + '0');
+        for(Map<String, IndexedReference> properties: descendants.values()) {
+            unlink(properties.values());
+        }
+        descendants.clear();
+    }
+
+    private void unlink(Collection<IndexedReference> list) {
+        for(IndexedReference reference: list) {
+            String referencePath = reference.getReferencePath();
+            Set<IndexedReference> set = referencedBy.get(referencePath);
+            if(set != null) {
+                set.remove(reference);
+                if(set.isEmpty()) {
+                    referencedBy.remove(referencePath);
+                }
+            }
+        }
+    }
+
+    private static boolean isSameOrDescendant(String path, String root) {
+        return path.equals(root) || path.startsWith(root.endsWith(SLASH) ? root : root + SLASH);
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public int getIndexedResourcesCount() {
+        return references.size();
+    }
+
+    @Override
+    public int getReferencedPathsCount() {
+        return referencedBy.size();
+    }
+
+    @Override
+    public long getAppliedChangesCount() {
+        return appliedChangesCount.get();
+    }
+
+    @Override
+    public long getLastBuildDuration() {
+        return lastBuildDuration;
+    }
+}
@@ -0,0 +1,50 @@
+package com.peregrine.admin.resource;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+/**
+ * Statistics and management of the Referenced By Index
+ */
+public interface ReferencedByIndexServiceMBean {
+
+    /** @return True if the index is built and used for the Referenced By lookups **/
+    boolean isReady();
+
+    /** @return Number of resources with at least one reference **/
+    int getIndexedResourcesCount();
+
+    /** @return Number of referenced paths **/
+    int getReferencedPathsCount();
+
+    /** @return Number of observed changes applied to the index **/
+    long getAppliedChangesCount();
+
+    /** @return Duration of the last build of the whole index in milliseconds or -1 if not built yet **/
+    long getLastBuildDuration();
+
+    /** Discards the index and builds it again in the background **/
+    void rebuild();
+}
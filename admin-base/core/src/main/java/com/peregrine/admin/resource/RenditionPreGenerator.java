@@ -0,0 +1,139 @@
+package com.peregrine.admin.resource;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import java.util.List;
+
+/**
+ * Creates the renditions of uploaded or replaced assets in the background so that
+ * the first request of a rendition does not have to wait for its transformation.
+ */
+public interface RenditionPreGenerator {
+
+    /**
+     * Queues the renditions of the given asset. Renditions that are mandatory for a
+     * replication are created before all others
+     * @param assetPath Path of the asset which must be committed already
+     * @return Number of renditions that were queued. Renditions are not queued if they
+     *         are queued already, are not configured for the asset or the queue is full
+     */
+    int enqueue(String assetPath);
+
+    /** @return Snapshot of the queue and the statistics of the workers **/
+    Status getStatus();
+
+    /** Rendition waiting in the queue **/
+    final class QueuedRendition {
+        private final String assetPath;
+        private final String renditionName;
+        private final boolean mandatory;
+
+        public QueuedRendition(String assetPath, String renditionName, boolean mandatory) {
+            this.assetPath = assetPath;
+            this.renditionName = renditionName;
+            this.mandatory = mandatory;
+        }
+
+        /** Path of the asset the rendition is created for **/
+        public String getAssetPath() {
+            return assetPath;
+        }
+
+        /** Name of the rendition **/
+        public String getRenditionName() {
+            return renditionName;
+        }
+
+        /** True if the rendition is mandatory for a replication **/
+        public boolean isMandatory() {
+            return mandatory;
+        }
+
+        @Override
+        public String toString() {
+            return assetPath + "/" + renditionName + (mandatory ? " (mandatory)" : "");
+        }
+    }
+
+    /** Status of the pre-generation **/
+    final class Status {
+        private final boolean enabled;
+        private final int maxQueueSize;
+        private final int activeCount;
+        private final long createdCount;
+        private final long failedCount;
+        private final long rejectedCount;
+        private final List<QueuedRendition> queued;
+
+        public Status(
+            boolean enabled, int maxQueueSize, int activeCount, long createdCount, long failedCount, long rejectedCount,
+            List<QueuedRendition> queued
+        ) {
+            this.enabled = enabled;
+            this.maxQueueSize = maxQueueSize;
+            this.activeCount = activeCount;
+            this.createdCount = createdCount;
+            this.failedCount = failedCount;
+            this.rejectedCount = rejectedCount;
+            this.queued = queued;
+        }
+
+        /** True if renditions are queued on upload **/
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /** Maximum number of renditions waiting in the queue **/
+        public int getMaxQueueSize() {
+            return maxQueueSize;
+        }
+
+        /** Number of renditions that are created right now **/
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        /** Number of renditions that were processed since the service was started **/
+        public long getCreatedCount() {
+            return createdCount;
+        }
+
+        /** Number of renditions that could not be created since the service was started **/
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        /** Number of renditions that were not queued because the queue was full **/
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        /** Renditions waiting in the queue in the order they are processed **/
+        public List<QueuedRendition> getQueued() {
+            return queued;
+        }
+    }
+}
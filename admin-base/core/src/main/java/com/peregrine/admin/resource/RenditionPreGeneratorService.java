@@ -0,0 +1,335 @@
+package com.peregrine.admin.resource;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import static com.peregrine.admin.util.AdminConstants.PEREGRINE_SERVICE_NAME;
+import static com.peregrine.commons.util.PerConstants.JCR_MIME_TYPE;
+import static com.peregrine.commons.util.PerConstants.SLASH;
+import static com.peregrine.commons.util.PerUtil.loginService;
+
+import com.peregrine.adaption.PerAsset;
+import com.peregrine.rendition.BaseResourceHandler;
+import com.peregrine.rendition.BaseResourceHandler.HandlerException;
+import com.peregrine.replication.Replication;
+import com.peregrine.transform.ImageContext;
+import com.peregrine.transform.ImageTransformationConfigurationProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the configured renditions of uploaded assets with a pool of workers. The queue
+ * is bounded and the renditions that a replication requires (its Mandatory Renditions)
+ * are taken before the others.
+ */
+@Component(
+    service = RenditionPreGenerator.class,
+    immediate = true
+)
+@Designate(ocd = RenditionPreGeneratorService.Configuration.class)
+public class RenditionPreGeneratorService
+    implements RenditionPreGenerator
+{
+    /** Name of the Replication configuration property listing its Mandatory Renditions **/
+    static final String MANDATORY_RENDITIONS = "mandatoryRenditions";
+
+    @ObjectClassDefinition(
+        name = "Peregrine: Rendition Pre-Generation",
+        description = "Creates the renditions of uploaded or replaced assets in the background"
+    )
+    @interface Configuration {
+        @AttributeDefinition(
+            name = "Enabled",
+            description = "If disabled renditions are only created when they are requested the first time"
+        )
+        boolean enabled() default true;
+        @AttributeDefinition(
+            name = "Renditions",
+            description = "Names of the renditions (as defined in the Image Transformation Setups) that are created for an uploaded asset. "
+                + "The Mandatory Renditions of all Replications are created as well and before all others"
+        )
+        String[] renditions() default {};
+        @AttributeDefinition(
+            name = "Workers",
+            description = "Number of renditions that are created concurrently",
+            min = "1"
+        )
+        int workers() default 2;
+        @AttributeDefinition(
+            name = "Max Queue Size",
+            description = "Maximum number of renditions waiting to be created. Further renditions are created when they are requested",
+            min = "1"
+        )
+        int maxQueueSize() default 1000;
+    }
+
+    private static final Comparator<PendingRendition> BY_PRIORITY =
+        Comparator.comparing((PendingRendition pending) -> !pending.mandatory).thenComparingLong(pending -> pending.sequence);
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    @SuppressWarnings("unused")
+    BaseResourceHandler baseResourceHandler;
+
+    @Reference
+    @SuppressWarnings("unused")
+    ImageTransformationConfigurationProvider imageTransformationConfigurationProvider;
+
+    @Reference
+    @SuppressWarnings("unused")
+    ResourceResolverFactory resourceResolverFactory;
+
+    private final Map<Replication, List<String>> mandatoryRenditions = new ConcurrentHashMap<>();
+    // Key (asset path / rendition name) -> Rendition waiting in the queue
+    private final Map<String, PendingRendition> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private volatile boolean enabled;
+    private volatile List<String> renditions = Collections.emptyList();
+    private volatile int maxQueueSize;
+    private ThreadPoolExecutor executor;
+
+    @Reference(
+        cardinality = ReferenceCardinality.MULTIPLE,
+        policy = ReferencePolicy.DYNAMIC,
+        policyOption = ReferencePolicyOption.GREEDY
+    )
+    @SuppressWarnings("unused")
+    void bindReplication(Replication replication, Map<String, Object> properties) {
+        List<String> list = toList(properties.get(MANDATORY_RENDITIONS));
+        log.trace("Bind Replication: '{}', mandatory renditions: '{}'", replication.getName(), list);
+        mandatoryRenditions.put(replication, list);
+    }
+
+    @SuppressWarnings("unused")
+    void unbindReplication(Replication replication) {
+        mandatoryRenditions.remove(replication);
+    }
+
+    @Activate
+    @SuppressWarnings("unused")
+    void activate(Configuration configuration) {
+        int workers = Math.max(1, configuration.workers());
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+        setup(configuration);
+    }
+
+    @Modified
+    @SuppressWarnings("unused")
+    void modified(Configuration configuration) {
+        int workers = Math.max(1, configuration.workers());
+        if(workers > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(workers);
+            executor.setCorePoolSize(workers);
+        } else {
+            executor.setCorePoolSize(workers);
+            executor.setMaximumPoolSize(workers);
+        }
+        setup(configuration);
+    }
+
+    @Deactivate
+    @SuppressWarnings("unused")
+    void deactivate() {
+        enabled = false;
+        executor.shutdownNow();
+        pending.clear();
+    }
+
+    private void setup(Configuration configuration) {
+        enabled = configuration.enabled();
+        renditions = toList(configuration.renditions());
+        maxQueueSize = Math.max(1, configuration.maxQueueSize());
+        log.debug("Rendition Pre-Generation enabled: '{}', renditions: '{}', max queue size: '{}'", enabled, renditions, maxQueueSize);
+    }
+
+    @Override
+    public int enqueue(String assetPath) {
+        ThreadPoolExecutor service = executor;
+        if(!enabled || assetPath == null || service == null || service.isShutdown()) {
+            return 0;
+        }
+        Set<String> mandatory = new LinkedHashSet<>();
+        for(List<String> list: mandatoryRenditions.values()) {
+            mandatory.addAll(list);
+        }
+        Set<String> names = new LinkedHashSet<>(mandatory);
+        names.addAll(renditions);
+        int answer = 0;
+        for(String renditionName: names) {
+            if(imageTransformationConfigurationProvider.getImageTransformationConfigurations(renditionName, assetPath) == null) {
+                log.trace("Rendition: '{}' is not configured for Asset: '{}'", renditionName, assetPath);
+                continue;
+            }
+            PendingRendition rendition = new PendingRendition(assetPath, renditionName, mandatory.contains(renditionName), sequence.incrementAndGet());
+            synchronized(pending) {
+                if(pending.containsKey(rendition.key)) {
+                    continue;
+                }
+                if(pending.size() >= maxQueueSize) {
+                    rejectedCount.incrementAndGet();
+                    log.debug("Rendition Queue is full, Rendition: '{}' is created on request", rendition.key);
+                    continue;
+                }
+                pending.put(rendition.key, rendition);
+            }
+            service.execute(rendition);
+            answer++;
+        }
+        return answer;
+    }
+
+    @Override
+    public Status getStatus() {
+        List<QueuedRendition> queued = pending.values().stream()
+            .sorted(BY_PRIORITY)
+            .map(rendition -> new QueuedRendition(rendition.assetPath, rendition.renditionName, rendition.mandatory))
+            .collect(Collectors.toList());
+        return new Status(
+            enabled, maxQueueSize, activeCount.get(), createdCount.get(), failedCount.get(), rejectedCount.get(), queued
+        );
+    }
+
+    /** Creates a rendition with its own service resource resolver **/
+    void create(String assetPath, String renditionName) {
+        try(ResourceResolver resourceResolver = loginService(resourceResolverFactory, PEREGRINE_SERVICE_NAME)) {
+            Resource resource = resourceResolver.getResource(assetPath);
+            PerAsset asset = resource == null ? null : resource.adaptTo(PerAsset.class);
+            if(asset == null) {
+                log.debug("Asset: '{}' is gone, rendition: '{}' is ignored", assetPath, renditionName);
+                return;
+            }
+            String sourceMimeType = asset.getContentProperty(JCR_MIME_TYPE, String.class);
+            if(sourceMimeType == null || sourceMimeType.isEmpty()) {
+                log.debug("Asset: '{}' has no Mime Type, rendition: '{}' is ignored", assetPath, renditionName);
+                return;
+            }
+            ImageContext imageContext = baseResourceHandler.createRendition(resource, renditionName, sourceMimeType);
+            if(imageContext != null) {
+                IOUtils.closeQuietly(imageContext.getImageStream());
+            }
+            resourceResolver.commit();
+            createdCount.incrementAndGet();
+        } catch(LoginException | HandlerException | PersistenceException | RuntimeException e) {
+            failedCount.incrementAndGet();
+            log.warn("Failed to create Rendition: '{}' of Asset: '{}'", renditionName, assetPath, e);
+        }
+    }
+
+    private static List<String> toList(Object value) {
+        Collection<?> values = Collections.emptyList();
+        if(value instanceof String[]) {
+            values = Arrays.asList((String[]) value);
+        } else if(value instanceof Collection) {
+            values = (Collection<?>) value;
+        } else if(value != null) {
+            values = Collections.singletonList(value);
+        }
+        List<String> answer = new ArrayList<>();
+        for(Object item: values) {
+            String name = item == null ? null : item.toString().trim();
+            if(name != null && !name.isEmpty()) {
+                answer.add(name);
+            }
+        }
+        return answer;
+    }
+
+    /** Rendition in the queue of the executor. Mandatory renditions come first and otherwise in the order of their creation **/
+    private final class PendingRendition
+        implements Runnable, Comparable<PendingRendition>
+    {
+        private final String assetPath;
+        private final String renditionName;
+        private final boolean mandatory;
+        private final long sequence;
+        private final String key;
+
+        private PendingRendition(String assetPath, String renditionName, boolean mandatory, long sequence) {
+            this.assetPath = assetPath;
+            this.renditionName = renditionName;
+            this.mandatory = mandatory;
+            this.sequence = sequence;
+            this.key = assetPath + SLASH + renditionName;
+        }
+
+        @Override
+        public void run() {
+            // Once taken the rendition can be queued again in case the asset is replaced meanwhile
+            if(!pending.remove(key, this)) {
+                return;
+            }
+            activeCount.incrementAndGet();
+            try {
+                create(assetPath, renditionName);
+            } finally {
+                activeCount.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(PendingRendition other) {
+            return BY_PRIORITY.compare(this, other);
+        }
+    }
+}
@@ -29,6 +29,7 @@ public interface AdminPaths {
     public static final String RESOURCE_TYPE_SEARCH = API_PREFIX + "search";
     public static final String RESOURCE_TYPE_UPDATE_RESOURCE = API_PREFIX + "updateResource";
     public static final String RESOURCE_TYPE_UPLOAD_FILES = API_PREFIX + "uploadFiles";
+    public static final String RESOURCE_TYPE_RENDITION_QUEUE = API_PREFIX + "renditionQueue";
     public static final String RESOURCE_TYPE_UPDATE_TENANT = API_PREFIX + "updateTenant";
     public static final String RESOURCE_TYPE_LIST_TENANTS = API_PREFIX + "listTenants";
     public static final String RESOURCE_TYPE_BACKUP_TENANT = API_PREFIX + "backupTenant";
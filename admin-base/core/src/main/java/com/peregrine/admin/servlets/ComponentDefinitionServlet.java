@@ -75,6 +75,11 @@ public class ComponentDefinitionServlet extends AbstractBaseServlet {
     private static final String EXPLORER_DIALOG_JSON = "explorer_dialog.json";
     private static final String OG_TAG_DIALOG_JSON = "og_tag_dialog.json";
 
+    @Override
+    protected ResponseDependency getResponseDependency(Request request) {
+        return new ResponseDependency().addPath(request.getParameter(PATH));
+    }
+
     @Override
     protected Response handleRequest(Request request) throws IOException {
         String path = request.getParameter(PATH);
@@ -77,6 +77,11 @@ public class ListServlet extends AbstractBaseServlet {
     @Reference
     ModelFactory modelFactory;
 
+    @Override
+    protected ResponseDependency getResponseDependency(Request request) {
+        return new ResponseDependency().addPath(CONTENT_ADMIN_TOOLS).addPath(CONTENT_ADMIN_TOOLS_CONFIG);
+    }
+
     @Override
     protected Response handleRequest(Request request) throws IOException {
         String path = request.getParameter(PATH);
@@ -100,6 +100,11 @@ public class ListTenantsServlet extends AbstractBaseServlet {
         .put("templates", TEMPLATES_ROOT)
         .build();
 
+    @Override
+    protected ResponseDependency getResponseDependency(Request request) {
+        return new ResponseDependency().addPath(CONTENT_ROOT);
+    }
+
     @Override
     protected Response handleRequest(Request request) throws IOException {
         ResourceResolver resourceResolver = request.getResourceResolver();
@@ -124,7 +129,7 @@ public class ListTenantsServlet extends AbstractBaseServlet {
             .filter(isTenant)
             .collect(Collectors.toList());
 
-        JsonResponse answer = new JsonResponse();
+        JsonResponse answer = new StreamingJsonResponse(request);
         answer.writeArray(TENANTS);
 
         for (Resource tenant : tenants) {
@@ -54,6 +54,7 @@ import static com.peregrine.commons.util.PerUtil.PER_PREFIX;
 import static com.peregrine.commons.util.PerUtil.PER_VENDOR;
 import static com.peregrine.commons.util.PerUtil.getProperties;
 import static com.peregrine.commons.util.PerUtil.isPrimaryType;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_METHODS;
 import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES;
@@ -65,9 +66,14 @@ import com.peregrine.commons.util.PerUtil;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Calendar;
-import java.util.List;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 import javax.servlet.Servlet;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -79,6 +85,14 @@ import org.osgi.service.component.annotations.Reference;
 /**
  * List all the resources part of the given Path
  *
+ * Each resource on the path is listed with its children. The children of a
+ * level can be paged with the 'limit' parameter. A level with more children
+ * contains a 'next' cursor which is passed as 'cursor' parameter together
+ * with a path containing that level to obtain the next page. The parameter can
+ * be repeated to continue several levels at once. The 'fields' parameter
+ * restricts the listed properties of the children to the given comma separated
+ * list (name and path are always listed).
+ *
  * The API Definition can be found in the Swagger Editor configuration:
  *    ui.apps/src/main/content/jcr_root/perapi/definitions/admin.yaml
  */
@@ -95,6 +109,8 @@ import org.osgi.service.component.annotations.Reference;
 public class NodesServlet extends AbstractBaseServlet {
 
     public static final String NO_PATH_PROVIDED = "No Path provided";
+    public static final String PATH_NOT_FOUND = "Path not found";
+    public static final String INVALID_CURSOR = "Invalid Cursor";
     public static final String CHILDREN = "children";
     public static final String HAS_CHILDREN = "hasChildren";
     public static final String MIME_TYPE = "mimeType";
@@ -104,14 +120,35 @@ public class NodesServlet extends AbstractBaseServlet {
     public static final String RESOURCE_TYPE = "resourceType";
     public static final String JCR_PREFIX = "jcr:";
     public static final String PER_PREFIX = "per:";
+    public static final String LIMIT = "limit";
+    public static final String CURSOR = "cursor";
+    public static final String FIELDS = "fields";
+    public static final String NEXT = "next";
+    public static final String DESCRIPTION = "description";
 
     private static final String[] OMIT_PREFIXES = new String[] {JCR_PREFIX, PER_PREFIX};
+    private static final String CURSOR_SEPARATOR = "\n";
 
-    private static DateFormat formatter = new SimpleDateFormat(ECMA_DATE_FORMAT, ECMA_DATE_FORMAT_LOCALE);
+    // Fields of a child that are read from the child itself or its replication properties
+    private static final Set<String> PROPERTY_FIELDS = new HashSet<>(Arrays.asList(
+        NAME, PATH, HAS_CHILDREN, RESOURCE_TYPE, "created", "createdBy", "lastModified", "lastModifiedBy",
+        ALLOWED_OBJECTS, "replicated", "replicatedBy", "replicationRef", REPLICATION_STATUS
+    ));
+    private static final Set<String> REPLICATION_FIELDS = new HashSet<>(Arrays.asList(
+        "replicated", "replicatedBy", "replicationRef", REPLICATION_STATUS
+    ));
+    private static final Set<String> ASSET_CONTENT_FIELDS = new HashSet<>(Arrays.asList(
+        MIME_TYPE, TITLE, DESCRIPTION, TAGS
+    ));
 
     @Reference
     ModelFactory modelFactory;
 
+    @Override
+    protected ResponseDependency getResponseDependency(Request request) {
+        return new ResponseDependency().addPath(request.getParameter(PATH));
+    }
+
     @Override
     protected Response handleRequest(Request request) throws IOException {
         String path = request.getParameter(PATH);
@@ -121,184 +158,386 @@ public class NodesServlet extends AbstractBaseServlet {
                 .setErrorMessage(NO_PATH_PROVIDED)
                 .setRequestPath(path);
         }
-        String[] segments = path.split("/");
-        logger.debug("lookup path {}, {}", path, segments.length);
-        JsonResponse answer = new JsonResponse();
-        convertResource(answer, request.getResourceResolver(), segments, 1, path);
+        ResourceResolver resourceResolver = request.getResourceResolver();
+        if(resourceResolver.getResource(path) == null) {
+            return new ErrorResponse()
+                .setHttpErrorCode(SC_BAD_REQUEST)
+                .setErrorMessage(PATH_NOT_FOUND)
+                .setRequestPath(path);
+        }
+        // Each level has its own cursor
+        Map<String, Cursor> cursors = new HashMap<>();
+        String[] cursorTokens = request.getRequest().getParameterValues(CURSOR);
+        if(cursorTokens != null) {
+            for(String cursorToken : cursorTokens) {
+                if(cursorToken == null || cursorToken.isEmpty()) {
+                    continue;
+                }
+                Cursor cursor = Cursor.parse(cursorToken);
+                if(cursor == null) {
+                    return new ErrorResponse()
+                        .setHttpErrorCode(SC_BAD_REQUEST)
+                        .setErrorMessage(INVALID_CURSOR)
+                        .setRequestPath(path);
+                }
+                cursors.put(cursor.levelPath, cursor);
+            }
+        }
+        logger.debug("lookup path {}", path);
+        Listing listing = new Listing(
+            path, request.getIntParameter(LIMIT, 0), cursors, Projection.parse(request.getParameter(FIELDS))
+        );
+        JsonResponse answer = new StreamingJsonResponse(request);
+        listing.write(answer, resourceResolver);
         return answer;
     }
 
-    private void convertResource(JsonResponse json, Resource resource, boolean path) throws IOException {
-        Iterable<Resource> children = resource.getChildren();
-        for(Resource child : children) {
-            json.writeObject();
-            json.writeAttribute(NAME, child.getName());
-            if(path) {
-                json.writeAttribute(PATH, child.getPath());
+    /** @return True if the resource has a child other than its JCR Content **/
+    private static boolean hasNonJcrContentChild(Resource res) {
+        if(!res.hasChildren()) {
+            return false;
+        }
+        // The JCR Content is mostly the first child so at most two children are obtained
+        Iterator<Resource> children = res.listChildren();
+        while(children.hasNext()) {
+            if(!JCR_CONTENT.equals(children.next().getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Fields of the listed children that are written **/
+    private static final class Projection {
+        private static final Projection ALL = new Projection(null);
+
+        private final Set<String> fields;
+
+        private Projection(Set<String> fields) {
+            this.fields = fields;
+        }
+
+        /** @return Projection of the comma separated fields or of all fields if none are given **/
+        private static Projection parse(String fields) {
+            if(fields == null || fields.trim().isEmpty()) {
+                return ALL;
             }
-            for (String key: child.getValueMap().keySet()) {
-                if(key.indexOf(":") < 0) {
-                    json.writeAttribute(key, child.getValueMap().get(key, String.class));
+            Set<String> answer = new HashSet<>(Arrays.asList(NAME, PATH));
+            for(String field : fields.split(",")) {
+                answer.add(field.trim());
+            }
+            return new Projection(answer);
+        }
+
+        private boolean includes(String field) {
+            return fields == null || fields.contains(field);
+        }
+
+        private boolean includesAny(Set<String> candidates) {
+            if(fields == null) {
+                return true;
+            }
+            for(String candidate : candidates) {
+                if(fields.contains(candidate)) {
+                    return true;
                 }
             }
-            json.writeClose();
+            return false;
         }
-    }
 
-    private void convertResource(JsonResponse json, Resource resource) throws IOException {
-        convertResource(json, resource, false);
+        /** @return True if any field is requested that is found in the page content **/
+        private boolean includesPageContent() {
+            return fields == null || !PROPERTY_FIELDS.containsAll(fields);
+        }
     }
 
-    private boolean hasNonJcrContentChild(Resource res) {
-        for (Resource child : res.getChildren()) {
-            if(!JCR_CONTENT.equals(child.getName())) {
-                return true;
-            }            
+    /**
+     * Position in the children of a level: the number of listed children and the
+     * name of the last one. The listing continues after that child or, if the child
+     * was removed, with the child that took its place.
+     */
+    private static final class Cursor {
+        private final String levelPath;
+        private final int offset;
+        private final String lastName;
+
+        private Cursor(String levelPath, int offset, String lastName) {
+            this.levelPath = levelPath;
+            this.offset = offset;
+            this.lastName = lastName;
+        }
+
+        private static Cursor parse(String token) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(token), UTF_8).split(CURSOR_SEPARATOR, -1);
+                if(parts.length != 3) {
+                    return null;
+                }
+                return new Cursor(parts[0], Integer.parseInt(parts[1]), parts[2]);
+            } catch(IllegalArgumentException e) {
+                // Also covers the Number Format Exception
+                return null;
+            }
+        }
+
+        private String toToken() {
+            String data = levelPath + CURSOR_SEPARATOR + offset + CURSOR_SEPARATOR + lastName;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(data.getBytes(UTF_8));
         }
-        return false;
     }
 
-    private void convertResource(JsonResponse json, ResourceResolver rs, String[] segments, int pos, String fullPath) throws IOException {
-        String path = "";
-        for(int i = 1; i <= pos; i++) {
-            path += "/" + segments[i];
+    /** Lists the resources of a path with their children level by level **/
+    private final class Listing {
+        private final String fullPath;
+        private final int limit;
+        private final Map<String, Cursor> cursors;
+        private final Projection projection;
+        // Date Formats are not thread safe
+        private final DateFormat formatter = new SimpleDateFormat(ECMA_DATE_FORMAT, ECMA_DATE_FORMAT_LOCALE);
+
+        /**
+         * @param fullPath Path to be listed
+         * @param limit Maximum number of children listed per level or 0 for all
+         * @param cursors Cursors of the levels to be continued by their level path
+         * @param projection Fields of the children to be written
+         */
+        private Listing(String fullPath, int limit, Map<String, Cursor> cursors, Projection projection) {
+            this.fullPath = fullPath;
+            this.limit = Math.max(0, limit);
+            this.cursors = cursors;
+            this.projection = projection;
         }
-        logger.debug("looking up {}", path);
-        Resource res = rs.getResource(path);
-        json.writeAttribute(NAME,res.getName());
-        json.writeAttribute(PATH,res.getPath());
-        json.writeAttribute(HAS_CHILDREN, hasNonJcrContentChild(res));
-        writeProperties(res, json);
-        json.writeArray(CHILDREN);
-        Iterable<Resource> children = res.getChildren();
-        for(Resource child : children) {
-            String childPath = child.getPath();
-            if(fullPath.startsWith(childPath+'/') || fullPath.equals(childPath)) {
-                json.writeObject();
-                convertResource(json, rs, segments, pos+1, fullPath);
-                json.writeClose();
-            } else {
-                if(!JCR_CONTENT.equals(child.getName())) {
+
+        private void write(JsonResponse json, ResourceResolver resourceResolver) throws IOException {
+            int end = fullPath.indexOf('/', 1);
+            Resource root = resourceResolver.getResource(end < 0 ? fullPath : fullPath.substring(0, end));
+            if(root != null) {
+                writeLevel(json, root, end);
+            }
+        }
+
+        /**
+         * Writes a resource on the path with a page of its children
+         * @param level Resource on the path
+         * @param end End of the level path in the full path or -1 if this is the last level
+         */
+        private void writeLevel(JsonResponse json, Resource level, int end) throws IOException {
+            logger.debug("looking up {}", level.getPath());
+            json.writeAttribute(NAME, level.getName());
+            json.writeAttribute(PATH, level.getPath());
+            json.writeAttribute(HAS_CHILDREN, hasNonJcrContentChild(level));
+            writeProperties(level, json, Projection.ALL);
+            String nextLevelPath = null;
+            int nextEnd = -1;
+            if(end >= 0) {
+                nextEnd = fullPath.indexOf('/', end + 1);
+                nextLevelPath = nextEnd < 0 ? fullPath : fullPath.substring(0, nextEnd);
+            }
+            Cursor cursor = cursors.get(level.getPath());
+            int start = cursor != null ? findStart(level, cursor) : 0;
+            int index = 0;
+            int written = 0;
+            int nextOffset = start;
+            String lastName = null;
+            boolean more = false;
+            json.writeArray(CHILDREN);
+            Iterator<Resource> children = level.listChildren();
+            while(children.hasNext()) {
+                Resource child = children.next();
+                if(child.getPath().equals(nextLevelPath)) {
+                    // The child on the path is always listed together with its children
                     json.writeObject();
-                    json.writeAttribute(NAME,child.getName());
-                    json.writeAttribute(PATH,child.getPath());
-                    json.writeAttribute(HAS_CHILDREN, hasNonJcrContentChild(child));
-                    writeProperties(child, json);
-                    if(isPrimaryType(child, ASSET_PRIMARY_TYPE)) {
-                        ValueMap props = child.getChild(JCR_CONTENT).getValueMap();
-                        String mimeType = props.get(JCR_MIME_TYPE, String.class);
-                        String title = props.get(TITLE, String.class);
-                        String description = props.get("description", String.class);
-                        json.writeAttribute(MIME_TYPE, mimeType);
-                        json.writeAttribute(TITLE, title);
-                        json.writeAttribute("description", description);
-
-                        Resource tags = child.getChild("jcr:content/tags");
-                        List<Tag> answer = new ArrayList<Tag>();
-                        if(tags != null) {
-                            for(Resource tag: tags.getChildren()) {
-                                answer.add(new Tag(tag));
-                            }
-                        }
-                        if(answer.size() > 0) {
-                            json.writeArray("tags");
-                            for (Tag tag : answer) {
-                                json.writeObject();
-                                json.writeAttribute(PATH, tag.getPath());
-                                json.writeAttribute(NAME, tag.getName());
-                                json.writeAttribute("value", tag.getValue());
-                                json.writeClose();
-                            }
-                            json.writeClose();
-                        }
-                    
-                    }
-                    if(isPrimaryType(child, PAGE_PRIMARY_TYPE)) {
-                        Resource content = child.getChild(JCR_CONTENT);
-                        if(content != null) {
-                            for (String key: content.getValueMap().keySet()) {
-                                if(key.equals(JCR_TITLE)) {
-                                    String title = content.getValueMap().get(JCR_TITLE, String.class);
-                                    json.writeAttribute(TITLE, title);
-                                } else {
-                                    if(key.indexOf(":") < 0) {
-                                        json.writeAttribute(key, content.getValueMap().get(key, String.class));
-                                    }
-                                }
-                            }
-                            String component = PerUtil.getComponentNameFromResource(content);
-                            json.writeAttribute(COMPONENT, component);
-                            convertNamedChild(json, content, TAGS);
-                            convertNamedChild(json, content, METAPROPERTIES);
-                        } else {
-                            logger.debug("No Content Child found for: '{}'", child.getPath());
+                    writeLevel(json, child, nextEnd);
+                    json.writeClose();
+                    nextLevelPath = null;
+                } else if(JCR_CONTENT.equals(child.getName())) {
+                    continue;
+                } else if(index >= start) {
+                    if(limit > 0 && written >= limit) {
+                        more = true;
+                        if(nextLevelPath == null) {
+                            break;
                         }
+                    } else {
+                        writeChild(json, child);
+                        written++;
+                        nextOffset = index + 1;
+                        lastName = child.getName();
                     }
-                    json.writeClose();
                 }
+                index++;
+            }
+            json.writeClose();
+            if(more) {
+                json.writeAttribute(NEXT, new Cursor(level.getPath(), nextOffset, lastName == null ? "" : lastName).toToken());
             }
         }
-        json.writeClose();
-    }
 
-    private void convertNamedChild(JsonResponse json, Resource content, String name) throws IOException {
-        Resource res = content.getChild(name);
-        if (res != null) {
-            json.writeArray(name);
-            convertResource(json, res, true);
+        /** @return Index of the first child after the last listed child of the cursor or the former index of that child if it is gone **/
+        private int findStart(Resource level, Cursor cursor) {
+            int index = 0;
+            for(Resource child : level.getChildren()) {
+                if(JCR_CONTENT.equals(child.getName())) {
+                    continue;
+                }
+                index++;
+                if(child.getName().equals(cursor.lastName)) {
+                    return index;
+                }
+            }
+            return Math.max(0, cursor.offset - 1);
+        }
+
+        private void writeChild(JsonResponse json, Resource child) throws IOException {
+            json.writeObject();
+            json.writeAttribute(NAME, child.getName());
+            json.writeAttribute(PATH, child.getPath());
+            if(projection.includes(HAS_CHILDREN)) {
+                json.writeAttribute(HAS_CHILDREN, hasNonJcrContentChild(child));
+            }
+            writeProperties(child, json, projection);
+            if(isPrimaryType(child, ASSET_PRIMARY_TYPE) && projection.includesAny(ASSET_CONTENT_FIELDS)) {
+                writeAssetContent(json, child);
+            }
+            if(isPrimaryType(child, PAGE_PRIMARY_TYPE) && projection.includesPageContent()) {
+                writePageContent(json, child);
+            }
             json.writeClose();
         }
-    }
 
-    private void writeProperties(Resource resource, JsonResponse json) throws IOException {
-        ValueMap properties = resource.getValueMap();
-        writeIfFound(json, JCR_PRIMARY_TYPE, properties, RESOURCE_TYPE);
-        writeIfFound(json, JCR_CREATED, properties);
-        writeIfFound(json, JCR_CREATED_BY, properties);
-        writeIfFound(json, JCR_LAST_MODIFIED, properties);
-        writeIfFound(json, JCR_LAST_MODIFIED_BY, properties);
-        writeIfFound(json, JCR_LAST_MODIFIED_BY, properties);
-        writeIfFound(json, ALLOWED_OBJECTS, properties);
-
-        // For the Replication data we need to obtain the content properties. If not found
-        // then we try with the resource's properties for non jcr:content nodes
-        ValueMap replicationProperties = getProperties(resource);
-        if(replicationProperties == null) { replicationProperties = properties; }
-        String replicationDate = writeIfFound(json, PER_REPLICATED, replicationProperties);
-        writeIfFound(json, PER_REPLICATED_BY, replicationProperties);
-        String replicationLocationRef = writeIfFound(json, PER_REPLICATION_REF, replicationProperties);
-        if(replicationDate != null && !replicationDate.isEmpty()) {
-            String status = ACTIVATED;
-            if(replicationLocationRef == null || replicationLocationRef.isEmpty()) {
-                status = DEACTIVATED;
+        private void writeAssetContent(JsonResponse json, Resource asset) throws IOException {
+            Resource content = asset.getChild(JCR_CONTENT);
+            if(content == null) {
+                logger.debug("No Content Child found for: '{}'", asset.getPath());
+                return;
+            }
+            ValueMap props = content.getValueMap();
+            writeIfIncluded(json, MIME_TYPE, props.get(JCR_MIME_TYPE, String.class));
+            writeIfIncluded(json, TITLE, props.get(TITLE, String.class));
+            writeIfIncluded(json, DESCRIPTION, props.get(DESCRIPTION, String.class));
+            if(!projection.includes(TAGS)) {
+                return;
+            }
+            Resource tags = content.getChild(TAGS);
+            if(tags != null && tags.hasChildren()) {
+                json.writeArray(TAGS);
+                for(Resource tag: tags.getChildren()) {
+                    Tag item = new Tag(tag);
+                    json.writeObject();
+                    json.writeAttribute(PATH, item.getPath());
+                    json.writeAttribute(NAME, item.getName());
+                    json.writeAttribute("value", item.getValue());
+                    json.writeClose();
+                }
+                json.writeClose();
             }
-            json.writeAttribute(REPLICATION_STATUS, status);
         }
-    }
 
-    private String writeIfFound(JsonResponse json, String propertyName, ValueMap properties) throws IOException {
-        return writeIfFound(json, propertyName, properties, propertyName);
-    }
+        private void writePageContent(JsonResponse json, Resource page) throws IOException {
+            Resource content = page.getChild(JCR_CONTENT);
+            if(content == null) {
+                logger.debug("No Content Child found for: '{}'", page.getPath());
+                return;
+            }
+            ValueMap properties = content.getValueMap();
+            for (String key: properties.keySet()) {
+                if(key.equals(JCR_TITLE)) {
+                    writeIfIncluded(json, TITLE, properties.get(JCR_TITLE, String.class));
+                } else if(key.indexOf(":") < 0) {
+                    writeIfIncluded(json, key, properties.get(key, String.class));
+                }
+            }
+            if(projection.includes(COMPONENT)) {
+                json.writeAttribute(COMPONENT, PerUtil.getComponentNameFromResource(content));
+            }
+            if(projection.includes(TAGS)) {
+                convertNamedChild(json, content, TAGS);
+            }
+            if(projection.includes(METAPROPERTIES)) {
+                convertNamedChild(json, content, METAPROPERTIES);
+            }
+        }
 
-    private String writeIfFound(JsonResponse json, String propertyName, ValueMap properties, String responseName) throws IOException {
-        Object value = properties.get(propertyName);
-        String data;
-        if(value instanceof Calendar) {
-            data = formatter.format(((Calendar) value).getTime());
-        } else {
-            data = properties.get(propertyName, String.class);
+        private void writeIfIncluded(JsonResponse json, String name, String value) throws IOException {
+            if(projection.includes(name)) {
+                json.writeAttribute(name, value);
+            }
         }
-        if(data != null) {
-            String name = responseName;
-            for(String omitPrefix: OMIT_PREFIXES) {
-                if(name.startsWith(omitPrefix)) {
-                    name = name.substring(omitPrefix.length());
-                    break;
+
+        private void convertNamedChild(JsonResponse json, Resource content, String name) throws IOException {
+            Resource res = content.getChild(name);
+            if (res != null) {
+                json.writeArray(name);
+                for(Resource child : res.getChildren()) {
+                    json.writeObject();
+                    json.writeAttribute(NAME, child.getName());
+                    json.writeAttribute(PATH, child.getPath());
+                    ValueMap properties = child.getValueMap();
+                    for (String key: properties.keySet()) {
+                        if(key.indexOf(":") < 0) {
+                            json.writeAttribute(key, properties.get(key, String.class));
+                        }
+                    }
+                    json.writeClose();
                 }
+                json.writeClose();
             }
-            json.writeAttribute(name, data);
         }
-        return data;
+
+        private void writeProperties(Resource resource, JsonResponse json, Projection projection) throws IOException {
+            ValueMap properties = resource.getValueMap();
+            writeIfFound(json, JCR_PRIMARY_TYPE, properties, RESOURCE_TYPE, projection);
+            writeIfFound(json, JCR_CREATED, properties, projection);
+            writeIfFound(json, JCR_CREATED_BY, properties, projection);
+            writeIfFound(json, JCR_LAST_MODIFIED, properties, projection);
+            writeIfFound(json, JCR_LAST_MODIFIED_BY, properties, projection);
+            writeIfFound(json, ALLOWED_OBJECTS, properties, projection);
+
+            if(!projection.includesAny(REPLICATION_FIELDS)) {
+                return;
+            }
+            // For the Replication data we need to obtain the content properties. If not found
+            // then we try with the resource's properties for non jcr:content nodes
+            ValueMap replicationProperties = getProperties(resource);
+            if(replicationProperties == null) { replicationProperties = properties; }
+            String replicationDate = writeIfFound(json, PER_REPLICATED, replicationProperties, projection);
+            writeIfFound(json, PER_REPLICATED_BY, replicationProperties, projection);
+            String replicationLocationRef = writeIfFound(json, PER_REPLICATION_REF, replicationProperties, projection);
+            if(replicationDate != null && !replicationDate.isEmpty() && projection.includes(REPLICATION_STATUS)) {
+                String status = ACTIVATED;
+                if(replicationLocationRef == null || replicationLocationRef.isEmpty()) {
+                    status = DEACTIVATED;
+                }
+                json.writeAttribute(REPLICATION_STATUS, status);
+            }
+        }
+
+        private String writeIfFound(JsonResponse json, String propertyName, ValueMap properties, Projection projection) throws IOException {
+            return writeIfFound(json, propertyName, properties, propertyName, projection);
+        }
+
+        private String writeIfFound(JsonResponse json, String propertyName, ValueMap properties, String responseName, Projection projection) throws IOException {
+            Object value = properties.get(propertyName);
+            String data;
+            if(value instanceof Calendar) {
+                data = formatter.format(((Calendar) value).getTime());
+            } else {
+                data = properties.get(propertyName, String.class);
+            }
+            if(data != null) {
+                String name = responseName;
+                for(String omitPrefix: OMIT_PREFIXES) {
+                    if(name.startsWith(omitPrefix)) {
+                        name = name.substring(omitPrefix.length());
+                        break;
+                    }
+                }
+                if(projection.includes(name)) {
+                    json.writeAttribute(name, data);
+                }
+            }
+            return data;
+        }
     }
 
     class Tag {
@@ -321,4 +560,3 @@ public class NodesServlet extends AbstractBaseServlet {
     }
 
 }
-
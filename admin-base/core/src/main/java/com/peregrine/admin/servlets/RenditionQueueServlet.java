@@ -0,0 +1,104 @@
+package com.peregrine.admin.servlets;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import static com.peregrine.admin.servlets.AdminPaths.RESOURCE_TYPE_RENDITION_QUEUE;
+import static com.peregrine.commons.util.PerConstants.JSON;
+import static com.peregrine.commons.util.PerUtil.EQUALS;
+import static com.peregrine.commons.util.PerUtil.GET;
+import static com.peregrine.commons.util.PerUtil.PER_PREFIX;
+import static com.peregrine.commons.util.PerUtil.PER_VENDOR;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_METHODS;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_SELECTORS;
+import static org.osgi.framework.Constants.SERVICE_DESCRIPTION;
+import static org.osgi.framework.Constants.SERVICE_VENDOR;
+
+import com.peregrine.admin.resource.RenditionPreGenerator;
+import com.peregrine.admin.resource.RenditionPreGenerator.QueuedRendition;
+import com.peregrine.admin.resource.RenditionPreGenerator.Status;
+import com.peregrine.commons.servlets.AbstractBaseServlet;
+import java.io.IOException;
+import javax.servlet.Servlet;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Provides the status of the renditions that are created in the background
+ * after assets were uploaded.
+ *
+ * The API Definition can be found in the Swagger Editor configuration:
+ *    ui.apps/src/main/content/jcr_root/perapi/definitions/admin.yaml
+ */
+@Component(
+    service = Servlet.class,
+    property = {
+        SERVICE_DESCRIPTION + EQUALS + PER_PREFIX + "Rendition Queue Servlet",
+        SERVICE_VENDOR + EQUALS + PER_VENDOR,
+        SLING_SERVLET_METHODS + EQUALS + GET,
+        SLING_SERVLET_RESOURCE_TYPES + EQUALS + RESOURCE_TYPE_RENDITION_QUEUE,
+        SLING_SERVLET_SELECTORS + EQUALS + JSON
+    }
+)
+@SuppressWarnings("serial")
+public class RenditionQueueServlet extends AbstractBaseServlet {
+
+    private static final String ENABLED = "enabled";
+    private static final String MAX_QUEUE_SIZE = "maxQueueSize";
+    private static final String ACTIVE = "active";
+    private static final String CREATED = "created";
+    private static final String FAILED = "failed";
+    private static final String REJECTED = "rejected";
+    private static final String QUEUED = "queued";
+    private static final String ASSET_PATH = "assetPath";
+    private static final String RENDITION_NAME = "renditionName";
+    private static final String MANDATORY = "mandatory";
+
+    @Reference
+    RenditionPreGenerator renditionPreGenerator;
+
+    @Override
+    protected Response handleRequest(Request request) throws IOException {
+        Status status = renditionPreGenerator.getStatus();
+        JsonResponse answer = new JsonResponse()
+            .writeAttribute(ENABLED, status.isEnabled())
+            .writeAttribute(MAX_QUEUE_SIZE, status.getMaxQueueSize())
+            .writeAttribute(ACTIVE, status.getActiveCount())
+            .writeAttribute(CREATED, status.getCreatedCount())
+            .writeAttribute(FAILED, status.getFailedCount())
+            .writeAttribute(REJECTED, status.getRejectedCount())
+            .writeArray(QUEUED);
+        for(QueuedRendition rendition : status.getQueued()) {
+            answer.writeObject();
+            answer.writeAttribute(ASSET_PATH, rendition.getAssetPath());
+            answer.writeAttribute(RENDITION_NAME, rendition.getRenditionName());
+            answer.writeAttribute(MANDATORY, rendition.isMandatory());
+            answer.writeClose();
+        }
+        answer.writeClose();
+        return answer;
+    }
+}
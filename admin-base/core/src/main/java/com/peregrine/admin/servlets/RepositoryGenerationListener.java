@@ -0,0 +1,86 @@
+package com.peregrine.admin.servlets;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import static com.peregrine.commons.util.PerConstants.APPS_ROOT;
+import static com.peregrine.commons.util.PerConstants.CONF_ROOT;
+import static com.peregrine.commons.util.PerConstants.CONTENT_ROOT;
+import static com.peregrine.commons.util.PerUtil.EQUALS;
+import static com.peregrine.commons.util.PerUtil.PER_PREFIX;
+import static com.peregrine.commons.util.PerUtil.PER_VENDOR;
+import static org.osgi.framework.Constants.SERVICE_DESCRIPTION;
+import static org.osgi.framework.Constants.SERVICE_VENDOR;
+
+import com.peregrine.commons.servlets.RepositoryGeneration;
+import java.util.List;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+
+/**
+ * Increases the Repository Generation of the Admin Servlets with every change
+ * of the content they list so that their Entity Tags change as well.
+ * The Admin Servlets increase the generation themselves after changing the content
+ * so this listener only needs to cover the changes made elsewhere which are delivered
+ * with a delay. Without this listener the Admin Servlets do not answer conditional requests.
+ */
+@Component(
+    service = ResourceChangeListener.class,
+    immediate = true,
+    property = {
+        SERVICE_DESCRIPTION + EQUALS + PER_PREFIX + "Repository Generation Listener",
+        SERVICE_VENDOR + EQUALS + PER_VENDOR,
+        ResourceChangeListener.PATHS + EQUALS + CONTENT_ROOT,
+        ResourceChangeListener.PATHS + EQUALS + APPS_ROOT,
+        ResourceChangeListener.PATHS + EQUALS + CONF_ROOT,
+        ResourceChangeListener.CHANGES + EQUALS + "ADDED",
+        ResourceChangeListener.CHANGES + EQUALS + "CHANGED",
+        ResourceChangeListener.CHANGES + EQUALS + "REMOVED"
+    }
+)
+public class RepositoryGenerationListener
+    implements ResourceChangeListener, ExternalResourceChangeListener
+{
+    @Activate
+    @SuppressWarnings("unused")
+    void activate() {
+        RepositoryGeneration.startTracking();
+    }
+
+    @Deactivate
+    @SuppressWarnings("unused")
+    void deactivate() {
+        RepositoryGeneration.stopTracking();
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        RepositoryGeneration.increment();
+    }
+}
@@ -39,6 +39,7 @@ import static org.osgi.framework.Constants.SERVICE_VENDOR;
 
 import com.peregrine.admin.resource.AdminResourceHandler;
 import com.peregrine.admin.resource.AdminResourceHandler.ManagementException;
+import com.peregrine.admin.resource.RenditionPreGenerator;
 import com.peregrine.commons.servlets.AbstractBaseServlet;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -94,6 +95,9 @@ public class UploadFilesServlet extends AbstractBaseServlet {
     @Reference
     AdminResourceHandler resourceManagement;
 
+    @Reference
+    RenditionPreGenerator renditionPreGenerator;
+
     @Override
     protected Response handleRequest(Request request) throws IOException {
         String characterEncoding = request.getRequest().getCharacterEncoding();
@@ -119,6 +123,9 @@ public class UploadFilesServlet extends AbstractBaseServlet {
             }
             resource.getResourceResolver().commit();
             logger.debug("Upload Done successfully and saved");
+            for(Resource asset : assets) {
+                renditionPreGenerator.enqueue(asset.getPath());
+            }
             JsonResponse answer = new JsonResponse()
                 .writeAttribute(RESOURCE_NAME, resource.getName())
                 .writeAttribute(RESOURCE_PATH, resource.getPath())
@@ -0,0 +1,61 @@
+package com.peregrine.admin.resource;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChildOrderPlanTest {
+
+    @Test
+    public void keepsAnOrderedList() {
+        assertMoves(0, list("a", "b", "c"), list("a", "b", "c"));
+        assertMoves(0, list(), list());
+    }
+
+    @Test
+    public void movesADraggedItemOnly() {
+        assertMoves(1, list("a", "b", "c", "d"), list("b", "c", "d", "a"));
+        assertMoves(1, list("a", "b", "c", "d"), list("d", "a", "b", "c"));
+        assertMoves(1, list("a", "b", "c", "d"), list("a", "c", "b", "d"));
+    }
+
+    @Test
+    public void movesAllButOneItemOfAReversedList() {
+        assertMoves(4, list("a", "b", "c", "d", "e"), list("e", "d", "c", "b", "a"));
+    }
+
+    @Test
+    public void movesItemsOutsideOfTheLongestOrderedRun() {
+        // a, b, d stay in place
+        assertMoves(2, list("a", "b", "c", "d", "e"), list("c", "a", "e", "b", "d"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDifferentChildren() {
+        ChildOrderPlan.create(list("a", "b"), list("a", "c"));
+    }
+
+    private static void assertMoves(int expectedMoves, List<String> current, List<String> desired) {
+        List<ChildOrderPlan.Move> moves = ChildOrderPlan.create(current, desired);
+        assertEquals("Unexpected number of moves: " + moves, expectedMoves, moves.size());
+        // Apply the moves like JCR orderBefore()
+        List<String> children = new ArrayList<>(current);
+        for (ChildOrderPlan.Move move : moves) {
+            children.remove(move.getName());
+            if (move.getBefore() == null) {
+                children.add(move.getName());
+            } else {
+                children.add(children.indexOf(move.getBefore()), move.getName());
+            }
+        }
+        assertEquals("Moves: " + moves + " did not create the desired order", desired, children);
+    }
+
+    private static List<String> list(String... names) {
+        return Arrays.asList(names);
+    }
+}
@@ -0,0 +1,116 @@
+package com.peregrine.admin.resource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the ordering of an updated Object List by the former per item approach (look up
+ * the index of each child and move it after its predecessor if it is out of place) with
+ * the {@link ChildOrderPlan} that only moves the children outside of the longest ordered run.
+ *
+ * The children are kept in a mock parent that, like a JCR node, has to iterate its children
+ * to find one and shifts them on every reorder. The number of moves is what matters the most
+ * against a repository as every move is a change in the session.
+ */
+@State(Scope.Benchmark)
+public class ListUpdateBenchmark {
+
+    @Param({ "100", "500" })
+    private int items;
+
+    /** Change of the list: drag the first item to the end or shuffle the whole list **/
+    @Param({ "dragToEnd", "shuffle" })
+    private String change;
+
+    private List<String> current;
+    private List<String> desired;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        current = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            current.add("item-" + i);
+        }
+        desired = new ArrayList<>(current);
+        if ("shuffle".equals(change)) {
+            Collections.shuffle(desired, new Random(42));
+        } else {
+            desired.add(desired.remove(0));
+        }
+    }
+
+    @Benchmark
+    public int perItem() {
+        MockParent parent = new MockParent(current);
+        String previous = null;
+        for (int position = 0; position < desired.size(); position++) {
+            String name = desired.get(position);
+            if (parent.indexOf(name) != position) {
+                parent.orderAfter(name, previous);
+            }
+            previous = name;
+        }
+        return parent.moves;
+    }
+
+    @Benchmark
+    public int plan() {
+        MockParent parent = new MockParent(current);
+        for (ChildOrderPlan.Move move : ChildOrderPlan.create(parent.getChildNames(), desired)) {
+            parent.orderBefore(move.getName(), move.getBefore());
+        }
+        return parent.moves;
+    }
+
+    /** Ordered children that are only accessible by iteration like the children of a JCR node **/
+    private static final class MockParent {
+        private final List<String> children;
+        private int moves = 0;
+
+        private MockParent(List<String> children) {
+            this.children = new ArrayList<>(children);
+        }
+
+        private List<String> getChildNames() {
+            return new ArrayList<>(children);
+        }
+
+        private int indexOf(String name) {
+            int index = 0;
+            for (String child : children) {
+                if (child.equals(name)) {
+                    return index;
+                }
+                index++;
+            }
+            return -1;
+        }
+
+        /** Moves the child after the given sibling or to the front if the sibling is null **/
+        private void orderAfter(String name, String sibling) {
+            children.remove(indexOf(name));
+            children.add(sibling == null ? 0 : indexOf(sibling) + 1, name);
+            moves++;
+        }
+
+        /** Moves the child before the given sibling or to the end if the sibling is null **/
+        private void orderBefore(String name, String sibling) {
+            children.remove(indexOf(name));
+            if (sibling == null) {
+                children.add(name);
+            } else {
+                children.add(indexOf(sibling), name);
+            }
+            moves++;
+        }
+    }
+}
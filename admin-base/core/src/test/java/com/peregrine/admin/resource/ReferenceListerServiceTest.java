@@ -0,0 +1,110 @@
+package com.peregrine.admin.resource;
+
+import com.peregrine.admin.resource.ReferencedByIndex.IndexedReference;
+import com.peregrine.replication.Reference;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReferenceListerServiceTest {
+
+    private static final String TARGET = "/content/pages/a";
+
+    private final ReferenceListerService service = new ReferenceListerService();
+    private final ReferencedByIndex index = mock(ReferencedByIndex.class);
+    private final ResourceResolver resourceResolver = mock(ResourceResolver.class);
+    private final Map<String, Resource> resources = new HashMap<>();
+    private final Map<String, List<Resource>> children = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        when(resourceResolver.getResource(anyString())).thenAnswer(invocation -> resources.get(invocation.getArguments()[0]));
+        ReferenceListerService.Configuration configuration = mock(ReferenceListerService.Configuration.class);
+        when(configuration.referencePrefix()).thenReturn(new String[] { "/content/" });
+        when(configuration.referencedByRoot()).thenReturn(new String[] { "/content" });
+        service.activate(configuration);
+        service.referencedByIndex = index;
+
+        addResource("/content");
+        addResource("/content/pages");
+        addResource(TARGET);
+        addResource("/content/pages/b");
+        addResource("/content/pages/b/jcr:content", "link", TARGET);
+        // Saved right before the lookup so the index has not observed it yet
+        addResource("/content/pages/c");
+        addResource("/content/pages/c/jcr:content", "link", TARGET);
+
+        when(index.isIndexed("/content")).thenReturn(true);
+        when(index.isUpToDate()).thenReturn(true);
+        when(index.getReferencedBy(TARGET)).thenReturn(Collections.singletonList(
+            new IndexedReference("/content/pages/b/jcr:content", "link", TARGET)
+        ));
+    }
+
+    private Resource addResource(String path, String... properties) {
+        Map<String, Object> map = new HashMap<>();
+        for(int i = 0; i < properties.length; i += 2) {
+            map.put(properties[i], properties[i + 1]);
+        }
+        Resource resource = mock(Resource.class, path);
+        when(resource.getPath()).thenReturn(path);
+        when(resource.getName()).thenReturn(path.substring(path.lastIndexOf('/') + 1));
+        when(resource.getValueMap()).thenReturn(new ValueMapDecorator(map));
+        when(resource.getResourceResolver()).thenReturn(resourceResolver);
+        List<Resource> list = new ArrayList<>();
+        when(resource.getChildren()).thenReturn(list);
+        children.put(path, list);
+        resources.put(path, resource);
+        String parentPath = path.substring(0, path.lastIndexOf('/'));
+        when(resource.getParent()).thenAnswer(invocation -> resources.get(parentPath));
+        if(children.containsKey(parentPath)) {
+            children.get(parentPath).add(resource);
+        }
+        return resource;
+    }
+
+    private List<String> getReferencedByPaths() {
+        List<String> answer = new ArrayList<>();
+        for(Reference reference: service.getReferencedByList(resources.get(TARGET))) {
+            answer.add(reference.getResource().getPath() + "@" + reference.getPropertyName());
+        }
+        return answer;
+    }
+
+    @Test
+    public void getReferencedByList_usesTheIndex() {
+        assertEquals(Collections.singletonList("/content/pages/b@link"), getReferencedByPaths());
+    }
+
+    @Test
+    public void getReferencedByList_traversesWithPendingChanges() {
+        when(resourceResolver.hasChanges()).thenReturn(true);
+        assertEquals(Arrays.asList("/content/pages/b@link", "/content/pages/c@link"), getReferencedByPaths());
+    }
+
+    @Test
+    public void getReferencedByList_traversesWhileTheIndexIsBehind() {
+        when(index.isUpToDate()).thenReturn(false);
+        assertEquals(Arrays.asList("/content/pages/b@link", "/content/pages/c@link"), getReferencedByPaths());
+    }
+
+    @Test
+    public void getReferencedByList_traversesWithoutTheIndex() {
+        service.referencedByIndex = null;
+        assertEquals(Arrays.asList("/content/pages/b@link", "/content/pages/c@link"), getReferencedByPaths());
+    }
+}
@@ -0,0 +1,128 @@
+package com.peregrine.admin.resource;
+
+import com.peregrine.admin.resource.ReferencedByIndex.IndexedReference;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReferencedByIndexServiceTest {
+
+    private static final String ASSET = "/content/assets/image.png";
+
+    private final ReferencedByIndexService service = new ReferencedByIndexService();
+    private final ResourceResolver resourceResolver = mock(ResourceResolver.class);
+    private final Map<String, Resource> resources = new HashMap<>();
+    private final Map<String, List<Resource>> children = new HashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        ResourceResolverFactory resourceResolverFactory = mock(ResourceResolverFactory.class);
+        when(resourceResolverFactory.getServiceResourceResolver(anyMapOf(String.class, Object.class))).thenReturn(resourceResolver);
+        when(resourceResolver.getResource(anyString())).thenAnswer(invocation -> resources.get(invocation.getArguments()[0]));
+        service.resourceResolverFactory = resourceResolverFactory;
+        ReferencedByIndexService.Configuration configuration = mock(ReferencedByIndexService.Configuration.class);
+        when(configuration.resource_paths()).thenReturn(new String[] { "/content" });
+        service.modified(configuration);
+
+        addResource("/content");
+        addResource("/content/pages");
+        addResource("/content/pages/a", "jcr:title", "A");
+        addResource("/content/pages/a/jcr:content", "image", ASSET, "title", "A");
+        addResource("/content/pages/b");
+        addResource("/content/pages/b/jcr:content", "link", "/content/pages/a");
+        addResource("/content/pages/b/jcr:content/teaser", "image", ASSET);
+    }
+
+    private Resource addResource(String path, String... properties) {
+        Map<String, Object> map = new HashMap<>();
+        for(int i = 0; i < properties.length; i += 2) {
+            map.put(properties[i], properties[i + 1]);
+        }
+        Resource resource = mock(Resource.class, path);
+        when(resource.getPath()).thenReturn(path);
+        when(resource.getValueMap()).thenReturn(new ValueMapDecorator(map));
+        List<Resource> list = new ArrayList<>();
+        when(resource.getChildren()).thenReturn(list);
+        children.put(path, list);
+        resources.put(path, resource);
+        String parentPath = path.substring(0, path.lastIndexOf('/'));
+        if(children.containsKey(parentPath)) {
+            children.get(parentPath).add(resource);
+        }
+        return resource;
+    }
+
+    private void removeResource(String path) {
+        resources.keySet().removeIf(key -> key.equals(path) || key.startsWith(path + "/"));
+        children.get(path.substring(0, path.lastIndexOf('/'))).removeIf(resource -> resource.getPath().equals(path));
+    }
+
+    private List<String> getReferencingPaths(String path) {
+        List<String> answer = new ArrayList<>();
+        for(IndexedReference reference: service.getReferencedBy(path)) {
+            answer.add(reference.getResourcePath() + "@" + reference.getPropertyName());
+        }
+        return answer;
+    }
+
+    @Test
+    public void build() {
+        assertFalse(service.isIndexed("/content"));
+        assertFalse(service.isUpToDate());
+        service.build();
+        assertTrue(service.isIndexed("/content"));
+        assertTrue(service.isUpToDate());
+        assertTrue(service.isIndexed("/content/pages"));
+        assertFalse(service.isIndexed("/contentother"));
+        assertEquals(
+            Arrays.asList("/content/pages/a/jcr:content@image", "/content/pages/b/jcr:content/teaser@image"),
+            getReferencingPaths(ASSET)
+        );
+        assertEquals(Collections.singletonList("/content/pages/b/jcr:content@link"), getReferencingPaths("/content/pages/a"));
+        assertEquals(3, service.getIndexedResourcesCount());
+        assertEquals(2, service.getReferencedPathsCount());
+    }
+
+    @Test
+    public void applyChange_changed() {
+        service.build();
+        addResource("/content/pages/a/jcr:content", "image", "/content/assets/other.png");
+        service.applyChange(resourceResolver, "/content/pages/a/jcr:content", ChangeType.CHANGED);
+        assertEquals(Collections.singletonList("/content/pages/b/jcr:content/teaser@image"), getReferencingPaths(ASSET));
+        assertEquals(Collections.singletonList("/content/pages/a/jcr:content@image"), getReferencingPaths("/content/assets/other.png"));
+    }
+
+    @Test
+    public void applyChange_removedAndAdded() {
+        service.build();
+        removeResource("/content/pages/b");
+        service.applyChange(resourceResolver, "/content/pages/b", ChangeType.REMOVED);
+        assertEquals(Collections.singletonList("/content/pages/a/jcr:content@image"), getReferencingPaths(ASSET));
+        assertTrue(getReferencingPaths("/content/pages/a").isEmpty());
+        assertEquals(1, service.getReferencedPathsCount());
+
+        addResource("/content/pages/c");
+        addResource("/content/pages/c/jcr:content", "link", "/content/pages/a");
+        service.applyChange(resourceResolver, "/content/pages/c", ChangeType.ADDED);
+        assertEquals(Collections.singletonList("/content/pages/c/jcr:content@link"), getReferencingPaths("/content/pages/a"));
+    }
+}
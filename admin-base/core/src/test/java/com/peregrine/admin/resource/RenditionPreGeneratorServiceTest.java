@@ -0,0 +1,120 @@
+package com.peregrine.admin.resource;
+
+import com.peregrine.admin.resource.RenditionPreGenerator.QueuedRendition;
+import com.peregrine.admin.resource.RenditionPreGenerator.Status;
+import com.peregrine.replication.Replication;
+import com.peregrine.transform.ImageTransformationConfiguration;
+import com.peregrine.transform.ImageTransformationConfigurationProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.peregrine.admin.resource.RenditionPreGeneratorService.MANDATORY_RENDITIONS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RenditionPreGeneratorServiceTest {
+
+    private static final String MANDATORY = "mandatory.png";
+    private static final String OPTIONAL = "optional.png";
+
+    private final List<String> created = new CopyOnWriteArrayList<>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final RenditionPreGeneratorService service = new RenditionPreGeneratorService() {
+        @Override
+        void create(String assetPath, String renditionName) {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            created.add(assetPath + "/" + renditionName);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        ImageTransformationConfigurationProvider provider = mock(ImageTransformationConfigurationProvider.class);
+        when(provider.getImageTransformationConfigurations(anyString(), anyString()))
+            .thenReturn(Collections.singletonList(mock(ImageTransformationConfiguration.class)));
+        service.imageTransformationConfigurationProvider = provider;
+        service.bindReplication(mock(Replication.class), Collections.singletonMap(MANDATORY_RENDITIONS, new String[] { MANDATORY }));
+        RenditionPreGeneratorService.Configuration configuration = mock(RenditionPreGeneratorService.Configuration.class);
+        when(configuration.enabled()).thenReturn(true);
+        when(configuration.renditions()).thenReturn(new String[] { OPTIONAL });
+        when(configuration.workers()).thenReturn(1);
+        when(configuration.maxQueueSize()).thenReturn(3);
+        service.activate(configuration);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        service.deactivate();
+    }
+
+    private static List<String> toKeys(List<QueuedRendition> queued) {
+        return queued.stream()
+            .map(rendition -> rendition.getAssetPath() + "/" + rendition.getRenditionName())
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    public void mandatoryRenditionsComeFirstAndQueueIsBounded() throws Exception {
+        assertEquals(2, service.enqueue("/content/assets/a.png"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(2, service.enqueue("/content/assets/b.png"));
+        assertEquals(0, service.enqueue("/content/assets/b.png"));
+        assertEquals(0, service.enqueue("/content/assets/c.png"));
+
+        Status status = service.getStatus();
+        assertEquals(1, status.getActiveCount());
+        assertEquals(2, status.getRejectedCount());
+        assertEquals(Arrays.asList(
+            "/content/assets/b.png/" + MANDATORY,
+            "/content/assets/a.png/" + OPTIONAL,
+            "/content/assets/b.png/" + OPTIONAL
+        ), toKeys(status.getQueued()));
+        assertTrue(status.getQueued().get(0).isMandatory());
+        assertFalse(status.getQueued().get(1).isMandatory());
+
+        release.countDown();
+        long end = System.currentTimeMillis() + 10000;
+        while(created.size() < 4 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(Arrays.asList(
+            "/content/assets/a.png/" + MANDATORY,
+            "/content/assets/b.png/" + MANDATORY,
+            "/content/assets/a.png/" + OPTIONAL,
+            "/content/assets/b.png/" + OPTIONAL
+        ), created);
+    }
+
+    @Test
+    public void disabledQueuesNothing() {
+        RenditionPreGeneratorService.Configuration configuration = mock(RenditionPreGeneratorService.Configuration.class);
+        when(configuration.enabled()).thenReturn(false);
+        when(configuration.renditions()).thenReturn(new String[] { OPTIONAL });
+        when(configuration.workers()).thenReturn(1);
+        when(configuration.maxQueueSize()).thenReturn(3);
+        service.modified(configuration);
+        assertEquals(0, service.enqueue("/content/assets/a.png"));
+        assertTrue(service.getStatus().getQueued().isEmpty());
+    }
+}
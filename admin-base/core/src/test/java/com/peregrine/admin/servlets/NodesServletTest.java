@@ -0,0 +1,265 @@
+package com.peregrine.admin.servlets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.peregrine.admin.servlets.NodesServlet.CHILDREN;
+import static com.peregrine.admin.servlets.NodesServlet.CURSOR;
+import static com.peregrine.admin.servlets.NodesServlet.FIELDS;
+import static com.peregrine.admin.servlets.NodesServlet.INVALID_CURSOR;
+import static com.peregrine.admin.servlets.NodesServlet.LIMIT;
+import static com.peregrine.admin.servlets.NodesServlet.NEXT;
+import static com.peregrine.commons.util.PerConstants.JCR_CONTENT;
+import static com.peregrine.commons.util.PerConstants.PATH;
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NodesServletTest {
+
+    private static final String FOLDER = "sling:OrderedFolder";
+    private static final String PAGE = "per:Page";
+    private static final String PAGES = "/content/example/pages";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final NodesServlet servlet = new NodesServlet();
+    private final ResourceResolver resourceResolver = mock(ResourceResolver.class);
+    private final Map<String, Resource> resources = new HashMap<>();
+    private final Map<String, List<Resource>> children = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        when(resourceResolver.getResource(anyString())).thenAnswer(invocation -> resources.get(invocation.getArguments()[0]));
+        addResource("/content", FOLDER);
+        addResource("/content/example", FOLDER);
+        addResource("/content/example/f1", FOLDER);
+        addResource("/content/example/f2", FOLDER);
+        addResource("/content/example/f3", FOLDER);
+        addResource(PAGES, FOLDER);
+        for(int i = 1; i <= 5; i++) {
+            addResource(PAGES + "/p" + i, PAGE);
+            Resource content = addResource(PAGES + "/p" + i + "/jcr:content", "per:PageContent", "jcr:title", "Page " + i, "template", "/apps/example/templates/page");
+            when(content.getResourceType()).thenReturn("example/components/page");
+        }
+        addResource(PAGES + "/p3/sub", PAGE);
+    }
+
+    private Resource addResource(String path, String primaryType, String... properties) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("jcr:primaryType", primaryType);
+        for(int i = 0; i < properties.length; i += 2) {
+            map.put(properties[i], properties[i + 1]);
+        }
+        Resource resource = mock(Resource.class, path);
+        when(resource.getPath()).thenReturn(path);
+        when(resource.getName()).thenReturn(path.substring(path.lastIndexOf('/') + 1));
+        when(resource.getValueMap()).thenReturn(new ValueMapDecorator(map));
+        List<Resource> list = new ArrayList<>();
+        when(resource.getChildren()).thenReturn(list);
+        when(resource.listChildren()).thenAnswer(invocation -> new ArrayList<>(list).iterator());
+        when(resource.hasChildren()).thenAnswer(invocation -> !list.isEmpty());
+        when(resource.getChild(anyString())).thenAnswer(invocation -> resources.get(path + '/' + invocation.getArguments()[0]));
+        children.put(path, list);
+        resources.put(path, resource);
+        String parentPath = path.substring(0, path.lastIndexOf('/'));
+        if(children.containsKey(parentPath)) {
+            children.get(parentPath).add(resource);
+        }
+        return resource;
+    }
+
+    private void removeResource(String path) {
+        resources.keySet().removeIf(key -> key.equals(path) || key.startsWith(path + "/"));
+        children.get(path.substring(0, path.lastIndexOf('/'))).removeIf(resource -> resource.getPath().equals(path));
+    }
+
+    private JsonNode list(String... parameters) throws Exception {
+        Exchange exchange = get(parameters);
+        verify(exchange.response, never()).setStatus(SC_BAD_REQUEST);
+        return OBJECT_MAPPER.readTree(exchange.bytes.toByteArray());
+    }
+
+    private Exchange get(String... parameters) throws Exception {
+        Map<String, List<String>> values = new LinkedHashMap<>();
+        for(int i = 0; i < parameters.length; i += 2) {
+            values.computeIfAbsent(parameters[i], name -> new ArrayList<>()).add(parameters[i + 1]);
+        }
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getRequestPathInfo()).thenReturn(mock(RequestPathInfo.class));
+        when(request.getResourceResolver()).thenReturn(resourceResolver);
+        when(request.getParameterNames()).thenAnswer(invocation -> Collections.enumeration(values.keySet()));
+        when(request.getParameter(anyString())).thenAnswer(invocation -> {
+            List<String> list = values.get(invocation.getArguments()[0]);
+            return list == null ? null : list.get(0);
+        });
+        when(request.getParameterValues(anyString())).thenAnswer(invocation -> {
+            List<String> list = values.get(invocation.getArguments()[0]);
+            return list == null ? null : list.toArray(new String[0]);
+        });
+        Exchange answer = new Exchange();
+        servlet.service(request, answer.response);
+        return answer;
+    }
+
+    /** @return Level of the listing with the given path **/
+    private static JsonNode level(JsonNode node, String path) {
+        if(path.equals(node.get(PATH).asText())) {
+            return node;
+        }
+        for(JsonNode child : node.path(CHILDREN)) {
+            if(child.has(CHILDREN) && path.startsWith(child.get(PATH).asText())) {
+                return level(child, path);
+            }
+        }
+        throw new AssertionError("Level: " + path + " not found in: " + node);
+    }
+
+    private static List<String> names(JsonNode level) {
+        List<String> answer = new ArrayList<>();
+        for(JsonNode child : level.get(CHILDREN)) {
+            answer.add(child.get("name").asText());
+        }
+        return answer;
+    }
+
+    private static JsonNode json(String text) throws IOException {
+        return OBJECT_MAPPER.readTree(text.replace('\'', '"'));
+    }
+
+    private static String page(int index, boolean hasChildren) {
+        return "{'name':'p" + index + "','path':'" + PAGES + "/p" + index + "','hasChildren':" + hasChildren
+            + ",'resourceType':'per:Page','title':'Page " + index + "','template':'/apps/example/templates/page'"
+            + ",'component':'example-components-page'}";
+    }
+
+    private static String folder(String name) {
+        return "{'name':'" + name + "','path':'/content/example/" + name + "','hasChildren':false,'resourceType':'" + FOLDER + "'}";
+    }
+
+    @Test
+    public void list_keepsTheStructureWithoutParameters() throws Exception {
+        JsonNode expected = json("{'name':'content','path':'/content','hasChildren':true,'resourceType':'" + FOLDER + "','children':["
+            + "{'name':'example','path':'/content/example','hasChildren':true,'resourceType':'" + FOLDER + "','children':["
+            + folder("f1") + ',' + folder("f2") + ',' + folder("f3") + ','
+            + "{'name':'pages','path':'" + PAGES + "','hasChildren':true,'resourceType':'" + FOLDER + "','children':["
+            + page(1, false) + ',' + page(2, false) + ',' + page(3, true) + ',' + page(4, false) + ',' + page(5, false)
+            + "]}]}]}");
+        assertEquals(expected, list(PATH, PAGES));
+    }
+
+    @Test
+    public void list_pagesTheChildrenWithACursor() throws Exception {
+        JsonNode first = level(list(PATH, PAGES, LIMIT, "2"), PAGES);
+        assertEquals(Arrays.asList("p1", "p2"), names(first));
+        assertNotNull(first.get(NEXT));
+
+        JsonNode second = level(list(PATH, PAGES, LIMIT, "2", CURSOR, first.get(NEXT).asText()), PAGES);
+        assertEquals(Arrays.asList("p3", "p4"), names(second));
+        assertNotNull(second.get(NEXT));
+
+        JsonNode last = level(list(PATH, PAGES, LIMIT, "2", CURSOR, second.get(NEXT).asText()), PAGES);
+        assertEquals(Arrays.asList("p5"), names(last));
+        assertNull(last.get(NEXT));
+    }
+
+    @Test
+    public void list_continuesWithTheNextChildIfTheLastListedChildWasRemoved() throws Exception {
+        JsonNode first = level(list(PATH, PAGES, LIMIT, "2"), PAGES);
+        removeResource(PAGES + "/p2");
+        JsonNode second = level(list(PATH, PAGES, LIMIT, "2", CURSOR, first.get(NEXT).asText()), PAGES);
+        assertEquals(Arrays.asList("p3", "p4"), names(second));
+    }
+
+    @Test
+    public void list_continuesEachLevelWithItsOwnCursor() throws Exception {
+        JsonNode first = list(PATH, PAGES, LIMIT, "2");
+        JsonNode example = level(first, "/content/example");
+        // The child on the path is always listed
+        assertEquals(Arrays.asList("f1", "f2", "pages"), names(example));
+        JsonNode pages = level(first, PAGES);
+
+        JsonNode second = list(PATH, PAGES, LIMIT, "2", CURSOR, example.get(NEXT).asText(), CURSOR, pages.get(NEXT).asText());
+        assertEquals(Arrays.asList("f3", "pages"), names(level(second, "/content/example")));
+        assertNull(level(second, "/content/example").get(NEXT));
+        assertEquals(Arrays.asList("p3", "p4"), names(level(second, PAGES)));
+    }
+
+    @Test
+    public void list_projectionDoesNotReadThePageContent() throws Exception {
+        JsonNode pages = level(list(PATH, PAGES, FIELDS, "lastModified"), PAGES);
+        assertEquals(5, pages.get(CHILDREN).size());
+        for(JsonNode page : pages.get(CHILDREN)) {
+            List<String> fields = new ArrayList<>();
+            page.fieldNames().forEachRemaining(fields::add);
+            assertEquals(Arrays.asList("name", "path"), fields);
+        }
+        for(int i = 1; i <= 5; i++) {
+            verify(resources.get(PAGES + "/p" + i), never()).getChild(JCR_CONTENT);
+        }
+    }
+
+    @Test
+    public void list_invalidCursorIsABadRequest() throws Exception {
+        Exchange exchange = get(PATH, PAGES, CURSOR, "not a cursor");
+        verify(exchange.response).setStatus(SC_BAD_REQUEST);
+        assertTrue(exchange.text.toString().contains(INVALID_CURSOR));
+        assertFalse("Listing must not be started", exchange.bytes.size() > 0);
+    }
+
+    /** Mocked Response that records the content written as text or bytes **/
+    private static final class Exchange {
+        private final SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        private final StringWriter text = new StringWriter();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private Exchange() throws IOException {
+            when(response.getWriter()).thenReturn(new PrintWriter(text, true));
+            when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    bytes.write(b);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+            });
+        }
+    }
+}
@@ -282,6 +282,12 @@ public class FormAuthenticationHandler extends DefaultAuthenticationFeedbackHand
 //    private TokenStore tokenStore;
 //
 //    /**
+//     * The registration of the statistics of the validated authentication
+//     * data cached by the {@link #tokenStore}.
+//     */
+//    private ServiceRegistration tokenCacheRegistration;
+//
+//    /**
 //     * The {@link FormLoginModulePlugin} service registration created when
 //     * this authentication handler is registered. If the login module plugin
 //     * cannot be created this field is set to <code>null</code>.
@@ -471,6 +477,7 @@ public class FormAuthenticationHandler extends DefaultAuthenticationFeedbackHand
 //    @Override
 //    public void dropCredentials(HttpServletRequest request,
 //            HttpServletResponse response) {
+//        tokenStore.invalidate(authStorage.extractAuthenticationInfo(request));
 //        authStorage.clear(request, response);
 //    }
 //
@@ -794,6 +801,8 @@ public class FormAuthenticationHandler extends DefaultAuthenticationFeedbackHand
 //            properties.get(PAR_TOKEN_FAST_SEED), DEFAULT_TOKEN_FAST_SEED);
 //        log.info("Storing tokens in {}", tokenFile.getAbsolutePath());
 //        this.tokenStore = new TokenStore(tokenFile, sessionTimeout, fastSeed);
+//        this.tokenCacheRegistration = tokenStore.getValidatedTokenCache().register(
+//            componentContext.getBundleContext());
 //
 //        this.loginModule = null;
 //        if (!jaasHelper.enabled()) {
@@ -821,6 +830,16 @@ public class FormAuthenticationHandler extends DefaultAuthenticationFeedbackHand
 //        if (loginModule != null) {
 //            loginModule.unregister();
 //            loginModule = null;
+//        }
+//
+//        if (tokenCacheRegistration != null) {
+//            tokenCacheRegistration.unregister();
+//            tokenCacheRegistration = null;
+//        }
+//
+//        if (tokenStore != null) {
+//            tokenStore.close();
+//            tokenStore = null;
 //        }
     }
 
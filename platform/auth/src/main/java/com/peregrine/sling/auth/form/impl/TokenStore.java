@@ -28,6 +28,13 @@ import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
@@ -40,6 +47,18 @@ import org.slf4j.LoggerFactory;
  * The <code>TokenStore</code> class provides the secure token hash
  * implementation used by the {@link FormAuthenticationHandler} to generate,
  * validate and persist secure tokens.
+ * <p>
+ * The token ring is replaced as a whole when a new token is created so that
+ * tokens are validated without locking. Every thread keeps initialized
+ * <code>Mac</code> instances for the tokens it used and the token file is
+ * written by a background thread. Validated authentication data is cached
+ * for a short time by a {@link ValidatedTokenCache} which is cleared when a
+ * new token is created.
+ * <p>
+ * <b>NOTE</b> The {@link FormAuthenticationHandler} does not create a
+ * <code>TokenStore</code> at the moment as its cookie based authentication is
+ * commented out. Until it is enabled again the token store is only exercised by
+ * its unit tests.
  */
 class TokenStore {
 
@@ -65,9 +84,12 @@ class TokenStore {
      */
     private static final String UTF_8 = "UTF-8";
 
-    /** The number of secret keys in the token buffer currentTokens */
+    /** The number of secret keys in the token ring */
     private static final int TOKEN_BUFFER_SIZE = 5;
 
+    /** Time in ms {@link #close()} waits for a pending save of the token file */
+    private static final long SAVE_TIMEOUT = 5000;
+
     public final Logger log = LoggerFactory.getLogger(TokenStore.class);
 
     /**
@@ -76,19 +98,45 @@ class TokenStore {
     private final long ttl;
 
     /**
-     * The time when a new token should be created.
+     * The current ring of tokens used to encrypt. It is never modified but
+     * replaced when a new token is created.
      */
-    private long nextUpdate = System.currentTimeMillis();
+    private final AtomicReference<TokenRing> tokenRing = new AtomicReference<TokenRing>();
 
     /**
-     * The location of the current token.
+     * Initialized HMAC functions of the current thread by token number.
      */
-    private volatile int currentToken = 0;
+    private final ThreadLocal<Mac[]> macs = new ThreadLocal<Mac[]>() {
+        @Override
+        protected Mac[] initialValue() {
+            return new Mac[TOKEN_BUFFER_SIZE];
+        }
+    };
 
     /**
-     * A ring of tokens used to encrypt.
+     * The secret keys the HMAC functions of the current thread are initialized with.
      */
-    private volatile SecretKey[] currentTokens;
+    private final ThreadLocal<SecretKey[]> macKeys = new ThreadLocal<SecretKey[]>() {
+        @Override
+        protected SecretKey[] initialValue() {
+            return new SecretKey[TOKEN_BUFFER_SIZE];
+        }
+    };
+
+    /** Writes the token file outside of the request threads */
+    private final ExecutorService tokenSaver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Peregrine Form Auth Token Store");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** True if a save of the token file is scheduled but not started yet */
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    /** Recently validated authentication data */
+    private final ValidatedTokenCache validatedTokens;
 
     /**
      * A secure random used for generating new tokens.
@@ -113,6 +161,25 @@ class TokenStore {
             final boolean fastSeed) throws NoSuchAlgorithmException,
             InvalidKeyException, IllegalStateException,
             UnsupportedEncodingException {
+        this(tokenFile, sessionTimeout, fastSeed,
+            ValidatedTokenCache.DEFAULT_TTL, ValidatedTokenCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param cacheTtl Time in ms validated authentication data is cached. If 0
+     *            or lower it is not cached
+     * @param cacheSize Maximum number of cached authentication data
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws UnsupportedEncodingException
+     * @throws IllegalStateException
+     * @throws NullPointerException if <code>tokenFile</code> is
+     *             <code>null</code>.
+     */
+    TokenStore(final File tokenFile, final long sessionTimeout,
+            final boolean fastSeed, final long cacheTtl, final int cacheSize)
+            throws NoSuchAlgorithmException, InvalidKeyException,
+            IllegalStateException, UnsupportedEncodingException {
 
         if (tokenFile == null) {
             throw new NullPointerException("tokenfile");
@@ -122,6 +189,7 @@ class TokenStore {
         this.ttl = sessionTimeout;
         this.tokenFile = tokenFile;
         this.tmpTokenFile = new File(tokenFile + ".tmp");
+        this.validatedTokens = new ValidatedTokenCache(cacheTtl, cacheSize);
 
         // prime the secret keys from persistence
         loadTokens();
@@ -158,23 +226,33 @@ class TokenStore {
     String encode(final long expires, final String userId)
             throws IllegalStateException, UnsupportedEncodingException,
             NoSuchAlgorithmException, InvalidKeyException {
-        int token = getActiveToken();
-        SecretKey key = currentTokens[token];
-        return encode(expires, userId, token, key);
+        TokenRing ring = getActiveTokenRing();
+        int token = ring.current;
+        String cookiePayload = String.valueOf(token) + String.valueOf(expires)
+            + "@" + userId;
+        String cookieValue = byteToHex(hmac(token, ring.keys[token], cookiePayload));
+        return cookieValue + "@" + cookiePayload;
     }
 
-    private String encode(final long expires, final String userId,
-            final int token, final SecretKey key) throws IllegalStateException,
+    /**
+     * Calculates the hash code of the payload with the given secure token
+     * using the HMAC function of the current thread for that token.
+     */
+    private byte[] hmac(final int token, final SecretKey key,
+            final String payload) throws IllegalStateException,
             UnsupportedEncodingException, NoSuchAlgorithmException,
             InvalidKeyException {
-
-        String cookiePayload = String.valueOf(token) + String.valueOf(expires)
-            + "@" + userId;
-        Mac m = Mac.getInstance(HMAC_SHA1);
-        m.init(key);
-        m.update(cookiePayload.getBytes(UTF_8));
-        String cookieValue = byteToHex(m.doFinal());
-        return cookieValue + "@" + cookiePayload;
+        Mac[] threadMacs = macs.get();
+        SecretKey[] threadMacKeys = macKeys.get();
+        Mac m = threadMacs[token];
+        if (m == null || threadMacKeys[token] != key) {
+            m = Mac.getInstance(HMAC_SHA1);
+            m.init(key);
+            threadMacs[token] = m;
+            threadMacKeys[token] = key;
+        }
+        // doFinal resets the function for the next use
+        return m.doFinal(payload.getBytes(UTF_8));
     }
 
     /**
@@ -204,17 +282,22 @@ class TokenStore {
      * <li>The expiry time encoded in the second field has not yet passed</li>
      * <li>The hashing the third field, the expiry time and token number with
      * the secure token (indicated by the token number) gives the same value as
-     * contained in the first field</li>
+     * contained in the first field. The hash codes are compared in constant
+     * time.</li>
      * </ul>
      * <p>
      * Otherwise the method returns <code>false</code>.
      */
     boolean isValid(String value) {
+        if (value != null && validatedTokens.get(value) != null) {
+            return true;
+        }
         String[] parts = split(value);
         if (parts != null) {
 
             // single digit token number
             int tokenNumber = parts[1].charAt(0) - '0';
+            SecretKey[] currentTokens = tokenRing.get().keys;
             if (tokenNumber >= 0 && tokenNumber < currentTokens.length) {
 
                 long cookieTime = Long.parseLong(parts[1].substring(1));
@@ -222,9 +305,14 @@ class TokenStore {
 
                     try {
                         SecretKey secretKey = currentTokens[tokenNumber];
-                        String hmac = encode(cookieTime, parts[2], tokenNumber,
-                            secretKey);
-                        return value.equals(hmac);
+                        byte[] cookieHmac = hexToByte(parts[0]);
+                        byte[] hmac = hmac(tokenNumber, secretKey, parts[1]
+                            + "@" + parts[2]);
+                        if (cookieHmac != null
+                            && MessageDigest.isEqual(cookieHmac, hmac)) {
+                            validatedTokens.put(value, parts[2], cookieTime);
+                            return true;
+                        }
                     } catch (ArrayIndexOutOfBoundsException e) {
                         log.error(e.getMessage(), e);
                     } catch (InvalidKeyException e) {
@@ -259,36 +347,93 @@ class TokenStore {
     }
 
     /**
-     * Maintain a circular buffer to tokens, and return the current one.
+     * Removes the given authentication data from the cache of validated
+     * authentication data so that it is validated again, for example on logout.
+     */
+    void invalidate(final String authData) {
+        validatedTokens.invalidate(authData);
+    }
+
+    /** @return the cache of validated authentication data with its metrics */
+    ValidatedTokenCache getValidatedTokenCache() {
+        return validatedTokens;
+    }
+
+    /**
+     * Maintain a circular buffer to tokens, and return it with the current one.
+     * A new token is only created by the thread that replaces the ring.
      *
-     * @return the current token.
+     * @return the current token ring.
      */
-    private synchronized int getActiveToken() {
-        if (System.currentTimeMillis() > nextUpdate
-            || currentTokens[currentToken] == null) {
+    private TokenRing getActiveTokenRing() {
+        TokenRing ring = tokenRing.get();
+        while (System.currentTimeMillis() > ring.nextUpdate
+            || ring.keys[ring.current] == null) {
             // cycle so that during a typical ttl the tokens get completely
             // refreshed.
-            nextUpdate = System.currentTimeMillis() + ttl
-                / (currentTokens.length - 1);
+            long nextUpdate = System.currentTimeMillis() + ttl
+                / (ring.keys.length - 1);
             byte[] b = new byte[20];
             random.nextBytes(b);
 
-            SecretKey newToken = new SecretKeySpec(b, HMAC_SHA1);
-            int nextToken = currentToken + 1;
-            if (nextToken == currentTokens.length) {
+            SecretKey[] keys = ring.keys.clone();
+            int nextToken = ring.current + 1;
+            if (nextToken == keys.length) {
                 nextToken = 0;
             }
-            currentTokens[nextToken] = newToken;
-            currentToken = nextToken;
-            saveTokens();
+            keys[nextToken] = new SecretKeySpec(b, HMAC_SHA1);
+            TokenRing newRing = new TokenRing(keys, nextToken, nextUpdate);
+            if (tokenRing.compareAndSet(ring, newRing)) {
+                validatedTokens.clear();
+                scheduleSaveTokens();
+                return newRing;
+            }
+            // another thread created a new token
+            ring = tokenRing.get();
         }
-        return currentToken;
+        return ring;
     }
 
     /**
-     * Stores the current set of tokens to the token file
+     * Schedules the storing of the current tokens to the token file unless
+     * there is already a save scheduled which has not started yet.
      */
-    private void saveTokens() {
+    private void scheduleSaveTokens() {
+        if (savePending.compareAndSet(false, true)) {
+            try {
+                tokenSaver.execute(new Runnable() {
+                    public void run() {
+                        savePending.set(false);
+                        saveTokens(tokenRing.get());
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // token store is closed
+                savePending.set(false);
+                saveTokens(tokenRing.get());
+            }
+        }
+    }
+
+    /**
+     * Writes pending token changes to the token file and stops the background
+     * thread.
+     */
+    void close() {
+        tokenSaver.shutdown();
+        try {
+            if (!tokenSaver.awaitTermination(SAVE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                log.warn("Token File {} was not saved within {}ms", tokenFile, SAVE_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stores the given set of tokens to the token file
+     */
+    private void saveTokens(final TokenRing ring) {
         FileOutputStream fout = null;
         DataOutputStream keyOutputStream = null;
         try {
@@ -299,14 +444,14 @@ class TokenStore {
             }
             fout = new FileOutputStream(tmpTokenFile);
             keyOutputStream = new DataOutputStream(fout);
-            keyOutputStream.writeInt(currentToken);
-            keyOutputStream.writeLong(nextUpdate);
-            for (int i = 0; i < currentTokens.length; i++) {
-                if (currentTokens[i] == null) {
+            keyOutputStream.writeInt(ring.current);
+            keyOutputStream.writeLong(ring.nextUpdate);
+            for (int i = 0; i < ring.keys.length; i++) {
+                if (ring.keys[i] == null) {
                     keyOutputStream.writeInt(0);
                 } else {
                     keyOutputStream.writeInt(1);
-                    byte[] b = currentTokens[i].getEncoded();
+                    byte[] b = ring.keys[i].getEncoded();
                     keyOutputStream.writeInt(b.length);
                     keyOutputStream.write(b);
                 }
@@ -356,9 +501,7 @@ class TokenStore {
                 }
 
                 // assign the tokes and schedule a next update
-                nextUpdate = newNextUpdate;
-                currentToken = newCurrentToken;
-                currentTokens = newKeys;
+                tokenRing.set(new TokenRing(newKeys, newCurrentToken, newNextUpdate));
 
             } catch (IOException e) {
 
@@ -381,10 +524,9 @@ class TokenStore {
         }
 
         // if there was a failure to read the current tokens, create new ones
-        if (currentTokens == null) {
-            currentTokens = new SecretKey[TOKEN_BUFFER_SIZE];
-            nextUpdate = System.currentTimeMillis();
-            currentToken = 0;
+        if (tokenRing.get() == null) {
+            tokenRing.set(new TokenRing(new SecretKey[TOKEN_BUFFER_SIZE],
+                0, System.currentTimeMillis()));
         }
     }
 
@@ -407,6 +549,39 @@ class TokenStore {
         return new String(c);
     }
 
+    /**
+     * Decode a string encoded by {@link #byteToHex(byte[])}.
+     *
+     * @param hex
+     * @return the bytes or <code>null</code> if the string is not encoded
+     */
+    private static byte[] hexToByte(String hex) {
+        if (hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] b = new byte[hex.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            int high = hexValue(hex.charAt(2 * i));
+            int low = hexValue(hex.charAt(2 * i + 1));
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            b[i] = (byte) (high * 0x10 + low - 128);
+        }
+        return b;
+    }
+
+    /** @return the value of the given character of {@link #TOHEX} or -1 */
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
     /**
      * Creates a byte array of entry from the current state of the system:
      * <ul>
@@ -465,4 +640,24 @@ class TokenStore {
             value >>= 8;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * A ring of tokens with the location of the current one and the time
+     * when the next token should be created.
+     */
+    private static final class TokenRing {
+
+        private final SecretKey[] keys;
+
+        private final int current;
+
+        private final long nextUpdate;
+
+        TokenRing(final SecretKey[] keys, final int current,
+                final long nextUpdate) {
+            this.keys = keys;
+            this.current = current;
+            this.nextUpdate = nextUpdate;
+        }
+    }
+}
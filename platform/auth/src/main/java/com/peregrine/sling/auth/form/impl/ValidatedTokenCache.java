@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.peregrine.sling.auth.form.impl;
+
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * The <code>ValidatedTokenCache</code> remembers authentication data that the
+ * {@link TokenStore} has validated for a short time so that following requests
+ * with the same cookie do not need to calculate its hash code again.
+ * <p>
+ * An entry is valid until the cache time to live or the expiry time of the
+ * authentication data is reached, whatever comes first. If the cache is full
+ * expired entries are removed and new entries are not cached until there is
+ * room again.
+ * <p>
+ * The hit rate is exposed as a {@link ValidatedTokenCacheMBean} once the cache
+ * is registered with {@link #register(BundleContext)}.
+ */
+class ValidatedTokenCache implements ValidatedTokenCacheMBean {
+
+    /** Default time in ms a validated authentication data is cached */
+    static final long DEFAULT_TTL = 60 * 1000L;
+
+    /** Default number of cached authentication data */
+    static final int DEFAULT_MAX_SIZE = 1000;
+
+    /** Object name of the cache statistics picked up by the JMX whiteboard */
+    static final String JMX_OBJECT_NAME = "com.peregrine.sling.auth.form:type=ValidatedTokenCache";
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final long ttl;
+
+    private final int maxSize;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param ttl Time in ms a validated authentication data is cached. If 0 or
+     *            lower nothing is cached
+     * @param maxSize Maximum number of cached authentication data
+     */
+    ValidatedTokenCache(final long ttl, final int maxSize) {
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the user id of the cached authentication data or
+     *         <code>null</code> if it is not cached or has expired
+     */
+    String get(final String authData) {
+        Entry entry = entries.get(authData);
+        if (entry != null) {
+            if (System.currentTimeMillis() < entry.validUntil) {
+                hits.incrementAndGet();
+                return entry.userId;
+            }
+            entries.remove(authData, entry);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches validated authentication data.
+     *
+     * @param authData The validated authentication data
+     * @param userId The user id contained in the authentication data
+     * @param expires The expiry time of the authentication data
+     */
+    void put(final String authData, final String userId, final long expires) {
+        if (ttl <= 0 || maxSize <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (entries.size() >= maxSize) {
+            removeExpired(now);
+            if (entries.size() >= maxSize) {
+                return;
+            }
+        }
+        entries.put(authData, new Entry(userId, Math.min(now + ttl, expires)));
+    }
+
+    /** Removes the given authentication data, for example on logout */
+    void invalidate(final String authData) {
+        if (authData != null) {
+            entries.remove(authData);
+        }
+    }
+
+    /** Removes all cached authentication data, for example on a new token */
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Registers this cache as a <code>ValidatedTokenCacheMBean</code> service
+     * so that its statistics are exposed through JMX.
+     *
+     * @param bundleContext The <code>BundleContext</code> to register the
+     *            service
+     * @return The <code>ServiceRegistration</code> of the registered service to
+     *         unregister the service on shutdown.
+     */
+    ServiceRegistration register(final BundleContext bundleContext) {
+        Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(Constants.SERVICE_DESCRIPTION,
+            "Statistics of the validated form authentication data");
+        properties.put("jmx.objectname", JMX_OBJECT_NAME);
+
+        return bundleContext.registerService(
+            ValidatedTokenCacheMBean.class.getName(), this, properties);
+    }
+
+    private void removeExpired(final long now) {
+        for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+            if (i.next().validUntil <= now) {
+                i.remove();
+            }
+        }
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private static final class Entry {
+
+        private final String userId;
+
+        private final long validUntil;
+
+        Entry(final String userId, final long validUntil) {
+            this.userId = userId;
+            this.validUntil = validUntil;
+        }
+    }
+}
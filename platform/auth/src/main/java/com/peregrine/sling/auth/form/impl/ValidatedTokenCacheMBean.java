@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.peregrine.sling.auth.form.impl;
+
+/**
+ * Statistics of the {@link ValidatedTokenCache} exposed through JMX.
+ */
+public interface ValidatedTokenCacheMBean {
+
+    /** @return the number of cached authentication data */
+    int getSize();
+
+    /** @return the number of lookups found in the cache */
+    long getHitCount();
+
+    /** @return the number of lookups not found in the cache */
+    long getMissCount();
+
+    /** @return the share of lookups found in the cache between 0 and 1 */
+    double getHitRate();
+}
@@ -0,0 +1,142 @@
+package com.peregrine.sling.auth.form.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenStoreTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final String USER = "admin";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File tokenFile;
+    private TokenStore tokenStore;
+
+    @Before
+    public void setUp() throws Exception {
+        tokenFile = new File(temporaryFolder.getRoot(), "cookie-tokens.bin");
+        // Nothing is cached so that every call validates the hash code
+        tokenStore = new TokenStore(tokenFile, HOUR, true, 0, 0);
+    }
+
+    @After
+    public void tearDown() {
+        tokenStore.close();
+    }
+
+    private static String replaceHmac(String authData, String hmac) {
+        return hmac + authData.substring(authData.indexOf('@'));
+    }
+
+    private static char getTokenNumber(String authData) {
+        return TokenStore.split(authData)[1].charAt(0);
+    }
+
+    @Test
+    public void encode_isValid() throws Exception {
+        String authData = tokenStore.encode(System.currentTimeMillis() + HOUR, USER);
+        String[] parts = TokenStore.split(authData);
+        assertEquals(USER, parts[2]);
+        assertTrue(tokenStore.isValid(authData));
+        assertTrue("Validating again must give the same result", tokenStore.isValid(authData));
+    }
+
+    @Test
+    public void isValid_tamperedData() throws Exception {
+        String authData = tokenStore.encode(System.currentTimeMillis() + HOUR, USER);
+        String hmac = TokenStore.split(authData)[0];
+        char first = hmac.charAt(0) == '0' ? '1' : '0';
+        assertFalse(tokenStore.isValid(replaceHmac(authData, first + hmac.substring(1))));
+        assertFalse(tokenStore.isValid(replaceHmac(authData, hmac.substring(1))));
+        assertFalse(tokenStore.isValid(replaceHmac(authData, "zz" + hmac.substring(2))));
+        assertFalse(tokenStore.isValid(authData.substring(0, authData.length() - 1) + "x"));
+        assertFalse(tokenStore.isValid(null));
+        assertFalse(tokenStore.isValid("no-separators"));
+    }
+
+    @Test
+    public void isValid_expired() throws Exception {
+        String authData = tokenStore.encode(System.currentTimeMillis() - 1, USER);
+        assertFalse(tokenStore.isValid(authData));
+    }
+
+    @Test
+    public void isValid_olderTokensAfterRotation() throws Exception {
+        tokenStore.close();
+        // A new token every 10ms
+        tokenStore = new TokenStore(tokenFile, 40, true, 0, 0);
+        String first = tokenStore.encode(System.currentTimeMillis() + HOUR, USER);
+        Thread.sleep(20);
+        String second = tokenStore.encode(System.currentTimeMillis() + HOUR, USER);
+        assertTrue(getTokenNumber(first) != getTokenNumber(second));
+        assertTrue(tokenStore.isValid(first));
+        assertTrue(tokenStore.isValid(second));
+    }
+
+    @Test(timeout = 10000)
+    public void encode_concurrentRotationCreatesOneToken() throws Exception {
+        int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        start.await();
+                        // The token ring of a new store is due for its first token
+                        return tokenStore.encode(System.currentTimeMillis() + HOUR, USER);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<String> future : futures) {
+                String authData = future.get();
+                assertEquals("Only one thread may replace the token ring", '1', getTokenNumber(authData));
+                assertTrue(tokenStore.isValid(authData));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void close_savesThePendingTokens() throws Exception {
+        String authData = tokenStore.encode(System.currentTimeMillis() + HOUR, USER);
+        tokenStore.close();
+        assertTrue(tokenFile.isFile());
+
+        TokenStore loaded = new TokenStore(tokenFile, HOUR, true, 0, 0);
+        try {
+            assertTrue("The saved tokens must validate the issued data", loaded.isValid(authData));
+        } finally {
+            loaded.close();
+        }
+    }
+
+    @Test
+    public void close_savesNewTokensSynchronously() throws Exception {
+        tokenStore.close();
+        tokenStore.encode(System.currentTimeMillis() + HOUR, USER);
+        assertTrue(tokenFile.isFile());
+    }
+}
@@ -0,0 +1,121 @@
+package com.peregrine.sling.auth.form.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import javax.management.StandardMBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ValidatedTokenCacheTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final String AUTH_DATA = "hmac@11234@admin";
+    private static final String USER = "admin";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static long later() {
+        return System.currentTimeMillis() + HOUR;
+    }
+
+    @Test
+    public void get_expiresAfterTtl() throws Exception {
+        ValidatedTokenCache cache = new ValidatedTokenCache(50, 10);
+        cache.put(AUTH_DATA, USER, later());
+        assertEquals(USER, cache.get(AUTH_DATA));
+        Thread.sleep(100);
+        assertNull(cache.get(AUTH_DATA));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void get_expiresWithTheAuthenticationData() throws Exception {
+        ValidatedTokenCache cache = new ValidatedTokenCache(HOUR, 10);
+        cache.put(AUTH_DATA, USER, System.currentTimeMillis() + 50);
+        assertEquals(USER, cache.get(AUTH_DATA));
+        Thread.sleep(100);
+        assertNull("An entry must not outlive its cookie", cache.get(AUTH_DATA));
+    }
+
+    @Test
+    public void put_disabledCache() {
+        ValidatedTokenCache cache = new ValidatedTokenCache(0, 10);
+        cache.put(AUTH_DATA, USER, later());
+        assertNull(cache.get(AUTH_DATA));
+    }
+
+    @Test
+    public void put_boundedSize() throws Exception {
+        ValidatedTokenCache cache = new ValidatedTokenCache(HOUR, 2);
+        cache.put("a", USER, System.currentTimeMillis() + 50);
+        cache.put("b", USER, later());
+        cache.put("c", USER, later());
+        assertEquals(2, cache.getSize());
+        assertNull("A full cache must not take new entries", cache.get("c"));
+
+        Thread.sleep(100);
+        cache.put("c", USER, later());
+        assertEquals("Expired entries make room for new ones", 2, cache.getSize());
+        assertEquals(USER, cache.get("c"));
+    }
+
+    @Test
+    public void invalidate() {
+        ValidatedTokenCache cache = new ValidatedTokenCache(HOUR, 10);
+        cache.put(AUTH_DATA, USER, later());
+        cache.put("other", USER, later());
+        cache.invalidate(AUTH_DATA);
+        cache.invalidate(null);
+        assertNull(cache.get(AUTH_DATA));
+        assertEquals(USER, cache.get("other"));
+    }
+
+    @Test
+    public void getHitRate() throws Exception {
+        ValidatedTokenCache cache = new ValidatedTokenCache(HOUR, 10);
+        assertEquals(0, cache.getHitRate(), 0);
+        cache.put(AUTH_DATA, USER, later());
+        cache.get(AUTH_DATA);
+        cache.get(AUTH_DATA);
+        cache.get(AUTH_DATA);
+        cache.get("other");
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        StandardMBean mbean = new StandardMBean(cache, ValidatedTokenCacheMBean.class);
+        assertEquals(0.75, (Double) mbean.getAttribute("HitRate"), 0);
+        assertEquals(1, mbean.getAttribute("Size"));
+    }
+
+    @Test
+    public void tokenStore_clearsTheCacheWithANewToken() throws Exception {
+        File tokenFile = new File(temporaryFolder.getRoot(), "cookie-tokens.bin");
+        // A new token every 10ms
+        TokenStore tokenStore = new TokenStore(tokenFile, 40, true, HOUR, 10);
+        try {
+            ValidatedTokenCache cache = tokenStore.getValidatedTokenCache();
+            String authData = tokenStore.encode(later(), USER);
+            assertTrue(tokenStore.isValid(authData));
+            assertTrue(tokenStore.isValid(authData));
+            assertEquals(1, cache.getSize());
+            assertEquals(1, cache.getHitCount());
+
+            Thread.sleep(20);
+            tokenStore.encode(later(), USER);
+            assertEquals(0, cache.getSize());
+            assertTrue("Older tokens stay valid", tokenStore.isValid(authData));
+            assertEquals(1, cache.getHitCount());
+
+            tokenStore.invalidate(authData);
+            assertEquals(0, cache.getSize());
+        } finally {
+            tokenStore.close();
+        }
+    }
+}
@@ -3,12 +3,24 @@ package com.peregrine.intra;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 
+import java.io.OutputStream;
 import java.util.Map;
 
 public interface IntraSlingCaller {
     public CallerContext createContext();
     public byte[] call(CallerContext callerContext) throws CallException;
 
+    /**
+     * Calls the resource and writes the response directly into the given stream without buffering it.
+     * Only the output of a successful (200) response is written. If the call fails the stream might
+     * still have received a part of the response.
+     * The stream is not closed.
+     * @param callerContext Context of the call
+     * @param outputStream Stream the response is written to
+     * @throws CallException If the call failed
+     */
+    public void call(CallerContext callerContext, OutputStream outputStream) throws CallException;
+
     interface CallerContext {
         public Resource getResource();
         public CallerContext setResource(Resource resource);
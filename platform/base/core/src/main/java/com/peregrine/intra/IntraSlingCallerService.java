@@ -5,7 +5,6 @@ import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.servlethelpers.MockRequestPathInfo;
 import org.apache.sling.servlethelpers.MockSlingHttpServletRequest;
-import org.apache.sling.servlethelpers.MockSlingHttpServletResponse;
 import org.apache.sling.engine.SlingRequestProcessor;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
@@ -13,7 +12,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletException;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
@@ -53,6 +54,13 @@ public class IntraSlingCallerService
 
     @Override
     public byte[] call(CallerContext callerContext) throws CallException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        call(callerContext, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Override
+    public void call(CallerContext callerContext, OutputStream outputStream) throws CallException {
         try {
             logger.trace("Intra Sling Caller Context: '{}'", callerContext);
             MockSlingHttpServletRequest req = new MockSlingHttpServletRequest(callerContext.getResourceResolver());
@@ -64,17 +72,16 @@ public class IntraSlingCallerService
             pathInfo.setExtension(callerContext.getExtension());
             pathInfo.setSuffix(callerContext.getSuffix());
             req.setParameterMap(callerContext.getParameterMap());
-            MockSlingHttpServletResponse resp = new MockSlingHttpServletResponse();
+            StreamingSlingHttpServletResponse resp = new StreamingSlingHttpServletResponse(outputStream);
             resp.setCharacterEncoding("utf-8");
             requestProcessor.processRequest(req, resp, callerContext.getResourceResolver());
+            resp.finish();
             logger.trace("Response Status: '{}'", resp.getStatus());
             //AS TODO: do we need to support redirects (301 / 302)
             if(resp.getStatus() != 200) {
-                String content = resp.getOutput().toString();
+                String content = resp.getOutputAsString();
                 logger.error("Request of: '{}' failed (status: {}). Output : '{}'", req.getRequestURI(), resp.getStatus(), content);
                 throw new CallException(String.format(CALLING_REQUEST_FAILED, req.getRequestURI(), resp.getStatus()));
-            } else {
-                return resp.getOutput();
             }
         } catch(UnsupportedEncodingException e) {
             throw new CallException(UNSUPPORTED_ENCODING_WHILE_CREATING_THE_CALLER_RESPONSE, e);
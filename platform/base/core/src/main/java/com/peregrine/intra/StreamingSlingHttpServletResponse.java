@@ -0,0 +1,134 @@
+package com.peregrine.intra;
+
+import org.apache.sling.servlethelpers.MockSlingHttpServletResponse;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+/**
+ * Response of an internal call that passes the output of a successful response directly
+ * to the target stream. Output written while the status is not OK is kept in memory
+ * so that it can be reported.
+ */
+class StreamingSlingHttpServletResponse
+    extends MockSlingHttpServletResponse
+{
+    private final OutputStream target;
+    private final ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    StreamingSlingHttpServletResponse(OutputStream target) {
+        this.target = target;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if(writer != null) {
+            throw new IllegalStateException("Writer was already obtained");
+        }
+        return getOutputStream0();
+    }
+
+    private ServletOutputStream getOutputStream0() {
+        if(outputStream == null) {
+            outputStream = new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    getCurrentTarget().write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    getCurrentTarget().write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    getCurrentTarget().flush();
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        if(writer == null) {
+            if(outputStream != null) {
+                throw new IllegalStateException("Output Stream was already obtained");
+            }
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream0(), charset));
+        }
+        return writer;
+    }
+
+    private OutputStream getCurrentTarget() {
+        return getStatus() == SC_OK ? target : errorOutput;
+    }
+
+    /**
+     * Flushes the pending output of the writer
+     * @throws IOException If the output could not be written to the target
+     */
+    void finish() throws IOException {
+        if(writer != null && writer.checkError()) {
+            throw new IOException("Failed to write the response");
+        }
+    }
+
+    @Override
+    public void flushBuffer() {
+        if(writer != null) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        errorOutput.reset();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        errorOutput.reset();
+    }
+
+    /** @return Output written while the status was not OK **/
+    @Override
+    public byte[] getOutput() {
+        flushBuffer();
+        return errorOutput.toByteArray();
+    }
+
+    /** @return Output written while the status was not OK **/
+    @Override
+    public String getOutputAsString() {
+        flushBuffer();
+        String encoding = getCharacterEncoding();
+        return new String(errorOutput.toByteArray(), encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding));
+    }
+}
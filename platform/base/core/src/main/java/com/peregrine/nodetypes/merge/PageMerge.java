@@ -38,9 +38,10 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.regex.Pattern;
 import javax.script.Bindings;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
@@ -68,8 +69,13 @@ public class PageMerge implements Use {
     public static final String TEMPLATE = "template";
     public static final String REGEX_TEMPLATES = "(?<=\\/content\\/)([a-zA-Z0-9\\\\s\\\\_-])*(?=\\/templates)";
 
+    private static final Pattern TEMPLATES_PATTERN = compile(REGEX_TEMPLATES);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     private ModelFactory modelFactory;
 
+    private TemplateMergeCache templateMergeCache;
+
     private SlingHttpServletRequest request;
 
     public static RenderContext getRenderContext() {
@@ -104,15 +110,14 @@ public class PageMerge implements Use {
                 .exportModelForResource(content, JACKSON, Map.class, Collections.emptyMap());
             String templatePath = (String) page.get(TEMPLATE);
             if(templatePath == null) {
-                if(compile(REGEX_TEMPLATES).matcher(resource.getParent().getPath()).find()) {
+                if(TEMPLATES_PATTERN.matcher(resource.getParent().getPath()).find()) {
                     if(resource.getParent().getResourceType().equals(PAGE_PRIMARY_TYPE)) {
                         templatePath = resource.getParent().getPath();
                     }
                 }
             }
             if(templatePath != null) {
-                Map template = getMerged(request.getResourceResolver().getResource(templatePath));
-                flagFromTemplate(template);
+                Map template = getMergedTemplate(request.getResourceResolver().getResource(templatePath));
                 return merge(template, page);
             }
             return page;
@@ -124,6 +129,20 @@ public class PageMerge implements Use {
         return Collections.<String, String> emptyMap();
     }
 
+    private Map getMergedTemplate(Resource templateResource) {
+        TemplateMergeCache cache = templateMergeCache;
+        if(cache != null && cache.isEnabled() && templateResource != null) {
+            return cache.get(templateResource, () -> mergeTemplate(templateResource));
+        }
+        return mergeTemplate(templateResource);
+    }
+
+    private Map mergeTemplate(Resource templateResource) {
+        Map template = getMerged(templateResource);
+        flagFromTemplate(template);
+        return template;
+    }
+
     private void flagFromTemplate(Map template) {
         template.put(FROM_TEMPLATE, Boolean.TRUE);
         for(Object key: template.keySet()) {
@@ -152,7 +171,12 @@ public class PageMerge implements Use {
             if(value instanceof Map) {
 
             } else if(value instanceof ArrayList) {
-                mergeArrays((ArrayList) res.get(key), (ArrayList) value);
+                Object target = res.get(key);
+                if(target instanceof ArrayList) {
+                    mergeArrays((ArrayList) target, (ArrayList) value);
+                } else {
+                    res.put(key, value);
+                }
             } else {
                 res.put(key, value);
             }
@@ -161,28 +185,33 @@ public class PageMerge implements Use {
     }
 
     private void mergeArrays(ArrayList target, ArrayList value) {
-        for (Iterator it = value.iterator(); it.hasNext(); ) {
-            Object val = it.next();
-            log.debug("array merge: {}",val.getClass());
-            boolean merged = false;
-            if(val instanceof Map) {
-                Map map = (Map) val;
-                String path = (String) map.get(PATH);
+        // Index the entries by their path (unique in the JCR) to find the matching entry in constant time
+        Map<Object, Integer> indexByPath = new HashMap<>();
+        for(int i = 0; i < target.size(); i++) {
+            Object t = target.get(i);
+            if(t instanceof Map) {
+                Object path = ((Map) t).get(PATH);
                 if(path != null) {
-                    log.debug("find entry for {}", path);
-                    for (int i = 0; i < target.size(); i++) {
-                        Object t = target.get(i);
-                        if(((Map)t).get(PATH).equals(path)) {
-                            log.debug("found");
-                            target.set(i, merge((Map)t, map));
-                            log.debug("{}", target.get(i));
-                            merged = true;
-                        }
-                    }
+                    indexByPath.putIfAbsent(path, i);
                 }
             }
-
-            if(!target.contains(val) && !merged) {
+        }
+        for(Object val: value) {
+            log.debug("array merge: {}", val.getClass());
+            String path = val instanceof Map ? (String) ((Map) val).get(PATH) : null;
+            if(path != null) {
+                log.debug("find entry for {}", path);
+                Integer index = indexByPath.get(path);
+                if(index != null) {
+                    log.debug("found");
+                    target.set(index, merge((Map) target.get(index), (Map) val));
+                    log.debug("{}", target.get(index));
+                } else {
+                    // An equal entry would have the same path so it cannot be in the target
+                    indexByPath.put(path, target.size());
+                    target.add(val);
+                }
+            } else if(!target.contains(val)) {
                 target.add(val);
             }
         }
@@ -190,9 +219,8 @@ public class PageMerge implements Use {
 
     private String toJSON(Map template) {
         StringWriter writer = new StringWriter();
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            mapper.writeValue(writer, template);
+            MAPPER.writeValue(writer, template);
             writer.close();
         } catch (IOException e) {
             log.error("not able to create string writer", e);
@@ -205,6 +233,7 @@ public class PageMerge implements Use {
         request = (SlingHttpServletRequest) bindings.get(REQUEST);
         SlingScriptHelper sling = (SlingScriptHelper) bindings.get(SLING);
         modelFactory = sling.getService(ModelFactory.class);
+        templateMergeCache = sling.getService(TemplateMergeCache.class);
         renderContext.set(new RenderContext(request));
     }
 }
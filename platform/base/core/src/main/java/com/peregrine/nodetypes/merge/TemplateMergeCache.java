@@ -0,0 +1,27 @@
+package com.peregrine.nodetypes.merge;
+
+import org.apache.sling.api.resource.Resource;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the merged model of templates so that a page only needs to export its own
+ * model and merge it into the cached template
+ */
+public interface TemplateMergeCache {
+
+    /** @return True if merged templates are cached at all **/
+    boolean isEnabled();
+
+    /**
+     * Obtains the merged model of the given template from the cache or merges it and caches the result
+     * @param template Template page
+     * @param merger Creates the merged model of the template if there is none in the cache
+     * @return A copy of the merged model that the caller is free to modify
+     */
+    Map get(Resource template, Supplier<Map> merger);
+
+    /** Removes all merged templates **/
+    void clear();
+}
@@ -0,0 +1,153 @@
+package com.peregrine.nodetypes.merge;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.Designate;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import static com.peregrine.commons.util.PerConstants.JCR_CONTENT;
+import static com.peregrine.commons.util.PerConstants.JCR_LAST_MODIFIED;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Least recently used cache of merged templates. A template is looked up by its path and the last
+ * modification of its content. As a template also includes its own template any change to a template,
+ * or to a tenant as a whole, drops all entries.
+ */
+@Component(
+    service = { TemplateMergeCache.class, ResourceChangeListener.class },
+    immediate = true
+)
+@Designate(ocd = TemplateMergeCacheImplConfig.class)
+public final class TemplateMergeCacheImpl implements TemplateMergeCache, ResourceChangeListener {
+
+    private static final String KEY_SEPARATOR = "|";
+    private static final Pattern TEMPLATE_CHANGE = Pattern.compile("^/content(/[^/]+(/templates(/.*)?)?)?$");
+
+    private final Map<String, Map> templates = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean enabled;
+    private int maxEntries;
+    private long generation = 0;
+
+    @Activate
+    @Modified
+    public void activate(final TemplateMergeCacheImplConfig config) {
+        synchronized (this) {
+            enabled = config.enabled() && config.maxEntries() > 0;
+            maxEntries = config.maxEntries();
+        }
+
+        clear();
+    }
+
+    @Deactivate
+    public void deactivate() {
+        clear();
+    }
+
+    @Override
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Map get(final Resource template, final Supplier<Map> merger) {
+        final String key = getKey(template);
+        final long currentGeneration;
+        synchronized (this) {
+            final Map cached = templates.get(key);
+            if (nonNull(cached)) {
+                return copy(cached);
+            }
+
+            currentGeneration = generation;
+        }
+
+        final Map result = merger.get();
+        put(key, copy(result), currentGeneration);
+        return result;
+    }
+
+    private synchronized void put(final String key, final Map template, final long mergeGeneration) {
+        // a template merged before an invalidation might already be stale
+        if (mergeGeneration != generation) {
+            return;
+        }
+
+        templates.put(key, template);
+        while (templates.size() > maxEntries) {
+            templates.remove(templates.keySet().iterator().next());
+        }
+    }
+
+    private static String getKey(final Resource template) {
+        final Resource content = template.getChild(JCR_CONTENT);
+        Calendar lastModified = null;
+        if (nonNull(content)) {
+            lastModified = content.getValueMap().get(JCR_LAST_MODIFIED, Calendar.class);
+        }
+
+        return template.getPath() + KEY_SEPARATOR + (isNull(lastModified) ? 0 : lastModified.getTimeInMillis());
+    }
+
+    /** @return Deep copy of the maps and lists of the given model, other values are immutable **/
+    @SuppressWarnings("unchecked")
+    static Map copy(final Map model) {
+        final Map answer = new LinkedHashMap(model.size());
+        for (final Object o : model.entrySet()) {
+            final Map.Entry entry = (Map.Entry) o;
+            answer.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+
+        return answer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(final Object value) {
+        if (value instanceof Map) {
+            return copy((Map) value);
+        }
+
+        if (value instanceof List) {
+            final List list = (List) value;
+            final List answer = new ArrayList(list.size());
+            for (final Object item : list) {
+                answer.add(copyValue(item));
+            }
+
+            return answer;
+        }
+
+        return value;
+    }
+
+    @Override
+    public synchronized void clear() {
+        generation++;
+        templates.clear();
+    }
+
+    @Override
+    public void onChange(final List<ResourceChange> changes) {
+        for (final ResourceChange change : changes) {
+            if (TEMPLATE_CHANGE.matcher(change.getPath()).matches()) {
+                clear();
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.peregrine.nodetypes.merge;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+@ObjectClassDefinition(name = "%config.name", description = "%config.description")
+public @interface TemplateMergeCacheImplConfig {
+
+    @AttributeDefinition(name = "%enabled.name", description = "%enabled.description")
+    boolean enabled() default false;
+
+    @AttributeDefinition(name = "%maxEntries.name", description = "%maxEntries.description")
+    int maxEntries() default 100;
+
+    @AttributeDefinition(name = "%paths.name", description = "%paths.description")
+    String[] resource_paths() default "/content";
+
+    @AttributeDefinition(name = "%changes.name", description = "%changes.description")
+    String[] resource_change_types() default { "ADDED", "CHANGED", "REMOVED" };
+
+}
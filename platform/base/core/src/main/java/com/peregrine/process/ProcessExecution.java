@@ -0,0 +1,62 @@
+package com.peregrine.process;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Service to execute External Processes with a limited number
+ * of concurrent processes and a timeout
+ */
+public interface ProcessExecution {
+
+    /** @return True if this is executed on Windows OS **/
+    boolean isWindows();
+
+    /**
+     * Executes an External Process in the current folder and waits for it to conclude
+     *
+     * @param command List of strings where the first is the command followed by none or more arguments
+     * @return Process Context of the Execution
+     * @throws ExternalProcessException If there was no free process slot in time, the process could not
+     *                                  be started or it timed out
+     */
+    ProcessContext execute(List<String> command)
+        throws ExternalProcessException;
+
+    /**
+     * Executes an External Process and waits for it to conclude
+     *
+     * @param command List of strings where the first is the command followed by none or more arguments
+     * @param workingDirectory Working Directory of the process
+     * @return Process Context of the Execution
+     * @throws ExternalProcessException If there was no free process slot in time, the process could not
+     *                                  be started or it timed out
+     */
+    ProcessContext execute(List<String> command, File workingDirectory)
+        throws ExternalProcessException;
+}
@@ -0,0 +1,165 @@
+package com.peregrine.process;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import com.peregrine.commons.process.ProcessExecutor;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import java.io.File;
+import java.util.List;
+
+import static com.peregrine.commons.util.PerUtil.EQUALS;
+
+/**
+ * Executes External Processes like VIPS with a limited number of concurrent
+ * processes so that bursts of image requests cannot flood the host. Processes
+ * that exceed the timeout are killed.
+ */
+@Component(
+    service = { ProcessExecution.class, ProcessExecutionServiceMBean.class },
+    immediate = true,
+    property = ProcessExecutionService.JMX_OBJECT_NAME + EQUALS + "com.peregrine.process:type=ProcessExecution"
+)
+@Designate(
+    ocd = ProcessExecutionService.Configuration.class
+)
+public class ProcessExecutionService
+    implements ProcessExecution, ProcessExecutionServiceMBean
+{
+    @ObjectClassDefinition(
+        name = "Peregrine: Process Execution",
+        description = "Executes External Processes like VIPS"
+    )
+    public @interface Configuration {
+        @AttributeDefinition(
+            name = "Max Concurrent Processes",
+            description = "Number of External Processes that can run at the same time. If 0 or lower the number of processors is used"
+        )
+        int maxConcurrentProcesses() default 0;
+
+        @AttributeDefinition(
+            name = "Timeout",
+            description = "Time in milliseconds a process can run before it is killed and a caller waits for a free process slot. "
+                + "If 0 or lower it waits forever"
+        )
+        long timeout() default DEFAULT_TIMEOUT;
+    }
+
+    static final String JMX_OBJECT_NAME = "jmx.objectname";
+    public static final long DEFAULT_TIMEOUT = 60000;
+
+    private volatile ProcessExecutor executor = new ProcessExecutor(Runtime.getRuntime().availableProcessors(), DEFAULT_TIMEOUT);
+
+    @Activate
+    @Modified
+    void activate(Configuration configuration) {
+        int maxConcurrentProcesses = configuration.maxConcurrentProcesses();
+        if(maxConcurrentProcesses <= 0) {
+            maxConcurrentProcesses = Runtime.getRuntime().availableProcessors();
+        }
+        executor = new ProcessExecutor(maxConcurrentProcesses, configuration.timeout());
+    }
+
+    @Override
+    public boolean isWindows() {
+        return new ProcessRunner().isWindows();
+    }
+
+    @Override
+    public ProcessContext execute(List<String> command)
+        throws ExternalProcessException
+    {
+        return execute(command, new File("."));
+    }
+
+    @Override
+    public ProcessContext execute(List<String> command, File workingDirectory)
+        throws ExternalProcessException
+    {
+        return new ProcessRunner(workingDirectory, executor).execute(command);
+    }
+
+    @Override
+    public int getMaxConcurrentProcesses() {
+        return executor.getMaxConcurrentProcesses();
+    }
+
+    @Override
+    public long getTimeout() {
+        return executor.getTimeout();
+    }
+
+    @Override
+    public long getExecutionCount() {
+        return executor.getExecutionCount();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return executor.getFailureCount();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return executor.getTimeoutCount();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return executor.getRejectedCount();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public long getWaitingCount() {
+        return executor.getWaitingCount();
+    }
+
+    @Override
+    public long getTotalExecutionTime() {
+        return executor.getTotalExecutionTime();
+    }
+
+    @Override
+    public long getMaxExecutionTime() {
+        return executor.getMaxExecutionTime();
+    }
+
+    @Override
+    public long getAverageExecutionTime() {
+        long count = executor.getExecutionCount();
+        return count == 0 ? 0 : executor.getTotalExecutionTime() / count;
+    }
+}
@@ -0,0 +1,27 @@
+package com.peregrine.process;
+
+public interface ProcessExecutionServiceMBean {
+
+    int getMaxConcurrentProcesses();
+
+    long getTimeout();
+
+    long getExecutionCount();
+
+    long getFailureCount();
+
+    long getTimeoutCount();
+
+    long getRejectedCount();
+
+    int getActiveCount();
+
+    long getWaitingCount();
+
+    long getTotalExecutionTime();
+
+    long getMaxExecutionTime();
+
+    long getAverageExecutionTime();
+
+}
@@ -25,20 +25,24 @@ package com.peregrine.process;
  * #L%
  */
 
+import com.peregrine.commons.process.ProcessExecutor;
+import com.peregrine.commons.process.ProcessExecutor.Result;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.ProcessBuilder.Redirect;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.List;
 import java.util.Locale;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * Executes an External Process defined by a list of commands (command followed by 0+ arguments)
  *
+ * The output and error of the process are captured in memory. All runners share one
+ * Process Executor which limits the number of concurrent processes unless one is given.
+ *
  * Created by Andreas Schaefer on 4/6/17.
  */
 public class ProcessRunner {
@@ -46,11 +50,16 @@ public class ProcessRunner {
     public static final String OS_NAME = "os.name";
     public static final String GENERIC = "generic";
     public static final String FAILED_TO_EXECUTE_PROCESS = "Failed to execute process";
-    
+    public static final String PROCESS_TIMED_OUT = "Process was killed after it timed out";
+
+    /** Executor of the runners that are not given one **/
+    private static final ProcessExecutor DEFAULT_EXECUTOR = new ProcessExecutor(Runtime.getRuntime().availableProcessors(), 0);
+
     private final Logger log = LoggerFactory.getLogger(ProcessRunner.class);
 
-    /** Working Directory in my to place the output and error files. Current user folder is default. **/
+    /** Working Directory of the process. Current user folder is default. **/
     private File workingDirectory = new File(".");
+    private ProcessExecutor executor = DEFAULT_EXECUTOR;
 
     public ProcessRunner() {}
 
@@ -58,6 +67,11 @@ public class ProcessRunner {
         this.workingDirectory = workingDirectory;
     }
 
+    public ProcessRunner(File workingDirectory, ProcessExecutor executor) {
+        this.workingDirectory = workingDirectory;
+        this.executor = executor == null ? DEFAULT_EXECUTOR : executor;
+    }
+
     /** @return True if this is executed on Windows OS **/
     public boolean isWindows() {
         String OS = System.getProperty(OS_NAME, GENERIC).toLowerCase(Locale.ENGLISH);
@@ -68,47 +82,29 @@ public class ProcessRunner {
      * Executes an External Process and waits for it to conclude
      * @param command List of strings where the first is the command followed by none or more arguments
      * @return Process Context of the Execution
-     * @throws ExternalProcessException If the Execution failed because the output / error files could not be created
-     *                                  or the External Process threw an IO Exception. This is not thrown when
-     *                                  the External Process exists with an error
+     * @throws ExternalProcessException If the Execution failed because there was no free process slot in time,
+     *                                  the External Process threw an IO Exception or it timed out. This is not
+     *                                  thrown when the External Process exists with an error
      */
     public ProcessContext execute(List<String> command)
         throws ExternalProcessException
     {
         log.trace("Execute Command: '{}'", command);
-        Path dir = null;
+        Result result;
         try {
-            dir = Files.createTempDirectory(null);
-        } catch(IOException e) {
-            throw new ExternalProcessException("Failed to create temporary directory to catch output", e);
-        }
-
-        final File output = dir.resolve("output.txt").toFile();
-        output.deleteOnExit();
-        final File error = dir.resolve("error.txt").toFile();
-        error.deleteOnExit();
-        log.trace("Output File: '{}', Error File: '{}'", output.getPath(), error.getPath());
-        ProcessContextReader answer = new ProcessContextReader().setOutputFile(output).setErrorFile(error);
-
-        final ProcessBuilder pb = new ProcessBuilder(command);
-        pb.directory(workingDirectory);
-        pb.redirectOutput(Redirect.to(output));
-        pb.redirectError(Redirect.to(error));
-
-        int exitCode = ProcessContext.NO_EXIT_CODE;
-        try {
-            final Process p = pb.start();
-            try {
-                exitCode = p.waitFor();
-                log.trace("Exit Code: '{}'", exitCode);
-            } catch(final InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            result = executor.execute(command, workingDirectory);
         } catch(IOException e) {
             log.trace("IO Exception", e);
             throw new ExternalProcessException(FAILED_TO_EXECUTE_PROCESS, e).setCommand(command);
         }
-
-        return answer.setExitCode(exitCode);
+        log.trace("Exit Code: '{}', Execution Time: '{}' ms", result.getExitCode(), result.getExecutionTime());
+        ProcessContextTracker answer = new ProcessContextTracker()
+            .setExitCode(result.getExitCode())
+            .setOutput(result.getOutput(UTF_8))
+            .setError(result.getError(UTF_8));
+        if(result.isTimedOut()) {
+            throw new ExternalProcessException(PROCESS_TIMED_OUT).setCommand(command).setProcessContext(answer);
+        }
+        return answer;
     }
 }
@@ -0,0 +1,39 @@
+package com.peregrine.render;
+
+import com.peregrine.render.RenderService.RenderException;
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Keeps the output of internal renderings so that the same resource does not go
+ * through the Sling request pipeline again as long as its content did not change
+ */
+public interface RenderCache {
+
+    /** @return True if renderings are cached at all **/
+    boolean isEnabled();
+
+    /**
+     * Obtains the rendering of the given resource from the cache or renders it and caches the result
+     * @param resource Resource to be rendered
+     * @param selectors Selectors of the rendering request, can be null
+     * @param extension Extension of the rendering request
+     * @param renderer Renders the resource if there is no cached rendering
+     * @return Byte Array of the rendered resource
+     * @throws RenderException If the rendering failed
+     */
+    byte[] get(Resource resource, String selectors, String extension, Renderer renderer) throws RenderException;
+
+    /**
+     * Removes all renderings that might depend on the resource with the given path
+     * @param path Path of a changed resource
+     */
+    void invalidate(String path);
+
+    /** Removes all cached renderings **/
+    void clear();
+
+    @FunctionalInterface
+    interface Renderer {
+        byte[] render() throws RenderException;
+    }
+}
@@ -0,0 +1,292 @@
+package com.peregrine.render;
+
+import com.peregrine.render.RenderService.RenderException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.Designate;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.peregrine.commons.util.PerConstants.CONTENT_ROOT;
+import static com.peregrine.commons.util.PerConstants.JCR_CONTENT;
+import static com.peregrine.commons.util.PerConstants.JCR_LAST_MODIFIED;
+import static com.peregrine.commons.util.PerConstants.PER_REPLICATED;
+import static com.peregrine.commons.util.PerConstants.PER_REPLICATED_BY;
+import static com.peregrine.commons.util.PerConstants.PER_REPLICATION_REF;
+import static com.peregrine.commons.util.PerConstants.SLASH;
+import static com.peregrine.commons.util.PerConstants.TEMPLATE;
+import static com.peregrine.commons.util.PerUtil.EQUALS;
+import static com.peregrine.commons.util.PerUtil.RENDITIONS;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static org.apache.sling.api.resource.observation.ResourceChange.ChangeType.CHANGED;
+
+/**
+ * Size bounded, least recently used cache of internal renderings.
+ *
+ * A rendering is looked up by path, selectors, extension, user and the last modification
+ * of the resource and its template. A change below /content/&lt;tenant&gt; drops the renderings
+ * of the changed page, its ancestors (which list their children) and its descendants. Any other
+ * observed change (components in /apps) drops all renderings.
+ *
+ * Renditions and the replication properties written while a tenant is replicated do not change
+ * any rendering and are ignored so that a replication run can reuse the cached renderings.
+ */
+@Component(
+    service = { RenderCache.class, ResourceChangeListener.class, RenderCacheImplMBean.class },
+    immediate = true,
+    property = RenderCacheImpl.JMX_OBJECT_NAME + EQUALS + "com.peregrine.render:type=RenderCache"
+)
+@Designate(ocd = RenderCacheImplConfig.class)
+public final class RenderCacheImpl
+    implements RenderCache, ResourceChangeListener, RenderCacheImplMBean
+{
+    static final String JMX_OBJECT_NAME = "jmx.objectname";
+
+    private static final String KEY_SEPARATOR = "|";
+    private static final String CONTENT_PREFIX = CONTENT_ROOT + SLASH;
+    private static final String CONTENT_NODE = SLASH + JCR_CONTENT;
+    private static final String RENDITIONS_NODE = SLASH + RENDITIONS;
+    private static final String JCR_MIXIN_TYPES = "jcr:mixinTypes";
+    private static final Set<String> REPLICATION_PROPERTIES = new HashSet<>(Arrays.asList(
+        PER_REPLICATED, PER_REPLICATED_BY, PER_REPLICATION_REF, JCR_MIXIN_TYPES
+    ));
+
+    private final Map<String, CachedRendering> renderings = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    private boolean enabled;
+    private long maxSize;
+    private long maxEntrySize;
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Activate
+    @Modified
+    public void activate(final RenderCacheImplConfig config) {
+        synchronized (this) {
+            enabled = config.enabled() && config.maxSize() > 0;
+            maxSize = config.maxSize();
+            maxEntrySize = Math.min(config.maxEntrySize(), maxSize);
+        }
+
+        clear();
+    }
+
+    @Deactivate
+    public void deactivate() {
+        clear();
+    }
+
+    @Override
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public byte[] get(final Resource resource, final String selectors, final String extension, final Renderer renderer)
+            throws RenderException {
+        final String key = getKey(resource, selectors, extension);
+        final long currentGeneration;
+        synchronized (this) {
+            final CachedRendering cached = renderings.get(key);
+            if (nonNull(cached)) {
+                hits.incrementAndGet();
+                return cached.content.clone();
+            }
+
+            currentGeneration = generation;
+        }
+
+        misses.incrementAndGet();
+        final byte[] result = renderer.render();
+        if (nonNull(result)) {
+            put(key, new CachedRendering(resource.getPath(), result.clone()), currentGeneration);
+        }
+
+        return result;
+    }
+
+    private synchronized void put(final String key, final CachedRendering rendering, final long renderGeneration) {
+        // content rendered before an invalidation might already be stale
+        if (renderGeneration != generation || rendering.content.length > maxEntrySize) {
+            return;
+        }
+
+        final CachedRendering previous = renderings.put(key, rendering);
+        size += rendering.content.length;
+        if (nonNull(previous)) {
+            size -= previous.content.length;
+        }
+
+        final Iterator<CachedRendering> iterator = renderings.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().content.length;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static String getKey(final Resource resource, final String selectors, final String extension) {
+        final ResourceResolver resourceResolver = resource.getResourceResolver();
+        final StringBuilder key = new StringBuilder(resource.getPath())
+            .append(KEY_SEPARATOR).append(isNull(selectors) ? "" : selectors)
+            .append(KEY_SEPARATOR).append(extension)
+            .append(KEY_SEPARATOR).append(isNull(resourceResolver) ? null : resourceResolver.getUserID());
+        final Resource content = getContent(resource);
+        key.append(KEY_SEPARATOR).append(getLastModified(content));
+        final String templatePath = content.getValueMap().get(TEMPLATE, String.class);
+        if (nonNull(templatePath) && nonNull(resourceResolver)) {
+            final Resource template = resourceResolver.getResource(templatePath);
+            key.append(KEY_SEPARATOR).append(templatePath)
+                .append(KEY_SEPARATOR).append(isNull(template) ? 0 : getLastModified(getContent(template)));
+        }
+
+        return key.toString();
+    }
+
+    private static Resource getContent(final Resource resource) {
+        final Resource content = resource.getChild(JCR_CONTENT);
+        return isNull(content) ? resource : content;
+    }
+
+    private static long getLastModified(final Resource resource) {
+        final Calendar lastModified = resource.getValueMap().get(JCR_LAST_MODIFIED, Calendar.class);
+        return isNull(lastModified) ? 0 : lastModified.getTimeInMillis();
+    }
+
+    @Override
+    public void invalidate(final String path) {
+        if (!path.startsWith(CONTENT_PREFIX)) {
+            clear();
+            return;
+        }
+
+        // a change of a page's content (or of the content node itself) belongs to the page
+        final int end = (path + SLASH).indexOf(CONTENT_NODE + SLASH);
+        final String pagePath = end < 0 ? path : path.substring(0, end);
+        final String prefix = pagePath + SLASH;
+        synchronized (this) {
+            generation++;
+            final Iterator<CachedRendering> iterator = renderings.values().iterator();
+            while (iterator.hasNext()) {
+                final CachedRendering rendering = iterator.next();
+                if (rendering.path.equals(pagePath)
+                        || rendering.path.startsWith(prefix)
+                        || prefix.startsWith(rendering.path + SLASH)) {
+                    size -= rendering.content.length;
+                    iterator.remove();
+                }
+            }
+        }
+
+        invalidations.incrementAndGet();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this) {
+            generation++;
+            renderings.clear();
+            size = 0;
+        }
+
+        invalidations.incrementAndGet();
+    }
+
+    @Override
+    public void onChange(final List<ResourceChange> changes) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        for (final ResourceChange change : changes) {
+            if (!isRendition(change.getPath()) && !isReplicationUpdate(change)) {
+                invalidate(change.getPath());
+            }
+        }
+    }
+
+    /** Renditions are derived from their asset and are (re)created when an asset is replicated **/
+    private static boolean isRendition(final String path) {
+        return path.endsWith(RENDITIONS_NODE) || path.contains(RENDITIONS_NODE + SLASH);
+    }
+
+    /** Replication marks the replicated resources which does not change their rendering **/
+    @SuppressWarnings("deprecation")
+    private static boolean isReplicationUpdate(final ResourceChange change) {
+        if (change.getType() != CHANGED) {
+            return false;
+        }
+
+        final Set<String> added = change.getAddedPropertyNames();
+        final Set<String> changed = change.getChangedPropertyNames();
+        final Set<String> removed = change.getRemovedPropertyNames();
+        if (isNull(added) || isNull(changed) || isNull(removed)
+                || added.isEmpty() && changed.isEmpty() && removed.isEmpty()) {
+            return false;
+        }
+
+        return REPLICATION_PROPERTIES.containsAll(added)
+            && REPLICATION_PROPERTIES.containsAll(changed)
+            && REPLICATION_PROPERTIES.containsAll(removed);
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return renderings.size();
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return size;
+    }
+
+    private static final class CachedRendering {
+
+        private final String path;
+        private final byte[] content;
+
+        private CachedRendering(final String path, final byte[] content) {
+            this.path = path;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.peregrine.render;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+@ObjectClassDefinition(name = "%config.name", description = "%config.description")
+public @interface RenderCacheImplConfig {
+
+    @AttributeDefinition(name = "%enabled.name", description = "%enabled.description")
+    boolean enabled() default true;
+
+    @AttributeDefinition(name = "%maxSize.name", description = "%maxSize.description")
+    long maxSize() default 67108864;
+
+    @AttributeDefinition(name = "%maxEntrySize.name", description = "%maxEntrySize.description")
+    long maxEntrySize() default 4194304;
+
+    @AttributeDefinition(name = "%paths.name", description = "%paths.description")
+    String[] resource_paths() default { "/content", "/apps" };
+
+    @AttributeDefinition(name = "%changes.name", description = "%changes.description")
+    String[] resource_change_types() default { "ADDED", "CHANGED", "REMOVED" };
+
+}
@@ -0,0 +1,19 @@
+package com.peregrine.render;
+
+public interface RenderCacheImplMBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+
+    long getInvalidationCount();
+
+    int getEntryCount();
+
+    long getSize();
+
+    void clear();
+
+}
@@ -2,6 +2,8 @@ package com.peregrine.render;
 
 import org.apache.sling.api.resource.Resource;
 
+import java.io.OutputStream;
+
 public interface RenderService {
 
     /**
@@ -17,11 +19,22 @@ public interface RenderService {
      * Renders the given resource inside this sling instance and returns its byte stream
      * @param resource Resource to be rendered
      * @param extension Extension of the rendering request
-     * @return String content of the rendered resource
+     * @return String content of the rendered resource, decoded as UTF-8
      * @throws RenderException If the rendering failed
      */
     public String renderInternally(Resource resource, String extension) throws RenderException;
 
+    /**
+     * Renders the given resource inside this sling instance and writes it into the given stream
+     * without buffering the entire rendering. The stream is not closed.
+     * @param resource Resource to be rendered
+     * @param extension Extension of the rendering request
+     * @param outputStream Stream the rendering is written to. If the rendering fails it might
+     *                     have received a part of the rendering
+     * @throws RenderException If the rendering failed
+     */
+    public void renderInternally(Resource resource, String extension, OutputStream outputStream) throws RenderException;
+
     public static class RenderException
         extends Exception
     {
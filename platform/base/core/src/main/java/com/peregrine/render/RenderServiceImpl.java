@@ -4,10 +4,17 @@ import com.peregrine.intra.IntraSlingCaller;
 import org.apache.sling.api.resource.Resource;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
 /**
  * This class calls a resource internally and
- * returns the rendered response
+ * returns the rendered response. If a Render Cache
+ * is available renderings are taken from there
  */
 @Component(
     service = RenderService.class,
@@ -17,11 +24,15 @@ public class RenderServiceImpl
     implements RenderService
 {
     private static final String FAILED_TO_RENDER_RESOURCE = "Failed to render resource: ";
+    private static final String FAILED_TO_WRITE_RENDERING = "Failed to write rendering of resource: ";
 
     @Reference
     @SuppressWarnings("unused")
     private IntraSlingCaller intraSlingCaller;
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    private volatile RenderCache renderCache;
+
     public byte[] renderRawInternally(Resource resource, String extension) throws RenderException {
         byte[] response = renderResource0(resource, extension);
         return response;
@@ -29,19 +40,46 @@ public class RenderServiceImpl
 
     public String renderInternally(Resource resource, String extension) throws RenderException {
         byte[] response = renderResource0(resource, extension);
-        return new String(response);
+        return new String(response, StandardCharsets.UTF_8);
+    }
+
+    public void renderInternally(Resource resource, String extension, OutputStream outputStream) throws RenderException {
+        RenderCache cache = renderCache;
+        if(cache != null && cache.isEnabled()) {
+            try {
+                outputStream.write(renderResource0(resource, extension));
+            } catch(IOException e) {
+                throw new RenderException(FAILED_TO_WRITE_RENDERING + resource.getPath(), e);
+            }
+        } else {
+            try {
+                intraSlingCaller.call(createContext(resource, extension), outputStream);
+            } catch(IntraSlingCaller.CallException e) {
+                throw new RenderException(FAILED_TO_RENDER_RESOURCE + e.getMessage(), e);
+            }
+        }
     }
 
     private byte[] renderResource0(Resource resource, String extension) throws RenderException {
+        RenderCache cache = renderCache;
+        if(cache != null && cache.isEnabled()) {
+            return cache.get(resource, null, extension, () -> callResource(resource, extension));
+        }
+        return callResource(resource, extension);
+    }
+
+    private byte[] callResource(Resource resource, String extension) throws RenderException {
         try {
-            return intraSlingCaller.call(
-                intraSlingCaller.createContext()
-                    .setResourceResolver(resource.getResourceResolver())
-                    .setPath(resource.getPath())
-                    .setExtension(extension)
-            );
+            return intraSlingCaller.call(createContext(resource, extension));
         } catch(IntraSlingCaller.CallException e) {
             throw new RenderException(FAILED_TO_RENDER_RESOURCE + e.getMessage(), e);
         }
     }
+
+    private IntraSlingCaller.CallerContext createContext(Resource resource, String extension) {
+        return intraSlingCaller.createContext()
+            .setResourceResolver(resource.getResourceResolver())
+            .setPath(resource.getPath())
+            .setExtension(extension);
+    }
 }
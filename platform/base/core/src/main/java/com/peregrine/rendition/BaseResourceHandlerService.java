@@ -5,46 +5,87 @@ import com.peregrine.adaption.PerPage;
 import com.peregrine.commons.util.PerConstants;
 import com.peregrine.commons.util.PerUtil;
 import com.peregrine.transform.ImageContext;
-import com.peregrine.transform.ImageTransformation;
 import com.peregrine.transform.ImageTransformation.TransformationException;
 import com.peregrine.transform.ImageTransformationConfiguration;
 import com.peregrine.transform.ImageTransformationConfigurationProvider;
 import com.peregrine.transform.ImageTransformationProvider;
-import com.peregrine.transform.OperationContext;
 import org.apache.sling.api.resource.ModifiableValueMap;
-import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.commons.io.IOUtils;
 import org.apache.sling.commons.mime.MimeTypeService;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.peregrine.commons.util.PerConstants.JCR_CONTENT;
 import static com.peregrine.commons.util.PerConstants.JCR_LAST_MODIFIED;
 import static com.peregrine.commons.util.PerConstants.JCR_LAST_MODIFIED_BY;
 import static com.peregrine.commons.util.PerConstants.PNG_MIME_TYPE;
+import static com.peregrine.commons.util.PerUtil.EQUALS;
 import static com.peregrine.commons.util.PerUtil.getModifiableProperties;
 
 /**
  * Created by Andreas Schaefer on 7/6/17.
+ *
+ * A missing rendition of an asset is only created by one request at a time. Concurrent
+ * requests for the same rendition wait for it and are served with its content.
+ *
+ * The rendition is committed by the caller. Until it can be found in the repository later
+ * requests are served with the created content as well (at most for the Rendition Wait Timeout)
+ * so that a request that comes in before that commit does not create it again.
  */
 @Component(
-    service = BaseResourceHandler.class,
-    immediate = true
+    service = { BaseResourceHandler.class, BaseResourceHandlerServiceMBean.class },
+    immediate = true,
+    property = BaseResourceHandlerService.JMX_OBJECT_NAME + EQUALS + "com.peregrine.rendition:type=BaseResourceHandler"
+)
+@Designate(
+    ocd = BaseResourceHandlerService.Configuration.class
 )
 public class BaseResourceHandlerService
-    implements BaseResourceHandler
+    implements BaseResourceHandler, BaseResourceHandlerServiceMBean
 {
+    @ObjectClassDefinition(
+        name = "Peregrine: Base Resource Handler",
+        description = "Creates missing Renditions of Assets"
+    )
+    public @interface Configuration {
+        @AttributeDefinition(
+            name = "Rendition Wait Timeout",
+            description = "Time in milliseconds a request waits for the same Rendition being created by another request. "
+                + "If it times out the request is served like a failed Rendition creation",
+            min = "1"
+        )
+        long renditionWaitTimeout() default DEFAULT_RENDITION_WAIT_TIMEOUT;
+    }
+
+    static final String JMX_OBJECT_NAME = "jmx.objectname";
+    public static final long DEFAULT_RENDITION_WAIT_TIMEOUT = 30000;
+
     public static final String ETC_FELIBS_ADMIN_IMAGES_BROKEN_IMAGE_SVG = "/content/admin/assets/images/broken-image.svg";
     public static final String NO_ASSET_RESOURCE_PROVIDED = "No Asset Resource provided";
     public static final String NO_RENDITION_NAME_PROVIDED = "No Rendition Name provided";
@@ -62,6 +103,19 @@ public class BaseResourceHandlerService
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    /** Renditions that are currently created or not yet committed by the key of asset path and rendition name **/
+    private final ConcurrentMap<String, RenditionFlight> renditionsInFlight = new ConcurrentHashMap<>();
+    private final AtomicLong createdRenditions = new AtomicLong();
+    private final AtomicLong coalescedWaits = new AtomicLong();
+    private final AtomicLong waitTimeouts = new AtomicLong();
+    private long renditionWaitTimeout = DEFAULT_RENDITION_WAIT_TIMEOUT;
+
+    @Activate
+    @Modified
+    void activate(Configuration configuration) {
+        renditionWaitTimeout = configuration.renditionWaitTimeout();
+    }
+
     @Override
     public ImageContext createRendition(Resource resource, String renditionName, String sourceMimeType) throws HandlerException {
         if(resource == null) {
@@ -89,30 +143,40 @@ public class BaseResourceHandlerService
         List<ImageTransformationConfiguration> imageTransformationConfigurationList =
             imageTransformationConfigurationProvider.getImageTransformationConfigurations(renditionName, resource.getPath());
         if(imageTransformationConfigurationList != null) {
-            InputStream assetRenditionStream = asset.getRenditionStream(renditionName);
-            if(assetRenditionStream != null) {
-                answer = new ImageContext(sourceMimeType, targetMimeType, assetRenditionStream);
-            }
+            String key = resource.getPath() + '/' + renditionName;
+            answer = getExistingRendition(asset, key, renditionName, sourceMimeType, targetMimeType);
             logger.trace("Existing Image Rendition Context: '{}'", answer);
             if(answer == null) {
-                try {
-                    InputStream sourceStream = asset.getRenditionStream((Resource) null);
-                    if(sourceStream != null) {
-                        answer = transform(renditionName, sourceMimeType, sourceStream, targetMimeType, imageTransformationConfigurationList);
-                        asset.addRendition(renditionName, answer.getImageStream(), targetMimeType);
-                        updateModification(asset.getResource());
-                        answer.resetImageStream(asset.getRenditionStream(renditionName));
-                    } else {
-                        logger.error("Resource: '{}' does not contain a data element", resource.getName());
+                RenditionFlight flight = new RenditionFlight();
+                RenditionFlight otherFlight;
+                while((otherFlight = renditionsInFlight.putIfAbsent(key, flight)) != null && otherFlight.isExpired(renditionWaitTimeout)) {
+                    renditionsInFlight.remove(key, otherFlight);
+                }
+                if(otherFlight == null) {
+                    CreatedRendition createdRendition = null;
+                    try {
+                        // The rendition might have been committed right after the first look
+                        answer = getExistingRendition(asset, key, renditionName, sourceMimeType, targetMimeType);
+                        if(answer == null) {
+                            removeExpiredFlights();
+                            createdRendition = createRendition(asset, renditionName, sourceMimeType, targetMimeType, imageTransformationConfigurationList);
+                            answer = createdRendition == null ? null : createdRendition.toImageContext();
+                            logger.trace("Newly Created Image Rendition Context: '{}'", answer);
+                        }
+                    } finally {
+                        if(createdRendition == null) {
+                            renditionsInFlight.remove(key, flight);
+                        }
+                        flight.complete(createdRendition);
+                    }
+                } else {
+                    answer = awaitRendition(key, otherFlight);
+                    if(answer == null) {
+                        // Either the creation failed or the rendition was found in the repository in the meantime
+                        answer = getExistingRendition(asset, key, renditionName, sourceMimeType, targetMimeType);
                     }
-                } catch(TransformationException e) {
-                    logger.error("Transformation failed, image ignored", e);
-                } catch(RepositoryException e) {
-                    logger.error("Failed to create Rendition Node for Resource: '{}', rendition name: '{}'", resource, renditionName);
-                } catch(PersistenceException e) {
-                    logger.error("Failed to save Rendition Node for Resource: '{}', rendition name: '{}'", resource, renditionName);
+                    logger.trace("Image Rendition Context created by another Request: '{}'", answer);
                 }
-                logger.trace("Newly Created Image Rendition Context: '{}'", answer);
             }
             if(answer == null) {
                 // Rendition was not found and could not be created therefore load and thumbnail the broken image
@@ -135,6 +199,101 @@ public class BaseResourceHandlerService
         return answer;
     }
 
+    /** @return Image Context of the rendition stored in the repository or null if there is none **/
+    private ImageContext getExistingRendition(PerAsset asset, String key, String renditionName, String sourceMimeType, String targetMimeType) {
+        InputStream assetRenditionStream = asset.getRenditionStream(renditionName);
+        if(assetRenditionStream == null) {
+            return null;
+        }
+        // Once a rendition is visible its created content is not needed anymore
+        if(!renditionsInFlight.isEmpty()) {
+            RenditionFlight flight = renditionsInFlight.get(key);
+            if(flight != null && flight.isDone()) {
+                renditionsInFlight.remove(key, flight);
+            }
+        }
+        return new ImageContext(sourceMimeType, targetMimeType, assetRenditionStream);
+    }
+
+    private void removeExpiredFlights() {
+        renditionsInFlight.values().removeIf(flight -> flight.isExpired(renditionWaitTimeout));
+    }
+
+    /**
+     * Transforms the source of the asset into the rendition and adds it to the asset.
+     * The caller has to commit the rendition.
+     * @return Created Rendition or null if it could not be created
+     */
+    private CreatedRendition createRendition(
+        PerAsset asset, String renditionName, String sourceMimeType, String targetMimeType,
+        List<ImageTransformationConfiguration> imageTransformationConfigurationList
+    ) {
+        CreatedRendition answer = null;
+        try {
+            InputStream sourceStream = asset.getRenditionStream((Resource) null);
+            if(sourceStream != null) {
+                ImageContext imageContext = transform(renditionName, sourceMimeType, sourceStream, targetMimeType, imageTransformationConfigurationList);
+                byte[] data;
+                try(InputStream imageStream = imageContext.getImageStream()) {
+                    data = IOUtils.toByteArray(imageStream);
+                }
+                answer = new CreatedRendition(imageContext.getTargetMimeType(), data);
+                asset.addRendition(renditionName, new ByteArrayInputStream(data), targetMimeType);
+                updateModification(asset.getResource());
+                createdRenditions.incrementAndGet();
+            } else {
+                logger.error("Resource: '{}' does not contain a data element", asset.getName());
+            }
+        } catch(TransformationException e) {
+            logger.error("Transformation failed, image ignored", e);
+        } catch(IOException e) {
+            logger.error("Failed to read the transformed Rendition of Resource: '{}', rendition name: '{}'", asset.getPath(), renditionName, e);
+        } catch(RepositoryException e) {
+            logger.error("Failed to create Rendition Node for Resource: '{}', rendition name: '{}'", asset.getPath(), renditionName);
+        }
+        return answer;
+    }
+
+    /**
+     * Waits for the rendition that is created by another request
+     * @return Image Context of the Rendition or null if its creation failed or timed out
+     */
+    private ImageContext awaitRendition(String key, RenditionFlight flight) {
+        coalescedWaits.incrementAndGet();
+        try {
+            CreatedRendition createdRendition = flight.rendition.get(renditionWaitTimeout, TimeUnit.MILLISECONDS);
+            return createdRendition == null ? null : createdRendition.toImageContext();
+        } catch(TimeoutException e) {
+            waitTimeouts.incrementAndGet();
+            logger.warn("Timed out waiting for Rendition: '{}' created by another request", key);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException e) {
+            logger.error("Creation of Rendition: '{}' failed", key, e.getCause());
+        }
+        return null;
+    }
+
+    @Override
+    public long getCreatedRenditionsCount() {
+        return createdRenditions.get();
+    }
+
+    @Override
+    public long getCoalescedWaitsCount() {
+        return coalescedWaits.get();
+    }
+
+    @Override
+    public long getWaitTimeoutsCount() {
+        return waitTimeouts.get();
+    }
+
+    @Override
+    public int getRenditionsInFlightCount() {
+        return (int) renditionsInFlight.values().stream().filter(flight -> !flight.isDone()).count();
+    }
+
     /**
      * Takes the given source data streams and transforms it into the desired rendition
      * @param renditionName Name of the Rendition (node name)
@@ -152,16 +311,12 @@ public class BaseResourceHandlerService
         throws TransformationException
     {
         ImageContext imageContext = new ImageContext(sourceMimeType, targetMimeType, sourceStream);
-
-        for(ImageTransformationConfiguration imageTransformationConfiguration : imageTransformationConfigurationList) {
-            ImageTransformation imageTransformation = imageTransformationProvider.getImageTransformation(imageTransformationConfiguration.getTransformationName());
-            //AS TODO: If Image Transformation is not found then throw a Transformation Exception
-            if(imageTransformation != null) {
-                Map<String, String> parameters = imageTransformationConfiguration.getParameters();
-                OperationContext operationContext = new OperationContext(renditionName, parameters);
-                // Disabled Transformations will stop the rendition creation as it does create incomplete or non-renditioned images
-                imageTransformation.transform(imageContext, operationContext);
-            }
+        imageTransformationProvider.transform(renditionName, imageContext, imageTransformationConfigurationList);
+        try {
+            // In-process transformations leave the image decoded until the end of the chain
+            imageContext.encodeImage();
+        } catch(IOException e) {
+            throw new TransformationException("Failed to encode the transformed image as: " + imageContext.getSourceMimeType(), e);
         }
         return imageContext;
     }
@@ -217,4 +372,39 @@ public class BaseResourceHandlerService
             }
         }
     }
+
+    /** Creation of a Rendition that is shared with the requests for the same Rendition **/
+    private static final class RenditionFlight {
+        private final CompletableFuture<CreatedRendition> rendition = new CompletableFuture<>();
+        private volatile long completed = 0;
+
+        private void complete(CreatedRendition createdRendition) {
+            completed = System.currentTimeMillis();
+            rendition.complete(createdRendition);
+        }
+
+        private boolean isDone() {
+            return completed > 0;
+        }
+
+        /** @return True if the rendition was created more than the given time ago and so should be committed by now **/
+        private boolean isExpired(long retention) {
+            return completed > 0 && System.currentTimeMillis() - completed > retention;
+        }
+    }
+
+    /** Content of a created Rendition that is handed to all requests waiting for it **/
+    private static final class CreatedRendition {
+        private final String mimeType;
+        private final byte[] data;
+
+        private CreatedRendition(String mimeType, byte[] data) {
+            this.mimeType = mimeType;
+            this.data = data;
+        }
+
+        private ImageContext toImageContext() {
+            return new ImageContext(mimeType, mimeType, new ByteArrayInputStream(data));
+        }
+    }
 }
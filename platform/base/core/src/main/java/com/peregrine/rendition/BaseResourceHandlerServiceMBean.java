@@ -0,0 +1,13 @@
+package com.peregrine.rendition;
+
+public interface BaseResourceHandlerServiceMBean {
+
+    long getCreatedRenditionsCount();
+
+    long getCoalescedWaitsCount();
+
+    long getWaitTimeoutsCount();
+
+    int getRenditionsInFlightCount();
+
+}
@@ -27,6 +27,7 @@ package com.peregrine.replication;
 
 import org.apache.sling.api.resource.Resource;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -70,4 +71,18 @@ public interface ReferenceLister {
      *         available on the target side
      */
     List<Resource> getReferenceList(boolean transitive, Resource resource, boolean deep, Resource source, Resource target);
+
+    /**
+     * Provides a list of resources referenced directly or indirectly by
+     * any of the given resources. The traversal is shared between the given
+     * resources so a reference used by many of them is only looked at once
+     *
+     * @param transitive If true then it will also look for references in the references
+     * @param resources Resources that start the references
+     * @param deep If true it will also look for references in the children (beside JCR Content)
+     * @param source Optional root reference. If source and target are provided then missing parents are added as well
+     * @param target Optional target reference
+     * @return List of resources referenced by any of the given resources, each of them only once
+     */
+    List<Resource> getReferenceList(boolean transitive, Collection<Resource> resources, boolean deep, Resource source, Resource target);
 }
@@ -25,10 +25,19 @@ package com.peregrine.sitemap;
  * #L%
  */
 
+import java.util.Collection;
+
 public interface CacheBuilder {
 
     void rebuild(String path);
 
+    /**
+     * Schedules a single rebuild for every cached root page affected by any of the given changed paths.
+     *
+     * @return the number of cached root pages scheduled for rebuilding
+     */
+    int rebuild(Collection<String> paths);
+
     void rebuildAll();
 
 }
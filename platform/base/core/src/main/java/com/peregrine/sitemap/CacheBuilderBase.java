@@ -34,8 +34,7 @@ import org.apache.sling.api.resource.ResourceResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Iterator;
-import java.util.Optional;
+import java.util.*;
 
 import static com.peregrine.commons.util.PerConstants.SLASH;
 import static com.peregrine.commons.util.PerConstants.SLING_ORDERED_FOLDER;
@@ -154,15 +153,28 @@ public abstract class CacheBuilderBase implements CacheBuilder {
     protected abstract Resource buildCache(Resource rootPage, Resource cache) throws PersistenceException;
 
     @Override
-    public final void rebuild(final String rootPagePath) {
+    public final void rebuild(final String path) {
+        rebuild(Collections.singleton(path));
+    }
+
+    @Override
+    public final int rebuild(final Collection<String> paths) {
+        final Map<String, Set<String>> changedPathsByRoot = new LinkedHashMap<>();
         try (final ResourceResolver resourceResolver = getServiceResourceResolver()) {
-            String path = rootPagePath;
-            while (isNotBlank(path)) {
-                if (isCached(resourceResolver, path)) {
-                    rebuildImpl(path);
+            final Map<String, Boolean> cachedPaths = new HashMap<>();
+            for (final String changedPath : paths) {
+                String path = changedPath;
+                while (isNotBlank(path)) {
+                    if (cachedPaths.computeIfAbsent(path, p -> isCached(resourceResolver, p))) {
+                        changedPathsByRoot.computeIfAbsent(path, p -> new HashSet<>()).add(changedPath);
+                    }
+
+                    path = substringBeforeLast(path, SLASH);
                 }
+            }
 
-                path = substringBeforeLast(path, SLASH);
+            for (final Map.Entry<String, Set<String>> e : changedPathsByRoot.entrySet()) {
+                rebuildImpl(e.getKey(), collapseToAncestors(e.getValue()));
             }
 
             resourceResolver.commit();
@@ -171,6 +183,35 @@ public abstract class CacheBuilderBase implements CacheBuilder {
         } catch (final PersistenceException e) {
             logger.error(COULD_NOT_SAVE_CHANGES_TO_REPOSITORY, e);
         }
+
+        return changedPathsByRoot.size();
+    }
+
+    /**
+     * @return the given paths without those that have an ancestor (or themselves) among the given paths already
+     */
+    protected static Set<String> collapseToAncestors(final Collection<String> paths) {
+        final Set<String> result = new LinkedHashSet<>();
+        for (final String path : new TreeSet<>(paths)) {
+            if (!hasAncestorIn(result, path)) {
+                result.add(path);
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean hasAncestorIn(final Set<String> ancestors, final String path) {
+        String ancestor = substringBeforeLast(path, SLASH);
+        while (isNotBlank(ancestor)) {
+            if (ancestors.contains(ancestor)) {
+                return true;
+            }
+
+            ancestor = substringBeforeLast(ancestor, SLASH);
+        }
+
+        return false;
     }
 
     protected final void cleanRemovedChildren(final ResourceResolver resourceResolver, final String rootPagePath)
@@ -201,6 +242,14 @@ public abstract class CacheBuilderBase implements CacheBuilder {
 
     protected abstract void rebuildImpl(final String rootPagePath);
 
+    /**
+     * Called once per cached root page and batch of changes, with the changed paths already collapsed
+     * to their topmost ancestors.
+     */
+    protected void rebuildImpl(final String rootPagePath, final Collection<String> changedPaths) {
+        rebuildImpl(rootPagePath);
+    }
+
     protected final Resource buildCache(final String rootPagePath) {
         try (final ResourceResolver resourceResolver = getServiceResourceResolver()) {
             cleanRemovedChildren(resourceResolver, rootPagePath);
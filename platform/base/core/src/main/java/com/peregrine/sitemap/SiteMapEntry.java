@@ -4,6 +4,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import static java.util.Objects.isNull;
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -114,6 +115,25 @@ public final class SiteMapEntry {
         return visitor.endVisit(mapName, result);
     }
 
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof SiteMapEntry)) {
+            return false;
+        }
+
+        final SiteMapEntry entry = (SiteMapEntry) obj;
+        return Objects.equals(path, entry.path) && properties.equals(entry.properties);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, properties);
+    }
+
     public interface Visitor<Parameter> {
 
         Parameter visit(String mapName, Map<String, String> properties, Parameter parameter);
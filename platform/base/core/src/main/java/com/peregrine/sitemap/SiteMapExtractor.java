@@ -28,6 +28,7 @@ package com.peregrine.sitemap;
 import org.apache.sling.api.resource.Resource;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public interface SiteMapExtractor extends SiteMapUrlBuilder {
 
@@ -37,4 +38,15 @@ public interface SiteMapExtractor extends SiteMapUrlBuilder {
 
     List<SiteMapEntry> extract(Resource root);
 
+    /**
+     * Extracts the entries using the given pool. Sub-trees are traversed in parallel with separate
+     * service resource resolvers, the result has the same order as {@link #extract(Resource)}.
+     */
+    default List<SiteMapEntry> extract(
+            final Resource root,
+            final ForkJoinPool pool,
+            final ResourceResolverFactoryProxy resourceResolverFactory) {
+        return extract(root);
+    }
+
 }
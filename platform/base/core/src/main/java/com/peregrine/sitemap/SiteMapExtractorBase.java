@@ -27,16 +27,26 @@ package com.peregrine.sitemap;
 
 import com.peregrine.commons.Page;
 import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 
 import static java.util.Objects.isNull;
 
 public abstract class SiteMapExtractorBase implements SiteMapExtractor {
 
+    private static final String COULD_NOT_EXTRACT_IN_PARALLEL = "Could not extract Site Map in parallel, falling back to a single thread.";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
     @Override
     public final boolean appliesTo(final Resource root) {
         if (isNull(root)) {
@@ -75,6 +85,28 @@ public abstract class SiteMapExtractorBase implements SiteMapExtractor {
         return result;
     }
 
+    @Override
+    public List<SiteMapEntry> extract(
+            final Resource root,
+            final ForkJoinPool pool,
+            final ResourceResolverFactoryProxy resourceResolverFactory) {
+        if (isNull(pool) || isNull(resourceResolverFactory) || pool.getParallelism() <= 1) {
+            return extract(root);
+        }
+
+        final Map<Thread, ResourceResolver> resourceResolvers = new ConcurrentHashMap<>();
+        try {
+            return pool.invoke(new ExtractTask(root.getPath(), resourceResolverFactory, resourceResolvers));
+        } catch (final ExtractionException e) {
+            logger.error(COULD_NOT_EXTRACT_IN_PARALLEL, e.getCause());
+            return extract(root);
+        } finally {
+            for (final ResourceResolver resourceResolver : resourceResolvers.values()) {
+                resourceResolver.close();
+            }
+        }
+    }
+
     private boolean isPage(final Page page) {
         final PageRecognizer recognizer = getConfiguration().getPageRecognizer();
         return isNull(recognizer) || recognizer.isPage(page);
@@ -152,4 +184,73 @@ public abstract class SiteMapExtractorBase implements SiteMapExtractor {
         return getUrlBuilder().getIndex(request);
     }
 
+    /**
+     * Extracts the entries of a single page and forks a sub-task for each of its child pages. Resources are not
+     * shared between threads: each worker thread reads the repository through its own service resource resolver
+     * and the tasks only pass paths around. Child results are joined in the order of the children, so the result
+     * is the same as the one of the single threaded traversal.
+     */
+    private final class ExtractTask extends RecursiveTask<List<SiteMapEntry>> {
+
+        private final String path;
+        private final ResourceResolverFactoryProxy resourceResolverFactory;
+        private final Map<Thread, ResourceResolver> resourceResolvers;
+
+        private ExtractTask(
+                final String path,
+                final ResourceResolverFactoryProxy resourceResolverFactory,
+                final Map<Thread, ResourceResolver> resourceResolvers) {
+            this.path = path;
+            this.resourceResolverFactory = resourceResolverFactory;
+            this.resourceResolvers = resourceResolvers;
+        }
+
+        @Override
+        protected List<SiteMapEntry> compute() {
+            final Resource resource = getResourceResolver().getResource(path);
+            if (isNull(resource)) {
+                return Collections.emptyList();
+            }
+
+            final List<SiteMapEntry> result = new ArrayList<>();
+            final Page root = new Page(resource);
+            if (isPage(root)) {
+                result.add(createEntry(root));
+            }
+
+            final List<ExtractTask> tasks = new ArrayList<>();
+            for (final Resource child : root.getChildren()) {
+                if (isPage(new Page(child))) {
+                    tasks.add(new ExtractTask(child.getPath(), resourceResolverFactory, resourceResolvers));
+                }
+            }
+
+            invokeAll(tasks);
+            for (final ExtractTask task : tasks) {
+                result.addAll(task.join());
+            }
+
+            return result;
+        }
+
+        private ResourceResolver getResourceResolver() {
+            return resourceResolvers.computeIfAbsent(Thread.currentThread(), thread -> {
+                try {
+                    return resourceResolverFactory.getServiceResourceResolver();
+                } catch (final LoginException e) {
+                    throw new ExtractionException(e);
+                }
+            });
+        }
+
+    }
+
+    private static final class ExtractionException extends RuntimeException {
+
+        private ExtractionException(final Throwable cause) {
+            super(cause);
+        }
+
+    }
+
 }
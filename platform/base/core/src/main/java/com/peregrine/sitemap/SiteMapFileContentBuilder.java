@@ -27,6 +27,8 @@ package com.peregrine.sitemap;
 
 import org.apache.sling.api.resource.Resource;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -37,6 +39,14 @@ public interface SiteMapFileContentBuilder {
 
     String buildSiteMapIndex(Resource siteMapRoot, SiteMapUrlBuilder urlBuilder, List<? extends List<SiteMapEntry>> splitEntries);
 
+    void writeUrlSet(Collection<SiteMapEntry> entries, Map<String, String> xmlns, OutputStream out) throws IOException;
+
+    void writeSiteMapIndex(
+            Resource siteMapRoot,
+            SiteMapUrlBuilder urlBuilder,
+            List<? extends List<SiteMapEntry>> splitEntries,
+            OutputStream out) throws IOException;
+
     int getSize(SiteMapEntry entry);
 
     int getBaseSiteMapLength();
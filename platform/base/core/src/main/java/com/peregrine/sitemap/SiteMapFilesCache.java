@@ -27,8 +27,25 @@ package com.peregrine.sitemap;
 
 import org.apache.sling.api.resource.Resource;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
 public interface SiteMapFilesCache extends CacheBuilder {
 
     String get(Resource rootPage, int index);
 
+    /**
+     * Writes the UTF-8 encoded site map file with the given index to the given stream.
+     *
+     * @return false if there is no such site map file, in which case nothing was written
+     */
+    boolean write(Resource rootPage, int index, OutputStream out) throws IOException;
+
+    /**
+     * @return the gzip compressed site map file stored on disk or null if the disk storage is disabled
+     * or the file does not exist
+     */
+    File getCompressedFile(Resource rootPage, int index);
+
 }
@@ -0,0 +1,136 @@
+package com.peregrine.sitemap;
+
+/*-
+ * #%L
+ * platform base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre-encoded site map file together with the validators used to answer conditional requests.
+ */
+public final class SiteMapResponse {
+
+    public static final String ETAG = "ETag";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final String QUOTE = "\"";
+    private static final String WEAK_PREFIX = "W/";
+    private static final String ANY = "*";
+    private static final String COMMA = ",";
+
+    private final byte[] content;
+    private final String eTag;
+    private final long lastModified;
+
+    public SiteMapResponse(final byte[] content) {
+        this.content = content;
+        eTag = QUOTE + digest(content) + QUOTE;
+        lastModified = truncateToSeconds(System.currentTimeMillis());
+    }
+
+    private static String digest(final byte[] content) {
+        try {
+            final byte[] digest = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(content);
+            return new BigInteger(1, digest).toString(16);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long truncateToSeconds(final long millis) {
+        return TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(millis));
+    }
+
+    public int getContentLength() {
+        return content.length;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Sets the validator headers and either answers with 304 Not Modified or writes the content.
+     */
+    public void write(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        response.setHeader(ETAG, eTag);
+        response.setDateHeader(LAST_MODIFIED, lastModified);
+        if (isNotModified(request, eTag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentLength(content.length);
+        response.getOutputStream().write(content);
+    }
+
+    /**
+     * Evaluates If-None-Match first and falls back to If-Modified-Since only if the former is absent.
+     *
+     * @param eTag the current entity tag or null if the resource has none
+     */
+    public static boolean isNotModified(final HttpServletRequest request, final String eTag, final long lastModified) {
+        final String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+        if (StringUtils.isNotBlank(ifNoneMatch)) {
+            return eTag != null && matches(ifNoneMatch, eTag);
+        }
+
+        final long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE);
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+
+        return ifModifiedSince >= 0 && truncateToSeconds(lastModified) <= ifModifiedSince;
+    }
+
+    private static boolean matches(final String ifNoneMatch, final String eTag) {
+        for (final String tag : StringUtils.split(ifNoneMatch, COMMA)) {
+            final String trimmed = StringUtils.removeStart(tag.trim(), WEAK_PREFIX);
+            if (ANY.equals(trimmed) || eTag.equals(trimmed)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.peregrine.sitemap;
+
+/*-
+ * #%L
+ * platform base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import org.apache.sling.api.resource.Resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Size bounded in-memory tier in front of {@link SiteMapFilesCache} and {@link SiteMapStructureCache}.
+ * It keeps the encoded bytes of the served site map files (keyed by the root page path and a file key)
+ * so that hot requests do not need to hit the repository. Entries of a root page are dropped as soon
+ * as its structure is refreshed.
+ */
+public interface SiteMapResponseCache {
+
+    /**
+     * @return false if the tier is disabled, in which case the responses should be streamed directly
+     */
+    boolean isEnabled();
+
+    /**
+     * Returns the cached response or renders it using the given writer and keeps the result in memory.
+     *
+     * @return null if the writer reported there is no such file
+     */
+    SiteMapResponse get(Resource rootPage, String key, ContentWriter writer) throws IOException;
+
+    void invalidate(String rootPagePath);
+
+    interface ContentWriter {
+
+        /**
+         * @return false if there is no content to be written
+         */
+        boolean write(OutputStream out) throws IOException;
+
+    }
+
+}
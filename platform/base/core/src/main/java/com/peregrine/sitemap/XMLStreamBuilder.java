@@ -0,0 +1,147 @@
+package com.peregrine.sitemap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Counterpart of {@link XMLBuilder} that writes UTF-8 encoded XML straight to an {@link OutputStream}
+ * instead of keeping the whole document in memory. The produced bytes are identical to the
+ * {@link XMLBuilder#toString()} output of the same sequence of calls.
+ *
+ * I/O failures are reported as {@link UncheckedIOException} so that the builder can be used from
+ * {@link SiteMapEntry.Visitor} implementations.
+ */
+public final class XMLStreamBuilder implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Writer writer;
+    private final Deque<String> stack = new ArrayDeque<>();
+    private boolean startElementPending = false;
+
+    public XMLStreamBuilder(final OutputStream outputStream) {
+        writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        write(XMLBuilder.XML_VERSION);
+    }
+
+    public static int getByteLength(final CharSequence text) {
+        int result = 0;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                result++;
+            } else if (c < 0x800) {
+                result += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                result += 4;
+                i++;
+            } else {
+                result += 3;
+            }
+        }
+
+        return result;
+    }
+
+    public XMLStreamBuilder startElement(final String name, final Map<String, String> attributes) {
+        finishPendingStartElement();
+        stack.push(name);
+        write("<");
+        write(name);
+        for (final Map.Entry<String, String> e : attributes.entrySet()) {
+            write(" ");
+            write(e.getKey());
+            write("=\"");
+            write(e.getValue());
+            write("\"");
+        }
+
+        startElementPending = true;
+        return this;
+    }
+
+    public XMLStreamBuilder startElement(final String name) {
+        return startElement(name, Collections.emptyMap());
+    }
+
+    public XMLStreamBuilder endElement() {
+        final String name = stack.pop();
+        if (startElementPending) {
+            startElementPending = false;
+            write(" />");
+            return this;
+        }
+
+        write("</");
+        write(name);
+        write(">");
+        return this;
+    }
+
+    public XMLStreamBuilder addElement(final String name, final Map<String, String> attributes, final String text) {
+        startElement(name, attributes);
+        if (StringUtils.isNotEmpty(text)) {
+            finishPendingStartElement();
+            write(text);
+        }
+
+        return endElement();
+    }
+
+    public XMLStreamBuilder addElement(final String name, final String text) {
+        return addElement(name, Collections.emptyMap(), text);
+    }
+
+    public XMLStreamBuilder addElement(final String name) {
+        return addElement(name, (String) null);
+    }
+
+    /**
+     * Ends all the elements still open and flushes the buffered content without closing the underlying stream.
+     */
+    public void finish() {
+        while (!stack.isEmpty()) {
+            endElement();
+        }
+
+        try {
+            writer.flush();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void finishPendingStartElement() {
+        if (startElementPending) {
+            startElementPending = false;
+            write(">");
+        }
+    }
+
+    private void write(final String text) {
+        try {
+            writer.write(text);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -27,6 +27,8 @@ package com.peregrine.sitemap.impl;
 
 import com.peregrine.sitemap.SiteMapConstants;
 import com.peregrine.sitemap.SiteMapEntry;
+import com.peregrine.sitemap.SiteMapResponse;
+import com.peregrine.sitemap.SiteMapResponseCache;
 import com.peregrine.sitemap.SiteMapStructureCache;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
@@ -39,7 +41,10 @@ import org.osgi.service.component.annotations.Reference;
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static com.peregrine.commons.util.PerConstants.*;
@@ -64,13 +69,30 @@ import static org.osgi.framework.Constants.SERVICE_VENDOR;
 public final class ApacheRewriteMapServlet extends SlingAllMethodsServlet {
 
     private static final String PROTOCOLS_DOUBLE_SLASH = ":" + SLASH + SLASH;
+    private static final String RESPONSE_KEY = SiteMapConstants.SITE_MAP + "." + SiteMapConstants.TXT;
 
     @Reference
     private SiteMapStructureCache structure;
 
+    @Reference
+    private SiteMapResponseCache responseCache;
+
     @Override
     protected void doGet(final SlingHttpServletRequest request, final SlingHttpServletResponse response) throws IOException {
         final Resource resource = request.getResource();
+        if (responseCache.isEnabled()) {
+            final SiteMapResponse cached = responseCache.get(resource, RESPONSE_KEY, out -> write(resource, out));
+            if (isNull(cached)) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            response.setContentType(TEXT_MIME_TYPE);
+            response.setCharacterEncoding(UTF_8);
+            cached.write(request, response);
+            return;
+        }
+
         final List<SiteMapEntry> entries = structure.get(resource);
         if (isNull(entries)) {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
@@ -82,6 +104,18 @@ public final class ApacheRewriteMapServlet extends SlingAllMethodsServlet {
         writeRewriteMap(entries, response.getWriter());
     }
 
+    private boolean write(final Resource resource, final OutputStream out) {
+        final List<SiteMapEntry> entries = structure.get(resource);
+        if (isNull(entries)) {
+            return false;
+        }
+
+        final PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeRewriteMap(entries, writer);
+        writer.flush();
+        return true;
+    }
+
     private void writeRewriteMap(final List<SiteMapEntry> entries, final PrintWriter target) {
         for (final SiteMapEntry entry : entries) {
             target.append(cutUrl(entry.getUrl()));
@@ -29,11 +29,17 @@ import com.peregrine.sitemap.SiteMapEntry;
 import com.peregrine.sitemap.SiteMapFileContentBuilder;
 import com.peregrine.sitemap.SiteMapUrlBuilder;
 import com.peregrine.sitemap.XMLBuilder;
+import com.peregrine.sitemap.XMLStreamBuilder;
 import org.apache.sling.api.resource.Resource;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.metatype.annotations.Designate;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -77,23 +83,42 @@ public final class SiteMapFileContentBuilderImpl implements SiteMapFileContentBu
 
     @Override
     public String buildSiteMapIndex(final Resource root, final SiteMapUrlBuilder urlBuilder, final List<? extends List<SiteMapEntry>> splitEntries) {
-        final XMLBuilder result = new XMLBuilder();
-        result.startElement(SITE_MAP_INDEX, SITE_MAP_INDEX_ATTRIBUTES);
-        int part = 1;
-        for (final List<SiteMapEntry> entries : splitEntries) {
-            final String url = urlBuilder.buildSiteMapUrl(root, part++);
-            result.startElement(SITE_MAP);
-            result.addElement(LOC, url);
-            final String lastModified = getLastModified(entries);
-            if (isNotBlank(lastModified)) {
-                result.addElement(LAST_MOD, lastModified);
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try {
+            writeSiteMapIndex(root, urlBuilder, splitEntries, result);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void writeSiteMapIndex(
+            final Resource root,
+            final SiteMapUrlBuilder urlBuilder,
+            final List<? extends List<SiteMapEntry>> splitEntries,
+            final OutputStream out) throws IOException {
+        final XMLStreamBuilder result = new XMLStreamBuilder(out);
+        try {
+            result.startElement(SITE_MAP_INDEX, SITE_MAP_INDEX_ATTRIBUTES);
+            int part = 1;
+            for (final List<SiteMapEntry> entries : splitEntries) {
+                final String url = urlBuilder.buildSiteMapUrl(root, part++);
+                result.startElement(SITE_MAP);
+                result.addElement(LOC, url);
+                final String lastModified = getLastModified(entries);
+                if (isNotBlank(lastModified)) {
+                    result.addElement(LAST_MOD, lastModified);
+                }
+
+                result.endElement();
             }
 
-            result.endElement();
+            result.finish();
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
         }
-
-        result.endElement();
-        return result.toString();
     }
 
     private String getLastModified(final List<SiteMapEntry> source) {
@@ -128,18 +153,34 @@ public final class SiteMapFileContentBuilderImpl implements SiteMapFileContentBu
 
     @Override
     public String buildUrlSet(final Collection<SiteMapEntry> entries, final Map<String, String> xmlns) {
-        final XMLBuilder result = new XMLBuilder();
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try {
+            writeUrlSet(entries, xmlns, result);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void writeUrlSet(final Collection<SiteMapEntry> entries, final Map<String, String> xmlns, final OutputStream out)
+            throws IOException {
+        final XMLStreamBuilder result = new XMLStreamBuilder(out);
         final Map<String, String> attributes = new HashMap<>(urlSetAttributes);
         attributes.putAll(xmlns);
-        result.startElement(URL_SET, attributes);
-        for (final SiteMapEntry entry : entries) {
-            if (!isEmpty(entry)) {
-                entry.walk(urlSetMapPropertiesVisitor, result, URL);
+        try {
+            result.startElement(URL_SET, attributes);
+            for (final SiteMapEntry entry : entries) {
+                if (!isEmpty(entry)) {
+                    entry.walk(urlSetMapPropertiesVisitor, result, URL);
+                }
             }
-        }
 
-        result.endElement();
-        return result.toString();
+            result.finish();
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     private static final class SiteMapEntrySizeVisitor implements SiteMapEntry.Visitor<Integer> {
@@ -151,7 +192,7 @@ public final class SiteMapFileContentBuilderImpl implements SiteMapFileContentBu
 
         @Override
         public Integer visit(final String propertyName, final String propertyValue, final Integer size) {
-            return size + XMLBuilder.getBasicElementLength(propertyName) + propertyValue.length();
+            return size + XMLBuilder.getBasicElementLength(propertyName) + XMLStreamBuilder.getByteLength(propertyValue);
         }
 
         @Override
@@ -161,20 +202,20 @@ public final class SiteMapFileContentBuilderImpl implements SiteMapFileContentBu
 
     }
 
-    private static final class UrlSetMapPropertiesVisitor implements SiteMapEntry.Visitor<XMLBuilder> {
+    private static final class UrlSetMapPropertiesVisitor implements SiteMapEntry.Visitor<XMLStreamBuilder> {
 
         @Override
-        public XMLBuilder visit(final String mapName, final Map<String, String> properties, final XMLBuilder builder) {
+        public XMLStreamBuilder visit(final String mapName, final Map<String, String> properties, final XMLStreamBuilder builder) {
             return builder.startElement(mapName);
         }
 
         @Override
-        public XMLBuilder visit(final String propertyName, final String propertyValue, final XMLBuilder builder) {
+        public XMLStreamBuilder visit(final String propertyName, final String propertyValue, final XMLStreamBuilder builder) {
             return builder.addElement(propertyName, propertyValue);
         }
 
         @Override
-        public XMLBuilder endVisit(final String mapName, final XMLBuilder builder) {
+        public XMLStreamBuilder endVisit(final String mapName, final XMLStreamBuilder builder) {
             return builder.endElement();
         }
     }
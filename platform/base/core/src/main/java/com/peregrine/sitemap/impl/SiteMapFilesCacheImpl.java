@@ -27,6 +27,7 @@ package com.peregrine.sitemap.impl;
 
 import com.peregrine.commons.ResourceUtils;
 import com.peregrine.sitemap.*;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.*;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -34,8 +35,15 @@ import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.Designate;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.util.Objects.isNull;
 
 @Component(service = SiteMapFilesCache.class)
@@ -44,6 +52,10 @@ public final class SiteMapFilesCacheImpl extends CacheBuilderBase
         implements SiteMapFilesCache, SiteMapStructureCache.RefreshListener {
 
     private static final String MAIN_SITE_MAP_KEY = Integer.toString(0);
+    private static final String COMPRESSED_FILE_PREFIX = "sitemap.";
+    private static final String COMPRESSED_FILE_SUFFIX = ".xml.gz";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String COULD_NOT_SAVE_COMPRESSED_FILES = "Could not save compressed Site Map files.";
 
     @Reference
     private ResourceResolverFactoryProxy resourceResolverFactory;
@@ -57,8 +69,13 @@ public final class SiteMapFilesCacheImpl extends CacheBuilderBase
     @Reference
     private SiteMapFileContentBuilder siteMapBuilder;
 
+    @Reference
+    private SiteMapResponseCache responseCache;
+
     private int maxEntriesCount;
     private int maxFileSize;
+    private boolean storeInRepository;
+    private File diskLocation;
 
     @Activate
     public void activate(final SiteMapFilesCacheImplConfig config) {
@@ -76,6 +93,12 @@ public final class SiteMapFilesCacheImpl extends CacheBuilderBase
             maxFileSize = Integer.MAX_VALUE;
         }
 
+        storeInRepository = config.storeInRepository();
+        diskLocation = Optional.ofNullable(config.diskLocation())
+                .filter(StringUtils::isNotBlank)
+                .map(File::new)
+                .orElse(null);
+
         rebuildAll();
     }
 
@@ -86,6 +109,10 @@ public final class SiteMapFilesCacheImpl extends CacheBuilderBase
 
     @Override
     public String get(final Resource rootPage, final int index) {
+        if (!storeInRepository) {
+            return null;
+        }
+
         final String key = Integer.toString(index);
         try (final ResourceResolver resourceResolver = getServiceResourceResolver()) {
             return Optional.ofNullable(rootPage)
@@ -100,6 +127,80 @@ public final class SiteMapFilesCacheImpl extends CacheBuilderBase
         }
     }
 
+    @Override
+    public boolean write(final Resource rootPage, final int index, final OutputStream out) throws IOException {
+        if (storeInRepository) {
+            final String siteMap = get(rootPage, index);
+            if (StringUtils.isBlank(siteMap)) {
+                return false;
+            }
+
+            out.write(siteMap.getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+
+        if (isNull(rootPage) || !ResourceUtils.exists(rootPage)) {
+            return false;
+        }
+
+        final List<SiteMapEntry> entries = structureCache.get(rootPage);
+        final SiteMapExtractor extractor = siteMapExtractorsContainer.findFirstFor(rootPage);
+        if (isNull(entries) || isNull(extractor)) {
+            return false;
+        }
+
+        return write(rootPage, extractor, splitEntries(entries), index, out);
+    }
+
+    private boolean write(
+            final Resource rootPage,
+            final SiteMapExtractor extractor,
+            final List<List<SiteMapEntry>> splitEntries,
+            final int index,
+            final OutputStream out) throws IOException {
+        final int splitEntriesSize = splitEntries.size();
+        final int entriesIndex;
+        if (splitEntriesSize > 1) {
+            if (index == 0) {
+                siteMapBuilder.writeSiteMapIndex(rootPage, extractor, splitEntries, out);
+                return true;
+            }
+
+            entriesIndex = index - 1;
+        } else {
+            entriesIndex = index;
+        }
+
+        if (entriesIndex < 0 || entriesIndex >= splitEntriesSize) {
+            return false;
+        }
+
+        final SiteMapConfiguration config = extractor.getConfiguration();
+        siteMapBuilder.writeUrlSet(splitEntries.get(entriesIndex), config.getXmlNamespaces(), out);
+        return true;
+    }
+
+    @Override
+    public File getCompressedFile(final Resource rootPage, final int index) {
+        return Optional.ofNullable(rootPage)
+                .map(this::getCompressedFilesDirectory)
+                .map(directory -> getCompressedFile(directory, index))
+                .filter(File::isFile)
+                .orElse(null);
+    }
+
+    private File getCompressedFilesDirectory(final Resource rootPage) {
+        if (isNull(diskLocation)) {
+            return null;
+        }
+
+        return new File(diskLocation, rootPage.getPath());
+    }
+
+    private static File getCompressedFile(final File directory, final int index) {
+        return new File(directory, COMPRESSED_FILE_PREFIX + index + COMPRESSED_FILE_SUFFIX);
+    }
+
     @Override
     protected ResourceResolver getServiceResourceResolver() throws LoginException {
         return resourceResolverFactory.getServiceResourceResolver();
@@ -124,25 +225,77 @@ public final class SiteMapFilesCacheImpl extends CacheBuilderBase
         if (isNull(entries) || isNull(extractor)) {
             final ModifiableValueMap modifiableValueMap = cache.adaptTo(ModifiableValueMap.class);
             removeCachedItemsAboveIndex(modifiableValueMap, 0);
+            removeCompressedFilesAboveIndex(getCompressedFilesDirectory(rootPage), 0);
             return null;
         }
 
-        final ArrayList<String> siteMaps = new ArrayList<>();
-        final LinkedList<List<SiteMapEntry>> splitEntries = splitEntries(entries);
+        final List<List<SiteMapEntry>> splitEntries = splitEntries(entries);
+        if (storeInRepository) {
+            final ArrayList<String> siteMaps = new ArrayList<>();
+            if (splitEntries.size() > 1) {
+                siteMaps.add(siteMapBuilder.buildSiteMapIndex(rootPage, extractor, splitEntries));
+            }
 
-        if (splitEntries.size() > 1) {
-            siteMaps.add(siteMapBuilder.buildSiteMapIndex(rootPage, extractor, splitEntries));
+            for (final List<SiteMapEntry> list : splitEntries) {
+                final SiteMapConfiguration config = extractor.getConfiguration();
+                final String content = siteMapBuilder.buildUrlSet(list, config.getXmlNamespaces());
+                siteMaps.add(content);
+            }
+
+            putSiteMapsInCache(siteMaps, cache);
         }
 
-        for (final List<SiteMapEntry> list : splitEntries) {
-            final SiteMapConfiguration config = extractor.getConfiguration();
-            final String content = siteMapBuilder.buildUrlSet(list, config.getXmlNamespaces());
-            siteMaps.add(content);
+        putCompressedFilesOnDisk(rootPage, extractor, splitEntries);
+        return cache;
+    }
+
+    private void putCompressedFilesOnDisk(
+            final Resource rootPage,
+            final SiteMapExtractor extractor,
+            final List<List<SiteMapEntry>> splitEntries) {
+        final File directory = getCompressedFilesDirectory(rootPage);
+        if (isNull(directory)) {
+            return;
         }
 
-        putSiteMapsInCache(siteMaps, cache);
+        final int splitEntriesSize = splitEntries.size();
+        final int filesCount = splitEntriesSize > 1 ? splitEntriesSize + 1 : splitEntriesSize;
+        try {
+            Files.createDirectories(directory.toPath());
+            for (int i = 0; i < filesCount; i++) {
+                final File file = getCompressedFile(directory, i);
+                final Path temp = Files.createTempFile(directory.toPath(), file.getName(), TEMP_FILE_SUFFIX);
+                try {
+                    try (final OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                        write(rootPage, extractor, splitEntries, i, out);
+                    }
+
+                    Files.move(temp, file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        } catch (final IOException e) {
+            logger.error(COULD_NOT_SAVE_COMPRESSED_FILES, e);
+        }
 
-        return cache;
+        removeCompressedFilesAboveIndex(directory, filesCount);
+    }
+
+    private void removeCompressedFilesAboveIndex(final File directory, final int indexOfStartItem) {
+        if (isNull(directory)) {
+            return;
+        }
+
+        int i = indexOfStartItem;
+        File file = getCompressedFile(directory, i);
+        while (file.isFile()) {
+            if (!file.delete()) {
+                logger.warn("Could not delete compressed Site Map file: {}", file);
+            }
+
+            file = getCompressedFile(directory, ++i);
+        }
     }
 
     private void putSiteMapsInCache(final ArrayList<String> source, final Resource target) {
@@ -164,9 +317,9 @@ public final class SiteMapFilesCacheImpl extends CacheBuilderBase
         }
     }
 
-    private LinkedList<List<SiteMapEntry>> splitEntries(final Collection<SiteMapEntry> entries) {
+    private List<List<SiteMapEntry>> splitEntries(final Collection<SiteMapEntry> entries) {
         final int baseSiteMapLength = siteMapBuilder.getBaseSiteMapLength();
-        final LinkedList<List<SiteMapEntry>> result = new LinkedList<>();
+        final List<List<SiteMapEntry>> result = new ArrayList<>();
         int index = 0;
         int size = baseSiteMapLength;
         List<SiteMapEntry> split = new LinkedList<>();
@@ -191,6 +344,7 @@ public final class SiteMapFilesCacheImpl extends CacheBuilderBase
     @Override
     protected void rebuildImpl(final String rootPagePath) {
         buildCache(rootPagePath);
+        responseCache.invalidate(rootPagePath);
     }
 
     @Override
@@ -199,6 +353,8 @@ public final class SiteMapFilesCacheImpl extends CacheBuilderBase
             final Resource cache = getOrCreateCacheResource(resourceResolver, rootPage);
             buildCache(rootPage, entries, cache);
             resourceResolver.commit();
+            // drop the responses rendered from the previous content while it was being replaced
+            responseCache.invalidate(rootPage.getPath());
         } catch (final LoginException e) {
             logger.error(COULD_NOT_GET_SERVICE_RESOURCE_RESOLVER, e);
         } catch (final PersistenceException e) {
@@ -39,4 +39,10 @@ public @interface SiteMapFilesCacheImplConfig {
 
     @AttributeDefinition(name = "%maxEntriesCount.name", description = "%maxEntriesCount.description")
     int maxEntriesCount() default 50000;
+
+    @AttributeDefinition(name = "%storeInRepository.name", description = "%storeInRepository.description")
+    boolean storeInRepository() default true;
+
+    @AttributeDefinition(name = "%diskLocation.name", description = "%diskLocation.description")
+    String diskLocation() default "";
 }
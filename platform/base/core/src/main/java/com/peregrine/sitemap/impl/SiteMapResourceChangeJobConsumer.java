@@ -43,14 +43,17 @@ import org.slf4j.LoggerFactory;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.peregrine.commons.util.PerConstants.JCR_PRIMARY_TYPE;
 import static com.peregrine.commons.util.PerUtil.EQUALS;
 
-@Component(service = JobConsumer.class, immediate = true, property = {
-        JobConsumer.PROPERTY_TOPICS + EQUALS + SiteMapResourceChangeJobConsumer.TOPIC })
+@Component(service = { JobConsumer.class, SiteMapResourceChangeJobConsumerMBean.class }, immediate = true, property = {
+        JobConsumer.PROPERTY_TOPICS + EQUALS + SiteMapResourceChangeJobConsumer.TOPIC,
+        SiteMapResourceChangeListener.JMX_OBJECT_NAME + EQUALS
+                + "com.peregrine.sitemap:type=SiteMapResourceChangeJobConsumer" })
 @Designate(ocd = SiteMapResourceChangeJobConsumerConfig.class)
-public final class SiteMapResourceChangeJobConsumer implements JobConsumer {
+public final class SiteMapResourceChangeJobConsumer implements JobConsumer, SiteMapResourceChangeJobConsumerMBean {
 
     public static final String TOPIC = "com/peregrine/sitemap/REFRESH_CACHE";
     public static final String PN_PATHS = "paths";
@@ -58,6 +61,9 @@ public final class SiteMapResourceChangeJobConsumer implements JobConsumer {
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final Set<String> primaryTypes = new HashSet<>();
+    private final AtomicLong processedJobsCount = new AtomicLong();
+    private final AtomicLong changedPathsCount = new AtomicLong();
+    private final AtomicLong rebuiltRootPagesCount = new AtomicLong();
 
     @Reference
     private ResourceResolverFactoryProxy resourceResolverFactory;
@@ -81,11 +87,13 @@ public final class SiteMapResourceChangeJobConsumer implements JobConsumer {
     public JobResult process(final Job job) {
         @SuppressWarnings("unchecked")
 		final Set<String> initialPaths = job.getProperty(PN_PATHS, Set.class);
+        final Set<String> paths = new HashSet<>();
         try (final ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver()) {
             for (final String path : initialPaths) {
                 final Resource resource = ResourceUtils.getFirstExistingAncestorOnPath(resourceResolver, path);
                 if (isAllowed(resource)) {
-                    cache.rebuild(resource.getPath());
+                    // pass the original path so that removed pages can be dropped from the cache incrementally
+                    paths.add(path);
                 }
             }
         } catch (final LoginException e) {
@@ -93,6 +101,12 @@ public final class SiteMapResourceChangeJobConsumer implements JobConsumer {
             return JobResult.CANCEL;
         }
 
+        // a single rebuild per affected root page, however many of its descendants have changed
+        final int rebuiltRootPages = paths.isEmpty() ? 0 : cache.rebuild(paths);
+        processedJobsCount.incrementAndGet();
+        changedPathsCount.addAndGet(initialPaths.size());
+        rebuiltRootPagesCount.addAndGet(rebuiltRootPages);
+        logger.debug("Collapsed {} changed paths into {} site map rebuilds.", initialPaths.size(), rebuiltRootPages);
         return JobResult.OK;
     }
 
@@ -104,4 +118,25 @@ public final class SiteMapResourceChangeJobConsumer implements JobConsumer {
                 .orElse(false);
     }
 
+    @Override
+    public long getProcessedJobsCount() {
+        return processedJobsCount.get();
+    }
+
+    @Override
+    public long getChangedPathsCount() {
+        return changedPathsCount.get();
+    }
+
+    @Override
+    public long getRebuiltRootPagesCount() {
+        return rebuiltRootPagesCount.get();
+    }
+
+    @Override
+    public double getCollapseRatio() {
+        final long rebuilt = rebuiltRootPagesCount.get();
+        return rebuilt == 0 ? 0 : (double) changedPathsCount.get() / rebuilt;
+    }
+
 }
@@ -24,33 +24,144 @@ package com.peregrine.sitemap.impl;
  * under the License.
  * #L%
  */
-
+import com.peregrine.commons.concurrent.Callback;
+import com.peregrine.commons.concurrent.DeBouncer;
 import org.apache.sling.api.resource.observation.ResourceChange;
 import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.event.jobs.JobManager;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.Designate;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.peregrine.commons.util.PerUtil.EQUALS;
 
-@Component(service = ResourceChangeListener.class, immediate = true)
+/**
+ * Collects the changed paths of consecutive observation events into a single job. A batch is closed
+ * once no change happens for the batch interval, once it has been open for the max batch interval
+ * or once it reaches the max batch size.
+ */
+@Component(
+        service = { ResourceChangeListener.class, SiteMapResourceChangeListenerMBean.class },
+        immediate = true,
+        property = SiteMapResourceChangeListener.JMX_OBJECT_NAME + EQUALS
+                + "com.peregrine.sitemap:type=SiteMapResourceChangeListener"
+)
 @Designate(ocd = SiteMapResourceChangeListenerConfig.class)
-public final class SiteMapResourceChangeListener implements ResourceChangeListener {
+public final class SiteMapResourceChangeListener
+        implements ResourceChangeListener, SiteMapResourceChangeListenerMBean, Callback<String> {
+
+    static final String JMX_OBJECT_NAME = "jmx.objectname";
+
+    private static final String BATCH_KEY = "batch";
 
     @Reference
     private JobManager jobManager;
 
+    private final Set<String> pendingPaths = new HashSet<>();
+    private final AtomicLong observedChangesCount = new AtomicLong();
+    private final AtomicLong scheduledJobsCount = new AtomicLong();
+
+    private DeBouncer<String> deBouncer;
+    private int maxBatchInterval;
+    private int maxBatchSize;
+    private long batchStart;
+
+    @Activate
+    public void activate(final SiteMapResourceChangeListenerConfig config) {
+        maxBatchInterval = config.maxBatchInterval();
+        maxBatchSize = config.maxBatchSize();
+        if (maxBatchSize <= 0) {
+            maxBatchSize = Integer.MAX_VALUE;
+        }
+
+        deBouncer = new DeBouncer<>(this, config.batchInterval());
+    }
+
+    @Deactivate
+    public void deactivate() {
+        deBouncer.terminate();
+        call(BATCH_KEY);
+    }
+
     @Override
     public void onChange(final List<ResourceChange> changes) {
-        final Set<String> paths = new HashSet<>();
-        for (final ResourceChange change: changes) {
-            paths.add(change.getPath());
+        observedChangesCount.addAndGet(changes.size());
+        final List<Set<String>> batches = new LinkedList<>();
+        final boolean expired;
+        synchronized (pendingPaths) {
+            for (final ResourceChange change : changes) {
+                if (pendingPaths.isEmpty()) {
+                    batchStart = System.currentTimeMillis();
+                }
+
+                pendingPaths.add(change.getPath());
+                if (pendingPaths.size() >= maxBatchSize) {
+                    batches.add(takePendingPaths());
+                }
+            }
+
+            expired = !pendingPaths.isEmpty() && System.currentTimeMillis() - batchStart >= maxBatchInterval;
+            if (expired) {
+                batches.add(takePendingPaths());
+            }
+        }
+
+        for (final Set<String> paths : batches) {
+            addJob(paths);
+        }
+
+        if (!expired) {
+            deBouncer.call(BATCH_KEY);
         }
+    }
+
+    private Set<String> takePendingPaths() {
+        final Set<String> result = new HashSet<>(pendingPaths);
+        pendingPaths.clear();
+        return result;
+    }
+
+    @Override
+    public void call(final String key) {
+        final Set<String> paths;
+        synchronized (pendingPaths) {
+            if (pendingPaths.isEmpty()) {
+                return;
+            }
 
+            paths = takePendingPaths();
+        }
+
+        addJob(paths);
+    }
+
+    private void addJob(final Set<String> paths) {
         final Map<String, Object> props = new HashMap<>();
         props.put(SiteMapResourceChangeJobConsumer.PN_PATHS, paths);
         jobManager.addJob(SiteMapResourceChangeJobConsumer.TOPIC, props);
+        scheduledJobsCount.incrementAndGet();
+    }
+
+    @Override
+    public long getObservedChangesCount() {
+        return observedChangesCount.get();
+    }
+
+    @Override
+    public long getScheduledJobsCount() {
+        return scheduledJobsCount.get();
+    }
+
+    @Override
+    public int getPendingPathsCount() {
+        synchronized (pendingPaths) {
+            return pendingPaths.size();
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -37,4 +37,13 @@ public @interface SiteMapResourceChangeListenerConfig {
     @AttributeDefinition(name = "%changes.name", description = "%changes.description")
     String[] resource_change_types() default { "ADDED", "CHANGED", "REMOVED" };
 
+    @AttributeDefinition(name = "%batchInterval.name", description = "%batchInterval.description")
+    int batchInterval() default 1000;
+
+    @AttributeDefinition(name = "%maxBatchInterval.name", description = "%maxBatchInterval.description")
+    int maxBatchInterval() default 10000;
+
+    @AttributeDefinition(name = "%maxBatchSize.name", description = "%maxBatchSize.description")
+    int maxBatchSize() default 10000;
+
 }
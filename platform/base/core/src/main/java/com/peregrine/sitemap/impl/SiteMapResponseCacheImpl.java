@@ -0,0 +1,144 @@
+package com.peregrine.sitemap.impl;
+
+/*-
+ * #%L
+ * platform base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import com.peregrine.sitemap.SiteMapEntry;
+import com.peregrine.sitemap.SiteMapResponse;
+import com.peregrine.sitemap.SiteMapResponseCache;
+import com.peregrine.sitemap.SiteMapStructureCache;
+import org.apache.sling.api.resource.Resource;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.nonNull;
+
+@Component(service = SiteMapResponseCache.class)
+@Designate(ocd = SiteMapResponseCacheImplConfig.class)
+public final class SiteMapResponseCacheImpl implements SiteMapResponseCache, SiteMapStructureCache.RefreshListener {
+
+    private static final String KEY_SEPARATOR = "|";
+
+    @Reference
+    private SiteMapStructureCache structureCache;
+
+    private final Map<String, SiteMapResponse> responses = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    private long maxSize;
+    private long invalidations = 0;
+
+    @Activate
+    public void activate(final SiteMapResponseCacheImplConfig config) {
+        maxSize = config.maxSize();
+        structureCache.addRefreshListener(this);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        structureCache.removeRefreshListener(this);
+        synchronized (this) {
+            responses.clear();
+            size = 0;
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    @Override
+    public SiteMapResponse get(final Resource rootPage, final String key, final ContentWriter writer)
+            throws IOException {
+        final String cacheKey = rootPage.getPath() + KEY_SEPARATOR + key;
+        final long generation;
+        synchronized (this) {
+            final SiteMapResponse cached = responses.get(cacheKey);
+            if (nonNull(cached)) {
+                return cached;
+            }
+
+            generation = invalidations;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!writer.write(out)) {
+            return null;
+        }
+
+        final SiteMapResponse result = new SiteMapResponse(out.toByteArray());
+        put(cacheKey, result, generation);
+        return result;
+    }
+
+    private synchronized void put(final String cacheKey, final SiteMapResponse response, final long generation) {
+        // content rendered before an invalidation might already be stale
+        if (generation != invalidations || response.getContentLength() > maxSize) {
+            return;
+        }
+
+        final SiteMapResponse previous = responses.put(cacheKey, response);
+        size += response.getContentLength();
+        if (nonNull(previous)) {
+            size -= previous.getContentLength();
+        }
+
+        final Iterator<SiteMapResponse> iterator = responses.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().getContentLength();
+            iterator.remove();
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(final String rootPagePath) {
+        invalidations++;
+        final String prefix = rootPagePath + KEY_SEPARATOR;
+        final Iterator<Map.Entry<String, SiteMapResponse>> iterator = responses.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, SiteMapResponse> e = iterator.next();
+            if (e.getKey().startsWith(prefix)) {
+                size -= e.getValue().getContentLength();
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void onCacheRefreshed(final Resource rootPage, final List<SiteMapEntry> entries) {
+        invalidate(rootPage.getPath());
+    }
+
+}
@@ -28,6 +28,8 @@ package com.peregrine.sitemap.impl;
 import com.peregrine.commons.util.PerConstants;
 import com.peregrine.sitemap.SiteMapConstants;
 import com.peregrine.sitemap.SiteMapFilesCache;
+import com.peregrine.sitemap.SiteMapResponse;
+import com.peregrine.sitemap.SiteMapResponseCache;
 import com.peregrine.sitemap.SiteMapUrlBuilder;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
@@ -38,10 +40,17 @@ import org.osgi.service.component.annotations.Reference;
 
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 import static com.peregrine.commons.util.PerUtil.*;
-import static org.apache.commons.lang3.StringUtils.isBlank;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static org.apache.commons.lang3.StringUtils.containsIgnoreCase;
 import static org.apache.sling.api.servlets.ServletResolverConstants.*;
 import static org.osgi.framework.Constants.SERVICE_DESCRIPTION;
 import static org.osgi.framework.Constants.SERVICE_VENDOR;
@@ -66,18 +75,68 @@ public final class SiteMapServlet extends SlingAllMethodsServlet {
     @Reference
     private SiteMapFilesCache cache;
 
+    @Reference
+    private SiteMapResponseCache responseCache;
+
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String VARY = "Vary";
+    private static final String GZIP = "gzip";
+    private static final String RESPONSE_KEY_PREFIX = SiteMapConstants.SITE_MAP + ".";
+    private static final String RESPONSE_KEY_SUFFIX = "." + SiteMapConstants.XML;
+
     @Override
     protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
         final Resource resource = request.getResource();
         final int index = urlBuilder.getIndex(request);
-        final String string = index >= 0 ? cache.get(resource, index) : null;
-        if (isBlank(string)) {
+        if (index < 0) {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
             return;
         }
 
         response.setContentType(PerConstants.XML_MIME_TYPE);
         response.setCharacterEncoding(PerConstants.UTF_8);
-        response.getWriter().write(string);
+        response.setHeader(VARY, ACCEPT_ENCODING);
+        final File compressedFile = acceptsGzip(request) ? cache.getCompressedFile(resource, index) : null;
+        if (nonNull(compressedFile)) {
+            writeCompressedFile(compressedFile, request, response);
+        } else if (responseCache.isEnabled()) {
+            final String key = RESPONSE_KEY_PREFIX + index + RESPONSE_KEY_SUFFIX;
+            final SiteMapResponse cached = responseCache.get(resource, key, out -> cache.write(resource, index, out));
+            if (isNull(cached)) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            } else {
+                cached.write(request, response);
+            }
+        } else if (!cache.write(resource, index, response.getOutputStream())) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    private static boolean acceptsGzip(final SlingHttpServletRequest request) {
+        return containsIgnoreCase(request.getHeader(ACCEPT_ENCODING), GZIP);
+    }
+
+    private static void writeCompressedFile(
+            final File file,
+            final SlingHttpServletRequest request,
+            final SlingHttpServletResponse response) throws IOException {
+        final long lastModified = file.lastModified();
+        response.setDateHeader(SiteMapResponse.LAST_MODIFIED, lastModified);
+        if (SiteMapResponse.isNotModified(request, null, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        try (final FileChannel channel = new FileInputStream(file).getChannel()) {
+            final long size = channel.size();
+            response.setHeader(CONTENT_ENCODING, GZIP);
+            response.setContentLengthLong(size);
+            final WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+        }
     }
 }
@@ -25,9 +25,11 @@ package com.peregrine.sitemap.impl;
  * #L%
  */
 
+import com.peregrine.commons.Page;
 import com.peregrine.commons.concurrent.Callback;
 import com.peregrine.commons.concurrent.DeBouncer;
 import com.peregrine.sitemap.*;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.*;
 import org.apache.sling.serviceusermapping.ServiceUserMapped;
 import org.osgi.service.component.annotations.Activate;
@@ -36,15 +38,19 @@ import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.Designate;
 
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.peregrine.commons.ResourceUtils.fileNameToJcrName;
 import static com.peregrine.commons.ResourceUtils.jcrNameToFileName;
 import static com.peregrine.commons.util.PerConstants.*;
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
-import static org.apache.commons.lang3.StringUtils.endsWith;
-import static org.apache.commons.lang3.StringUtils.substringBeforeLast;
+import static org.apache.commons.lang3.StringUtils.*;
+import static org.apache.commons.lang3.math.NumberUtils.toInt;
 
 @Component(service = SiteMapStructureCache.class, immediate = true)
 @Designate(ocd = SiteMapStructureCacheImplConfig.class)
@@ -52,9 +58,10 @@ public final class SiteMapStructureCacheImpl extends CacheBuilderBase
         implements SiteMapStructureCache, Callback<String>, SiteMapEntry.Visitor<Resource> {
 
     private static final String SLASH_JCR_CONTENT = SLASH + JCR_CONTENT;
-    public static final String NN_FIRST_CACHE_NODE = "0";
+    private static final int MAX_CHANGED_PATHS_PER_ROOT = 1000;
 
     private final Set<RefreshListener> refreshListeners = new HashSet<>();
+    private final Map<String, Set<String>> changedPaths = new ConcurrentHashMap<>();
 
     @Reference
     private ResourceResolverFactoryProxy resourceResolverFactory;
@@ -70,10 +77,15 @@ public final class SiteMapStructureCacheImpl extends CacheBuilderBase
     private ServiceUserMapped wfxServices;
 
     private DeBouncer<String> deBouncer;
+    private boolean incremental;
+    private ForkJoinPool extractionPool;
 
     @Activate
     public void activate(final SiteMapStructureCacheImplConfig config) {
         setLocation(config.location());
+        incremental = config.incremental();
+        final int extractionParallelism = config.extractionParallelism();
+        extractionPool = extractionParallelism > 1 ? new ForkJoinPool(extractionParallelism) : null;
         deBouncer = new DeBouncer<>(this, config.debounceInterval());
         rebuildAll();
     }
@@ -81,6 +93,17 @@ public final class SiteMapStructureCacheImpl extends CacheBuilderBase
     @Deactivate
     public void deactivate() {
         deBouncer.terminate();
+        if (nonNull(extractionPool)) {
+            extractionPool.shutdown();
+        }
+    }
+
+    private List<SiteMapEntry> extract(final SiteMapExtractor extractor, final Resource root) {
+        if (isNull(extractionPool)) {
+            return extractor.extract(root);
+        }
+
+        return extractor.extract(root, extractionPool, resourceResolverFactory);
     }
 
     @Override
@@ -144,7 +167,277 @@ public final class SiteMapStructureCacheImpl extends CacheBuilderBase
 
     @Override
     public void call(final String rootPagePath) {
-        buildCache(rootPagePath);
+        final Set<String> paths = changedPaths.remove(rootPagePath);
+        if (!incremental || isNull(paths) || !updateCache(rootPagePath, paths)) {
+            buildCache(rootPagePath);
+        }
+    }
+
+    private boolean updateCache(final String rootPagePath, final Set<String> paths) {
+        try (final ResourceResolver resourceResolver = getServiceResourceResolver()) {
+            final Resource rootPage = resourceResolver.getResource(rootPagePath);
+            final Resource cache = Optional.ofNullable(rootPage)
+                    .map(this::getCachePath)
+                    .map(resourceResolver::getResource)
+                    .orElse(null);
+            if (!isCacheNode(cache)) {
+                return false;
+            }
+
+            final SiteMapExtractor extractor = siteMapExtractorsContainer.findFirstFor(rootPage);
+            if (isNull(extractor)) {
+                return false;
+            }
+
+            cleanRemovedChildren(resourceResolver, rootPagePath);
+            final List<SiteMapEntry> entries = updateCachedEntries(rootPage, cache, extractor, paths);
+            resourceResolver.commit();
+            notifyCacheRefreshed(rootPage, entries);
+            return true;
+        } catch (final LoginException e) {
+            logger.error(COULD_NOT_GET_SERVICE_RESOURCE_RESOLVER, e);
+        } catch (final PersistenceException e) {
+            logger.error(COULD_NOT_SAVE_CHANGES_TO_REPOSITORY, e);
+        }
+
+        // The changed paths are already consumed so the caller has to rebuild the whole cache
+        return false;
+    }
+
+    private List<SiteMapEntry> updateCachedEntries(
+            final Resource rootPage,
+            final Resource cache,
+            final SiteMapExtractor extractor,
+            final Set<String> paths) throws PersistenceException {
+        final Map<String, Resource> cachedNodes = new LinkedHashMap<>();
+        final Map<String, SiteMapEntry> cachedEntries = new HashMap<>();
+        List<SiteMapEntry> entries = new ArrayList<>();
+        int nextIndex = 0;
+        for (final Resource child : cache.getChildren()) {
+            final SiteMapEntry entry = extractEntry(child);
+            entries.add(entry);
+            cachedNodes.put(entry.getPath(), child);
+            cachedEntries.put(entry.getPath(), entry);
+            nextIndex = Math.max(nextIndex, toInt(child.getName(), -1) + 1);
+        }
+
+        for (final String path : collapseToSubTreeRoots(rootPage.getPath(), paths)) {
+            entries = replaceSubTree(entries, rootPage, path, extractor);
+        }
+
+        writeChangedEntries(entries, cache, cachedNodes, cachedEntries, nextIndex);
+        return entries;
+    }
+
+    private static Set<String> collapseToSubTreeRoots(final String rootPagePath, final Set<String> paths) {
+        final SortedSet<String> pages = new TreeSet<>();
+        for (final String path : paths) {
+            final String pagePath = substringBefore(path, SLASH_JCR_CONTENT);
+            if (isInSubTree(pagePath, rootPagePath)) {
+                pages.add(pagePath);
+            }
+        }
+
+        final Set<String> result = new LinkedHashSet<>();
+        String lastSubTreeRoot = null;
+        for (final String path : pages) {
+            if (isNull(lastSubTreeRoot) || !isInSubTree(path, lastSubTreeRoot)) {
+                result.add(path);
+                lastSubTreeRoot = path;
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isInSubTree(final String path, final String subTreeRootPath) {
+        return StringUtils.equals(path, subTreeRootPath) || startsWith(path, subTreeRootPath + SLASH);
+    }
+
+    private List<SiteMapEntry> replaceSubTree(
+            final List<SiteMapEntry> entries,
+            final Resource rootPage,
+            final String subTreeRootPath,
+            final SiteMapExtractor extractor) {
+        final Resource subTreeRoot = rootPage.getResourceResolver().getResource(subTreeRootPath);
+        final List<SiteMapEntry> extracted;
+        if (isReachable(rootPage, subTreeRoot, extractor)) {
+            extracted = extract(extractor, subTreeRoot);
+        } else {
+            extracted = Collections.emptyList();
+        }
+
+        final List<SiteMapEntry> result = new ArrayList<>(entries.size() + extracted.size());
+        int insertionIndex = -1;
+        for (final SiteMapEntry entry : entries) {
+            if (!isInSubTree(entry.getPath(), subTreeRootPath)) {
+                result.add(entry);
+            } else if (insertionIndex < 0) {
+                insertionIndex = result.size();
+            }
+        }
+
+        if (insertionIndex < 0) {
+            insertionIndex = findInsertionIndex(result, subTreeRoot);
+        }
+
+        result.addAll(insertionIndex, extracted);
+        return result;
+    }
+
+    private boolean isReachable(final Resource rootPage, final Resource resource, final SiteMapExtractor extractor) {
+        if (isNull(resource)) {
+            return false;
+        }
+
+        final PageRecognizer recognizer = extractor.getConfiguration().getPageRecognizer();
+        final String rootPagePath = rootPage.getPath();
+        Resource current = resource;
+        while (nonNull(current) && !StringUtils.equals(rootPagePath, current.getPath())) {
+            if (nonNull(recognizer) && !recognizer.isPage(new Page(current))) {
+                return false;
+            }
+
+            current = current.getParent();
+        }
+
+        return nonNull(current);
+    }
+
+    private static int findInsertionIndex(final List<SiteMapEntry> entries, final Resource subTreeRoot) {
+        final Resource parent = Optional.ofNullable(subTreeRoot)
+                .map(Resource::getParent)
+                .orElse(null);
+        if (isNull(parent)) {
+            return entries.size();
+        }
+
+        final Set<String> precedingSiblings = new HashSet<>();
+        for (final Resource sibling : parent.getChildren()) {
+            if (StringUtils.equals(sibling.getName(), subTreeRoot.getName())) {
+                break;
+            }
+
+            precedingSiblings.add(sibling.getName());
+        }
+
+        final String parentPath = parent.getPath();
+        final String parentPathWithSlash = parentPath + SLASH;
+        int result = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            final String path = entries.get(i).getPath();
+            if (StringUtils.equals(parentPath, path)
+                    || precedingSiblings.contains(substringBefore(substringAfter(path, parentPathWithSlash), SLASH))) {
+                result = i + 1;
+            }
+        }
+
+        return result;
+    }
+
+    private void writeChangedEntries(
+            final List<SiteMapEntry> entries,
+            final Resource cache,
+            final Map<String, Resource> cachedNodes,
+            final Map<String, SiteMapEntry> cachedEntries,
+            final int firstFreeIndex) throws PersistenceException {
+        final ResourceResolver resourceResolver = cache.getResourceResolver();
+        final Set<String> paths = new HashSet<>();
+        for (final SiteMapEntry entry : entries) {
+            paths.add(entry.getPath());
+        }
+
+        for (final Map.Entry<String, Resource> e : cachedNodes.entrySet()) {
+            if (!paths.contains(e.getKey())) {
+                resourceResolver.delete(e.getValue());
+            }
+        }
+
+        final boolean[] kept = findEntriesToKeep(entries, cachedNodes, cachedEntries);
+        int nextIndex = firstFreeIndex;
+        String nextChildName = null;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            final SiteMapEntry entry = entries.get(i);
+            final Resource node = cachedNodes.get(entry.getPath());
+            if (kept[i]) {
+                nextChildName = node.getName();
+                continue;
+            }
+
+            final String childName;
+            if (nonNull(node)) {
+                childName = node.getName();
+                resourceResolver.delete(node);
+            } else {
+                childName = Integer.toString(nextIndex++);
+            }
+
+            putSiteMapInCache(entry, cache, childName);
+            if (nonNull(nextChildName)) {
+                orderBefore(cache, childName, nextChildName);
+            }
+
+            nextChildName = childName;
+        }
+    }
+
+    /**
+     * Finds the cached entries that can stay untouched: their content did not change and they form the longest
+     * subsequence that is already in the right order, so only the remaining ones have to be re-written.
+     */
+    private static boolean[] findEntriesToKeep(
+            final List<SiteMapEntry> entries,
+            final Map<String, Resource> cachedNodes,
+            final Map<String, SiteMapEntry> cachedEntries) {
+        final Map<String, Integer> cachedIndexes = new HashMap<>();
+        for (final String path : cachedNodes.keySet()) {
+            cachedIndexes.put(path, cachedIndexes.size());
+        }
+
+        final int size = entries.size();
+        final int[] tails = new int[size];
+        final int[] tailIndexes = new int[size];
+        final int[] predecessors = new int[size];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            final SiteMapEntry entry = entries.get(i);
+            final Integer cachedIndex = cachedIndexes.get(entry.getPath());
+            if (isNull(cachedIndex) || !entry.equals(cachedEntries.get(entry.getPath()))) {
+                continue;
+            }
+
+            int position = Arrays.binarySearch(tails, 0, length, cachedIndex);
+            if (position < 0) {
+                position = -position - 1;
+            }
+
+            tails[position] = cachedIndex;
+            tailIndexes[position] = i;
+            predecessors[i] = position > 0 ? tailIndexes[position - 1] : -1;
+            if (position == length) {
+                length++;
+            }
+        }
+
+        final boolean[] result = new boolean[size];
+        for (int i = length > 0 ? tailIndexes[length - 1] : -1; i >= 0; i = predecessors[i]) {
+            result[i] = true;
+        }
+
+        return result;
+    }
+
+    private void orderBefore(final Resource parent, final String childName, final String siblingName) {
+        final Node node = parent.adaptTo(Node.class);
+        if (isNull(node)) {
+            return;
+        }
+
+        try {
+            node.orderBefore(childName, siblingName);
+        } catch (final RepositoryException e) {
+            logger.error(COULD_NOT_SAVE_SITE_MAP_CACHE, e);
+        }
     }
 
     @Override
@@ -162,8 +455,7 @@ public final class SiteMapStructureCacheImpl extends CacheBuilderBase
     protected boolean isCacheNode(final Resource cache) {
         return Optional.ofNullable(cache)
                 .filter(r -> JCR_CONTENT.equals(r.getName()))
-                .map(r -> r.getChild(NN_FIRST_CACHE_NODE))
-                .map(Objects::nonNull)
+                .map(Resource::hasChildren)
                 .orElse(false);
     }
 
@@ -187,7 +479,7 @@ public final class SiteMapStructureCacheImpl extends CacheBuilderBase
             return null;
         }
 
-        final List<SiteMapEntry> entries = extractor.extract(rootPage);
+        final List<SiteMapEntry> entries = extract(extractor, rootPage);
         putSiteMapsInCache(entries, cache);
         notifyCacheRefreshed(rootPage, entries);
         return cache;
@@ -204,16 +496,19 @@ public final class SiteMapStructureCacheImpl extends CacheBuilderBase
                 resourceResolver.delete(child);
             }
 
-            final SiteMapEntry entry = iterator.next();
-            Optional.ofNullable(entry.walk(this, target, childName))
-                    .map(r -> r.getChild(childName))
-                    .map(r -> r.adaptTo(ModifiableValueMap.class))
-                    .ifPresent(map -> map.put(PATH, entry.getPath()));
+            putSiteMapInCache(iterator.next(), target, childName);
         }
 
         removeCachedItemsStartingAtIndex(target, siteMapsSize);
     }
 
+    private void putSiteMapInCache(final SiteMapEntry entry, final Resource target, final String childName) {
+        Optional.ofNullable(entry.walk(this, target, childName))
+                .map(r -> r.getChild(childName))
+                .map(r -> r.adaptTo(ModifiableValueMap.class))
+                .ifPresent(map -> map.put(PATH, entry.getPath()));
+    }
+
     @Override
     public Resource visit(final String childName, final Map<String, String> properties, final Resource resource) {
         try {
@@ -253,20 +548,42 @@ public final class SiteMapStructureCacheImpl extends CacheBuilderBase
         }
     }
 
+    /**
+     * Removes all cached items numbered from the given index on. Incremental updates leave gaps in the numbering
+     * so all children are checked instead of stopping at the first missing index.
+     */
     private void removeCachedItemsStartingAtIndex(final Resource target, final int startItemIndex) throws PersistenceException {
+        final List<Resource> removed = new ArrayList<>();
+        for (final Resource child : target.getChildren()) {
+            if (toInt(child.getName(), -1) >= startItemIndex) {
+                removed.add(child);
+            }
+        }
+
         final ResourceResolver resourceResolver = target.getResourceResolver();
-        int i = startItemIndex;
-        String childPath = Integer.toString(i);
-        Resource child = target.getChild(childPath);
-        while (nonNull(child)) {
+        for (final Resource child : removed) {
             resourceResolver.delete(child);
-            childPath = Integer.toString(++i);
-            child = target.getChild(childPath);
         }
     }
 
     @Override
     protected void rebuildImpl(final String rootPagePath) {
+        rebuildImpl(rootPagePath, Collections.singleton(rootPagePath));
+    }
+
+    @Override
+    protected void rebuildImpl(final String rootPagePath, final Collection<String> paths) {
+        changedPaths.compute(rootPagePath, (root, pending) -> {
+            final Set<String> result = isNull(pending) ? new HashSet<>() : pending;
+            result.addAll(paths);
+            // keep the memory bounded during bulk changes, the whole tree gets compared then
+            if (result.size() > MAX_CHANGED_PATHS_PER_ROOT) {
+                result.clear();
+                result.add(root);
+            }
+
+            return result;
+        });
         deBouncer.call(rootPagePath);
     }
 
@@ -36,4 +36,10 @@ public @interface SiteMapStructureCacheImplConfig {
 
     @AttributeDefinition(name = "%debounceInterval.name", description = "%debounceInterval.description")
     int debounceInterval() default 300_000;
+
+    @AttributeDefinition(name = "%incremental.name", description = "%incremental.description")
+    boolean incremental() default true;
+
+    @AttributeDefinition(name = "%extractionParallelism.name", description = "%extractionParallelism.description")
+    int extractionParallelism() default 4;
 }
@@ -27,13 +27,30 @@ package com.peregrine.transform;
 
 import org.apache.commons.io.IOUtils;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 
 import static com.peregrine.commons.util.PerConstants.PNG_MIME_TYPE;
 
 /**
  * Context of an Image to be Transformed
  *
+ * In-process transformations keep the decoded image in the context so that
+ * a chain of them decodes the image only once and encodes it only when the
+ * image stream is requested.
+ *
  * Created by Andreas Schaefer on 5/19/17.
  */
 public class ImageContext {
@@ -44,6 +61,8 @@ public class ImageContext {
     private String targetMimeType = sourceMimeType;
     /** Image Input Stream **/
     private InputStream imageStream;
+    /** Decoded Image which is not encoded into the Image Stream yet **/
+    private BufferedImage image;
 
     /**
      * Image Context where source and target mime type of the same
@@ -91,11 +110,106 @@ public class ImageContext {
         return this;
     }
 
-    /** @returns the Image Input Stream which is not null **/
+    /**
+     * @returns the Image Input Stream which is not null
+     * @throws UncheckedIOException If a decoded image could not be encoded
+     */
     public InputStream getImageStream() {
+        try {
+            encodeImage();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
         return imageStream;
     }
 
+    /**
+     * Provides the decoded Image which is read from the Image Stream if
+     * it was not decoded yet
+     *
+     * @return Decoded Image which is not null
+     * @throws IOException If the image could not be read or its format is not supported
+     */
+    public BufferedImage getImage() throws IOException {
+        if(image == null) {
+            BufferedImage decoded;
+            try(InputStream stream = imageStream) {
+                decoded = ImageIO.read(new MemoryCacheImageInputStream(stream));
+            } finally {
+                imageStream = null;
+            }
+            if(decoded == null) {
+                throw new IOException("No Image Reader found for: " + sourceMimeType);
+            }
+            image = decoded;
+        }
+        return image;
+    }
+
+    /**
+     * Replaces the Image with a transformed one which is only encoded when
+     * the image stream is requested or the image is encoded.
+     *
+     * Like when resetting the image stream the source mime type is set
+     * to the target mime type
+     *
+     * @param newImage Transformed Image
+     */
+    public void setImage(BufferedImage newImage) {
+        if(newImage == null) {
+            throw new IllegalArgumentException("Image cannot be null");
+        }
+        if(this.imageStream != null) {
+            IOUtils.closeQuietly(this.imageStream);
+            this.imageStream = null;
+        }
+        this.image = newImage;
+        if(!sourceMimeType.equals(targetMimeType)) {
+            this.sourceMimeType = targetMimeType;
+        }
+    }
+
+    /**
+     * Encodes a decoded Image into the Image Stream with the source mime type
+     * as this is the format a transformation expects the image in
+     *
+     * @throws IOException If there is no Image Writer for the mime type or the encoding failed
+     */
+    public void encodeImage() throws IOException {
+        if(image != null) {
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(sourceMimeType);
+            if(!writers.hasNext()) {
+                throw new IOException("No Image Writer found for: " + sourceMimeType);
+            }
+            ImageWriter writer = writers.next();
+            BufferedImage output = image;
+            if(output.getColorModel().hasAlpha() && (sourceMimeType.contains("jpeg") || !writer.getOriginatingProvider().canEncodeImage(output))) {
+                output = removeAlpha(output);
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try(ImageOutputStream stream = new MemoryCacheImageOutputStream(buffer)) {
+                writer.setOutput(stream);
+                writer.write(output);
+            } finally {
+                writer.dispose();
+            }
+            imageStream = new ByteArrayInputStream(buffer.toByteArray());
+            image = null;
+        }
+    }
+
+    /** @return Copy of the image drawn onto a white background **/
+    private static BufferedImage removeAlpha(BufferedImage image) {
+        BufferedImage answer = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = answer.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return answer;
+    }
+
     /**
      * Resets the Image Stream with a new one. This is only indeted to
      * be used when chaining Image Transformations.
@@ -115,6 +229,7 @@ public class ImageContext {
             IOUtils.closeQuietly(this.imageStream);
         }
         this.imageStream = newImageStream;
+        this.image = null;
         if(!sourceMimeType.equals(targetMimeType)) {
             this.sourceMimeType = targetMimeType;
         }
@@ -0,0 +1,44 @@
+package com.peregrine.transform;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import com.peregrine.transform.ImageTransformation.TransformationException;
+
+/**
+ * Image Transformations collected by Pipeline Image Transformations
+ * which are executed together
+ */
+public interface ImageTransformationPipeline {
+
+    /**
+     * Executes all collected Image Transformations
+     *
+     * @param imageContext Context of the Image which receives the transformed image
+     * @throws TransformationException If the execution failed
+     */
+    void execute(ImageContext imageContext)
+        throws TransformationException;
+}
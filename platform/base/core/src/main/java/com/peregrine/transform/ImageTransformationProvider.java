@@ -25,6 +25,7 @@ package com.peregrine.transform;
  * #L%
  */
 
+import com.peregrine.transform.ImageTransformation.TransformationException;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
@@ -34,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.peregrine.commons.util.PerUtil.EQUALS;
@@ -46,6 +48,9 @@ import static org.osgi.framework.Constants.SERVICE_VENDOR;
  * Provider of all available Image Transformations
  * which can be found by its (transformation) name
  *
+ * Consecutive Pipeline Image Transformations that can join the
+ * same Pipeline are executed together.
+ *
  * ATTENTION: It is important that Image Transformations
  * do provide a unique transformation name.
  */
@@ -72,6 +77,50 @@ public class ImageTransformationProvider {
         return imageTransformations.get(transformationName);
     }
 
+    /**
+     * Executes the Image Transformations of the given configurations one after the other
+     *
+     * @param renditionName Name of the Rendition to be created
+     * @param imageContext Context of the Image which receives the transformed image
+     * @param imageTransformationConfigurationList Configurations of the Image Transformations to be executed
+     * @throws TransformationException If one of the transformations failed
+     */
+    public void transform(
+        String renditionName, ImageContext imageContext, List<ImageTransformationConfiguration> imageTransformationConfigurationList
+    )
+        throws TransformationException
+    {
+        ImageTransformationPipeline pipeline = null;
+        for(ImageTransformationConfiguration imageTransformationConfiguration : imageTransformationConfigurationList) {
+            ImageTransformation imageTransformation = getImageTransformation(imageTransformationConfiguration.getTransformationName());
+            //AS TODO: If Image Transformation is not found then throw a Transformation Exception
+            if(imageTransformation == null) {
+                continue;
+            }
+            OperationContext operationContext = new OperationContext(renditionName, imageTransformationConfiguration.getParameters());
+            if(imageTransformation instanceof PipelineImageTransformation && imageTransformation.isEnabled()) {
+                PipelineImageTransformation pipelineImageTransformation = (PipelineImageTransformation) imageTransformation;
+                if(pipeline == null || !pipelineImageTransformation.addTo(pipeline, imageContext, operationContext)) {
+                    if(pipeline != null) {
+                        pipeline.execute(imageContext);
+                    }
+                    pipeline = pipelineImageTransformation.createPipeline();
+                    pipelineImageTransformation.addTo(pipeline, imageContext, operationContext);
+                }
+            } else {
+                if(pipeline != null) {
+                    pipeline.execute(imageContext);
+                    pipeline = null;
+                }
+                // Disabled Transformations will stop the rendition creation as it does create incomplete or non-renditioned images
+                imageTransformation.transform(imageContext, operationContext);
+            }
+        }
+        if(pipeline != null) {
+            pipeline.execute(imageContext);
+        }
+    }
+
     @Reference(
         cardinality = ReferenceCardinality.MULTIPLE,
         policy = ReferencePolicy.DYNAMIC,
@@ -0,0 +1,50 @@
+package com.peregrine.transform;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+/**
+ * Image Transformation that can be executed together with the following
+ * Image Transformations if they can join the same Pipeline. This saves
+ * to hand over the image from one to the next one.
+ */
+public interface PipelineImageTransformation
+    extends ImageTransformation
+{
+    /** @return New and empty Pipeline that this Image Transformation can join **/
+    ImageTransformationPipeline createPipeline();
+
+    /**
+     * Adds this Image Transformation to the given Pipeline
+     *
+     * @param pipeline Pipeline to join
+     * @param imageContext Context of the Image to be transformed
+     * @param operationContext Context of the Operation used to transform the Image
+     * @return False if this Image Transformation cannot join the Pipeline
+     * @throws TransformationException If the parameters or the image format are not supported
+     */
+    boolean addTo(ImageTransformationPipeline pipeline, ImageContext imageContext, OperationContext operationContext)
+        throws TransformationException;
+}
@@ -0,0 +1,155 @@
+package com.peregrine.transform.operation;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import com.peregrine.transform.ImageContext;
+import com.peregrine.transform.ImageTransformation;
+import com.peregrine.transform.OperationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Base Class for Image Transformations done in-process with Java 2D.
+ *
+ * The image is decoded by the first of these transformations in a chain, handed
+ * over in memory to the next one and only encoded at the end of the chain
+ * (or before an external transformation needs it as file).
+ */
+public abstract class AbstractJavaImageTransformation
+    implements ImageTransformation
+{
+    public static final String IMAGE_CONTEXT_MUST_BE_DEFINED_FOR_TRANSFORMATION = "Image Context must be defined for Transformation";
+    public static final String FAILED_TO_READ_IMAGE = "Failed to read the image for Transformation: ";
+    public static final String TRANSFORMATION_NAME_CANNOT_BE_EMPTY = "Transformation Name cannot be empty";
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    private boolean enabled = false;
+    private String transformationName = getDefaultTransformationName();
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public String getTransformationName() {
+        return transformationName;
+    }
+
+    protected void configure(boolean enabled, String transformationName) {
+        this.enabled = enabled;
+        this.transformationName = transformationName == null || transformationName.isEmpty() ?
+            getDefaultTransformationName() :
+            transformationName;
+        if(enabled && this.transformationName.isEmpty()) {
+            throw new IllegalArgumentException(TRANSFORMATION_NAME_CANNOT_BE_EMPTY);
+        }
+    }
+
+    @Override
+    public void transform(ImageContext imageContext, OperationContext operationContext)
+        throws TransformationException
+    {
+        if(!enabled) {
+            log.debug("Image Transformation: '{}' is not enabled and so it is ignored", transformationName);
+            return;
+        }
+        if(imageContext == null) {
+            throw new TransformationException(IMAGE_CONTEXT_MUST_BE_DEFINED_FOR_TRANSFORMATION);
+        }
+        BufferedImage image;
+        try {
+            image = imageContext.getImage();
+        } catch(IOException e) {
+            throw new TransformationException(FAILED_TO_READ_IMAGE + transformationName, e);
+        }
+        imageContext.setImage(transform(image, operationContext));
+    }
+
+    /**
+     * Transforms the decoded Image
+     *
+     * @param image Image to be transformed
+     * @param operationContext Context of the Operation with its parameters
+     * @return Transformed Image which can be the given one if nothing was changed
+     * @throws TransformationException If the parameters are invalid
+     */
+    protected abstract BufferedImage transform(BufferedImage image, OperationContext operationContext)
+        throws TransformationException;
+
+    /** @return Integer value of the given parameter or the default value if the parameter is not set **/
+    protected static int getIntParameter(OperationContext operationContext, String name, int defaultValue)
+        throws TransformationException
+    {
+        String value = operationContext.getParameter(name, defaultValue + "");
+        try {
+            return Integer.parseInt(value.trim());
+        } catch(NumberFormatException e) {
+            throw new TransformationException("Parameter: '" + name + "' is not a number: " + value, e);
+        }
+    }
+
+    /** @return New Image of the given size which has an alpha channel if the given image has one **/
+    protected static BufferedImage createImage(BufferedImage image, int width, int height) {
+        return new BufferedImage(width, height, image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Scales the image to the given size. Larger reductions are done in steps of halving
+     * the image to keep the quality of the bilinear interpolation
+     */
+    protected static BufferedImage scale(BufferedImage image, int width, int height) {
+        BufferedImage answer = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = currentWidth / 2 >= width ? currentWidth / 2 : width;
+            currentHeight = currentHeight / 2 >= height ? currentHeight / 2 : height;
+            answer = draw(answer, currentWidth, currentHeight, 0, 0, answer.getWidth(), answer.getHeight());
+        } while(currentWidth != width || currentHeight != height);
+        return answer;
+    }
+
+    /** @return New Image of the given size containing the given region of the source scaled to it **/
+    protected static BufferedImage draw(BufferedImage source, int width, int height, int x, int y, int regionWidth, int regionHeight) {
+        BufferedImage answer = createImage(source, width, height);
+        Graphics2D graphics = answer.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, x, y, x + regionWidth, y + regionHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return answer;
+    }
+}
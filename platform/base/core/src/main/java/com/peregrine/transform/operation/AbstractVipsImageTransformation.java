@@ -27,23 +27,20 @@ package com.peregrine.transform.operation;
 
 import com.peregrine.process.ExternalProcessException;
 import com.peregrine.process.ProcessContext;
-import com.peregrine.process.ProcessRunner;
+import com.peregrine.process.ProcessExecution;
 import com.peregrine.transform.ImageContext;
-import com.peregrine.transform.ImageTransformation;
-import org.apache.commons.io.IOUtils;
+import com.peregrine.transform.ImageTransformationPipeline;
+import com.peregrine.transform.OperationContext;
+import com.peregrine.transform.PipelineImageTransformation;
 import org.apache.sling.commons.mime.MimeTypeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -54,10 +51,13 @@ import static com.peregrine.commons.util.PerUtil.isEmpty;
  * Base Class for VIPS Image Transformation made by
  * calling VIPS as external process
  *
+ * Consecutive VIPS Image Transformations join the same
+ * VIPS Pipeline and are executed together.
+ *
  * Created by Andreas Schaefer on 5/19/17.
  */
 public abstract class AbstractVipsImageTransformation
-    implements ImageTransformation
+    implements PipelineImageTransformation
 {
     public static final String VIPS = "vips";
     public static final String VERSION_PARAMETER = "--version";
@@ -83,9 +83,23 @@ public abstract class AbstractVipsImageTransformation
     private long lastCheckTime = -1;
     private long checkTimeout = 5 * 60 * 1000;
     private String transformationName = getDefaultTransformationName();
+    private String temporaryFolder;
 
     abstract MimeTypeService getMimeTypeService();
 
+    abstract ProcessExecution getProcessExecution();
+
+    /**
+     * Adds the VIPS Operations of this Image Transformation to the given pipeline
+     *
+     * @param pipeline VIPS Pipeline to add the operations to
+     * @param imageContext Context of the Image to be transformed
+     * @param operationContext Context of the Operation with its parameters
+     * @throws TransformationException If the parameters or image format are not supported
+     */
+    protected abstract void addOperations(VipsPipeline pipeline, ImageContext imageContext, OperationContext operationContext)
+        throws TransformationException;
+
     @Override
     public boolean isEnabled() {
         return enabled;
@@ -96,6 +110,43 @@ public abstract class AbstractVipsImageTransformation
         return transformationName;
     }
 
+    /** @return Folder in which the temporary folders are created. If empty the system temporary folder is used **/
+    public String getTemporaryFolder() {
+        return temporaryFolder;
+    }
+
+    @Override
+    public ImageTransformationPipeline createPipeline() {
+        return new VipsPipeline(this);
+    }
+
+    @Override
+    public boolean addTo(ImageTransformationPipeline pipeline, ImageContext imageContext, OperationContext operationContext)
+        throws TransformationException
+    {
+        if(!(pipeline instanceof VipsPipeline)) {
+            return false;
+        }
+        if(imageContext == null) {
+            throw new TransformationException(IMAGE_CONTEXT_MUST_BE_DEFINED_FOR_TRANSFORMATION);
+        }
+        addOperations((VipsPipeline) pipeline, imageContext, operationContext);
+        return true;
+    }
+
+    @Override
+    public void transform(ImageContext imageContext, OperationContext operationContext)
+        throws TransformationException
+    {
+        if(!enabled) {
+            log.debug("Image Transformation: '{}' is not enabled and so it is ignored", transformationName);
+        } else {
+            VipsPipeline pipeline = (VipsPipeline) createPipeline();
+            addTo(pipeline, imageContext, operationContext);
+            pipeline.execute(imageContext);
+        }
+    }
+
     /** @return Returns true if VIPS is installed and can be invoked here **/
     protected boolean checkVips() {
         return checkVips(false);
@@ -104,10 +155,9 @@ public abstract class AbstractVipsImageTransformation
     protected boolean checkVips(boolean force) {
         if(force || lastCheckTime + checkTimeout < System.currentTimeMillis()) {
             lastCheckTime = System.currentTimeMillis();
-            ProcessRunner runner = new ProcessRunner();
             List<String> commands = new ArrayList<>(Arrays.asList(VIPS, VERSION_PARAMETER));
             try {
-                ProcessContext processContext = runner.execute(commands);
+                ProcessContext processContext = getProcessExecution().execute(commands);
                 vipsInstalled = processContext.getExitCode() == 0;
             } catch(ExternalProcessException e) {
                 vipsInstalled = false;
@@ -118,7 +168,16 @@ public abstract class AbstractVipsImageTransformation
 
 
     protected void configure(boolean enabled, String transformationName) {
+        configure(enabled, transformationName, null);
+    }
+
+    /**
+     * @param temporaryFolder Folder for the temporary image files like a RAM backed /dev/shm. If empty the system
+     *                        temporary folder is used
+     */
+    protected void configure(boolean enabled, String transformationName, String temporaryFolder) {
         this.enabled = enabled;
+        this.temporaryFolder = temporaryFolder;
         this.transformationName = transformationName == null || transformationName.isEmpty() ?
             getDefaultTransformationName() :
             transformationName;
@@ -148,153 +207,22 @@ public abstract class AbstractVipsImageTransformation
             if (imageContext == null) {
                 throw new TransformationException(IMAGE_CONTEXT_MUST_BE_DEFINED_FOR_TRANSFORMATION);
             }
-            if (isEmpty(operationName)) {
-                throw new TransformationException(VIPS_OPERATION_NAME_CANNOT_BE_EMPTY);
-            }
-            if (checkVips()) {
-                String sourceExtension = getMimeTypeService().getExtension(imageContext.getSourceMimeType());
-                if (sourceExtension == null) {
-                    sourceExtension = imageContext.getSourceMimeType();
-                }
-                String targetExtension = getMimeTypeService().getExtension(imageContext.getTargetMimeType());
-                if (targetExtension == null) {
-                    targetExtension = imageContext.getTargetMimeType();
-                }
-                String name = "transformation.in." + System.currentTimeMillis() + "." + sourceExtension;
-                Path temporaryFolder = createTempFolder();
-                if (temporaryFolder != null) {
-                    File input = writeToFile(temporaryFolder, name, imageContext.getImageStream());
-                    if (input == null) {
-                        throw new TransformationException(COULD_NOT_CREATE_INPUT_FILE + name);
-                    }
-                    String outputFileName = "transformation.out." + System.currentTimeMillis() + "." + targetExtension;
-                    File output = createTempFile(temporaryFolder, outputFileName);
-                    if (output == null) {
-                        throw new TransformationException(COULD_NOT_CREATE_OUTPUT_FILE + outputFileName);
-                    }
-                    ProcessRunner runner = new ProcessRunner();
-                    List<String> commands = new ArrayList<>(Arrays.asList(VIPS, operationName));
-                    boolean inputUsed = false, outputUsed = false;
-                    for (String parameter : parameters) {
-                        if (IN_TOKEN.equals(parameter)) {
-                            commands.add(input.getAbsolutePath());
-                            inputUsed = true;
-                        } else if (OUT_TOKEN.equals(parameter)) {
-                            commands.add(output.getAbsolutePath());
-                            outputUsed = true;
-                        } else {
-                            commands.add(parameter);
-                        }
-                    }
-                    if (!inputUsed) {
-                        throw new IllegalArgumentException(INPUT_WAS_NOT_USED_IN);
-                    }
-                    InputStream inputStream = null;
-                    try {
-                        ProcessContext processContext = runner.execute(commands);
-                        if (processContext.getExitCode() > 0) {
-                            throw new TransformationException(String.format(FAILED_TO_EXECUTE_VIPS_OPERATION_WITH_CODE, operationName, processContext.getExitCode()));
-                        }
-                        if (outputUsed) {
-                            inputStream = openFileInput(temporaryFolder, output.getName());
-                        } else {
-                            inputStream = openFileInput(temporaryFolder, input.getName());
-                        }
-                        imageContext.resetImageStream(inputStream);
-                    } catch (ExternalProcessException e) {
-                        if(!log.isDebugEnabled()) {
-                            log.warn("Failed to execute VIPS command: " + operationName);
-                        } else {
-                            log.debug("Failed to execute VIPS command: " + operationName, e);
-                        }
-                        throw new TransformationException(FAILED_TO_EXECUTE_VIPS_OPERATION + operationName, e);
-                    }
-                } else {
-                    throw new TransformationException(COULD_NOT_CREATE_TEMPORARY_FOLDER + name);
-                }
-            } else {
-                log.warn("VIPS not installed -> ignore transformation: '{}'", transformationName);
-            }
+            VipsPipeline pipeline = new VipsPipeline(this);
+            pipeline.addStep(operationName, parameters);
+            pipeline.execute(imageContext);
         }
     }
 
-    /** @return Created Temporary Folder. If it fails it returns null **/
-    private Path createTempFolder() {
+    /** @return Created Temporary Folder inside the configured temporary folder. If it fails it returns null **/
+    Path createTempFolder() {
         Path dir = null;
         try {
-            dir = Files.createTempDirectory(null);
-            dir.toFile().deleteOnExit();
-        } catch(IOException e) {
+            dir = isEmpty(temporaryFolder) ?
+                Files.createTempDirectory(VIPS) :
+                Files.createTempDirectory(Paths.get(temporaryFolder), VIPS);
+        } catch(IOException | InvalidPathException e) {
             log.error("Failed to create temporary folder", e);
         }
         return dir;
     }
-
-    /** @return Created Temporary File based on the temporary folder and file name. If it fails it returns null **/
-    private File createTempFile(Path tempFolder, String fileName) {
-        File file = null;
-        try {
-            file = tempFolder.resolve(fileName).toFile();
-            file.deleteOnExit();
-        } catch(InvalidPathException e) {
-            log.error("Failed to create temporary file", e);
-        }
-        return file;
-    }
-
-    /**
-     * Writes the given input stream into the given file
-     *
-     * @param directory Folder where the file is placed into
-     * @param fileName File Name of the file to be created including extension
-     * @param inputStream Data that is written to the file. This Input Stream is closed at the end
-     * @return
-     */
-    private File writeToFile(Path directory, String fileName, InputStream inputStream) {
-        File output = null;
-        FileOutputStream fos = null;
-        try {
-            output = directory.resolve(fileName).toFile();
-            output.deleteOnExit();
-            fos = new FileOutputStream(output);
-            IOUtils.copy(inputStream, fos);
-        } catch(InvalidPathException e) {
-            log.error("Failed to create Output File", e);
-        } catch(FileNotFoundException e) {
-            log.error("Failed to create File Output Stream", e);
-            if(output != null && output.exists()) {
-                output.delete();
-            }
-            output = null;
-        } catch(IOException e) {
-            log.error("Failed to write to file", e);
-            if(output != null && output.exists()) {
-                output.delete();
-            }
-            output = null;
-        } finally {
-            IOUtils.closeQuietly(fos);
-            IOUtils.closeQuietly(inputStream);
-        }
-        return output;
-    }
-
-    /** @return Created File Input Stream or null if it failed **/
-    private InputStream openFileInput(Path directory, String fileName) {
-        File output = null;
-        FileInputStream fis = null;
-        try {
-            output = directory.resolve(fileName).toFile();
-            if(output.isFile() && output.exists()) {
-                output.deleteOnExit();
-                fis = new FileInputStream(output);
-            } else {
-                log.error("File: '{}' does not exist", output.getPath());
-            }
-        } catch(FileNotFoundException e) {
-            log.error("Failed to write to file", e);
-        }
-        return fis;
-    }
-
 }
@@ -25,6 +25,7 @@ package com.peregrine.transform.operation;
  * #L%
  */
 
+import com.peregrine.process.ProcessExecution;
 import com.peregrine.transform.ImageContext;
 import com.peregrine.transform.ImageTransformation;
 import com.peregrine.transform.OperationContext;
@@ -89,6 +90,12 @@ public class ConvertImageTransformation
             required = true
         )
         String transformationName() default DEFAULT_TRANSFORMATION_NAME;
+
+        @AttributeDefinition(
+            name = "Temporary Folder",
+            description = "Folder in which the temporary image files are placed. A RAM backed folder like /dev/shm avoids disk writes. If empty the system temporary folder is used"
+        )
+        String temporaryFolder() default "";
     }
 
     @Reference
@@ -98,6 +105,13 @@ public class ConvertImageTransformation
         return mimeTypeService;
     }
 
+    @Reference
+    ProcessExecution processExecution;
+
+    ProcessExecution getProcessExecution() {
+        return processExecution;
+    }
+
     @Activate
     private void activate(final Configuration configuration) {
         configure(configuration);
@@ -113,7 +127,7 @@ public class ConvertImageTransformation
     }
 
     protected void configure(final Configuration configuration) {
-        configure(configuration.enabled(), configuration.transformationName());
+        configure(configuration.enabled(), configuration.transformationName(), configuration.temporaryFolder());
     }
 
     @Override
@@ -122,13 +136,13 @@ public class ConvertImageTransformation
     }
 
     @Override
-    public void transform(ImageContext imageContext, OperationContext operationContext)
+    protected void addOperations(VipsPipeline pipeline, ImageContext imageContext, OperationContext operationContext)
         throws TransformationException
     {
         ArrayList<String> parameters = new ArrayList<>();
         parameters.add(IN_TOKEN);
         parameters.add(OUT_TOKEN);
         log.trace("Copy Image: name: '{}'", getTransformationName());
-        transform0(imageContext, OPERATION_NAME, parameters.toArray(new String[] {}));
+        pipeline.addStep(OPERATION_NAME, parameters.toArray(new String[] {}));
     }
 }
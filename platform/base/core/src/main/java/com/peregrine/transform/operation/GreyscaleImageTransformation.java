@@ -25,6 +25,7 @@ package com.peregrine.transform.operation;
  * #L%
  */
 
+import com.peregrine.process.ProcessExecution;
 import com.peregrine.transform.ImageContext;
 import com.peregrine.transform.ImageTransformation;
 import com.peregrine.transform.OperationContext;
@@ -92,6 +93,12 @@ public class GreyscaleImageTransformation
             required = true
         )
         String transformationName() default THUMBNAIL_TRANSFORMATION_NAME;
+
+        @AttributeDefinition(
+            name = "Temporary Folder",
+            description = "Folder in which the temporary image files are placed. A RAM backed folder like /dev/shm avoids disk writes. If empty the system temporary folder is used"
+        )
+        String temporaryFolder() default "";
     }
 
     @Reference
@@ -101,6 +108,13 @@ public class GreyscaleImageTransformation
         return mimeTypeService;
     }
 
+    @Reference
+    ProcessExecution processExecution;
+
+    ProcessExecution getProcessExecution() {
+        return processExecution;
+    }
+
     @Activate
     private void activate(final Configuration configuration) {
         configure(configuration);
@@ -116,7 +130,7 @@ public class GreyscaleImageTransformation
     }
 
     private void configure(final Configuration configuration) {
-        configure(configuration.enabled(), configuration.transformationName());
+        configure(configuration.enabled(), configuration.transformationName(), configuration.temporaryFolder());
     }
 
     @Override
@@ -125,34 +139,31 @@ public class GreyscaleImageTransformation
     }
 
     @Override
-    public void transform(ImageContext imageContext, OperationContext operationContext)
+    protected void addOperations(VipsPipeline pipeline, ImageContext imageContext, OperationContext operationContext)
         throws TransformationException
     {
+        // Inside a pipeline the image is handed over in the VIPS format which is always supported
         if(
+            pipeline.isEmpty() &&
             !PNG_MIME_TYPE.equals(imageContext.getSourceMimeType()) &&
             !"image/jpeg".equals(imageContext.getSourceMimeType())
         ) {
             throw new UnsupportedFormatException(imageContext.getSourceMimeType());
         }
-        // A PNG image cannot be saved directly as PNG with VIPS
-        // For that we need to store it as JPEG and then save it as PNG while stripping color info
-        boolean requiresConversion = PNG_MIME_TYPE.equals(imageContext.getSourceMimeType());
-        if(requiresConversion) {
-            imageContext.setTargetMimeType("v");
-        }
-        transform0(
-            imageContext, COLOURSPACE,
+        pipeline.addStep(
+            COLOURSPACE,
             // {in}, {out} mark the placement of the input / output file (path / name)
             IN_TOKEN, OUT_TOKEN,
             // Last Parameter is the color space type: Grey 16
             GREY_16
         );
-        if(requiresConversion) {
-            imageContext.setTargetMimeType(PNG_MIME_TYPE);
-            transform0(imageContext, PNGSAVE,
+        // A Grey 16 image cannot be saved directly as PNG with VIPS
+        // For that we keep it in the VIPS format and then save it as PNG while stripping color info
+        if(PNG_MIME_TYPE.equals(imageContext.getTargetMimeType())) {
+            pipeline.setFinalSave(PNGSAVE,
                 // {in}, {out} mark the placement of the input / output file (path / name)
                 IN_TOKEN, OUT_TOKEN,
-                // Last Parameter is to strip the color settings from JPEG to be able to save it as PNG
+                // Last Parameter is to strip the color settings to be able to save it as PNG
                 STRIP_TRUE);
         }
     }
@@ -0,0 +1,102 @@
+package com.peregrine.transform.operation;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import com.peregrine.transform.ImageTransformation;
+import com.peregrine.transform.OperationContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import java.awt.image.BufferedImage;
+
+import static com.peregrine.commons.util.PerUtil.EQUALS;
+import static com.peregrine.commons.util.PerUtil.PER_PREFIX;
+import static com.peregrine.commons.util.PerUtil.PER_VENDOR;
+import static org.osgi.framework.Constants.SERVICE_DESCRIPTION;
+import static org.osgi.framework.Constants.SERVICE_VENDOR;
+
+/**
+ * Converts the image in-process into the target format of the rendition. The
+ * conversion itself happens when the image is encoded at the end of the chain.
+ */
+@Component(
+    service = ImageTransformation.class,
+    property = {
+        SERVICE_DESCRIPTION + EQUALS + PER_PREFIX + "Java Convert Image Transformation (transformation name: java:convert)",
+        SERVICE_VENDOR + EQUALS + PER_VENDOR
+    }
+)
+@Designate(
+    ocd = JavaConvertImageTransformation.Configuration.class
+)
+public class JavaConvertImageTransformation
+    extends AbstractJavaImageTransformation
+{
+    public static final String DEFAULT_TRANSFORMATION_NAME = "java:convert";
+
+    @ObjectClassDefinition(
+        name = "Peregrine: Java Convert Image Transformation Configuration",
+        description = "Service to provide Image Transformation to convert images without VIPS. "
+            + "This service does not support any parameters and if provided are ignored"
+    )
+    public @interface Configuration {
+
+        @AttributeDefinition(
+            name = "Enabled",
+            description = "Flag to enabled / disabled that service",
+            required = true
+        )
+        boolean enabled() default true;
+
+        @AttributeDefinition(
+            name = "Name",
+            description = "Transformation Name used to find it in the Rendition Configuration",
+            required = true
+        )
+        String transformationName() default DEFAULT_TRANSFORMATION_NAME;
+    }
+
+    @Override
+    public String getDefaultTransformationName() {
+        return DEFAULT_TRANSFORMATION_NAME;
+    }
+
+    @Activate
+    @Modified
+    void configure(final Configuration configuration) {
+        configure(configuration.enabled(), configuration.transformationName());
+    }
+
+    @Override
+    protected BufferedImage transform(BufferedImage image, OperationContext operationContext) {
+        log.trace("Java Convert Image: name: '{}'", getTransformationName());
+        return image;
+    }
+}
@@ -0,0 +1,122 @@
+package com.peregrine.transform.operation;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import com.peregrine.transform.ImageTransformation;
+import com.peregrine.transform.OperationContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import java.awt.image.BufferedImage;
+
+import static com.peregrine.commons.util.PerUtil.EQUALS;
+import static com.peregrine.commons.util.PerUtil.PER_PREFIX;
+import static com.peregrine.commons.util.PerUtil.PER_VENDOR;
+import static org.osgi.framework.Constants.SERVICE_DESCRIPTION;
+import static org.osgi.framework.Constants.SERVICE_VENDOR;
+
+/**
+ * Crops a region of the image in-process. The region is given by the left and top
+ * position as well as its width and height which default to the rest of the image.
+ * A region reaching beyond the image is cut at its border.
+ */
+@Component(
+    service = ImageTransformation.class,
+    property = {
+        SERVICE_DESCRIPTION + EQUALS + PER_PREFIX + "Java Crop Image Transformation (transformation name: java:crop)",
+        SERVICE_VENDOR + EQUALS + PER_VENDOR
+    }
+)
+@Designate(
+    ocd = JavaCropImageTransformation.Configuration.class
+)
+public class JavaCropImageTransformation
+    extends AbstractJavaImageTransformation
+{
+    public static final String DEFAULT_TRANSFORMATION_NAME = "java:crop";
+
+    public static final String LEFT = "left";
+    public static final String TOP = "top";
+    public static final String WIDTH = "width";
+    public static final String HEIGHT = "height";
+
+    public static final String CROP_REGION_OUTSIDE_OF_IMAGE = "Crop Region: %s,%s is outside of the image with size: %sx%s";
+
+    @ObjectClassDefinition(
+        name = "Peregrine: Java Crop Image Transformation Configuration",
+        description = "Service to provide Crop Image Transformation without VIPS. "
+            + "This service supports the parameters left, top (both default to 0), width and height (both default to the rest of the image)"
+    )
+    public @interface Configuration {
+
+        @AttributeDefinition(
+            name = "Enabled",
+            description = "Flag to enabled / disabled that service",
+            required = true
+        )
+        boolean enabled() default true;
+
+        @AttributeDefinition(
+            name = "Name",
+            description = "Transformation Name used to find it in the Rendition Configuration",
+            required = true
+        )
+        String transformationName() default DEFAULT_TRANSFORMATION_NAME;
+    }
+
+    @Override
+    public String getDefaultTransformationName() {
+        return DEFAULT_TRANSFORMATION_NAME;
+    }
+
+    @Activate
+    @Modified
+    void configure(final Configuration configuration) {
+        configure(configuration.enabled(), configuration.transformationName());
+    }
+
+    @Override
+    protected BufferedImage transform(BufferedImage image, OperationContext operationContext)
+        throws TransformationException
+    {
+        int left = Math.max(0, getIntParameter(operationContext, LEFT, 0));
+        int top = Math.max(0, getIntParameter(operationContext, TOP, 0));
+        if(left >= image.getWidth() || top >= image.getHeight()) {
+            throw new TransformationException(String.format(CROP_REGION_OUTSIDE_OF_IMAGE, left, top, image.getWidth(), image.getHeight()));
+        }
+        int width = getIntParameter(operationContext, WIDTH, 0);
+        int height = getIntParameter(operationContext, HEIGHT, 0);
+        width = width <= 0 ? image.getWidth() - left : Math.min(width, image.getWidth() - left);
+        height = height <= 0 ? image.getHeight() - top : Math.min(height, image.getHeight() - top);
+        log.trace("Java Crop Image: name: '{}', left: '{}', top: '{}', width: '{}', height: '{}'", getTransformationName(), left, top, width, height);
+        // Copy the region so that the rest of the image can be released
+        return draw(image, width, height, left, top, width, height);
+    }
+}
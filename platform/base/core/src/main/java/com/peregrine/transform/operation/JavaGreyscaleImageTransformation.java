@@ -0,0 +1,117 @@
+package com.peregrine.transform.operation;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import com.peregrine.transform.ImageTransformation;
+import com.peregrine.transform.OperationContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import java.awt.image.BufferedImage;
+
+import static com.peregrine.commons.util.PerUtil.EQUALS;
+import static com.peregrine.commons.util.PerUtil.PER_PREFIX;
+import static com.peregrine.commons.util.PerUtil.PER_VENDOR;
+import static org.osgi.framework.Constants.SERVICE_DESCRIPTION;
+import static org.osgi.framework.Constants.SERVICE_VENDOR;
+
+/**
+ * Turns the image into greyscale in-process. Other than the VIPS Greyscale
+ * Transformation this works for all formats Java can read and it keeps the
+ * transparency of the image.
+ */
+@Component(
+    service = ImageTransformation.class,
+    property = {
+        SERVICE_DESCRIPTION + EQUALS + PER_PREFIX + "Java Greyscale Image Transformation (transformation name: java:greyscale)",
+        SERVICE_VENDOR + EQUALS + PER_VENDOR
+    }
+)
+@Designate(
+    ocd = JavaGreyscaleImageTransformation.Configuration.class
+)
+public class JavaGreyscaleImageTransformation
+    extends AbstractJavaImageTransformation
+{
+    public static final String DEFAULT_TRANSFORMATION_NAME = "java:greyscale";
+
+    @ObjectClassDefinition(
+        name = "Peregrine: Java Greyscale Image Transformation Configuration",
+        description = "Service to provide Greyscale Image Transformation without VIPS. "
+            + "This service does not support any parameters and if provided are ignored"
+    )
+    public @interface Configuration {
+
+        @AttributeDefinition(
+            name = "Enabled",
+            description = "Flag to enabled / disabled that service",
+            required = true
+        )
+        boolean enabled() default true;
+
+        @AttributeDefinition(
+            name = "Name",
+            description = "Transformation Name used to find it in the Rendition Configuration",
+            required = true
+        )
+        String transformationName() default DEFAULT_TRANSFORMATION_NAME;
+    }
+
+    @Override
+    public String getDefaultTransformationName() {
+        return DEFAULT_TRANSFORMATION_NAME;
+    }
+
+    @Activate
+    @Modified
+    void configure(final Configuration configuration) {
+        configure(configuration.enabled(), configuration.transformationName());
+    }
+
+    @Override
+    protected BufferedImage transform(BufferedImage image, OperationContext operationContext) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage answer = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_BYTE_GRAY);
+        int[] row = new int[width];
+        for(int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for(int x = 0; x < width; x++) {
+                int pixel = row[x];
+                // ITU-R BT.601 luma
+                int grey = (((pixel >> 16) & 0xff) * 299 + ((pixel >> 8) & 0xff) * 587 + (pixel & 0xff) * 114) / 1000;
+                row[x] = (pixel & 0xff000000) | (grey << 16) | (grey << 8) | grey;
+            }
+            answer.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return answer;
+    }
+}
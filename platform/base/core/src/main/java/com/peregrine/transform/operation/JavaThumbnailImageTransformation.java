@@ -0,0 +1,156 @@
+package com.peregrine.transform.operation;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import com.peregrine.transform.ImageTransformation;
+import com.peregrine.transform.OperationContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import java.awt.image.BufferedImage;
+
+import static com.peregrine.commons.util.PerUtil.EQUALS;
+import static com.peregrine.commons.util.PerUtil.PER_PREFIX;
+import static com.peregrine.commons.util.PerUtil.PER_VENDOR;
+import static org.osgi.framework.Constants.SERVICE_DESCRIPTION;
+import static org.osgi.framework.Constants.SERVICE_VENDOR;
+
+/**
+ * Creates a Thumbnail Image in-process like the VIPS Thumbnail Transformation does.
+ *
+ * The image is scaled to fit into width and height (height defaults to the width).
+ * Unless noCrop is true the image is scaled to cover the thumbnail size and the
+ * centre of it is cropped.
+ */
+@Component(
+    service = ImageTransformation.class,
+    property = {
+        SERVICE_DESCRIPTION + EQUALS + PER_PREFIX + "Java Thumbnail Image Transformation (transformation name: java:thumbnail)",
+        SERVICE_VENDOR + EQUALS + PER_VENDOR
+    }
+)
+@Designate(
+    ocd = JavaThumbnailImageTransformation.Configuration.class
+)
+public class JavaThumbnailImageTransformation
+    extends AbstractJavaImageTransformation
+{
+    public static final String DEFAULT_TRANSFORMATION_NAME = "java:thumbnail";
+    public static final int DEFAULT_WIDTH = 50;
+    public static final int DEFAULT_HEIGHT = 50;
+
+    public static final String NO_CROP = "noCrop";
+    public static final String WIDTH = "width";
+    public static final String HEIGHT = "height";
+
+    public static final String TRANSFORMATION_WIDTH_MUST_BE_PROVIDED = "Transformation Width must be greater than 0";
+
+    @ObjectClassDefinition(
+        name = "Peregrine: Java Thumbnail Image Transformation Configuration",
+        description = "Service to provide Thumbnail Image Transformation without VIPS. "
+            + "This service requires a greater than 0 width, an optional height (if <= 0 the width is used) and an optional noCrop flag (false/true) which if true is not cropping the image"
+    )
+    public @interface Configuration {
+
+        @AttributeDefinition(
+            name = "Enabled",
+            description = "Flag to enabled / disabled that service",
+            required = true
+        )
+        boolean enabled() default true;
+
+        @AttributeDefinition(
+            name = "Name",
+            description = "Transformation Name used to find it in the Rendition Configuration",
+            required = true
+        )
+        String transformationName() default DEFAULT_TRANSFORMATION_NAME;
+
+        @AttributeDefinition(
+            name = "Default Width",
+            description = "Default width of the Thumbnail if no value is given",
+            min = "1"
+        )
+        int defaultWidth() default DEFAULT_WIDTH;
+
+        @AttributeDefinition(
+            name = "Default Height",
+            description = "Default height of the Thumbnail if no value is given",
+            min = "1"
+        )
+        int defaultHeight() default DEFAULT_HEIGHT;
+    }
+
+    private int defaultWidth = DEFAULT_WIDTH;
+    private int defaultHeight = DEFAULT_HEIGHT;
+
+    @Override
+    public String getDefaultTransformationName() {
+        return DEFAULT_TRANSFORMATION_NAME;
+    }
+
+    @Activate
+    @Modified
+    void configure(final Configuration configuration) {
+        configure(configuration.enabled(), configuration.transformationName());
+        defaultWidth = configuration.defaultWidth();
+        defaultHeight = configuration.defaultHeight();
+        if(defaultWidth <= 0) {
+            throw new IllegalArgumentException(TRANSFORMATION_WIDTH_MUST_BE_PROVIDED);
+        }
+    }
+
+    @Override
+    protected BufferedImage transform(BufferedImage image, OperationContext operationContext)
+        throws TransformationException
+    {
+        boolean noCrop = !Boolean.FALSE.toString().equals(operationContext.getParameter(NO_CROP, Boolean.FALSE.toString()));
+        int width = getIntParameter(operationContext, WIDTH, defaultWidth);
+        int height = getIntParameter(operationContext, HEIGHT, defaultHeight);
+        if(width <= 0) {
+            throw new TransformationException(TRANSFORMATION_WIDTH_MUST_BE_PROVIDED);
+        }
+        if(height <= 0) {
+            height = width;
+        }
+        log.trace("Java Thumbnail Image: name: '{}', height: '{}', width: '{}', no-crop: '{}'", getTransformationName(), height, width, noCrop);
+        double widthRatio = (double) width / image.getWidth();
+        double heightRatio = (double) height / image.getHeight();
+        if(noCrop) {
+            double ratio = Math.min(widthRatio, heightRatio);
+            return scale(image, Math.max(1, (int) Math.round(image.getWidth() * ratio)), Math.max(1, (int) Math.round(image.getHeight() * ratio)));
+        }
+        double ratio = Math.max(widthRatio, heightRatio);
+        int regionWidth = Math.min(image.getWidth(), Math.max(1, (int) Math.round(width / ratio)));
+        int regionHeight = Math.min(image.getHeight(), Math.max(1, (int) Math.round(height / ratio)));
+        BufferedImage centre = image.getSubimage((image.getWidth() - regionWidth) / 2, (image.getHeight() - regionHeight) / 2, regionWidth, regionHeight);
+        return scale(centre, width, height);
+    }
+}
@@ -25,6 +25,7 @@ package com.peregrine.transform.operation;
  * #L%
  */
 
+import com.peregrine.process.ProcessExecution;
 import com.peregrine.transform.ImageContext;
 import com.peregrine.transform.ImageTransformation;
 import com.peregrine.transform.OperationContext;
@@ -100,6 +101,12 @@ public class ThumbnailImageTransformation
         )
         String transformationName() default DEFAULT_TRANSFORMATION_NAME;
 
+        @AttributeDefinition(
+            name = "Temporary Folder",
+            description = "Folder in which the temporary image files are placed. A RAM backed folder like /dev/shm avoids disk writes. If empty the system temporary folder is used"
+        )
+        String temporaryFolder() default "";
+
         @AttributeDefinition(
             name = "Default Width",
             description = "Default width of the Thumbnail if no value is given",
@@ -125,6 +132,13 @@ public class ThumbnailImageTransformation
         return mimeTypeService;
     }
 
+    @Reference
+    ProcessExecution processExecution;
+
+    ProcessExecution getProcessExecution() {
+        return processExecution;
+    }
+
     @Override
     public String getDefaultTransformationName() {
         return DEFAULT_TRANSFORMATION_NAME;
@@ -145,7 +159,7 @@ public class ThumbnailImageTransformation
     }
 
     protected void configure(final Configuration configuration) {
-        configure(configuration.enabled(), configuration.transformationName());
+        configure(configuration.enabled(), configuration.transformationName(), configuration.temporaryFolder());
         defaultWidth = configuration.defaultWidth();
         defaultHeight = configuration.defaultHeight();
         if(defaultWidth <= 0) {
@@ -154,7 +168,7 @@ public class ThumbnailImageTransformation
     }
 
     @Override
-    public void transform(ImageContext imageContext, OperationContext operationContext)
+    protected void addOperations(VipsPipeline pipeline, ImageContext imageContext, OperationContext operationContext)
         throws TransformationException
     {
         ArrayList<String> parameters = new ArrayList<>();
@@ -174,6 +188,6 @@ public class ThumbnailImageTransformation
             parameters.add(CENTRE);
         }
         log.trace("Thumbnail Image: name: '{}', height: '{}', width: '{}', no-crop: '{}'", getTransformationName(), height, width, noCrop);
-        transform0(imageContext, OPERATION_NAME, parameters.toArray(new String[] {}));
+        pipeline.addStep(OPERATION_NAME, parameters.toArray(new String[] {}));
     }
 }
@@ -0,0 +1,272 @@
+package com.peregrine.transform.operation;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import com.peregrine.commons.util.PerUtil;
+import com.peregrine.process.ExternalProcessException;
+import com.peregrine.process.ProcessContext;
+import com.peregrine.process.ProcessExecution;
+import com.peregrine.transform.ImageContext;
+import com.peregrine.transform.ImageTransformation.TransformationException;
+import com.peregrine.transform.ImageTransformationPipeline;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.peregrine.transform.operation.AbstractVipsImageTransformation.COULD_NOT_CREATE_INPUT_FILE;
+import static com.peregrine.transform.operation.AbstractVipsImageTransformation.COULD_NOT_CREATE_OUTPUT_FILE;
+import static com.peregrine.transform.operation.AbstractVipsImageTransformation.COULD_NOT_CREATE_TEMPORARY_FOLDER;
+import static com.peregrine.transform.operation.AbstractVipsImageTransformation.FAILED_TO_EXECUTE_VIPS_OPERATION;
+import static com.peregrine.transform.operation.AbstractVipsImageTransformation.FAILED_TO_EXECUTE_VIPS_OPERATION_WITH_CODE;
+import static com.peregrine.transform.operation.AbstractVipsImageTransformation.INPUT_WAS_NOT_USED_IN;
+import static com.peregrine.transform.operation.AbstractVipsImageTransformation.IN_TOKEN;
+import static com.peregrine.transform.operation.AbstractVipsImageTransformation.OUT_TOKEN;
+import static com.peregrine.transform.operation.AbstractVipsImageTransformation.VIPS;
+import static com.peregrine.transform.operation.AbstractVipsImageTransformation.VIPS_OPERATION_NAME_CANNOT_BE_EMPTY;
+
+/**
+ * Executes consecutive VIPS Operations together
+ *
+ * The image is written to the temporary folder once, the steps hand over
+ * their result in the VIPS format (.v) which does not need to be encoded
+ * and only the last step writes the target format. On non-Windows systems
+ * all steps are executed by a single shell process.
+ */
+public class VipsPipeline
+    implements ImageTransformationPipeline
+{
+    public static final String INTERMEDIATE_EXTENSION = "v";
+    public static final String INPUT_FILE_NAME = "in.";
+    public static final String STEP_FILE_NAME = "step";
+    public static final String OUTPUT_FILE_NAME = "out.";
+    public static final String SHELL = "sh";
+    public static final String SHELL_COMMAND_PARAMETER = "-c";
+    public static final String AND = " && ";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final AbstractVipsImageTransformation owner;
+    private final List<Step> steps = new ArrayList<>();
+    private Step finalSave;
+
+    public VipsPipeline(AbstractVipsImageTransformation owner) {
+        this.owner = owner;
+    }
+
+    /** @return True if no VIPS Operation was added yet **/
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    /**
+     * Adds a VIPS Operation to the end of this pipeline
+     *
+     * @param operationName VIPS Operation Name which cannot be empty
+     * @param parameters Parameters for the VIPS Operation where {in} must be used and {out} is optional
+     * @throws TransformationException If the operation name is empty
+     */
+    public void addStep(String operationName, String...parameters)
+        throws TransformationException
+    {
+        steps.add(new Step(operationName, parameters));
+        finalSave = null;
+    }
+
+    /**
+     * Sets the VIPS Operation that writes the target image if no other step is added after this one.
+     * The last step then writes its result in the VIPS format which is handed over to this operation.
+     *
+     * @param operationName VIPS Operation Name which cannot be empty
+     * @param parameters Parameters for the VIPS Operation where {in} and {out} must be used
+     * @throws TransformationException If the operation name is empty
+     */
+    public void setFinalSave(String operationName, String...parameters)
+        throws TransformationException
+    {
+        finalSave = new Step(operationName, parameters);
+    }
+
+    @Override
+    public void execute(ImageContext imageContext)
+        throws TransformationException
+    {
+        if(steps.isEmpty()) {
+            return;
+        }
+        List<Step> operations = new ArrayList<>(steps);
+        if(finalSave != null) {
+            operations.add(finalSave);
+        }
+        if(!owner.checkVips()) {
+            log.warn("VIPS not installed -> ignore transformations: '{}'", operations);
+            return;
+        }
+        Path temporaryFolder = owner.createTempFolder();
+        if(temporaryFolder == null) {
+            throw new TransformationException(COULD_NOT_CREATE_TEMPORARY_FOLDER + owner.getTemporaryFolder());
+        }
+        try {
+            Path current = temporaryFolder.resolve(INPUT_FILE_NAME + getExtension(imageContext.getSourceMimeType()));
+            InputStream imageStream = imageContext.getImageStream();
+            try {
+                Files.copy(imageStream, current);
+            } catch(IOException e) {
+                throw new TransformationException(COULD_NOT_CREATE_INPUT_FILE + current, e);
+            } finally {
+                IOUtils.closeQuietly(imageStream);
+            }
+            String targetExtension = getExtension(imageContext.getTargetMimeType());
+            List<List<String>> commands = new ArrayList<>();
+            for(int i = 0; i < operations.size(); i++) {
+                Path output = i == operations.size() - 1 ?
+                    temporaryFolder.resolve(OUTPUT_FILE_NAME + targetExtension) :
+                    temporaryFolder.resolve(STEP_FILE_NAME + i + "." + INTERMEDIATE_EXTENSION);
+                Step step = operations.get(i);
+                commands.add(step.toCommand(current, output));
+                if(step.usesOutput()) {
+                    current = output;
+                }
+            }
+            run(commands, operations);
+            try {
+                imageContext.resetImageStream(new ByteArrayInputStream(Files.readAllBytes(current)));
+            } catch(IOException e) {
+                throw new TransformationException(COULD_NOT_CREATE_OUTPUT_FILE + current, e);
+            }
+        } finally {
+            FileUtils.deleteQuietly(temporaryFolder.toFile());
+        }
+    }
+
+    /** Executes the commands in one shell process if possible otherwise one after the other **/
+    private void run(List<List<String>> commands, List<Step> operations)
+        throws TransformationException
+    {
+        ProcessExecution processExecution = owner.getProcessExecution();
+        List<List<String>> executions = new ArrayList<>();
+        if(commands.size() > 1 && !processExecution.isWindows()) {
+            StringBuilder script = new StringBuilder();
+            for(List<String> command : commands) {
+                if(script.length() > 0) {
+                    script.append(AND);
+                }
+                for(int i = 0; i < command.size(); i++) {
+                    if(i > 0) {
+                        script.append(' ');
+                    }
+                    script.append(quote(command.get(i)));
+                }
+            }
+            executions.add(Arrays.asList(SHELL, SHELL_COMMAND_PARAMETER, script.toString()));
+        } else {
+            executions.addAll(commands);
+        }
+        for(List<String> execution : executions) {
+            ProcessContext processContext = null;
+            try {
+                processContext = processExecution.execute(execution);
+                if(processContext.getExitCode() != 0) {
+                    log.debug("VIPS Pipeline: '{}' failed with error: '{}'", operations, processContext.getError());
+                    throw new TransformationException(String.format(FAILED_TO_EXECUTE_VIPS_OPERATION_WITH_CODE, operations, processContext.getExitCode()));
+                }
+            } catch(ExternalProcessException e) {
+                if(!log.isDebugEnabled()) {
+                    log.warn("Failed to execute VIPS commands: " + operations);
+                } else {
+                    log.debug("Failed to execute VIPS commands: " + operations, e);
+                }
+                throw new TransformationException(FAILED_TO_EXECUTE_VIPS_OPERATION + operations, e);
+            } finally {
+                if(processContext != null) {
+                    processContext.tearDown();
+                }
+            }
+        }
+    }
+
+    /** @return File Extension of the given Mime Type or the Mime Type if there is no extension for it **/
+    private String getExtension(String mimeType) {
+        String answer = owner.getMimeTypeService().getExtension(mimeType);
+        return answer == null ? mimeType : answer;
+    }
+
+    /** @return Given argument as single quoted shell argument **/
+    static String quote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+
+    /** A single VIPS Operation with its parameters **/
+    private static final class Step {
+        private final String operationName;
+        private final String[] parameters;
+
+        private Step(String operationName, String[] parameters)
+            throws TransformationException
+        {
+            if(PerUtil.isEmpty(operationName)) {
+                throw new TransformationException(VIPS_OPERATION_NAME_CANNOT_BE_EMPTY);
+            }
+            if(!Arrays.asList(parameters).contains(IN_TOKEN)) {
+                throw new IllegalArgumentException(INPUT_WAS_NOT_USED_IN);
+            }
+            this.operationName = operationName;
+            this.parameters = parameters;
+        }
+
+        private boolean usesOutput() {
+            return Arrays.asList(parameters).contains(OUT_TOKEN);
+        }
+
+        private List<String> toCommand(Path input, Path output) {
+            List<String> answer = new ArrayList<>(Arrays.asList(VIPS, operationName));
+            for(String parameter : parameters) {
+                if(IN_TOKEN.equals(parameter)) {
+                    answer.add(input.toAbsolutePath().toString());
+                } else if(OUT_TOKEN.equals(parameter)) {
+                    answer.add(output.toAbsolutePath().toString());
+                } else {
+                    answer.add(parameter);
+                }
+            }
+            return answer;
+        }
+
+        @Override
+        public String toString() {
+            return operationName;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.peregrine.intra;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public final class StreamingSlingHttpServletResponseTest {
+
+    private final ByteArrayOutputStream target = new ByteArrayOutputStream();
+    private final StreamingSlingHttpServletResponse model = new StreamingSlingHttpServletResponse(target);
+
+    @Test
+    public void getWriter_writesToTarget() throws IOException {
+        model.setCharacterEncoding("utf-8");
+        model.getWriter().write("<p>äöü</p>");
+        model.finish();
+        assertEquals("<p>äöü</p>", new String(target.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(0, model.getOutput().length);
+    }
+
+    @Test
+    public void getOutputStream_writesToTarget() throws IOException {
+        final byte[] content = { 1, 2, 3 };
+        model.getOutputStream().write(content);
+        assertArrayEquals(content, target.toByteArray());
+    }
+
+    @Test
+    public void getOutputStream_keepsErrorOutput() throws IOException {
+        model.setStatus(404);
+        model.getOutputStream().write("Not Found".getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, target.size());
+        assertEquals("Not Found", model.getOutputAsString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getOutputStream_afterWriter() {
+        model.getWriter();
+        model.getOutputStream();
+    }
+
+    @Test(expected = IOException.class)
+    public void finish_failsOnTargetError() throws IOException {
+        final StreamingSlingHttpServletResponse failing = new StreamingSlingHttpServletResponse(new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("Disk full");
+            }
+        });
+        failing.getWriter().write("content");
+        failing.finish();
+    }
+
+}
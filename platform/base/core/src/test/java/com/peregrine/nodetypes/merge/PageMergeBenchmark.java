@@ -0,0 +1,78 @@
+package com.peregrine.nodetypes.merge;
+
+import org.apache.sling.api.resource.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.peregrine.nodetypes.merge.PageMergeFixture.component;
+import static com.peregrine.nodetypes.merge.PageMergeFixture.model;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Merges a page into a chain of nested templates that each add many components and
+ * override one of their parent, with and without the Template Merge Cache.
+ */
+@State(Scope.Benchmark)
+public class PageMergeBenchmark {
+
+    @Param({ "1", "3" })
+    private int templateDepth;
+
+    @Param({ "10", "200" })
+    private int components;
+
+    private PageMerge uncached;
+    private PageMerge cached;
+
+    @Setup
+    public void setUp() throws Exception {
+        final PageMergeFixture fixture = new PageMergeFixture();
+        fixture.addFolder("/content/example");
+        fixture.addFolder("/content/example/templates");
+        fixture.addFolder("/content/example/pages");
+        String templatePath = "/content/example/templates";
+        for (int level = 0; level < templateDepth; level++) {
+            templatePath += "/level-" + level;
+            fixture.addPage(templatePath, model(null, createComponents("level-" + level)));
+        }
+
+        final Resource page = fixture.addPage("/content/example/pages/page", model(templatePath, createComponents("page")));
+        when(fixture.request.getResource()).thenReturn(page);
+        uncached = fixture.createPageMerge(null);
+        final TemplateMergeCacheImplConfig config = mock(TemplateMergeCacheImplConfig.class);
+        when(config.enabled()).thenReturn(true);
+        when(config.maxEntries()).thenReturn(100);
+        final TemplateMergeCacheImpl cache = new TemplateMergeCacheImpl();
+        cache.activate(config);
+        cached = fixture.createPageMerge(cache);
+    }
+
+    private List<Map> createComponents(final String prefix) {
+        final List<Map> answer = new ArrayList<>();
+        answer.add(component("header", prefix + " Header"));
+        for (int i = 0; i < components; i++) {
+            answer.add(component(prefix + "-" + i, "Text " + i));
+        }
+
+        return answer;
+    }
+
+    @Benchmark
+    public String uncached() {
+        return uncached.getMerged();
+    }
+
+    @Benchmark
+    public String cached() {
+        return cached.getMerged();
+    }
+
+}
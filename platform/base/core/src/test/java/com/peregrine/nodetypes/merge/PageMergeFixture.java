@@ -0,0 +1,118 @@
+package com.peregrine.nodetypes.merge;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.scripting.SlingScriptHelper;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.models.factory.ModelFactory;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.peregrine.commons.util.PerConstants.COMPONENT;
+import static com.peregrine.commons.util.PerConstants.JACKSON;
+import static com.peregrine.commons.util.PerConstants.JCR_CONTENT;
+import static com.peregrine.commons.util.PerConstants.PAGE_PRIMARY_TYPE;
+import static com.peregrine.commons.util.PerConstants.PATH;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pages and templates whose models are exported by a mocked Model Factory
+ */
+final class PageMergeFixture {
+
+    static final String CHILDREN = "children";
+    static final String TEXT = "text";
+
+    final ModelFactory modelFactory = mock(ModelFactory.class);
+    final SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+    final AtomicInteger exports = new AtomicInteger();
+
+    private final ResourceResolver resourceResolver = mock(ResourceResolver.class);
+    private final Map<String, Resource> resources = new HashMap<>();
+    private final Map<String, Supplier<Map>> models = new HashMap<>();
+
+    PageMergeFixture() throws Exception {
+        when(request.getResourceResolver()).thenReturn(resourceResolver);
+        when(resourceResolver.getResource(anyString())).thenAnswer(invocation -> resources.get(invocation.getArguments()[0]));
+        when(modelFactory.exportModelForResource(any(Resource.class), eq(JACKSON), eq(Map.class), anyMapOf(String.class, String.class)))
+            .thenAnswer(invocation -> {
+                exports.incrementAndGet();
+                return models.get(((Resource) invocation.getArguments()[0]).getPath()).get();
+            });
+    }
+
+    Resource addFolder(final String path) {
+        return addResource(path, "sling:Folder", null);
+    }
+
+    /** Adds a page whose content exports a fresh copy of the given model on each call **/
+    Resource addPage(final String path, final Map model) {
+        final Resource page = addResource(path, PAGE_PRIMARY_TYPE, null);
+        final Resource content = addResource(path + "/" + JCR_CONTENT, "per/Page", page);
+        when(page.getChild(JCR_CONTENT)).thenReturn(content);
+        models.put(content.getPath(), () -> TemplateMergeCacheImpl.copy(model));
+        return page;
+    }
+
+    private Resource addResource(final String path, final String resourceType, final Resource parent) {
+        final Resource resource = mock(Resource.class, path);
+        final int slash = path.lastIndexOf('/');
+        when(resource.getPath()).thenReturn(path);
+        when(resource.getName()).thenReturn(path.substring(slash + 1));
+        when(resource.getResourceType()).thenReturn(resourceType);
+        when(resource.getParent()).thenReturn(parent != null ? parent : resources.get(path.substring(0, slash)));
+        final ValueMap properties = new ValueMapDecorator(new HashMap<>());
+        when(resource.getValueMap()).thenReturn(properties);
+        resources.put(path, resource);
+        return resource;
+    }
+
+    PageMerge createPageMerge(final TemplateMergeCache cache) {
+        final SlingScriptHelper sling = mock(SlingScriptHelper.class);
+        when(sling.getService(ModelFactory.class)).thenReturn(modelFactory);
+        when(sling.getService(TemplateMergeCache.class)).thenReturn(cache);
+        final Bindings bindings = new SimpleBindings();
+        bindings.put(PageMerge.REQUEST, request);
+        bindings.put(PageMerge.SLING, sling);
+        final PageMerge answer = new PageMerge();
+        answer.init(bindings);
+        return answer;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map model(final String template, final List<Map> children) {
+        final Map answer = new LinkedHashMap();
+        answer.put(PATH, "/" + JCR_CONTENT);
+        answer.put(COMPONENT, "per-page");
+        if (template != null) {
+            answer.put(PageMerge.TEMPLATE, template);
+        }
+
+        answer.put(CHILDREN, new ArrayList<>(children));
+        return answer;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map component(final String name, final String text) {
+        final Map answer = new LinkedHashMap();
+        answer.put(PATH, "/" + JCR_CONTENT + "/" + name);
+        answer.put(COMPONENT, "example-text");
+        answer.put(TEXT, text);
+        return answer;
+    }
+}
@@ -0,0 +1,95 @@
+package com.peregrine.nodetypes.merge;
+
+import org.apache.sling.api.resource.Resource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.peregrine.commons.util.PerConstants.PATH;
+import static com.peregrine.nodetypes.merge.PageMergeFixture.CHILDREN;
+import static com.peregrine.nodetypes.merge.PageMergeFixture.TEXT;
+import static com.peregrine.nodetypes.merge.PageMergeFixture.component;
+import static com.peregrine.nodetypes.merge.PageMergeFixture.model;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class PageMergeTest {
+
+    private static final String TEMPLATES = "/content/example/templates";
+
+    private PageMergeFixture fixture;
+    private Resource page;
+    private Resource otherPage;
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new PageMergeFixture();
+        fixture.addFolder("/content/example");
+        fixture.addFolder(TEMPLATES);
+        fixture.addFolder("/content/example/pages");
+        fixture.addPage(TEMPLATES + "/base", model(null, Arrays.asList(
+            component("header", "Base Header"),
+            component("footer", "Base Footer")
+        )));
+        // The sub template inherits from its parent template implicitly
+        fixture.addPage(TEMPLATES + "/base/sub", model(null, Collections.singletonList(
+            component("footer", "Sub Footer")
+        )));
+        page = fixture.addPage("/content/example/pages/page", model(TEMPLATES + "/base/sub", Arrays.asList(
+            component("header", "Page Header"),
+            component("main", "Page Main")
+        )));
+        otherPage = fixture.addPage("/content/example/pages/other", model(TEMPLATES + "/base/sub", Collections.emptyList()));
+    }
+
+    private static TemplateMergeCache createCache() {
+        final TemplateMergeCacheImplConfig config = mock(TemplateMergeCacheImplConfig.class);
+        when(config.enabled()).thenReturn(true);
+        when(config.maxEntries()).thenReturn(10);
+        final TemplateMergeCacheImpl answer = new TemplateMergeCacheImpl();
+        answer.activate(config);
+        return answer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map> getChildren(final Map merged) {
+        return (List<Map>) merged.get(CHILDREN);
+    }
+
+    private static void assertChild(final Map child, final String name, final String text, final boolean fromTemplate) {
+        assertEquals("/jcr:content/" + name, child.get(PATH));
+        assertEquals(text, child.get(TEXT));
+        assertEquals(fromTemplate, Boolean.TRUE.equals(child.get(PageMerge.FROM_TEMPLATE)));
+    }
+
+    @Test
+    public void getMerged_mergesTemplateChain() {
+        final List<Map> children = getChildren(fixture.createPageMerge(null).getMerged(page));
+        assertEquals(3, children.size());
+        assertChild(children.get(0), "header", "Page Header", true);
+        assertChild(children.get(1), "footer", "Sub Footer", true);
+        assertChild(children.get(2), "main", "Page Main", false);
+    }
+
+    @Test
+    public void getMerged_reusesCachedTemplate() {
+        final PageMerge pageMerge = fixture.createPageMerge(createCache());
+        final Map first = pageMerge.getMerged(page);
+        assertEquals(3, fixture.exports.get());
+        assertEquals(first, fixture.createPageMerge(null).getMerged(page));
+        fixture.exports.set(0);
+
+        assertEquals(first, pageMerge.getMerged(page));
+        assertEquals(1, fixture.exports.get());
+        final List<Map> children = getChildren(pageMerge.getMerged(otherPage));
+        assertEquals(2, children.size());
+        assertChild(children.get(0), "header", "Base Header", true);
+        assertChild(children.get(1), "footer", "Sub Footer", true);
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.peregrine.render;
+
+import com.peregrine.SlingResourcesTest;
+import com.peregrine.render.RenderService.RenderException;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.peregrine.commons.util.PerConstants.JCR_LAST_MODIFIED;
+import static com.peregrine.commons.util.PerConstants.PER_REPLICATED;
+import static org.apache.sling.api.resource.observation.ResourceChange.ChangeType.CHANGED;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public final class RenderCacheImplTest extends SlingResourcesTest {
+
+    private static final String HTML = "html";
+    private static final byte[] VALUE = "<html />".getBytes(StandardCharsets.UTF_8);
+
+    private final RenderCacheImpl model = new RenderCacheImpl();
+    private final AtomicInteger renders = new AtomicInteger();
+
+    @Mock
+    private RenderCacheImplConfig config;
+
+    @Before
+    public void setUp() {
+        when(config.enabled()).thenReturn(true);
+        when(config.maxSize()).thenReturn(2L * VALUE.length);
+        when(config.maxEntrySize()).thenReturn(2L * VALUE.length);
+        model.activate(config);
+    }
+
+    private byte[] get(final String extension) throws RenderException {
+        return model.get(page, null, extension, () -> {
+            renders.incrementAndGet();
+            return VALUE;
+        });
+    }
+
+    private static ResourceChange change(final String path, final Set<String> changedPropertyNames) {
+        final ResourceChange change = mock(ResourceChange.class);
+        when(change.getType()).thenReturn(CHANGED);
+        when(change.getPath()).thenReturn(path);
+        when(change.getAddedPropertyNames()).thenReturn(Collections.emptySet());
+        when(change.getChangedPropertyNames()).thenReturn(changedPropertyNames);
+        when(change.getRemovedPropertyNames()).thenReturn(Collections.emptySet());
+        return change;
+    }
+
+    @Test
+    public void get_keepsRenderingInMemory() throws RenderException {
+        assertArrayEquals(VALUE, get(HTML));
+        assertArrayEquals(VALUE, get(HTML));
+        assertEquals(1, renders.get());
+        assertEquals(1, model.getHitCount());
+        assertEquals(1, model.getMissCount());
+        assertEquals(1, model.getEntryCount());
+        assertEquals(VALUE.length, model.getSize());
+    }
+
+    @Test
+    public void get_lastModifiedIsPartOfTheKey() throws RenderException {
+        get(HTML);
+        final Calendar lastModified = Calendar.getInstance();
+        jcrContent.putProperty(JCR_LAST_MODIFIED, lastModified);
+        get(HTML);
+        get(HTML);
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() throws RenderException {
+        get("a");
+        get("b");
+        get("a");
+        get("c");
+        assertEquals(2, model.getEntryCount());
+        assertEquals(1, model.getEvictionCount());
+        get("a");
+        assertEquals(3, renders.get());
+        get("b");
+        assertEquals(4, renders.get());
+    }
+
+    @Test
+    public void get_disabled() {
+        when(config.maxSize()).thenReturn(0L);
+        model.activate(config);
+        assertFalse(model.isEnabled());
+    }
+
+    @Test
+    public void get_disabledByConfiguration() {
+        when(config.enabled()).thenReturn(false);
+        model.activate(config);
+        assertFalse(model.isEnabled());
+    }
+
+    @Test
+    public void onChange_invalidatesThePageAndItsRelatives() throws RenderException {
+        get(HTML);
+        model.onChange(Collections.singletonList(change("/content/other/pages/page", null)));
+        model.onChange(Collections.singletonList(change(parent.getPath() + "/sibling/jcr:content", null)));
+        get(HTML);
+        assertEquals(1, renders.get());
+        model.onChange(Collections.singletonList(change(jcrContent.getPath() + "/title", null)));
+        get(HTML);
+        assertEquals(2, renders.get());
+        model.onChange(Collections.singletonList(change(page.getPath() + "/child/jcr:content", null)));
+        get(HTML);
+        assertEquals("An ancestor lists its children", 3, renders.get());
+        model.onChange(Collections.singletonList(change(parent.getPath(), null)));
+        assertEquals(0, model.getEntryCount());
+    }
+
+    @Test
+    public void onChange_keepsRenderingsWhileReplicating() throws RenderException {
+        get(HTML);
+        final String asset = parent.getPath() + "/assets/image.png";
+        model.onChange(Arrays.asList(
+            change(jcrContent.getPath(), Collections.singleton(PER_REPLICATED)),
+            change(asset + "/renditions", null),
+            change(asset + "/renditions/thumbnail.png", null),
+            change(asset + "/renditions/thumbnail.png/jcr:content", null)
+        ));
+        get(HTML);
+        assertEquals(1, renders.get());
+        assertEquals(1, model.getHitCount());
+    }
+
+    @Test
+    public void onChange_outsideOfContentClearsAll() throws RenderException {
+        get(HTML);
+        model.onChange(Collections.singletonList(change(component.getPath(), null)));
+        assertEquals(0, model.getEntryCount());
+    }
+
+    @Test
+    public void onChange_ignoresReplicationProperties() throws RenderException {
+        get(HTML);
+        model.onChange(Collections.singletonList(change(jcrContent.getPath(), Collections.singleton(PER_REPLICATED))));
+        assertEquals(1, model.getEntryCount());
+        final Set<String> names = new HashSet<>(Collections.singleton(PER_REPLICATED));
+        names.add(JCR_LAST_MODIFIED);
+        model.onChange(Collections.singletonList(change(jcrContent.getPath(), names)));
+        assertEquals(0, model.getEntryCount());
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.peregrine.rendition;
+
+import com.peregrine.adaption.PerAsset;
+import com.peregrine.transform.ImageContext;
+import com.peregrine.transform.ImageTransformation;
+import com.peregrine.transform.ImageTransformationConfiguration;
+import com.peregrine.transform.ImageTransformationConfigurationProvider;
+import com.peregrine.transform.ImageTransformationProvider;
+import com.peregrine.transform.OperationContext;
+import junitx.util.PrivateAccessor;
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.mime.MimeTypeService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public final class BaseResourceHandlerServiceTest {
+
+    private static final String ASSET_PATH = "/content/example/assets/image.jpg";
+    private static final String RENDITION = "thumbnail.png";
+    private static final String SOURCE_MIME_TYPE = "image/jpeg";
+    private static final String TARGET_MIME_TYPE = "image/png";
+    private static final byte[] RENDITION_DATA = "rendition".getBytes(StandardCharsets.UTF_8);
+
+    private final BaseResourceHandlerService model = new BaseResourceHandlerService();
+    private final AtomicInteger transformations = new AtomicInteger();
+    private final CountDownLatch transformationStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseTransformation = new CountDownLatch(1);
+
+    @Mock
+    private BaseResourceHandlerService.Configuration config;
+
+    @Mock
+    private MimeTypeService mimeTypeService;
+
+    @Mock
+    private ImageTransformationConfigurationProvider imageTransformationConfigurationProvider;
+
+    @Mock
+    private ImageTransformationProvider imageTransformationProvider;
+
+    @Mock
+    private ImageTransformation imageTransformation;
+
+    @Mock
+    private Resource resource;
+
+    @Mock
+    private ResourceResolver resourceResolver;
+
+    @Mock
+    private PerAsset asset;
+
+    @Before
+    public void setUp() throws Exception {
+        PrivateAccessor.setField(model, "mimeTypeService", mimeTypeService);
+        PrivateAccessor.setField(model, "imageTransformationConfigurationProvider", imageTransformationConfigurationProvider);
+        PrivateAccessor.setField(model, "imageTransformationProvider", imageTransformationProvider);
+        when(config.renditionWaitTimeout()).thenReturn(TimeUnit.SECONDS.toMillis(10));
+        model.activate(config);
+
+        when(mimeTypeService.getMimeType(RENDITION)).thenReturn(TARGET_MIME_TYPE);
+        final ImageTransformationConfiguration transformationConfiguration = mock(ImageTransformationConfiguration.class);
+        when(transformationConfiguration.getTransformationName()).thenReturn("thumbnail");
+        when(transformationConfiguration.getParameters()).thenReturn(Collections.emptyMap());
+        when(imageTransformationConfigurationProvider.getImageTransformationConfigurations(RENDITION, ASSET_PATH))
+            .thenReturn(Collections.singletonList(transformationConfiguration));
+        when(imageTransformationProvider.getImageTransformation("thumbnail")).thenReturn(imageTransformation);
+        doCallRealMethod().when(imageTransformationProvider)
+            .transform(anyString(), any(ImageContext.class), anyListOf(ImageTransformationConfiguration.class));
+        doAnswer(invocation -> {
+            transformations.incrementAndGet();
+            transformationStarted.countDown();
+            releaseTransformation.await();
+            ((ImageContext) invocation.getArguments()[0]).resetImageStream(new ByteArrayInputStream(RENDITION_DATA));
+            return null;
+        }).when(imageTransformation).transform(any(ImageContext.class), any(OperationContext.class));
+
+        when(resource.getPath()).thenReturn(ASSET_PATH);
+        when(resource.getResourceResolver()).thenReturn(resourceResolver);
+        when(resource.adaptTo(PerAsset.class)).thenReturn(asset);
+        when(resource.adaptTo(ModifiableValueMap.class)).thenReturn(mock(ModifiableValueMap.class));
+        when(asset.getPath()).thenReturn(ASSET_PATH);
+        when(asset.getResource()).thenReturn(resource);
+        when(asset.getRenditionStream((Resource) null)).thenAnswer(invocation -> new ByteArrayInputStream(new byte[] { 1 }));
+    }
+
+    private byte[] createRendition() throws Exception {
+        final ImageContext imageContext = model.createRendition(resource, RENDITION, SOURCE_MIME_TYPE);
+        assertNotNull(imageContext);
+        assertEquals(TARGET_MIME_TYPE, imageContext.getTargetMimeType());
+        return IOUtils.toByteArray(imageContext.getImageStream());
+    }
+
+    @Test
+    public void createRendition_concurrentRequestsShareOneTransformation() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<byte[]> leader = executor.submit(this::createRendition);
+            assertTrue(transformationStarted.await(10, TimeUnit.SECONDS));
+            final Future<byte[]> follower = executor.submit(this::createRendition);
+            while (model.getCoalescedWaitsCount() == 0) {
+                Thread.sleep(1);
+            }
+
+            releaseTransformation.countDown();
+            assertArrayEquals(RENDITION_DATA, leader.get(10, TimeUnit.SECONDS));
+            assertArrayEquals(RENDITION_DATA, follower.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, transformations.get());
+        verify(asset, times(1)).addRendition(eq(RENDITION), any(ByteArrayInputStream.class), eq(TARGET_MIME_TYPE));
+        verify(resourceResolver, never()).commit();
+        assertEquals(1, model.getCreatedRenditionsCount());
+        assertEquals(1, model.getCoalescedWaitsCount());
+        assertEquals(0, model.getWaitTimeoutsCount());
+        assertEquals(0, model.getRenditionsInFlightCount());
+    }
+
+    @Test
+    public void createRendition_existingRenditionIsNotTransformed() throws Exception {
+        when(asset.getRenditionStream(anyString())).thenReturn(new ByteArrayInputStream(RENDITION_DATA));
+        releaseTransformation.countDown();
+        assertArrayEquals(RENDITION_DATA, createRendition());
+        assertEquals(0, transformations.get());
+        assertEquals(0, model.getCreatedRenditionsCount());
+    }
+
+    @Test
+    public void createRendition_requestBeforeTheCommitIsServedFromTheCreatedContent() throws Exception {
+        releaseTransformation.countDown();
+        assertArrayEquals(RENDITION_DATA, createRendition());
+        assertArrayEquals(RENDITION_DATA, createRendition());
+        assertEquals(1, transformations.get());
+        assertEquals(1, model.getCoalescedWaitsCount());
+        assertEquals(0, model.getRenditionsInFlightCount());
+    }
+
+    @Test
+    public void createRendition_committedRenditionReleasesTheCreatedContent() throws Exception {
+        releaseTransformation.countDown();
+        createRendition();
+        when(asset.getRenditionStream(RENDITION)).thenReturn(new ByteArrayInputStream(RENDITION_DATA));
+        createRendition();
+        // Rendition removed again: the created content must not be served anymore
+        when(asset.getRenditionStream(RENDITION)).thenReturn(null);
+        createRendition();
+        assertEquals(2, transformations.get());
+    }
+
+    @Test
+    public void createRendition_renditionCommittedBeforeBecomingTheCreatorIsNotTransformed() throws Exception {
+        releaseTransformation.countDown();
+        when(asset.getRenditionStream(RENDITION)).thenReturn(null, new ByteArrayInputStream(RENDITION_DATA));
+        assertArrayEquals(RENDITION_DATA, createRendition());
+        assertEquals(0, transformations.get());
+        assertEquals(0, model.getCreatedRenditionsCount());
+    }
+
+    @Test
+    public void createRendition_expiredContentIsCreatedAgain() throws Exception {
+        when(config.renditionWaitTimeout()).thenReturn(1L);
+        model.activate(config);
+        releaseTransformation.countDown();
+        createRendition();
+        Thread.sleep(10);
+        createRendition();
+        assertEquals(2, transformations.get());
+    }
+}
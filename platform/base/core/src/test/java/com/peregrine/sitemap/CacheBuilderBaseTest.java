@@ -13,6 +13,8 @@ import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -179,6 +181,22 @@ public final class CacheBuilderBaseTest extends SlingResourcesTest {
         assertTrue(rebuildImplCalled.contains(contentRoot.getPath()));
     }
 
+    @Test
+    public void rebuild_batch() {
+        final int rootPagesCount = model.rebuild(Arrays.asList(resource.getPath(), jcrContent.getPath()));
+        verifyCommits(1);
+        assertEquals(5, rootPagesCount);
+        verify(model, times(1)).rebuildImpl(page.getPath(), Collections.singleton(jcrContent.getPath()));
+        verify(model, times(1)).rebuildImpl(resource.getPath(), Collections.singleton(resource.getPath()));
+    }
+
+    @Test
+    public void collapseToAncestors() {
+        final Set<String> paths = CacheBuilderBase.collapseToAncestors(
+                Arrays.asList("/content/a/b", "/content/a-b", "/content/a", "/content/a-b/c", "/content/c"));
+        assertEquals(new HashSet<>(Arrays.asList("/content/a", "/content/a-b", "/content/c")), paths);
+    }
+
     @Test
     public void buildCache() {
         final Resource cache = model.buildCache(jcrContent.getPath());
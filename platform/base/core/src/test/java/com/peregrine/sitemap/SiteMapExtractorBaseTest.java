@@ -5,6 +5,7 @@ import com.peregrine.commons.Page;
 import com.peregrine.commons.util.PerConstants;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.junit.Before;
@@ -17,6 +18,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 
 import static org.junit.Assert.*;
@@ -182,6 +184,32 @@ public final class SiteMapExtractorBaseTest extends SlingResourcesTest
         assertTrue(StringUtils.startsWith(entry.getUrl(), DOMAIN));
     }
 
+    @Test
+    public void extract_parallel() throws LoginException {
+        final ResourceResolverFactoryProxy resourceResolverFactory = Mockito.mock(ResourceResolverFactoryProxy.class);
+        when(resourceResolverFactory.getServiceResourceResolver()).thenReturn(resourceResolver);
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertEquals(model.extract(contentRoot), model.extract(contentRoot, pool, resourceResolverFactory));
+            assertEquals(model.extract(contentRoot), model.extract(contentRoot, null, resourceResolverFactory));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void extract_parallelFallsBackOnLoginException() throws LoginException {
+        final ResourceResolverFactoryProxy resourceResolverFactory = Mockito.mock(ResourceResolverFactoryProxy.class);
+        when(resourceResolverFactory.getServiceResourceResolver()).thenThrow(LoginException.class);
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertEquals(model.extract(contentRoot), model.extract(contentRoot, pool, resourceResolverFactory));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void buildSiteMapUrl() {
         for (int i = 0; i < 10; i++) {
@@ -0,0 +1,76 @@
+package com.peregrine.sitemap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(MockitoJUnitRunner.class)
+public final class XMLStreamBuilderTest {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final XMLStreamBuilder builder = new XMLStreamBuilder(output);
+    private final XMLBuilder expected = new XMLBuilder();
+    final Map<String, String> attributes = new HashMap<>();
+    {
+        attributes.put("a", "0");
+    }
+
+    private void test() {
+        builder.finish();
+        assertEquals(expected.toString(), new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void getByteLength() {
+        assertEquals(0, XMLStreamBuilder.getByteLength(StringUtils.EMPTY));
+        assertEquals(4, XMLStreamBuilder.getByteLength("text"));
+        assertEquals(2, XMLStreamBuilder.getByteLength("é"));
+        assertEquals(3, XMLStreamBuilder.getByteLength("€"));
+        assertEquals(4, XMLStreamBuilder.getByteLength("😀"));
+    }
+
+    @Test
+    public void emptyOutput() {
+        test();
+    }
+
+    @Test
+    public void emptyElement() {
+        builder.startElement("x");
+        expected.startElement("x");
+        test();
+    }
+
+    @Test
+    public void addElementWithAttributesAndText() {
+        builder.addElement("x", attributes, "text");
+        expected.addElement("x", attributes, "text");
+        test();
+    }
+
+    @Test
+    public void complexXml() {
+        builder.startElement("root");
+        builder.startElement("container", attributes);
+        builder.addElement("empty");
+        builder.addElement("text", "téxt");
+        builder.addElement("text-attributes", attributes, "text");
+
+        expected.startElement("root");
+        expected.startElement("container", attributes);
+        expected.addElement("empty");
+        expected.addElement("text", "téxt");
+        expected.addElement("text-attributes", attributes, "text");
+
+        test();
+    }
+
+}
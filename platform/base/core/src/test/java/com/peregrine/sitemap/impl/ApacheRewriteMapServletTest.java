@@ -2,6 +2,8 @@ package com.peregrine.sitemap.impl;
 
 import com.peregrine.SlingServletTest;
 import com.peregrine.sitemap.SiteMapEntry;
+import com.peregrine.sitemap.SiteMapResponse;
+import com.peregrine.sitemap.SiteMapResponseCache;
 import com.peregrine.sitemap.SiteMapStructureCache;
 import junitx.util.PrivateAccessor;
 import org.apache.commons.lang3.StringUtils;
@@ -11,12 +13,18 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedList;
 import java.util.List;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -27,9 +35,13 @@ public final class ApacheRewriteMapServletTest extends SlingServletTest {
     @Mock
     private SiteMapStructureCache structure;
 
+    @Mock
+    private SiteMapResponseCache responseCache;
+
     @Before
     public void setUp() throws NoSuchFieldException {
         PrivateAccessor.setField(model, "structure", structure);
+        PrivateAccessor.setField(model, "responseCache", responseCache);
     }
 
     @Test
@@ -40,8 +52,7 @@ public final class ApacheRewriteMapServletTest extends SlingServletTest {
         assertTrue(StringUtils.isBlank(writer.toString()));
     }
 
-    @Test
-    public void doGet() throws IOException {
+    private void mockEntries() {
         final List<SiteMapEntry> entries = new LinkedList<>();
         SiteMapEntry entry = new SiteMapEntry("/content/page-1");
         entry.setUrl("http://www.example.com/page-1.html");
@@ -50,6 +61,11 @@ public final class ApacheRewriteMapServletTest extends SlingServletTest {
         entry.setUrl("/page-2.html");
         entries.add(entry);
         when(structure.get(resource)).thenReturn(entries);
+    }
+
+    @Test
+    public void doGet() throws IOException {
+        mockEntries();
         model.doGet(request, response);
         assertNotEquals(HttpServletResponse.SC_NOT_FOUND, status);
         assertEquals(
@@ -58,4 +74,46 @@ public final class ApacheRewriteMapServletTest extends SlingServletTest {
         );
     }
 
+    @Test
+    public void doGet_responseCache() throws IOException {
+        mockEntries();
+        when(responseCache.isEnabled()).thenReturn(true);
+        when(responseCache.get(eq(resource), eq("sitemap.txt"), any())).thenAnswer(invocation -> {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final SiteMapResponseCache.ContentWriter writer = (SiteMapResponseCache.ContentWriter) invocation.getArguments()[2];
+            return writer.write(out) ? new SiteMapResponse(out.toByteArray()) : null;
+        });
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) { }
+
+            @Override
+            public void write(final int b) {
+                output.write(b);
+            }
+
+        });
+        model.doGet(request, response);
+        assertNotEquals(HttpServletResponse.SC_NOT_FOUND, status);
+        assertEquals(
+                "/page-1.html /content/page-1.html\n" + "/page-2.html /content/page-2.html\n",
+                output.toString(StandardCharsets.UTF_8.name())
+        );
+    }
+
+    @Test
+    public void noEntries_responseCache() throws IOException {
+        when(structure.get(resource)).thenReturn(null);
+        when(responseCache.isEnabled()).thenReturn(true);
+        model.doGet(request, response);
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, status);
+    }
+
 }
@@ -4,6 +4,7 @@ import com.peregrine.SlingResourcesTest;
 import com.peregrine.mock.ResourceMock;
 import com.peregrine.sitemap.*;
 import junitx.util.PrivateAccessor;
+import org.apache.commons.io.FileUtils;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.PersistenceException;
 import org.junit.Before;
@@ -12,12 +13,16 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -42,6 +47,9 @@ public final class SiteMapFilesCacheImplTest extends SlingResourcesTest {
     @Mock
     private SiteMapFileContentBuilder siteMapBuilder;
 
+    @Mock
+    private SiteMapResponseCache responseCache;
+
     @Mock
     private SiteMapFilesCacheImplConfig config;
 
@@ -57,10 +65,12 @@ public final class SiteMapFilesCacheImplTest extends SlingResourcesTest {
         PrivateAccessor.setField(model, "structureCache", structureCache);
         PrivateAccessor.setField(model, "siteMapExtractorsContainer", siteMapExtractorsContainer);
         PrivateAccessor.setField(model, "siteMapBuilder", siteMapBuilder);
+        PrivateAccessor.setField(model, "responseCache", responseCache);
 
         when(config.location()).thenReturn(LOCATION);
         when(config.maxEntriesCount()).thenReturn(0);
         when(config.maxFileSize()).thenReturn(0);
+        when(config.storeInRepository()).thenReturn(true);
 
         when(resourceResolverFactory.getServiceResourceResolver()).thenReturn(resourceResolver);
 
@@ -144,6 +154,7 @@ public final class SiteMapFilesCacheImplTest extends SlingResourcesTest {
     @Test
     public void rebuildImpl() {
         model.rebuildImpl(page.getPath());
+        verify(responseCache).invalidate(page.getPath());
     }
 
     @SuppressWarnings("unchecked")
@@ -160,6 +171,47 @@ public final class SiteMapFilesCacheImplTest extends SlingResourcesTest {
     public void onCacheRefreshed() throws PersistenceException {
         model.onCacheRefreshed(page, entries);
         verify(resourceResolver, times(2)).commit();
+        verify(responseCache).invalidate(page.getPath());
+    }
+
+    @Test
+    public void write_fromRepository() throws IOException {
+        cache.putProperty("0", VALUE);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(model.write(page, 0, out));
+        assertEquals(VALUE, out.toString(StandardCharsets.UTF_8.name()));
+        assertFalse(model.write(page, 1, new ByteArrayOutputStream()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void write_streamFromStructureCache() throws IOException {
+        when(config.storeInRepository()).thenReturn(false);
+        model.activate(config);
+        entries.add(createEntry(1));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(model.write(page, 0, out));
+        verify(siteMapBuilder).writeUrlSet(eq(entries), anyMap(), eq(out));
+        assertFalse(model.write(page, 1, out));
+        assertNull(model.get(page, 0));
+    }
+
+    @Test
+    public void onCacheRefreshed_writeCompressedFiles() throws IOException {
+        final File directory = Files.createTempDirectory("sitemaps").toFile();
+        try {
+            when(config.diskLocation()).thenReturn(directory.getPath());
+            model.activate(config);
+            model.onCacheRefreshed(page, entries);
+            assertNotNull(model.getCompressedFile(page, 0));
+            assertNull(model.getCompressedFile(page, 1));
+
+            when(structureCache.get(page)).thenReturn(null);
+            model.onCacheRefreshed(page, null);
+            assertNull(model.getCompressedFile(page, 0));
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
     }
 
 }
\ No newline at end of file
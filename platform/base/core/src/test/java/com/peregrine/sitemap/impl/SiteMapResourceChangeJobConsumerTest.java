@@ -13,13 +13,13 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.Assert.*;
-import static org.mockito.Matchers.anyString;
-import static org.mockito.Mockito.doAnswer;
-import static org.mockito.Mockito.when;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public final class SiteMapResourceChangeJobConsumerTest extends SlingResourcesTest {
@@ -67,13 +67,26 @@ public final class SiteMapResourceChangeJobConsumerTest extends SlingResourcesTe
         initialPaths.add(parent.getPath());
         final Set<Object> rebuilt = new HashSet<>();
         doAnswer(invocation -> {
-            rebuilt.add(invocation.getArguments()[0]);
-            return null;
-        }).when(cache).rebuild(anyString());
+            rebuilt.addAll((Collection<?>) invocation.getArguments()[0]);
+            return 2;
+        }).when(cache).rebuild(anyCollectionOf(String.class));
         assertEquals(JobConsumer.JobResult.OK, model.process(job));
         assertTrue(rebuilt.contains(resource.getPath()));
         assertFalse(rebuilt.contains(page.getPath()));
         assertTrue(rebuilt.contains(parent.getPath()));
+        assertEquals(1, model.getProcessedJobsCount());
+        assertEquals(3, model.getChangedPathsCount());
+        assertEquals(2, model.getRebuiltRootPagesCount());
+        assertEquals(1.5, model.getCollapseRatio(), 0);
+    }
+
+    @Test
+    public void process_nothingAllowed() {
+        page.setPrimaryType("per:Page");
+        initialPaths.add(page.getPath());
+        assertEquals(JobConsumer.JobResult.OK, model.process(job));
+        verify(cache, never()).rebuild(anyCollectionOf(String.class));
+        assertEquals(0, model.getCollapseRatio(), 0);
     }
 
 }
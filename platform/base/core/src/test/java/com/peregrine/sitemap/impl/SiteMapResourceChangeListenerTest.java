@@ -12,10 +12,10 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.*;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public final class SiteMapResourceChangeListenerTest extends SlingResourcesTest {
@@ -27,12 +27,16 @@ public final class SiteMapResourceChangeListenerTest extends SlingResourcesTest
     @Mock
     private JobManager jobManager;
 
+    @Mock
+    private SiteMapResourceChangeListenerConfig config;
+
     @Before
     public void setUp() throws NoSuchFieldException {
         PrivateAccessor.setField(model, "jobManager", jobManager);
         addChange(resource.getPath());
         addChange(jcrContent.getPath());
         addChange(page.getPath());
+        when(config.batchInterval()).thenReturn(60000);
     }
 
     private void addChange(final String path) {
@@ -44,6 +48,7 @@ public final class SiteMapResourceChangeListenerTest extends SlingResourcesTest
     @SuppressWarnings("unchecked")
 	@Test
     public void onChange() {
+        model.activate(config);
         when(jobManager.addJob(any(), any())).thenAnswer(invocation -> {
             props.putAll((Map<String, Object>) invocation.getArguments()[1]);
             return null;
@@ -58,4 +63,32 @@ public final class SiteMapResourceChangeListenerTest extends SlingResourcesTest
         assertTrue(paths.contains(page.getPath()));
     }
 
+    @Test
+    public void onChange_collectsBatch() {
+        when(config.maxBatchInterval()).thenReturn(60000);
+        model.activate(config);
+        model.onChange(changes);
+        model.onChange(changes);
+        verify(jobManager, never()).addJob(any(), any());
+        assertEquals(3, model.getPendingPathsCount());
+        model.deactivate();
+        verify(jobManager, times(1)).addJob(any(), any());
+        assertEquals(6, model.getObservedChangesCount());
+        assertEquals(1, model.getScheduledJobsCount());
+        assertEquals(0, model.getPendingPathsCount());
+    }
+
+    @Test
+    public void onChange_splitsFullBatch() {
+        when(config.maxBatchInterval()).thenReturn(60000);
+        when(config.maxBatchSize()).thenReturn(2);
+        model.activate(config);
+        model.onChange(changes);
+        verify(jobManager, times(1)).addJob(any(), any());
+        assertEquals(1, model.getPendingPathsCount());
+        model.call(null);
+        verify(jobManager, times(2)).addJob(any(), any());
+        model.deactivate();
+    }
+
 }
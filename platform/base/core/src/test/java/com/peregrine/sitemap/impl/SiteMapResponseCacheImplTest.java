@@ -0,0 +1,107 @@
+package com.peregrine.sitemap.impl;
+
+import com.peregrine.SlingResourcesTest;
+import com.peregrine.sitemap.SiteMapResponse;
+import com.peregrine.sitemap.SiteMapStructureCache;
+import junitx.util.PrivateAccessor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public final class SiteMapResponseCacheImplTest extends SlingResourcesTest {
+
+    private static final String KEY = "sitemap.0.xml";
+    private static final byte[] VALUE = "<xml />".getBytes(StandardCharsets.UTF_8);
+
+    private final SiteMapResponseCacheImpl model = new SiteMapResponseCacheImpl();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    @Mock
+    private SiteMapStructureCache structureCache;
+
+    @Mock
+    private SiteMapResponseCacheImplConfig config;
+
+    @Before
+    public void setUp() throws NoSuchFieldException {
+        PrivateAccessor.setField(model, "structureCache", structureCache);
+        when(config.maxSize()).thenReturn(2L * VALUE.length);
+        model.activate(config);
+    }
+
+    private SiteMapResponse get(final String key) throws IOException {
+        return model.get(page, key, out -> {
+            writes.incrementAndGet();
+            out.write(VALUE);
+            return true;
+        });
+    }
+
+    @Test
+    public void activate() {
+        verify(structureCache).addRefreshListener(model);
+        assertTrue(model.isEnabled());
+    }
+
+    @Test
+    public void deactivate() {
+        model.deactivate();
+        verify(structureCache).removeRefreshListener(model);
+    }
+
+    @Test
+    public void get_keepsResponseInMemory() throws IOException {
+        final SiteMapResponse response = get(KEY);
+        assertEquals(VALUE.length, response.getContentLength());
+        assertSame(response, get(KEY));
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    public void get_noContent() throws IOException {
+        assertNull(model.get(page, KEY, out -> false));
+    }
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() throws IOException {
+        get("a");
+        get("b");
+        get("a");
+        get("c");
+        assertEquals(3, writes.get());
+        get("a");
+        assertEquals(3, writes.get());
+        get("b");
+        assertEquals(4, writes.get());
+    }
+
+    @Test
+    public void onCacheRefreshed() throws IOException {
+        get(KEY);
+        model.onCacheRefreshed(page, null);
+        get(KEY);
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    public void invalidate_duringWrite() throws IOException {
+        model.get(page, KEY, out -> {
+            model.invalidate(page.getPath());
+            out.write(VALUE);
+            return true;
+        });
+        get(KEY);
+        assertEquals(1, writes.get());
+    }
+
+}
@@ -2,6 +2,8 @@ package com.peregrine.sitemap.impl;
 
 import com.peregrine.SlingServletTest;
 import com.peregrine.sitemap.SiteMapFilesCache;
+import com.peregrine.sitemap.SiteMapResponse;
+import com.peregrine.sitemap.SiteMapResponseCache;
 import com.peregrine.sitemap.SiteMapUrlBuilder;
 import junitx.util.PrivateAccessor;
 import org.apache.commons.lang3.StringUtils;
@@ -11,11 +13,20 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import static org.junit.Assert.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public final class SiteMapServletTest extends SlingServletTest {
@@ -30,10 +41,32 @@ public final class SiteMapServletTest extends SlingServletTest {
     @Mock
     private SiteMapFilesCache cache;
 
+    @Mock
+    private SiteMapResponseCache responseCache;
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
     @Before
-    public void setUp() throws NoSuchFieldException {
+    public void setUp() throws NoSuchFieldException, IOException {
         PrivateAccessor.setField(model, "urlBuilder", urlBuilder);
         PrivateAccessor.setField(model, "cache", cache);
+        PrivateAccessor.setField(model, "responseCache", responseCache);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) { }
+
+            @Override
+            public void write(final int b) {
+                output.write(b);
+            }
+
+        });
     }
 
     @Test
@@ -42,15 +75,77 @@ public final class SiteMapServletTest extends SlingServletTest {
         model.doGet(request, response);
         assertEquals(HttpServletResponse.SC_NOT_FOUND, status);
         assertTrue(StringUtils.isBlank(writer.toString()));
+        assertEquals(0, output.size());
     }
 
     @Test
     public void doGet() throws IOException {
         when(urlBuilder.getIndex(request)).thenReturn(0);
-        when(cache.get(resource, 0)).thenReturn(RESULT);
+        when(cache.write(eq(resource), eq(0), any(OutputStream.class))).thenAnswer(invocation -> {
+            ((OutputStream) invocation.getArguments()[2]).write(RESULT.getBytes(StandardCharsets.UTF_8));
+            return true;
+        });
         model.doGet(request, response);
         assertNotEquals(HttpServletResponse.SC_NOT_FOUND, status);
-        assertEquals(RESULT, writer.toString());
+        assertEquals(RESULT, output.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    @Test
+    public void doGet_notFound() throws IOException {
+        when(urlBuilder.getIndex(request)).thenReturn(1);
+        model.doGet(request, response);
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, status);
+        assertEquals(0, output.size());
+    }
+
+    @Test
+    public void doGet_compressedFile() throws IOException {
+        final File file = File.createTempFile("sitemap.0", ".xml.gz");
+        try {
+            Files.write(file.toPath(), RESULT.getBytes(StandardCharsets.UTF_8));
+            when(urlBuilder.getIndex(request)).thenReturn(0);
+            when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+            when(cache.getCompressedFile(resource, 0)).thenReturn(file);
+            model.doGet(request, response);
+            verify(response).setHeader("Content-Encoding", "gzip");
+            verify(cache, never()).write(any(), anyInt(), any());
+            assertEquals(RESULT, output.toString(StandardCharsets.UTF_8.name()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void doGet_responseCache() throws IOException {
+        final SiteMapResponse cached = new SiteMapResponse(RESULT.getBytes(StandardCharsets.UTF_8));
+        when(urlBuilder.getIndex(request)).thenReturn(0);
+        when(responseCache.isEnabled()).thenReturn(true);
+        when(responseCache.get(eq(resource), eq("sitemap.0.xml"), any())).thenReturn(cached);
+        model.doGet(request, response);
+        verify(response).setHeader("ETag", cached.getETag());
+        verify(cache, never()).write(any(), anyInt(), any());
+        assertEquals(RESULT, output.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    @Test
+    public void doGet_notModified() throws IOException {
+        final SiteMapResponse cached = new SiteMapResponse(RESULT.getBytes(StandardCharsets.UTF_8));
+        when(urlBuilder.getIndex(request)).thenReturn(0);
+        when(request.getHeader("If-None-Match")).thenReturn(cached.getETag());
+        when(responseCache.isEnabled()).thenReturn(true);
+        when(responseCache.get(eq(resource), eq("sitemap.0.xml"), any())).thenReturn(cached);
+        model.doGet(request, response);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, status);
+        assertEquals(0, output.size());
+    }
+
+    @Test
+    public void doGet_responseCacheNotFound() throws IOException {
+        when(urlBuilder.getIndex(request)).thenReturn(1);
+        when(responseCache.isEnabled()).thenReturn(true);
+        model.doGet(request, response);
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, status);
+        assertEquals(0, output.size());
     }
 
 }
@@ -17,6 +17,8 @@ import org.mockito.runners.MockitoJUnitRunner;
 import java.util.*;
 
 import static com.peregrine.commons.util.PerConstants.JCR_PRIMARY_TYPE;
+import static com.peregrine.commons.util.PerConstants.PATH;
+import static com.peregrine.mock.MockTools.setParentChildRelationships;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
@@ -59,6 +61,7 @@ public final class SiteMapStructureCacheImplTest extends SlingResourcesTest impl
 
         when(config.debounceInterval()).thenReturn(0);
         when(config.location()).thenReturn(LOCATION);
+        when(config.incremental()).thenReturn(true);
 
         when(resourceResolverFactory.getServiceResourceResolver()).thenReturn(resourceResolver);
 
@@ -221,4 +224,124 @@ public final class SiteMapStructureCacheImplTest extends SlingResourcesTest impl
         assertNull(model.visit("0", new HashMap<>(), cache));
     }
 
-}
\ No newline at end of file
+    private PageMock addChildPage() {
+        final PageMock child = new PageMock("Child");
+        child.setPath(page.getPath() + "/child");
+        setParentChildRelationships(page, child);
+        return init(child);
+    }
+
+    private SiteMapEntry createEntry(final String path, final Object value) {
+        final SiteMapEntry result = new SiteMapEntry(path);
+        result.putProperty(X, value);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void rebuild_incrementalWritesOnlyChangedEntries() throws PersistenceException {
+        repo.mockResourceResolverCreate();
+        final PageMock child = addChildPage();
+        addEntryCache(X, X).putProperty(PATH, page.getPath());
+        addEntryCache(X, X).putProperty(PATH, child.getPath());
+        final List<SiteMapEntry> childEntries = Arrays.asList(createEntry(child.getPath(), Y));
+        when(extractor.extract(child)).thenReturn(childEntries);
+
+        model.rebuild(child.getPath());
+        assertOnCacheRefreshedMapContains(page);
+
+        verify(extractor, never()).extract(page);
+        verify(resourceResolver, times(1)).create(any(), eq("1"), any(Map.class));
+        final List<SiteMapEntry> entries = onCacheRefreshedMap.get(page);
+        assertEquals(2, entries.size());
+        assertEquals(page.getPath(), entries.get(0).getPath());
+        assertEquals(Y, entries.get(1).getProperty(X));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void rebuild_incrementalAddsNewPage() throws PersistenceException {
+        repo.mockResourceResolverCreate();
+        final PageMock child = addChildPage();
+        addEntryCache(X, X).putProperty(PATH, page.getPath());
+        final List<SiteMapEntry> childEntries = Arrays.asList(createEntry(child.getPath(), Y));
+        when(extractor.extract(child)).thenReturn(childEntries);
+
+        model.rebuild(child.getPath() + "/jcr:content");
+        assertOnCacheRefreshedMapContains(page);
+
+        verify(resourceResolver, times(1)).create(any(), anyString(), any(Map.class));
+        final List<SiteMapEntry> entries = onCacheRefreshedMap.get(page);
+        assertEquals(2, entries.size());
+        assertEquals(child.getPath(), entries.get(1).getPath());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void rebuild_incrementalRemovesDeletedPage() throws PersistenceException {
+        final String removedPath = page.getPath() + "/removed";
+        addEntryCache(X, X).putProperty(PATH, page.getPath());
+        final ResourceMock removed = addEntryCache(X, X);
+        removed.putProperty(PATH, removedPath);
+
+        model.rebuild(removedPath);
+        assertOnCacheRefreshedMapContains(page);
+
+        verify(resourceResolver).delete(removed);
+        verify(resourceResolver, never()).create(any(), anyString(), any(Map.class));
+        assertEquals(1, onCacheRefreshedMap.get(page).size());
+    }
+
+    @Test
+    public void rebuild_fullRebuildAfterIncrementalRemovalDropsAllStaleEntries() throws PersistenceException {
+        repo.mockResourceResolverCreate();
+        final PageMock child = addChildPage();
+        final String removedPath = page.getPath() + "/removed";
+        // an earlier incremental removal already left a gap at "2"
+        addEntryCache("0", page.getPath());
+        final ResourceMock removed = addEntryCache("1", removedPath);
+        final ResourceMock stale = addEntryCache("3", child.getPath());
+
+        model.rebuild(removedPath);
+        assertOnCacheRefreshedMapContains(page);
+        verify(resourceResolver).delete(removed);
+
+        onCacheRefreshedMap.clear();
+        entries.add(createEntry(page.getPath(), X));
+        entries.add(createEntry(child.getPath(), X));
+        when(extractor.extract(page)).thenReturn(entries);
+        model.call(page.getPath());
+        assertOnCacheRefreshedMapContains(page);
+
+        verify(resourceResolver).delete(stale);
+        assertEquals(entries, onCacheRefreshedMap.get(page));
+    }
+
+    private ResourceMock addEntryCache(final String name, final String path) {
+        final ResourceMock result = init(cache.createChild(name));
+        result.putProperty(X, X);
+        result.putProperty(PATH, path);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void rebuild_incrementalFailingCommitRebuildsWholeCache() throws PersistenceException {
+        repo.mockResourceResolverCreate();
+        final PageMock child = addChildPage();
+        addEntryCache(X, X).putProperty(PATH, page.getPath());
+        addEntryCache(X, X).putProperty(PATH, child.getPath());
+        final List<SiteMapEntry> childEntries = Arrays.asList(createEntry(child.getPath(), Y));
+        when(extractor.extract(child)).thenReturn(childEntries);
+        when(extractor.extract(page)).thenReturn(entries);
+        doThrow(PersistenceException.class).doNothing().when(resourceResolver).commit();
+
+        // the first commit after this call is the one of the incremental update
+        model.rebuildImpl(page.getPath(), Collections.singleton(child.getPath()));
+        assertOnCacheRefreshedMapContains(page);
+
+        verify(extractor).extract(page);
+        assertEquals(entries, onCacheRefreshedMap.get(page));
+    }
+
+}
\ No newline at end of file
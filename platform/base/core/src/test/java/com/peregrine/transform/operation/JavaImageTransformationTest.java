@@ -0,0 +1,168 @@
+package com.peregrine.transform.operation;
+
+import com.peregrine.transform.ImageContext;
+import com.peregrine.transform.ImageTransformation.TransformationException;
+import com.peregrine.transform.OperationContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.peregrine.commons.util.PerConstants.PNG_MIME_TYPE;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public final class JavaImageTransformationTest {
+
+    private static final String JPEG_MIME_TYPE = "image/jpeg";
+
+    private final JavaThumbnailImageTransformation thumbnail = new JavaThumbnailImageTransformation();
+    private final JavaCropImageTransformation crop = new JavaCropImageTransformation();
+    private final JavaGreyscaleImageTransformation greyscale = new JavaGreyscaleImageTransformation();
+    private final JavaConvertImageTransformation convert = new JavaConvertImageTransformation();
+
+    @Mock
+    private JavaThumbnailImageTransformation.Configuration thumbnailConfiguration;
+
+    @Mock
+    private JavaCropImageTransformation.Configuration cropConfiguration;
+
+    @Mock
+    private JavaGreyscaleImageTransformation.Configuration greyscaleConfiguration;
+
+    @Mock
+    private JavaConvertImageTransformation.Configuration convertConfiguration;
+
+    @Before
+    public void setUp() {
+        when(thumbnailConfiguration.enabled()).thenReturn(true);
+        when(thumbnailConfiguration.transformationName()).thenReturn(JavaThumbnailImageTransformation.DEFAULT_TRANSFORMATION_NAME);
+        when(thumbnailConfiguration.defaultWidth()).thenReturn(50);
+        when(thumbnailConfiguration.defaultHeight()).thenReturn(50);
+        thumbnail.configure(thumbnailConfiguration);
+        when(cropConfiguration.enabled()).thenReturn(true);
+        when(cropConfiguration.transformationName()).thenReturn(JavaCropImageTransformation.DEFAULT_TRANSFORMATION_NAME);
+        crop.configure(cropConfiguration);
+        when(greyscaleConfiguration.enabled()).thenReturn(true);
+        when(greyscaleConfiguration.transformationName()).thenReturn(JavaGreyscaleImageTransformation.DEFAULT_TRANSFORMATION_NAME);
+        greyscale.configure(greyscaleConfiguration);
+        when(convertConfiguration.enabled()).thenReturn(true);
+        when(convertConfiguration.transformationName()).thenReturn(JavaConvertImageTransformation.DEFAULT_TRANSFORMATION_NAME);
+        convert.configure(convertConfiguration);
+    }
+
+    /** @return PNG of the given size with a red left half and a blue right half **/
+    private static byte[] createPng(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width / 2, height);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(width / 2, 0, width - width / 2, height);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static OperationContext operation(String... parameters) {
+        Map<String, String> map = new HashMap<>();
+        for(int i = 0; i < parameters.length; i += 2) {
+            map.put(parameters[i], parameters[i + 1]);
+        }
+        return new OperationContext("test", map);
+    }
+
+    private static BufferedImage read(ImageContext imageContext) throws IOException {
+        return ImageIO.read(imageContext.getImageStream());
+    }
+
+    @Test
+    public void thumbnail_cropsTheCentre() throws Exception {
+        ImageContext imageContext = new ImageContext(PNG_MIME_TYPE, new ByteArrayInputStream(createPng(400, 200)));
+        thumbnail.transform(imageContext, operation("width", "100", "height", "100"));
+        BufferedImage image = read(imageContext);
+        assertEquals(100, image.getWidth());
+        assertEquals(100, image.getHeight());
+        assertEquals(Color.RED.getRGB(), image.getRGB(10, 50));
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(90, 50));
+    }
+
+    @Test
+    public void thumbnail_noCropKeepsTheAspectRatio() throws Exception {
+        ImageContext imageContext = new ImageContext(PNG_MIME_TYPE, new ByteArrayInputStream(createPng(400, 200)));
+        thumbnail.transform(imageContext, operation("width", "100", "height", "100", "noCrop", "true"));
+        BufferedImage image = read(imageContext);
+        assertEquals(100, image.getWidth());
+        assertEquals(50, image.getHeight());
+    }
+
+    @Test
+    public void crop_cutsTheRegionAtTheBorder() throws Exception {
+        ImageContext imageContext = new ImageContext(PNG_MIME_TYPE, new ByteArrayInputStream(createPng(400, 200)));
+        crop.transform(imageContext, operation("left", "300", "top", "50", "width", "200"));
+        BufferedImage image = read(imageContext);
+        assertEquals(100, image.getWidth());
+        assertEquals(150, image.getHeight());
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(0, 0));
+    }
+
+    @Test(expected = TransformationException.class)
+    public void crop_failsOutsideOfTheImage() throws Exception {
+        ImageContext imageContext = new ImageContext(PNG_MIME_TYPE, new ByteArrayInputStream(createPng(40, 20)));
+        crop.transform(imageContext, operation("left", "40"));
+    }
+
+    @Test
+    public void chain_keepsTheImageDecodedAndConvertsAtTheEnd() throws Exception {
+        ImageContext imageContext = new ImageContext(PNG_MIME_TYPE, JPEG_MIME_TYPE, new ByteArrayInputStream(createPng(400, 200)));
+        BufferedImage decoded = imageContext.getImage();
+        thumbnail.transform(imageContext, operation("width", "40", "height", "20"));
+        greyscale.transform(imageContext, operation());
+        convert.transform(imageContext, operation());
+        assertNotSame(decoded, imageContext.getImage());
+        assertEquals(JPEG_MIME_TYPE, imageContext.getSourceMimeType());
+
+        imageContext.encodeImage();
+        BufferedImage image = read(imageContext);
+        assertEquals(40, image.getWidth());
+        assertEquals(20, image.getHeight());
+        int pixel = image.getRGB(5, 10);
+        int red = (pixel >> 16) & 0xff;
+        int green = (pixel >> 8) & 0xff;
+        int blue = pixel & 0xff;
+        assertTrue(Math.abs(red - green) < 8 && Math.abs(green - blue) < 8);
+    }
+
+    @Test
+    public void disabled_leavesTheImageUntouched() throws Exception {
+        when(greyscaleConfiguration.enabled()).thenReturn(false);
+        greyscale.configure(greyscaleConfiguration);
+        byte[] png = createPng(10, 10);
+        ImageContext imageContext = new ImageContext(PNG_MIME_TYPE, new ByteArrayInputStream(png));
+        greyscale.transform(imageContext, operation());
+        assertEquals(Color.RED.getRGB(), read(imageContext).getRGB(0, 0));
+    }
+
+    @Test
+    public void configure_missingNameFallsBackToTheDefault() {
+        when(greyscaleConfiguration.transformationName()).thenReturn(null);
+        greyscale.configure(greyscaleConfiguration);
+        assertEquals(JavaGreyscaleImageTransformation.DEFAULT_TRANSFORMATION_NAME, greyscale.getTransformationName());
+        when(greyscaleConfiguration.transformationName()).thenReturn("");
+        greyscale.configure(greyscaleConfiguration);
+        assertEquals(JavaGreyscaleImageTransformation.DEFAULT_TRANSFORMATION_NAME, greyscale.getTransformationName());
+    }
+}
@@ -0,0 +1,271 @@
+package com.peregrine.transform.operation;
+
+import com.peregrine.process.ProcessContext;
+import com.peregrine.process.ProcessExecution;
+import com.peregrine.transform.ImageContext;
+import com.peregrine.transform.ImageTransformation;
+import com.peregrine.transform.ImageTransformationConfiguration;
+import com.peregrine.transform.ImageTransformationProvider;
+import com.peregrine.transform.OperationContext;
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.commons.mime.MimeTypeService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.peregrine.commons.util.PerConstants.PNG_MIME_TYPE;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Executes the VIPS Pipeline against a mocked Process Execution that simulates each VIPS
+ * command by appending the operation name to the content of its input file.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public final class VipsPipelineTest {
+
+    private static final String JPEG_MIME_TYPE = "image/jpeg";
+    private static final String SOURCE = "source";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ThumbnailImageTransformation thumbnail = new ThumbnailImageTransformation();
+    private final GreyscaleImageTransformation greyscale = new GreyscaleImageTransformation();
+    private final ConvertImageTransformation convert = new ConvertImageTransformation();
+    private final List<List<String>> executions = new ArrayList<>();
+
+    @Mock
+    private ProcessExecution processExecution;
+
+    @Mock
+    private ProcessContext success;
+
+    @Mock
+    private MimeTypeService mimeTypeService;
+
+    private String root;
+
+    @Before
+    public void setUp() throws Exception {
+        when(mimeTypeService.getExtension(JPEG_MIME_TYPE)).thenReturn("jpg");
+        when(mimeTypeService.getExtension(PNG_MIME_TYPE)).thenReturn("png");
+        when(success.getExitCode()).thenReturn(0);
+        when(processExecution.execute(anyListOf(String.class))).thenAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            final List<String> command = (List<String>) invocation.getArguments()[0];
+            if (!command.contains(AbstractVipsImageTransformation.VERSION_PARAMETER)) {
+                executions.add(command);
+                if (VipsPipeline.SHELL.equals(command.get(0))) {
+                    for (final List<String> subCommand : parseScript(command.get(2))) {
+                        simulate(subCommand);
+                    }
+                } else {
+                    simulate(command);
+                }
+            }
+
+            return success;
+        });
+        root = temporaryFolder.newFolder("it's a folder").getAbsolutePath();
+        thumbnail.mimeTypeService = mimeTypeService;
+        thumbnail.processExecution = processExecution;
+        thumbnail.configure(true, ThumbnailImageTransformation.DEFAULT_TRANSFORMATION_NAME, root);
+        greyscale.mimeTypeService = mimeTypeService;
+        greyscale.processExecution = processExecution;
+        greyscale.configure(true, GreyscaleImageTransformation.THUMBNAIL_TRANSFORMATION_NAME, root);
+        convert.mimeTypeService = mimeTypeService;
+        convert.processExecution = processExecution;
+        convert.configure(true, ConvertImageTransformation.DEFAULT_TRANSFORMATION_NAME, root);
+    }
+
+    /** Writes the content of the input file followed by the operation name into the output file **/
+    private static void simulate(final List<String> command) throws IOException {
+        assertEquals(AbstractVipsImageTransformation.VIPS, command.get(0));
+        final Path input = Paths.get(command.get(2));
+        assertTrue("Input: " + input + " must exist", Files.exists(input));
+        final String content = new String(Files.readAllBytes(input), StandardCharsets.UTF_8) + "|" + command.get(1);
+        Files.write(Paths.get(command.get(3)), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @return Commands of a shell script made of single quoted arguments joined by ' && ' **/
+    private static List<List<String>> parseScript(final String script) {
+        final List<List<String>> result = new ArrayList<>();
+        List<String> command = new ArrayList<>();
+        int i = 0;
+        while (i < script.length()) {
+            if (script.charAt(i) == ' ') {
+                i++;
+            } else if (script.startsWith("&& ", i)) {
+                result.add(command);
+                command = new ArrayList<>();
+                i += 3;
+            } else {
+                assertEquals("Argument is not quoted: " + script.substring(i), '\'', script.charAt(i));
+                final StringBuilder argument = new StringBuilder();
+                i++;
+                while (true) {
+                    final int end = script.indexOf('\'', i);
+                    argument.append(script, i, end);
+                    if (script.startsWith("'\\''", end)) {
+                        argument.append('\'');
+                        i = end + 4;
+                    } else {
+                        i = end + 1;
+                        break;
+                    }
+                }
+
+                command.add(argument.toString());
+            }
+        }
+
+        result.add(command);
+        return result;
+    }
+
+    private static ImageContext image(final String sourceMimeType, final String targetMimeType) {
+        return new ImageContext(sourceMimeType, targetMimeType, new ByteArrayInputStream(SOURCE.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static OperationContext operation() {
+        return new OperationContext("test", Collections.emptyMap());
+    }
+
+    private static String read(final ImageContext imageContext) throws IOException {
+        return new String(IOUtils.toByteArray(imageContext.getImageStream()), StandardCharsets.UTF_8);
+    }
+
+    private static ImageTransformationConfiguration configuration(final String transformationName) {
+        final ImageTransformationConfiguration result = mock(ImageTransformationConfiguration.class);
+        when(result.getTransformationName()).thenReturn(transformationName);
+        when(result.getParameters()).thenReturn(Collections.emptyMap());
+        return result;
+    }
+
+    @Test
+    public void quote() {
+        assertEquals("'a b'", VipsPipeline.quote("a b"));
+        assertEquals("'it'\\''s'", VipsPipeline.quote("it's"));
+        assertEquals("''", VipsPipeline.quote(""));
+    }
+
+    @Test
+    public void fusedChain_runsOneShellProcessWithIntermediates() throws Exception {
+        final ImageContext imageContext = image(JPEG_MIME_TYPE, PNG_MIME_TYPE);
+        final VipsPipeline pipeline = (VipsPipeline) thumbnail.createPipeline();
+        assertTrue(thumbnail.addTo(pipeline, imageContext, operation()));
+        assertTrue(greyscale.addTo(pipeline, imageContext, operation()));
+        pipeline.execute(imageContext);
+
+        assertEquals(1, executions.size());
+        final List<String> execution = executions.get(0);
+        assertEquals(Arrays.asList(VipsPipeline.SHELL, VipsPipeline.SHELL_COMMAND_PARAMETER), execution.subList(0, 2));
+        final List<List<String>> commands = parseScript(execution.get(2));
+        final String folder = Paths.get(commands.get(0).get(2)).getParent().toString();
+        assertTrue("Temporary folder: " + folder + " must be inside: " + root, folder.startsWith(root));
+        assertEquals(Arrays.asList(
+            Arrays.asList("vips", "thumbnail", folder + File.separator + "in.jpg", folder + File.separator + "step0.v",
+                "50", "--height", "50", "--crop", "centre"),
+            Arrays.asList("vips", "colourspace", folder + File.separator + "step0.v", folder + File.separator + "step1.v", "grey16"),
+            Arrays.asList("vips", "pngsave", folder + File.separator + "step1.v", folder + File.separator + "out.png", "--strip=true")
+        ), commands);
+        assertEquals(SOURCE + "|thumbnail|colourspace|pngsave", read(imageContext));
+        assertFalse("Temporary folder must be deleted", new File(folder).exists());
+    }
+
+    @Test
+    public void fusedChain_windowsExecutesEachCommand() throws Exception {
+        when(processExecution.isWindows()).thenReturn(true);
+        final ImageContext imageContext = image(JPEG_MIME_TYPE, PNG_MIME_TYPE);
+        final VipsPipeline pipeline = (VipsPipeline) thumbnail.createPipeline();
+        thumbnail.addTo(pipeline, imageContext, operation());
+        greyscale.addTo(pipeline, imageContext, operation());
+        pipeline.execute(imageContext);
+
+        assertEquals(3, executions.size());
+        for (final List<String> execution : executions) {
+            assertEquals(AbstractVipsImageTransformation.VIPS, execution.get(0));
+        }
+        assertEquals(SOURCE + "|thumbnail|colourspace|pngsave", read(imageContext));
+    }
+
+    @Test
+    public void singleStep_isExecutedWithoutShell() throws Exception {
+        final ImageContext imageContext = image(JPEG_MIME_TYPE, JPEG_MIME_TYPE);
+        convert.transform(imageContext, operation());
+
+        assertEquals(1, executions.size());
+        assertEquals(Arrays.asList("vips", "copy"), executions.get(0).subList(0, 2));
+        assertEquals(SOURCE + "|copy", read(imageContext));
+    }
+
+    @Test
+    public void provider_splitsTheChainAroundNonVipsSteps() throws Exception {
+        final ImageTransformation java = mock(ImageTransformation.class);
+        when(java.getTransformationName()).thenReturn("java");
+        doAnswer(invocation -> {
+            final ImageContext imageContext = (ImageContext) invocation.getArguments()[0];
+            final String content = read(imageContext) + "|java";
+            imageContext.resetImageStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+            return null;
+        }).when(java).transform(any(ImageContext.class), any(OperationContext.class));
+        final ImageTransformationProvider provider = new ImageTransformationProvider();
+        provider.bindImageTransformation(thumbnail);
+        provider.bindImageTransformation(java);
+        provider.bindImageTransformation(convert);
+        provider.bindImageTransformation(greyscale);
+
+        final ImageContext imageContext = image(JPEG_MIME_TYPE, JPEG_MIME_TYPE);
+        provider.transform("rendition.jpg", imageContext, Arrays.asList(
+            configuration(ThumbnailImageTransformation.DEFAULT_TRANSFORMATION_NAME),
+            configuration("java"),
+            configuration(ConvertImageTransformation.DEFAULT_TRANSFORMATION_NAME),
+            configuration(GreyscaleImageTransformation.THUMBNAIL_TRANSFORMATION_NAME)
+        ));
+
+        assertEquals(2, executions.size());
+        assertEquals(Arrays.asList("vips", "thumbnail"), executions.get(0).subList(0, 2));
+        assertEquals(VipsPipeline.SHELL, executions.get(1).get(0));
+        assertEquals(2, parseScript(executions.get(1).get(2)).size());
+        assertEquals(SOURCE + "|thumbnail|java|copy|colourspace", read(imageContext));
+    }
+
+    @Test
+    public void greyscale_pngTargetIsSavedFromTheVipsFormat() throws Exception {
+        final ImageContext imageContext = image(JPEG_MIME_TYPE, PNG_MIME_TYPE);
+        greyscale.transform(imageContext, operation());
+        assertEquals(SOURCE + "|colourspace|pngsave", read(imageContext));
+    }
+
+    @Test
+    public void greyscale_pngSourceKeepsTheTargetFormat() throws Exception {
+        final ImageContext imageContext = image(PNG_MIME_TYPE, JPEG_MIME_TYPE);
+        greyscale.transform(imageContext, operation());
+
+        assertEquals(1, executions.size());
+        assertTrue(executions.get(0).get(3).endsWith("out.jpg"));
+        assertEquals(JPEG_MIME_TYPE, imageContext.getTargetMimeType());
+        assertEquals(SOURCE + "|colourspace", read(imageContext));
+    }
+}
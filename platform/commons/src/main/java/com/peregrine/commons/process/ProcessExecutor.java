@@ -0,0 +1,290 @@
+package com.peregrine.commons.process;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes External Processes and captures their output and error in memory
+ *
+ * The number of concurrently running processes is bounded so that bursts
+ * of requests cannot flood the host with processes. Processes that exceed
+ * the timeout are killed.
+ */
+public final class ProcessExecutor {
+
+    public static final int NO_EXIT_CODE = -99999;
+    public static final String NO_FREE_PROCESS_SLOT = "No free process slot within %s ms for command: %s";
+
+    private static final int BUFFER_SIZE = 8192;
+    /** Time to wait for the streams of a killed process as child processes may still hold them open **/
+    private static final long KILLED_STREAM_WAIT = 1000;
+
+    private final Semaphore permits;
+    private final int maxConcurrentProcesses;
+    private final long timeout;
+
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong waitingCount = new AtomicLong();
+    private final AtomicLong totalExecutionTime = new AtomicLong();
+    private final AtomicLong maxExecutionTime = new AtomicLong();
+
+    /**
+     * @param maxConcurrentProcesses Number of processes that can run at the same time. If lower than 1 then it is set to 1
+     * @param timeout Time in milliseconds a process can run and a caller waits for a free slot. If 0 or lower it waits forever
+     */
+    public ProcessExecutor(int maxConcurrentProcesses, long timeout) {
+        this.maxConcurrentProcesses = Math.max(1, maxConcurrentProcesses);
+        this.timeout = timeout;
+        this.permits = new Semaphore(this.maxConcurrentProcesses, true);
+    }
+
+    public int getMaxConcurrentProcesses() {
+        return maxConcurrentProcesses;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Executes the given command with the timeout of this executor
+     * @see #execute(List, File, long)
+     */
+    public Result execute(List<String> command, File workingDirectory)
+        throws IOException
+    {
+        return execute(command, workingDirectory, timeout);
+    }
+
+    /**
+     * Executes the given command and waits until it is done
+     *
+     * @param command Command followed by none or more arguments
+     * @param workingDirectory Working Directory of the Process or null for the current one
+     * @param timeout Time in milliseconds the process can run and the caller waits for a free slot. If 0 or lower it waits forever
+     * @return Result of the execution which is timed out if the process was killed
+     * @throws IOException If there was no free slot in time or the process could not be started
+     */
+    public Result execute(List<String> command, File workingDirectory, long timeout)
+        throws IOException
+    {
+        if(!acquire(timeout)) {
+            rejectedCount.incrementAndGet();
+            throw new IOException(String.format(NO_FREE_PROCESS_SLOT, timeout, command));
+        }
+        long start = System.currentTimeMillis();
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            if(workingDirectory != null) {
+                processBuilder.directory(workingDirectory);
+            }
+            Process process;
+            try {
+                process = processBuilder.start();
+            } catch(IOException e) {
+                failureCount.incrementAndGet();
+                throw e;
+            }
+            // The process does not get any input
+            try {
+                process.getOutputStream().close();
+            } catch(IOException e) {
+                // Ignored as the process may already be gone
+            }
+            StreamCollector output = new StreamCollector(process.getInputStream());
+            StreamCollector error = new StreamCollector(process.getErrorStream());
+            output.start();
+            error.start();
+            int exitCode = NO_EXIT_CODE;
+            boolean timedOut = false;
+            try {
+                if(timeout > 0) {
+                    if(process.waitFor(timeout, TimeUnit.MILLISECONDS)) {
+                        exitCode = process.exitValue();
+                    } else {
+                        timedOut = true;
+                    }
+                } else {
+                    exitCode = process.waitFor();
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                timedOut = true;
+            } finally {
+                if(timedOut) {
+                    process.destroyForcibly();
+                    timeoutCount.incrementAndGet();
+                }
+            }
+            long streamDeadline = timedOut ? System.currentTimeMillis() + KILLED_STREAM_WAIT : 0;
+            Result answer = new Result(exitCode, timedOut, output.collect(streamDeadline), error.collect(streamDeadline), System.currentTimeMillis() - start);
+            // A killed process has no exit code and is only counted as a timeout
+            if(!timedOut && exitCode != 0) {
+                failureCount.incrementAndGet();
+            }
+            return answer;
+        } finally {
+            permits.release();
+            long duration = System.currentTimeMillis() - start;
+            executionCount.incrementAndGet();
+            totalExecutionTime.addAndGet(duration);
+            maxExecutionTime.accumulateAndGet(duration, Math::max);
+        }
+    }
+
+    private boolean acquire(long timeout) {
+        waitingCount.incrementAndGet();
+        try {
+            if(timeout > 0) {
+                return permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+            }
+            permits.acquire();
+            return true;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waitingCount.decrementAndGet();
+        }
+    }
+
+    /** @return Number of finished executions **/
+    public long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    /** @return Number of executions that could not be started or ended with a non-zero exit code, without the timeouts **/
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /** @return Number of processes that were killed because of the timeout or an interruption **/
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /** @return Number of executions that did not get a free slot in time **/
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /** @return Number of currently running processes **/
+    public int getActiveCount() {
+        return maxConcurrentProcesses - permits.availablePermits();
+    }
+
+    /** @return Number of callers waiting for a free slot **/
+    public long getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    /** @return Sum of the execution times in milliseconds **/
+    public long getTotalExecutionTime() {
+        return totalExecutionTime.get();
+    }
+
+    /** @return Longest execution time in milliseconds **/
+    public long getMaxExecutionTime() {
+        return maxExecutionTime.get();
+    }
+
+    /** Result of an External Process Execution **/
+    public static final class Result {
+        private final int exitCode;
+        private final boolean timedOut;
+        private final byte[] output;
+        private final byte[] error;
+        private final long executionTime;
+
+        private Result(int exitCode, boolean timedOut, byte[] output, byte[] error, long executionTime) {
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.output = output;
+            this.error = error;
+            this.executionTime = executionTime;
+        }
+
+        /** @return Exit Code of the Process or NO_EXIT_CODE if it was killed **/
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        /** @return True if the process was killed because of the timeout or an interruption **/
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        public byte[] getOutput() {
+            return output;
+        }
+
+        public String getOutput(Charset charset) {
+            return new String(output, charset);
+        }
+
+        public byte[] getError() {
+            return error;
+        }
+
+        public String getError(Charset charset) {
+            return new String(error, charset);
+        }
+
+        /** @return Execution Time in milliseconds **/
+        public long getExecutionTime() {
+            return executionTime;
+        }
+    }
+
+    /** Drains a process stream so the process never blocks on a full pipe **/
+    private static final class StreamCollector extends Thread {
+        private final InputStream stream;
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private StreamCollector(InputStream stream) {
+            super("process-stream-collector");
+            setDaemon(true);
+            this.stream = stream;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try(InputStream in = stream) {
+                int read;
+                while((read = in.read(buffer)) >= 0) {
+                    synchronized(data) {
+                        data.write(buffer, 0, read);
+                    }
+                }
+            } catch(IOException e) {
+                // Stream is closed when the process is killed
+            }
+        }
+
+        /**
+         * @param deadline Time in milliseconds until the end of the stream is awaited or 0 to wait until the process closed it
+         * @return Collected data
+         **/
+        private byte[] collect(long deadline) {
+            try {
+                join(deadline > 0 ? Math.max(1, deadline - System.currentTimeMillis()) : 0);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized(data) {
+                return data.toByteArray();
+            }
+        }
+    }
+}
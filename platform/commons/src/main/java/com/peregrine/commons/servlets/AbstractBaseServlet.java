@@ -1,13 +1,17 @@
 package com.peregrine.commons.servlets;
 
+import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.util.DefaultIndenter;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.peregrine.commons.servlets.ResponseCache.CachedResponse;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
@@ -28,6 +32,7 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -40,10 +45,13 @@ import java.util.Map.Entry;
 import java.util.Stack;
 
 import static com.peregrine.commons.util.PerConstants.ADMIN_USER;
+import static com.peregrine.commons.util.PerConstants.JCR_CONTENT;
+import static com.peregrine.commons.util.PerConstants.JCR_LAST_MODIFIED;
 import static com.peregrine.commons.util.PerConstants.JSON;
 import static com.peregrine.commons.util.PerConstants.JSON_MIME_TYPE;
 import static com.peregrine.commons.util.PerConstants.PATH;
 import static com.peregrine.commons.util.PerConstants.TEXT_MIME_TYPE;
+import static com.peregrine.commons.util.PerConstants.UTF_8;
 import static com.peregrine.commons.util.PerUtil.GET;
 import static com.peregrine.commons.util.PerUtil.POST;
 
@@ -67,12 +75,25 @@ public abstract class AbstractBaseServlet
     public static final String REDIRECT_TO_PATH_MUST_BE_PROVIDED = "Redirect To path must be provided";
     public static final String WRITE_TO_IS_NOT_SUPPORTED = "Write To is not supported";
     public static final String HANDLE_DIRECT_IS_NOT_SUPPORTED = "Handle Direct is not supported";
+    public static final String STREAMED_RESPONSE_CANNOT_BE_MERGED = "Streamed Response cannot be merged";
     public static final String CODE = "code";
     public static final String MESSAGE = "message";
     public static final String EXCEPTION = "exception";
+    public static final String ETAG = "ETag";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String CACHE_CONTROL = "Cache-Control";
+    public static final String NO_CACHE = "no-cache";
+    public static final String WEAK_ENTITY_TAG_PREFIX = "W/";
+    public static final String ANY_ENTITY_TAG = "*";
+    public static final String HEAD = "HEAD";
+
+    private static final int RESPONSE_CACHE_MAX_ENTRIES = 100;
+    private static final long RESPONSE_CACHE_MAX_SIZE = 1024 * 1024;
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
+    private final transient ResponseCache responseCache = new ResponseCache(RESPONSE_CACHE_MAX_ENTRIES, RESPONSE_CACHE_MAX_SIZE);
+
     public AbstractBaseServlet() {
     }
 
@@ -87,9 +108,46 @@ public abstract class AbstractBaseServlet
     }
 
     private void doRequest(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException, ServletException {
+        try {
+            respond(request, response);
+        } finally {
+            if(!GET.equals(request.getMethod()) && !HEAD.equals(request.getMethod())) {
+                // The change events are delivered asynchronously -> make sure the next request of the
+                // client does not get an Entity Tag of the content before its own change
+                RepositoryGeneration.increment();
+            }
+        }
+    }
+
+    private void respond(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException, ServletException {
         Response out = null;
+        String entityTag = null;
+        String cacheKey = null;
+        long generation = RepositoryGeneration.get();
+        Request servletRequest = null;
         try {
-            out = handleRequest(new Request(request, response));
+            servletRequest = new Request(request, response);
+            if(GET.equals(request.getMethod()) && RepositoryGeneration.isTracked()) {
+                entityTag = getEntityTag(servletRequest, generation);
+                if(entityTag != null) {
+                    if(matches(request.getHeader(IF_NONE_MATCH), entityTag)) {
+                        setValidators(response, entityTag);
+                        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                        return;
+                    }
+                    cacheKey = getCacheKey(request);
+                    CachedResponse cached = responseCache.get(cacheKey, entityTag);
+                    if(cached != null) {
+                        setValidators(response, entityTag);
+                        response.setContentType(cached.getMimeType());
+                        response.getWriter().write(cached.getContent());
+                        response.flushBuffer();
+                        return;
+                    }
+                    servletRequest.entityTag = entityTag;
+                }
+            }
+            out = handleRequest(servletRequest);
             if(out == null) {
                 out = new ErrorResponse().setHttpErrorCode(HttpServletResponse.SC_INTERNAL_SERVER_ERROR).setErrorCode(-123).setErrorMessage("Servlet did not return a Response");
             }
@@ -125,11 +183,31 @@ public abstract class AbstractBaseServlet
                 out.handleDirect(request, response);
             } else {
                 if(ERROR.equals(out.getType())) {
+                    if(response.isCommitted()) {
+                        // A Streaming Response already sent parts of its content -> the error can only be logged
+                        logger.error("Response already committed, cannot send error: '{}'", output);
+                        return;
+                    }
+                    // Drop the content a Streaming Response may have written before it failed
+                    response.resetBuffer();
                     ErrorResponse error = (ErrorResponse) out;
                     response.setStatus(error.getHttpErrorCode());
+                } else if(entityTag != null) {
+                    if(!response.isCommitted()) {
+                        setValidators(response, entityTag);
+                    }
+                    // Only the plain content of a response can be cached
+                    if(output != null && (headers == null || headers.isEmpty())) {
+                        responseCache.put(cacheKey, entityTag, generation, out.getMimeType(), output);
+                    }
                 }
                 if(output == null) {
                     out.writeTo(response.getOutputStream());
+                } else if(servletRequest != null && servletRequest.outputStreamUsed) {
+                    // The Writer cannot be obtained anymore once a Streaming Response used the Output Stream
+                    logger.trace("Servlet Response: '{}'", output);
+                    response.setCharacterEncoding(UTF_8);
+                    response.getOutputStream().write(output.getBytes(StandardCharsets.UTF_8));
                 } else {
                     logger.trace("Servlet Response: '{}'", output);
                     response.getWriter().write(output);
@@ -141,6 +219,109 @@ public abstract class AbstractBaseServlet
 
     protected abstract Response handleRequest(Request request) throws IOException, ServletException;
 
+    /**
+     * Servlets whose GET responses only depend on Repository Content can declare it here.
+     * Their responses then get an Entity Tag made of the latest modification of the given
+     * paths, the Repository Generation and the version. A request with a matching
+     * If-None-Match header is answered with Not Modified without handling it and the
+     * content of frequently requested responses is cached.
+     *
+     * @param request Request to be handled
+     * @return Dependency of the response or null if the response cannot be validated (default)
+     * @throws IOException If the dependency could not be obtained
+     */
+    protected ResponseDependency getResponseDependency(Request request) throws IOException {
+        return null;
+    }
+
+    private String getEntityTag(Request request, long generation) throws IOException {
+        ResponseDependency dependency = getResponseDependency(request);
+        if(dependency == null) {
+            return null;
+        }
+        ResourceResolver resourceResolver = request.getResourceResolver();
+        long lastModified = 0;
+        for(String path: dependency.getPaths()) {
+            lastModified = Math.max(lastModified, getLastModified(resourceResolver.getResource(path)));
+        }
+        // The response depends on the access rights of the user as well
+        String variant = dependency.getVersion() + '|' + resourceResolver.getUserID();
+        return '"' + Long.toHexString(generation) + '-' + Long.toHexString(lastModified) + '-' + Integer.toHexString(variant.hashCode()) + '"';
+    }
+
+    private static long getLastModified(Resource resource) {
+        if(resource == null) {
+            return 0;
+        }
+        Calendar answer = resource.getValueMap().get(JCR_LAST_MODIFIED, Calendar.class);
+        if(answer == null) {
+            Resource content = resource.getChild(JCR_CONTENT);
+            if(content != null) {
+                answer = content.getValueMap().get(JCR_LAST_MODIFIED, Calendar.class);
+            }
+        }
+        return answer == null ? 0 : answer.getTimeInMillis();
+    }
+
+    private static String getCacheKey(SlingHttpServletRequest request) {
+        String query = request.getQueryString();
+        return request.getRequestURI() + (query == null ? "" : '?' + query) + '|' + request.getResourceResolver().getUserID();
+    }
+
+    /** @return True if the given If-None-Match header contains the Entity Tag **/
+    private static boolean matches(String ifNoneMatch, String entityTag) {
+        if(ifNoneMatch == null) {
+            return false;
+        }
+        for(String candidate: ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if(candidate.startsWith(WEAK_ENTITY_TAG_PREFIX)) {
+                candidate = candidate.substring(WEAK_ENTITY_TAG_PREFIX.length());
+            }
+            if(candidate.equals(entityTag) || candidate.equals(ANY_ENTITY_TAG)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Sets the Entity Tag and makes the client validate its copy with every request **/
+    private static void setValidators(SlingHttpServletResponse response, String entityTag) {
+        response.setHeader(ETAG, entityTag);
+        response.setHeader(CACHE_CONTROL, NO_CACHE);
+    }
+
+    /**
+     * Declares what the response of a request depends on
+     * so that unchanged responses do not need to be sent again
+     */
+    public static class ResponseDependency {
+        private List<String> paths = new ArrayList<>();
+        private String version = "";
+
+        /** Adds a path whose last modification date is part of the Entity Tag **/
+        public ResponseDependency addPath(String path) {
+            if(path != null && !path.isEmpty()) {
+                paths.add(path);
+            }
+            return this;
+        }
+
+        /** Sets a version token for anything else the response depends on like request parameters **/
+        public ResponseDependency setVersion(String version) {
+            this.version = version == null ? "" : version;
+            return this;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+
     /**
      * Wrapper Object for the Request which contains the Sling Http Servlet Request and Response
      * as well as parameters
@@ -149,6 +330,8 @@ public abstract class AbstractBaseServlet
         private SlingHttpServletRequest request;
         private SlingHttpServletResponse response;
         private Map<String, String> parameters = new HashMap<>();
+        private String entityTag;
+        private boolean outputStreamUsed;
 
         public Request(SlingHttpServletRequest request, SlingHttpServletResponse response) {
             this.request = request;
@@ -175,6 +358,11 @@ public abstract class AbstractBaseServlet
             return parameters;
         }
 
+        /** @return Entity Tag of the response or null if the response is not validated **/
+        public String getEntityTag() {
+            return entityTag;
+        }
+
         public String getParameter(String name) {
             return getParameter(name, null);
         }
@@ -315,6 +503,10 @@ public abstract class AbstractBaseServlet
 
         private enum STATE { object, array };
 
+        /** Object Mapper and Json Factory are thread safe and expensive to create so they are shared by all responses **/
+        static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+        static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+
         private JsonGenerator json;
         private StringWriter writer;
         private Stack<STATE> states = new Stack<>();
@@ -325,85 +517,66 @@ public abstract class AbstractBaseServlet
 
         public JsonResponse(String type) throws IOException {
             super(type);
-            init();
+            writer = new StringWriter();
+            init(JSON_FACTORY.createGenerator(writer), true);
         }
 
-        private void init() throws IOException {
-            ObjectMapper mapper = new ObjectMapper();
-            JsonFactory jf = mapper.getFactory();
-            writer = new StringWriter();
-            json = jf.createGenerator(writer);
-            // Use Pretty Printer that indents Arrays as well
-            json.setPrettyPrinter(new PrettyPrinter());
+        /**
+         * Creates a JSon Response that writes to the given generator instead of a String
+         * @param type Type of the Response
+         * @param json Generator the content is written to
+         * @param prettyPrint If true the output is indented otherwise it is written compact
+         * @throws IOException If the root object could not be started
+         */
+        protected JsonResponse(String type, JsonGenerator json, boolean prettyPrint) throws IOException {
+            super(type);
+            init(json, prettyPrint);
+        }
+
+        private void init(JsonGenerator json, boolean prettyPrint) throws IOException {
+            this.json = json;
+            if(prettyPrint) {
+                // Use Pretty Printer that indents Arrays as well
+                json.setPrettyPrinter(new PrettyPrinter());
+            }
             json.writeStartObject();
             states.push(STATE.object);
         }
 
         /**
          * Merges the Content of the given Source into this
-         * Response by adding it at the current location
+         * Response by adding it at the current location.
+         *
+         * A {@link BufferedJsonResponse} is copied token by token
+         * whereas any other source is written out and parsed again.
+         * Numbers keep their type either way.
+         *
          * @param source Source to be added
          *
          * @throws IOException If access to Json fails or we cannot write
+         * @throws IllegalArgumentException If the source is streamed and therefore has no content
          */
         public void writeResponse(JsonResponse source) throws IOException {
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode tree = mapper.readTree(source.getContent());
-            merge(tree);
-        }
-
-        private void merge(JsonNode source) throws IOException {
-            if (source.isArray()) {
-                Iterator<JsonNode> entries = source.elements();
-                while (entries.hasNext()) {
-                    JsonNode child = entries.next();
-                    switch (child.getNodeType()) {
-                        case STRING:
-                            json.writeString(child.textValue());
-                            break;
-                        case NUMBER:
-                            json.writeNumber(child.intValue());
-                            break;
-                        case BOOLEAN:
-                            json.writeBoolean(child.booleanValue());
-                            break;
-                        case OBJECT:
-                            json.writeStartObject();
-                            merge(child);
-                            json.writeEndObject();
-                            break;
-                        case ARRAY:
-                            json.writeStartArray();
-                            merge(child);
-                            json.writeEndArray();
-                    }
-                }
+            JsonParser parser;
+            if(source.json instanceof TokenBuffer) {
+                source.writeCloseAll();
+                parser = ((TokenBuffer) source.json).asParser();
             } else {
-                Iterator<String> fieldNames = source.fieldNames();
-                while (fieldNames.hasNext()) {
-                    String fieldName = fieldNames.next();
-                    JsonNode value = source.get(fieldName);
-                    switch (value.getNodeType()) {
-                        case STRING:
-                            json.writeStringField(fieldName, value.textValue());
-                            break;
-                        case NUMBER:
-                            json.writeNumberField(fieldName, value.intValue());
-                            break;
-                        case BOOLEAN:
-                            json.writeBooleanField(fieldName, value.booleanValue());
-                            break;
-                        case OBJECT:
-                            json.writeObjectFieldStart(fieldName);
-                            merge(value);
-                            json.writeEndObject();
-                            break;
-                        case ARRAY:
-                            json.writeArrayFieldStart(fieldName);
-                            merge(value);
-                            json.writeEndArray();
+                String content = source.getContent();
+                if(content == null) {
+                    throw new IllegalArgumentException(STREAMED_RESPONSE_CANNOT_BE_MERGED);
+                }
+                parser = JSON_FACTORY.createParser(content);
+            }
+            try {
+                // The root object of the source is omitted and its fields are added to the current object
+                if(parser.nextToken() == JsonToken.START_OBJECT) {
+                    while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                        json.copyCurrentStructure(parser);
                     }
                 }
+            } finally {
+                parser.close();
             }
         }
 
@@ -416,11 +589,7 @@ public abstract class AbstractBaseServlet
          * @throws IOException If creating the JSon representation of the Map failed or adding the value
          */
         public JsonResponse writeMap(Map object) throws IOException {
-            StringWriter writer = new StringWriter();
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.writeValue(writer, object);
-            writer.close();
-            String data = writer.toString();
+            String data = OBJECT_MAPPER.writeValueAsString(object);
             json.writeRaw(data.substring(1, data.length()-1));
             return this;
         }
@@ -448,6 +617,17 @@ public abstract class AbstractBaseServlet
             json.writeNumberField(name, value);
             return this;
         }
+        /**
+         * Write a long number field
+         * @param name Name of the field
+         * @param value Long Number value
+         * @return This instance for method chaining
+         * @throws IOException If writing the number field failed
+         */
+        public JsonResponse writeAttribute(String name, long value) throws IOException {
+            json.writeNumberField(name, value);
+            return this;
+        }
         /**
          * Write a text field
          * @param name Name of the field
@@ -562,6 +742,91 @@ public abstract class AbstractBaseServlet
         }
     }
 
+    /**
+     * A JSon Response that records its content as JSon tokens instead of text.
+     * Use it for sub responses that are added to another response with
+     * {@link JsonResponse#writeResponse(JsonResponse)} as its tokens are then
+     * copied over without being written out and parsed again.
+     */
+    public static class BufferedJsonResponse
+        extends JsonResponse
+    {
+        public BufferedJsonResponse() throws IOException {
+            super(JSON, new TokenBuffer(OBJECT_MAPPER, false), false);
+        }
+
+        @Override
+        public String getContent() throws IOException {
+            writeCloseAll();
+            StringWriter writer = new StringWriter();
+            JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+            generator.setPrettyPrinter(new PrettyPrinter());
+            ((TokenBuffer) super.json).serialize(generator);
+            generator.close();
+            return writer.toString();
+        }
+    }
+
+    /**
+     * A JSon Response that writes its content as UTF-8 straight to the Servlet
+     * Output Stream instead of collecting it in memory first. Use it for large
+     * responses like listings.
+     *
+     * The content is written while the Servlet is handling the request so the
+     * headers must be set on the Response before any content is written. Once
+     * the content is committed an error cannot be reported anymore.
+     *
+     * The output is compact unless Pretty Print is requested.
+     */
+    public static class StreamingJsonResponse
+        extends JsonResponse
+    {
+        /**
+         * Creates a compact Streaming JSon Response
+         * @param request Request whose Response the content is written to
+         * @throws IOException If the Output Stream could not be obtained
+         */
+        public StreamingJsonResponse(Request request) throws IOException {
+            this(request, false);
+        }
+
+        /**
+         * Creates a Streaming JSon Response
+         * @param request Request whose Response the content is written to
+         * @param prettyPrint If true the output is indented otherwise it is written compact
+         * @throws IOException If the Output Stream could not be obtained
+         */
+        public StreamingJsonResponse(Request request, boolean prettyPrint) throws IOException {
+            super(JSON, createGenerator(request), prettyPrint);
+        }
+
+        private static JsonGenerator createGenerator(Request request) throws IOException {
+            SlingHttpServletResponse response = request.getResponse();
+            if(request.getEntityTag() != null) {
+                setValidators(response, request.getEntityTag());
+            }
+            response.setContentType(JSON_MIME_TYPE);
+            response.setCharacterEncoding(UTF_8);
+            request.outputStreamUsed = true;
+            JsonGenerator answer = JSON_FACTORY.createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+            // The Servlet Container closes the Output Stream
+            answer.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            return answer;
+        }
+
+        /** @return Null as the content is not kept in memory **/
+        @Override
+        public String getContent() {
+            return null;
+        }
+
+        /** Closes all open objects / arrays and flushes the content written to the Servlet Output Stream **/
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            writeCloseAll();
+        }
+    }
+
     /**
      * JSon based Error Response
      */
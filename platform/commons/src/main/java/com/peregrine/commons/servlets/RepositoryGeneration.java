@@ -0,0 +1,50 @@
+package com.peregrine.commons.servlets;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generation Counter of the Repository Content used by the {@link AbstractBaseServlet}
+ * to create the Entity Tags of its responses.
+ *
+ * The counter is increased by the servlets after every request that may have changed
+ * the content and by a Resource Change Listener of the bundle that contains the servlets
+ * for any other change. As long as no listener is tracking the changes the generation
+ * is unknown and the servlets do not support conditional requests.
+ */
+public final class RepositoryGeneration {
+
+    private static final AtomicLong generation = new AtomicLong();
+    private static final AtomicInteger trackers = new AtomicInteger();
+
+    private RepositoryGeneration() {
+    }
+
+    /** @return Current Generation of the Repository Content **/
+    public static long get() {
+        return generation.get();
+    }
+
+    /** Marks a change of the Repository Content **/
+    public static void increment() {
+        generation.incrementAndGet();
+    }
+
+    /** @return True if at least one listener is tracking the changes **/
+    public static boolean isTracked() {
+        return trackers.get() > 0;
+    }
+
+    /** Registers a listener that tracks the changes from now on **/
+    public static void startTracking() {
+        // Changes before the listener was registered were missed
+        generation.incrementAndGet();
+        trackers.incrementAndGet();
+    }
+
+    /** Unregisters a listener that tracked the changes **/
+    public static void stopTracking() {
+        trackers.decrementAndGet();
+        generation.incrementAndGet();
+    }
+}
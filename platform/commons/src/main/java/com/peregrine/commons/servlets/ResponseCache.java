@@ -0,0 +1,93 @@
+package com.peregrine.commons.servlets;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded, least recently used cache of the serialized responses of a servlet.
+ *
+ * A response is looked up by its request key and only returned if its Entity Tag
+ * is still the current one. Only hot keys keep their content: the first response
+ * of a key only records its Entity Tag and the content is kept once the key is
+ * requested again.
+ */
+final class ResponseCache {
+
+    private final Map<String, CachedResponse> responses = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxEntries;
+    private final long maxSize;
+    private long size = 0;
+
+    /**
+     * @param maxEntries Maximum number of keys
+     * @param maxSize Maximum number of characters of all cached responses
+     */
+    ResponseCache(int maxEntries, long maxSize) {
+        this.maxEntries = maxEntries;
+        this.maxSize = maxSize;
+    }
+
+    /** @return Cached Response of the given key if its content is cached for the given Entity Tag otherwise null **/
+    synchronized CachedResponse get(String key, String entityTag) {
+        CachedResponse answer = responses.get(key);
+        return answer != null && answer.content != null && answer.entityTag.equals(entityTag) ? answer : null;
+    }
+
+    /**
+     * Caches the content of a response
+     * @param key Request Key of the response
+     * @param entityTag Entity Tag of the response
+     * @param generation Repository Generation the Entity Tag was created with
+     * @param mimeType Mime Type of the response
+     * @param content Serialized response
+     */
+    synchronized void put(String key, String entityTag, long generation, String mimeType, String content) {
+        // Content created during a change might already be stale
+        if(generation != RepositoryGeneration.get()) {
+            return;
+        }
+        boolean hot = responses.containsKey(key);
+        CachedResponse response = new CachedResponse(entityTag, mimeType, hot && content.length() <= maxSize ? content : null);
+        CachedResponse previous = responses.put(key, response);
+        size += response.getSize();
+        if(previous != null) {
+            size -= previous.getSize();
+        }
+        Iterator<CachedResponse> iterator = responses.values().iterator();
+        while((size > maxSize || responses.size() > maxEntries) && iterator.hasNext()) {
+            size -= iterator.next().getSize();
+            iterator.remove();
+        }
+    }
+
+    synchronized void clear() {
+        responses.clear();
+        size = 0;
+    }
+
+    /** A Response whose content is null until its key is hot **/
+    static final class CachedResponse {
+        private final String entityTag;
+        private final String mimeType;
+        private final String content;
+
+        private CachedResponse(String entityTag, String mimeType, String content) {
+            this.entityTag = entityTag;
+            this.mimeType = mimeType;
+            this.content = content;
+        }
+
+        String getMimeType() {
+            return mimeType;
+        }
+
+        String getContent() {
+            return content;
+        }
+
+        private int getSize() {
+            return content == null ? 0 : content.length();
+        }
+    }
+}
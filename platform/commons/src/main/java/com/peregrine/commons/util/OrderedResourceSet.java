@@ -0,0 +1,102 @@
+package com.peregrine.commons.util;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+
+import org.apache.sling.api.resource.Resource;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set of Resources that are identified by their path and kept in the order they were added.
+ * A resource is only added if no resource with the same path is already in the set and
+ * the lookup by path is done in constant time.
+ */
+public final class OrderedResourceSet
+    extends AbstractSet<Resource>
+{
+    private final Map<String, Resource> resources = new LinkedHashMap<>();
+
+    public OrderedResourceSet() {}
+
+    public OrderedResourceSet(final Collection<Resource> resources) {
+        addAll(resources);
+    }
+
+    @Override
+    public boolean add(final Resource resource) {
+        if (resource == null) {
+            throw new IllegalArgumentException("Resource must be provided");
+        }
+
+        return resources.putIfAbsent(resource.getPath(), resource) == null;
+    }
+
+    @Override
+    public boolean contains(final Object object) {
+        return object instanceof Resource && containsPath(((Resource) object).getPath());
+    }
+
+    /** @return True if a resource with the given path is in this set **/
+    public boolean containsPath(final String path) {
+        return resources.containsKey(path);
+    }
+
+    /** @return The resource with the given path or null if there is none **/
+    public Resource get(final String path) {
+        return resources.get(path);
+    }
+
+    @Override
+    public boolean remove(final Object object) {
+        return object instanceof Resource && resources.remove(((Resource) object).getPath()) != null;
+    }
+
+    @Override
+    public Iterator<Resource> iterator() {
+        return resources.values().iterator();
+    }
+
+    @Override
+    public int size() {
+        return resources.size();
+    }
+
+    @Override
+    public void clear() {
+        resources.clear();
+    }
+
+    /** @return A new list with the resources in the order they were added **/
+    public List<Resource> toList() {
+        return new ArrayList<>(resources.values());
+    }
+}
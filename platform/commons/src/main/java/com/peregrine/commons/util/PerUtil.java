@@ -412,7 +412,8 @@ public class PerUtil {
      * only when the deep flag is set true
      *
      * @param startingResource Root resource of the search
-     * @param response List of resources where the missing resources are added to
+     * @param response Collection of resources where the missing resources are added to. With an {@link OrderedResourceSet}
+     *                 the check for already listed resources does not have to go through the whole collection
      * @param resourceChecker Resource Checker instance that decides which resource is deemed missing and defines
      *                         if children resources are traversed
      * @param deep If true this goes down recursively any children
@@ -456,6 +457,10 @@ public class PerUtil {
         }
 
         final String path = check.getPath();
+        if (resources instanceof OrderedResourceSet) {
+            return ((OrderedResourceSet) resources).containsPath(path);
+        }
+
         for (final Resource item : resources) {
             if (path.equals(item.getPath())) {
                 return true;
@@ -501,13 +506,13 @@ public class PerUtil {
      * Lists all the missing parents compared to the parents on the source
      *
      * @param startingResource Child Resource
-     * @param response List of resources to which the missing parents are added to. Cannot be null
+     * @param response Collection of resources to which the missing parents are added to. Cannot be null
      * @param source Root of the Child
      * @param resourceChecker Resource Check instance that defined when a parent is added to the missing list
      */
     public static void listMissingParents(
             final Resource startingResource,
-            final List<Resource> response,
+            final Collection<Resource> response,
             final Resource source,
             final ResourceChecker resourceChecker) {
         if (startingResource == null || source == null || resourceChecker == null || response == null) {
@@ -1,5 +1,6 @@
 package com.peregrine.commons.json;
 
+import com.peregrine.commons.servlets.AbstractBaseServlet.BufferedJsonResponse;
 import com.peregrine.commons.servlets.AbstractBaseServlet.ErrorResponse;
 import com.peregrine.commons.servlets.AbstractBaseServlet.JsonResponse;
 import org.junit.Test;
@@ -76,4 +77,45 @@ public class JSonFormatterTest {
         target.writeResponse(source);
         logger.info("Merged Advanced Source into Target:\n\n'{}'", target.getContent());
     }
+
+    @Test
+    public void testMergeBufferedJsonResponse() throws IOException {
+        JsonResponse leaf = new BufferedJsonResponse();
+        leaf.writeAttribute("long", 12345678901L);
+        leaf.writeAttributeRaw("decimal", "1.5");
+        leaf.writeArray("array");
+        leaf.writeString("array-1");
+        leaf.writeClose();
+        JsonResponse sub = new BufferedJsonResponse();
+        sub.writeAttribute("sub-attribute-1", "sub-value-1");
+        sub.writeObject("leaf");
+        sub.writeResponse(leaf);
+        sub.writeClose();
+        JsonResponse target = new JsonResponse();
+        target.writeObject("sub-1");
+        target.writeResponse(sub);
+        target.writeClose();
+        target.writeObject("sub-2");
+        target.writeResponse(sub);
+        target.writeClose();
+        Map targetMap = convertToMap(target.getContent());
+        for(String name: new String[] {"sub-1", "sub-2"}) {
+            Map subMap = (Map) targetMap.get(name);
+            assertEquals("Unexpected Sub Attribute", "sub-value-1", subMap.get("sub-attribute-1"));
+            Map leafMap = (Map) subMap.get("leaf");
+            assertEquals("Long was not preserved", 12345678901L, ((Number) leafMap.get("long")).longValue());
+            assertEquals("Decimal was not preserved", 1.5, ((Number) leafMap.get("decimal")).doubleValue(), 0);
+            assertEquals("Unexpected Array", "array-1", ((List) leafMap.get("array")).get(0));
+        }
+    }
+
+    @Test
+    public void testMergeJsonResponseKeepsNumbers() throws IOException {
+        JsonResponse source = new JsonResponse();
+        source.writeAttribute("long", 12345678901L);
+        JsonResponse target = new JsonResponse();
+        target.writeResponse(source);
+        Map targetMap = convertToMap(target.getContent());
+        assertEquals("Long was not preserved", 12345678901L, ((Number) targetMap.get("long")).longValue());
+    }
 }
@@ -0,0 +1,66 @@
+package com.peregrine.commons.json;
+
+import com.peregrine.commons.servlets.AbstractBaseServlet.BufferedJsonResponse;
+import com.peregrine.commons.servlets.AbstractBaseServlet.JsonResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Compares the composition of nested JSon Responses with text based sub responses
+ * (written out and parsed again by each parent) and with {@link BufferedJsonResponse}s
+ * whose tokens are copied into the parent.
+ */
+@State(Scope.Benchmark)
+public class JsonCompositionBenchmark {
+
+    @Param({ "2", "5" })
+    private int depth;
+
+    @Param({ "10", "100" })
+    private int children;
+
+    @Benchmark
+    public String text() throws IOException {
+        return compose(false).getContent();
+    }
+
+    @Benchmark
+    public String buffered() throws IOException {
+        return compose(true).getContent();
+    }
+
+    /** Builds a tree of sub responses where each level embeds the sub responses of the level below **/
+    private JsonResponse compose(boolean buffered) throws IOException {
+        JsonResponse current = null;
+        for (int level = 0; level < depth; level++) {
+            JsonResponse parent = level == depth - 1 ? new JsonResponse() : create(buffered);
+            parent.writeAttribute("level", level);
+            parent.writeAttribute("modified", System.currentTimeMillis());
+            parent.writeArray("children");
+            for (int i = 0; i < children; i++) {
+                parent.writeObject();
+                parent.writeAttribute("name", "child-" + i);
+                parent.writeAttribute("path", "/content/site/pages/level-" + level + "/child-" + i);
+                parent.writeAttribute("hasChildren", i % 2 == 0);
+                parent.writeClose();
+            }
+            parent.writeClose();
+            if (current != null) {
+                parent.writeObject("sub");
+                parent.writeResponse(current);
+                parent.writeClose();
+            }
+            current = parent;
+        }
+        return current;
+    }
+
+    private JsonResponse create(boolean buffered) throws IOException {
+        return buffered ? new BufferedJsonResponse() : new JsonResponse();
+    }
+
+}
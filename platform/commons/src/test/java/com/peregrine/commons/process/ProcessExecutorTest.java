@@ -0,0 +1,79 @@
+package com.peregrine.commons.process;
+
+import com.peregrine.commons.process.ProcessExecutor.Result;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+public class ProcessExecutorTest {
+
+    @Before
+    public void setUp() {
+        assumeFalse(System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH).startsWith("win"));
+    }
+
+    @Test
+    public void capturesOutputAndError() throws IOException {
+        final ProcessExecutor executor = new ProcessExecutor(1, 10000);
+        final Result result = executor.execute(Arrays.asList("sh", "-c", "echo out; echo err >&2; exit 3"), null);
+        assertEquals(3, result.getExitCode());
+        assertFalse(result.isTimedOut());
+        assertEquals("out\n", result.getOutput(UTF_8));
+        assertEquals("err\n", result.getError(UTF_8));
+        assertEquals(1, executor.getExecutionCount());
+        assertEquals(1, executor.getFailureCount());
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    public void killsProcessAfterTimeout() throws IOException {
+        final ProcessExecutor executor = new ProcessExecutor(1, 200);
+        final Result result = executor.execute(Arrays.asList("sleep", "10"), null);
+        assertTrue(result.isTimedOut());
+        assertEquals(ProcessExecutor.NO_EXIT_CODE, result.getExitCode());
+        assertTrue(result.getExecutionTime() < 5000);
+        assertEquals(1, executor.getTimeoutCount());
+        assertEquals(0, executor.getFailureCount());
+    }
+
+    @Test
+    public void rejectsWhenNoSlotIsFreeInTime() throws Exception {
+        final ProcessExecutor executor = new ProcessExecutor(1, 0);
+        final CountDownLatch started = new CountDownLatch(1);
+        final ExecutorService threads = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Result> running = threads.submit(() -> {
+                started.countDown();
+                return executor.execute(Arrays.asList("sleep", "1"), null);
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            while (executor.getActiveCount() == 0) {
+                Thread.sleep(1);
+            }
+            try {
+                executor.execute(Arrays.asList("true"), null, 50);
+                fail("Expected no free process slot");
+            } catch (IOException e) {
+                assertEquals(1, executor.getRejectedCount());
+            }
+            assertEquals(0, running.get(10, TimeUnit.SECONDS).getExitCode());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
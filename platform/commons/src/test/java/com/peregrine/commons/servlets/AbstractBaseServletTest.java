@@ -0,0 +1,262 @@
+package com.peregrine.commons.servlets;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.peregrine.commons.servlets.AbstractBaseServlet.ETAG;
+import static com.peregrine.commons.servlets.AbstractBaseServlet.IF_NONE_MATCH;
+import static com.peregrine.commons.util.PerConstants.JCR_LAST_MODIFIED;
+import static com.peregrine.commons.util.PerConstants.UTF_8;
+import static com.peregrine.commons.util.PerUtil.GET;
+import static com.peregrine.commons.util.PerUtil.POST;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AbstractBaseServletTest {
+
+    private static final String PATH = "/content/example/pages";
+
+    private final TestServlet servlet = new TestServlet();
+    private final ResourceResolver resourceResolver = mock(ResourceResolver.class);
+    private String content;
+
+    @Before
+    public void setUp() throws IOException {
+        RepositoryGeneration.startTracking();
+        Resource resource = mock(Resource.class);
+        ValueMap properties = mock(ValueMap.class);
+        when(properties.get(JCR_LAST_MODIFIED, Calendar.class)).thenReturn(Calendar.getInstance());
+        when(resource.getValueMap()).thenReturn(properties);
+        when(resourceResolver.getResource(PATH)).thenReturn(resource);
+        when(resourceResolver.getUserID()).thenReturn("admin");
+        servlet.handler = request -> new AbstractBaseServlet.JsonResponse().writeAttribute("name", "value");
+        content = new AbstractBaseServlet.JsonResponse().writeAttribute("name", "value").getContent();
+    }
+
+    @After
+    public void tearDown() {
+        RepositoryGeneration.stopTracking();
+    }
+
+    @Test
+    public void get_matchingEntityTagIsNotModified() throws Exception {
+        Exchange first = servlet.service(GET, null);
+        String entityTag = first.headers.get(ETAG);
+        assertNotNull("Response must have an Entity Tag", entityTag);
+        assertEquals(content, first.getBody());
+
+        Exchange second = servlet.service(GET, "W/" + entityTag);
+        verify(second.response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals(entityTag, second.headers.get(ETAG));
+        assertEquals("", second.getBody());
+        assertEquals("Not Modified request must not be handled", 1, servlet.handled);
+    }
+
+    @Test
+    public void get_hotResponseIsServedFromTheCache() throws Exception {
+        servlet.service(GET, null);
+        servlet.service(GET, null);
+        Exchange cached = servlet.service(GET, null);
+        assertEquals("Cached response must not be handled", 2, servlet.handled);
+        assertEquals(content, cached.getBody());
+        assertNotNull(cached.headers.get(ETAG));
+        verify(cached.response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    @Test
+    public void post_changesTheEntityTagBeforeTheChangeEvent() throws Exception {
+        servlet.service(GET, null);
+        String entityTag = servlet.service(GET, null).headers.get(ETAG);
+        servlet.service(POST, null);
+
+        Exchange afterChange = servlet.service(GET, entityTag);
+        verify(afterChange.response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertNotEquals(entityTag, afterChange.headers.get(ETAG));
+        assertEquals(content, afterChange.getBody());
+        assertEquals("Request after the change must neither be Not Modified nor cached", 4, servlet.handled);
+    }
+
+    @Test
+    public void streaming_writesCompactUtf8ToTheOutputStream() throws Exception {
+        servlet.handler = request -> new AbstractBaseServlet.StreamingJsonResponse(request).writeAttribute("name", "caf\u00e9");
+        Exchange exchange = servlet.service(GET, null);
+        assertArrayEquals("{\"name\":\"caf\u00e9\"}".getBytes(StandardCharsets.UTF_8), exchange.bytes.toByteArray());
+        verify(exchange.response).setCharacterEncoding(UTF_8);
+        verify(exchange.response, never()).getWriter();
+        assertNotNull("Streamed response must have an Entity Tag", exchange.headers.get(ETAG));
+    }
+
+    @Test
+    public void streaming_prettyPrintIsIndented() throws Exception {
+        servlet.handler = request -> new AbstractBaseServlet.StreamingJsonResponse(request, true)
+            .writeArray("names").writeString("a").writeClose();
+        Exchange exchange = servlet.service(GET, null);
+        String body = exchange.getBody();
+        assertTrue("Output: " + body + " must be indented", body.contains("\n"));
+        assertTrue("Output: " + body + " must contain the array", body.contains("\"names\" : ["));
+    }
+
+    @Test
+    public void streaming_isNeverCached() throws Exception {
+        servlet.handler = request -> new AbstractBaseServlet.StreamingJsonResponse(request).writeAttribute("name", "value");
+        for(int i = 0; i < 3; i++) {
+            assertEquals("{\"name\":\"value\"}", servlet.service(GET, null).getBody());
+        }
+        assertEquals(3, servlet.handled);
+    }
+
+    @Test
+    public void streaming_errorBeforeTheCommitReplacesThePartialOutput() throws Exception {
+        servlet.handler = request -> {
+            AbstractBaseServlet.JsonResponse answer = new AbstractBaseServlet.StreamingJsonResponse(request);
+            answer.writeArray("names");
+            for(int i = 0; i < 1000; i++) {
+                answer.writeString("name-" + i);
+            }
+            throw new IllegalStateException("Listing failed");
+        };
+        Exchange exchange = servlet.service(GET, null);
+        verify(exchange.response).resetBuffer();
+        verify(exchange.response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        String body = exchange.getBody();
+        assertFalse("Partial output must be dropped: " + body, body.contains("name-"));
+        assertTrue("Error must be sent: " + body, body.contains("Failed with runtime exception"));
+        assertTrue("Error must be written to the Output Stream", exchange.text.toString().isEmpty());
+    }
+
+    @Test
+    public void streaming_errorAfterTheCommitIsOnlyLogged() throws Exception {
+        servlet.handler = request -> {
+            new AbstractBaseServlet.StreamingJsonResponse(request).writeAttribute("name", "value");
+            throw new IllegalStateException("Listing failed");
+        };
+        Exchange exchange = new Exchange();
+        when(exchange.response.isCommitted()).thenReturn(true);
+        servlet.service(GET, null, exchange);
+        verify(exchange.response, never()).resetBuffer();
+        verify(exchange.response, never()).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        verify(exchange.response, never()).getWriter();
+    }
+
+    interface Handler {
+        AbstractBaseServlet.Response handle(AbstractBaseServlet.Request request) throws IOException;
+    }
+
+    /** Servlet whose responses depend on the last modification of the test path **/
+    private final class TestServlet
+        extends AbstractBaseServlet
+    {
+        private Handler handler;
+        private int handled = 0;
+
+        @Override
+        protected ResponseDependency getResponseDependency(Request request) {
+            return new ResponseDependency().addPath(PATH);
+        }
+
+        @Override
+        protected Response handleRequest(Request request) throws IOException {
+            handled++;
+            return handler.handle(request);
+        }
+
+        private Exchange service(String method, String ifNoneMatch) throws Exception {
+            return service(method, ifNoneMatch, new Exchange());
+        }
+
+        private Exchange service(String method, String ifNoneMatch, Exchange answer) throws Exception {
+            SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+            when(request.getMethod()).thenReturn(method);
+            when(request.getRequestPathInfo()).thenReturn(mock(RequestPathInfo.class));
+            when(request.getParameterNames()).thenReturn(Collections.<String>emptyEnumeration());
+            when(request.getRequestURI()).thenReturn(PATH + ".json");
+            when(request.getResourceResolver()).thenReturn(resourceResolver);
+            when(request.getHeader(IF_NONE_MATCH)).thenReturn(ifNoneMatch);
+            if(GET.equals(method)) {
+                doGet(request, answer.response);
+            } else {
+                doPost(request, answer.response);
+            }
+            return answer;
+        }
+    }
+
+    /** Mocked Response that records its headers and its content written as text or bytes **/
+    static final class Exchange {
+        final SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        final Map<String, String> headers = new HashMap<>();
+        final StringWriter text = new StringWriter();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private String usedOutput;
+
+        Exchange() throws IOException {
+            doAnswer(invocation -> headers.put((String) invocation.getArguments()[0], (String) invocation.getArguments()[1]))
+                .when(response).setHeader(anyString(), anyString());
+            doAnswer(invocation -> {
+                bytes.reset();
+                return null;
+            }).when(response).resetBuffer();
+            PrintWriter writer = new PrintWriter(text, true);
+            ServletOutputStream outputStream = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    bytes.write(b);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+            };
+            // Like a Servlet Container only one of the Writer or the Output Stream can be used
+            when(response.getWriter()).thenAnswer(invocation -> use("writer", writer));
+            when(response.getOutputStream()).thenAnswer(invocation -> use("outputStream", outputStream));
+        }
+
+        private <T> T use(String output, T answer) {
+            if(usedOutput != null && !usedOutput.equals(output)) {
+                throw new IllegalStateException(usedOutput + " was already obtained");
+            }
+            usedOutput = output;
+            return answer;
+        }
+
+        String getBody() {
+            return text + new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
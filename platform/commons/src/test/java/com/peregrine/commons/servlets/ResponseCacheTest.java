@@ -0,0 +1,53 @@
+package com.peregrine.commons.servlets;
+
+import com.peregrine.commons.servlets.ResponseCache.CachedResponse;
+import org.junit.Test;
+
+import static com.peregrine.commons.util.PerConstants.JSON_MIME_TYPE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ResponseCacheTest {
+
+    private final ResponseCache cache = new ResponseCache(2, 10);
+
+    @Test
+    public void keepsContentOfHotKeysOnly() {
+        long generation = RepositoryGeneration.get();
+        cache.put("a", "tag-1", generation, JSON_MIME_TYPE, "{}");
+        assertNull("Content of the first response must not be kept", cache.get("a", "tag-1"));
+        cache.put("a", "tag-1", generation, JSON_MIME_TYPE, "{}");
+        CachedResponse cached = cache.get("a", "tag-1");
+        assertNotNull("Content of a hot key must be kept", cached);
+        assertEquals("{}", cached.getContent());
+        assertEquals(JSON_MIME_TYPE, cached.getMimeType());
+        assertNull("Content of another Entity Tag must not be returned", cache.get("a", "tag-2"));
+    }
+
+    @Test
+    public void ignoresContentOfAnOutdatedGeneration() {
+        long generation = RepositoryGeneration.get();
+        RepositoryGeneration.increment();
+        cache.put("a", "tag-1", generation, JSON_MIME_TYPE, "{}");
+        cache.put("a", "tag-1", generation, JSON_MIME_TYPE, "{}");
+        assertNull(cache.get("a", "tag-1"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedResponses() {
+        long generation = RepositoryGeneration.get();
+        for(String key: new String[] {"a", "b"}) {
+            cache.put(key, "tag", generation, JSON_MIME_TYPE, "1234");
+            cache.put(key, "tag", generation, JSON_MIME_TYPE, "1234");
+        }
+        cache.get("a", "tag");
+        cache.put("c", "tag", generation, JSON_MIME_TYPE, "1234");
+        assertNotNull(cache.get("a", "tag"));
+        assertNull(cache.get("b", "tag"));
+        cache.put("a", "tag", generation, JSON_MIME_TYPE, "12345678");
+        assertNotNull(cache.get("a", "tag"));
+        cache.put("c", "tag", generation, JSON_MIME_TYPE, "1234");
+        assertNull("Size limit must evict the oldest response", cache.get("a", "tag"));
+    }
+}
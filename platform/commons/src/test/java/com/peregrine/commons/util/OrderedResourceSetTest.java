@@ -0,0 +1,80 @@
+package com.peregrine.commons.util;
+
+import org.apache.sling.api.resource.Resource;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class OrderedResourceSetTest {
+
+    private final OrderedResourceSet set = new OrderedResourceSet();
+
+    private static Resource mockResource(final String path) {
+        final Resource answer = mock(Resource.class, path);
+        when(answer.getPath()).thenReturn(path);
+        return answer;
+    }
+
+    @Test
+    public void add_keepsOrderAndIgnoresSamePath() {
+        final Resource first = mockResource("/content/b");
+        final Resource second = mockResource("/content/a");
+        assertTrue(set.add(first));
+        assertTrue(set.add(second));
+        assertFalse(set.add(mockResource("/content/b")));
+        assertEquals(Arrays.asList(first, second), set.toList());
+        assertSame(first, set.get("/content/b"));
+    }
+
+    @Test
+    public void contains_byPath() {
+        set.add(mockResource("/content/a"));
+        assertTrue(set.contains(mockResource("/content/a")));
+        assertTrue(set.containsPath("/content/a"));
+        assertFalse(set.contains(mockResource("/content/b")));
+        assertFalse(set.contains("/content/a"));
+        assertTrue(PerUtil.containsResource(set, mockResource("/content/a")));
+        assertFalse(PerUtil.containsResource(set, mockResource("/content/b")));
+    }
+
+    @Test
+    public void remove_byPathAndThroughIterator() {
+        final Resource first = mockResource("/content/a");
+        final Resource second = mockResource("/content/b");
+        set.addAll(Arrays.asList(first, second));
+        assertTrue(set.remove(mockResource("/content/a")));
+        assertFalse(set.containsPath("/content/a"));
+        final Iterator<Resource> iterator = set.iterator();
+        iterator.next();
+        iterator.remove();
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void listMissingResources_addsEachPathOnce() {
+        final Resource child = mockLeaf("/content/a/b");
+        final Resource sameChild = mockLeaf("/content/a/b");
+        final Resource otherChild = mockLeaf("/content/a/c");
+        final Resource root = mockResource("/content/a");
+        when(root.getName()).thenReturn("a");
+        when(root.getChildren()).thenReturn(Arrays.asList(child, sameChild, otherChild));
+        set.add(child);
+        PerUtil.listMissingResources(root, set, new PerUtil.AddAllResourceChecker(), true);
+        assertEquals(Arrays.asList("/content/a/b", "/content/a", "/content/a/c"),
+                set.stream().map(Resource::getPath).collect(Collectors.toList()));
+    }
+
+    private static Resource mockLeaf(final String path) {
+        final Resource answer = mockResource(path);
+        when(answer.getName()).thenReturn(path.substring(path.lastIndexOf('/') + 1));
+        when(answer.getChildren()).thenReturn(Collections.emptyList());
+        return answer;
+    }
+}
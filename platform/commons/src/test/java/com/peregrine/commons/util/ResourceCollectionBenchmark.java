@@ -0,0 +1,104 @@
+package com.peregrine.commons.util;
+
+import com.peregrine.commons.util.PerUtil.AddAllResourceChecker;
+import com.peregrine.commons.util.PerUtil.ResourceChecker;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.peregrine.commons.util.PerConstants.JCR_CONTENT;
+
+/**
+ * Compares the collection of the resources of a publish over a synthetic page that references
+ * many assets with a plain list (linear lookup) and with an {@link OrderedResourceSet}.
+ */
+@State(Scope.Benchmark)
+public class ResourceCollectionBenchmark {
+
+    private static final ResourceChecker CHECKER = new AddAllResourceChecker();
+
+    @Param({ "100", "1000", "5000" })
+    private int references;
+
+    private Resource page;
+    private final List<Resource> referenceList = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        final GraphResource pageResource = new GraphResource("/content/site/pages/page");
+        final GraphResource content = pageResource.addChild(new GraphResource(pageResource.getPath() + "/" + JCR_CONTENT));
+        for (int i = 0; i < references; i++) {
+            content.addChild(new GraphResource(content.getPath() + "/component-" + i));
+            final GraphResource asset = new GraphResource("/content/site/assets/asset-" + i + ".png");
+            final GraphResource assetContent = asset.addChild(new GraphResource(asset.getPath() + "/" + JCR_CONTENT));
+            assetContent.addChild(new GraphResource(assetContent.getPath() + "/metadata"));
+            referenceList.add(asset);
+            // Pages reference the same assets more than once
+            if (i % 10 == 0) {
+                referenceList.add(asset);
+            }
+        }
+
+        page = pageResource;
+    }
+
+    @Benchmark
+    public int list() {
+        return collect(new ArrayList<>()).size();
+    }
+
+    @Benchmark
+    public int orderedResourceSet() {
+        return collect(new OrderedResourceSet()).size();
+    }
+
+    /** Same steps as a file replication does to list the resources of a page and its references **/
+    private <C extends Collection<Resource>> C collect(final C replicationList) {
+        for (final Resource reference : referenceList) {
+            if (!PerUtil.containsResource(replicationList, reference)) {
+                replicationList.add(reference);
+            }
+        }
+
+        for (final Resource reference : new ArrayList<>(replicationList)) {
+            PerUtil.listMissingResources(reference, replicationList, CHECKER, false);
+        }
+
+        return PerUtil.listMissingResources(page, replicationList, CHECKER, true);
+    }
+
+    private static final class GraphResource extends SyntheticResource {
+
+        private final List<Resource> children = new ArrayList<>();
+        private Resource parent;
+
+        GraphResource(final String path) {
+            super(null, path, null);
+        }
+
+        GraphResource addChild(final GraphResource child) {
+            child.parent = this;
+            children.add(child);
+            return child;
+        }
+
+        @Override
+        public Resource getParent() {
+            return parent;
+        }
+
+        @Override
+        public Iterable<Resource> getChildren() {
+            return children;
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.peregrine.nodejs.process;
 
+import com.peregrine.commons.process.ProcessExecutor;
+import com.peregrine.commons.process.ProcessExecutor.Result;
 import com.peregrine.nodejs.j2v8.J2V8ProcessExecution;
 import com.peregrine.nodejs.j2v8.J2V8WebExecution;
 import com.peregrine.nodejs.j2v8.ScriptException;
@@ -12,24 +14,29 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
-import java.lang.ProcessBuilder.Redirect;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.List;
 import java.util.Locale;
 
-import static com.peregrine.nodejs.process.ProcessContextReader.NO_EXIT_CODE;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Executes external processes or J2V8 scripts
  *
+ * The output and error of external processes are captured in memory and
+ * the number of concurrent external processes is limited.
+ *
  * Created by Andreas Schaefer on 4/6/17.
  */
 public class ProcessRunner {
 
+    /** Executor shared by all runners which limits the number of concurrent processes **/
+    private static final ProcessExecutor EXECUTOR = new ProcessExecutor(Runtime.getRuntime().availableProcessors(), 0);
+
     private final Logger log = LoggerFactory.getLogger(ProcessRunner.class);
 
     private File workingDirectory = new File(".");
+    /** Time in milliseconds a process can run before it is killed. If 0 or lower it waits forever **/
+    private long timeout = 0;
 
     /**
      * Creates default Process runner with the local folder (.) as working directory
@@ -43,6 +50,15 @@ public class ProcessRunner {
         this.workingDirectory = workingDirectory;
     }
 
+    /**
+     * Sets the time a process can run before it is killed
+     * @param timeout Timeout in milliseconds. If 0 or lower it waits forever
+     */
+    public ProcessRunner setTimeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
     /** @return True if the OS is windows **/
     public boolean isWindows() {
         String OS = System.getProperty("os.name", "generic").toLowerCase(Locale.ENGLISH);
@@ -60,40 +76,23 @@ public class ProcessRunner {
         throws ExternalProcessException
     {
         log.trace("Execute Command: '{}'", command);
-        Path dir = null;
+        Result result;
         try {
-            dir = Files.createTempDirectory(null);
-        } catch(IOException e) {
-            throw new ExternalProcessException("Failed to create temporary directory to catch output", e);
-        }
-
-        final File output = dir.resolve("output.txt").toFile();
-        output.deleteOnExit();
-        final File error = dir.resolve("error.txt").toFile();
-        error.deleteOnExit();
-        log.trace("Output File: '{}', Error File: '{}'", output.getPath(), error.getPath());
-        ProcessContextReader answer = new ProcessContextReader().setOutputFile(output).setErrorFile(error);
-
-        final ProcessBuilder pb = new ProcessBuilder(command);
-        pb.directory(workingDirectory);
-        pb.redirectOutput(Redirect.to(output));
-        pb.redirectError(Redirect.to(error));
-
-        int exitCode = NO_EXIT_CODE;
-        try {
-            final Process p = pb.start();
-            try {
-                exitCode = p.waitFor();
-                log.trace("Exit Code: '{}'", exitCode);
-            } catch(final InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            result = EXECUTOR.execute(command, workingDirectory, timeout);
         } catch(IOException e) {
             log.trace("IO Exception", e);
             throw new ExternalProcessException("Failed to execute process", e).setCommand(command);
         }
-
-        return answer.setExitCode(exitCode);
+        log.trace("Exit Code: '{}', Execution Time: '{}' ms", result.getExitCode(), result.getExecutionTime());
+        // Appending an error sets the exit code to 1 so the actual exit code is set last
+        ProcessContextTracker answer = new ProcessContextTracker()
+            .appendOutput(result.getOutput(UTF_8))
+            .appendError(result.getError(UTF_8))
+            .setExitCode(result.getExitCode());
+        if(result.isTimedOut()) {
+            throw new ExternalProcessException("Process was killed after it timed out").setCommand(command).setProcessContext(answer);
+        }
+        return answer;
     }
 
     /**
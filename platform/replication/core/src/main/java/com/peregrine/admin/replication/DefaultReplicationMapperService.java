@@ -1,6 +1,6 @@
 package com.peregrine.admin.replication;
 
-import com.peregrine.commons.ResourceUtils;
+import com.peregrine.commons.util.OrderedResourceSet;
 import com.peregrine.replication.ReferenceLister;
 import com.peregrine.replication.Replication;
 import org.apache.sling.api.resource.Resource;
@@ -150,11 +150,9 @@ public class DefaultReplicationMapperService
         logger.trace("Starting Resource: '{}'", source.getPath());
         final List<Resource> referenceList = referenceLister.getReferenceList(true, source, deep);
         logger.trace("Reference List: '{}'", referenceList);
-        final List<Resource> replicationList = listMissingResources(source, new ArrayList<>(), new AddAllResourceChecker(), deep);
-        replicationList.add(0, source);
-        replicationList.addAll(0, referenceList);
-        ResourceUtils.removeDuplicates(replicationList);
-        return replicate(replicationList);
+        final OrderedResourceSet replicationList = new OrderedResourceSet(referenceList);
+        replicationList.add(source);
+        return replicate(listMissingResources(source, replicationList, new AddAllResourceChecker(), deep));
     }
 
     @Override
@@ -26,22 +26,42 @@ package com.peregrine.admin.replication.impl;
  */
 
 import com.peregrine.admin.replication.AbstractionReplicationService;
+import com.peregrine.admin.replication.impl.ReplicationReport.StoredRendering;
 import com.peregrine.replication.ReferenceLister;
+import com.peregrine.commons.util.OrderedResourceSet;
 import com.peregrine.commons.util.PerUtil;
 import com.peregrine.commons.util.PerUtil.ResourceChecker;
 import com.peregrine.render.RenderService;
 import com.peregrine.render.RenderService.RenderException;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import static com.peregrine.admin.replication.ReplicationUtil.updateReplicationProperties;
@@ -70,6 +90,11 @@ public abstract class BaseFileReplicationService
     private static final String EXTENSION_NAME_MUST_BE_PROVIDED = "Extension Name must be provided";
     private static final String EXTENSION_TYPES_MUST_BE_PROVIDED = "Extension Types must be provided";
     public static final String RENDERING_OF_ASSET_FAILED = "Rendering of Asset failed";
+    static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private int renderThreads = 0;
+    private int storeThreads = 0;
+    private boolean skipUnchanged = false;
 
     static {
         NAME_PATTERNS.add(Pattern.compile(".*\\.data\\.json"));
@@ -83,7 +108,7 @@ public abstract class BaseFileReplicationService
     {
         log.trace("Replicate Resource: '{}', deep: '{}'", startingResource, deep);
         List<Resource> referenceList = getReferenceLister().getReferenceList(true, startingResource, true);
-        List<Resource> replicationList = new ArrayList<>();
+        OrderedResourceSet replicationList = new OrderedResourceSet();
         ResourceChecker resourceChecker = new ResourceChecker() {
             @Override
             public boolean doAdd(Resource resource) {
@@ -102,7 +127,7 @@ public abstract class BaseFileReplicationService
             }
         }
         // This only returns the referenced resources. Now we need to check if there are any JCR Content nodes to be added as well
-        for(Resource reference: replicationList) {
+        for(Resource reference: replicationList.toList()) {
             PerUtil.listMissingResources(reference, replicationList, resourceChecker, false);
         }
         PerUtil.listMissingResources(startingResource, replicationList, resourceChecker, deep);
@@ -131,26 +156,72 @@ public abstract class BaseFileReplicationService
         }
         if(resourceResolver != null) {
             Session session = resourceResolver.adaptTo(Session.class);
+            List<Resource> toBeReplicated = new ArrayList<>();
+            Set<String> handledFolders = new HashSet<>();
             for(Resource item: resourceList) {
                 if(item != null) {
                     // Ignore jcr:content as they cannot be rendered to the FS (if needed then we need to map the file names)
                     //AS TODO: Check if the resource name can be mapped to a file name and if not ignore it. Also make sure we ignore nodes like jcr:content
                     if(!item.getPath().contains(JCR_CONTENT)) {
-                        handleParents(item.getParent());
-                        replicateResource(item);
-                        answer.add(item);
+                        handleParents(item.getParent(), handledFolders);
+                        toBeReplicated.add(item);
+                    }
+                }
+            }
+            ReplicationReport report = null;
+            if(renderThreads > 0 && storeThreads > 0 && toBeReplicated.size() > 1) {
+                // Workers use their own sessions and so cannot see unsaved changes
+                if(resourceResolver.hasChanges()) {
+                    log.debug("Resource Resolver has unsaved changes -> replicate sequentially");
+                } else {
+                    try {
+                        report = new ReplicationPipeline(this, renderThreads, storeThreads).run(resourceResolver, toBeReplicated);
+                    } catch(LoginException e) {
+                        log.warn("Failed to clone Resource Resolver for the replication workers -> replicate sequentially", e);
+                    }
+                }
+            }
+            if(report == null) {
+                report = replicateSequentially(toBeReplicated);
+            }
+            for(Resource item: toBeReplicated) {
+                for(StoredRendering rendering: report.getStoredRenderings(item.getPath())) {
+                    if(rendering.isUpdatesReplicationRef()) {
+                        updateReplicationProperties(getReplicationPropertiesTarget(item), rendering.getTargetPath(), null);
                     }
                 }
+                answer.add(item);
             }
             try {
                 session.save();
             } catch(RepositoryException e) {
                 log.warn("Failed to save changes replicate parents", e);
             }
+            log.debug("Replication: '{}' finished. {}", getName(), report);
         }
         return answer;
     }
 
+    private ReplicationReport replicateSequentially(List<Resource> resources) throws ReplicationException {
+        ReplicationReport report = new ReplicationReport();
+        for(Resource item: resources) {
+            List<Rendering> renderings = render(item);
+            try {
+                for(Rendering rendering: renderings) {
+                    report.stored(item.getPath(), store(item, rendering));
+                }
+            } finally {
+                Rendering.close(renderings);
+            }
+        }
+        return report.finish();
+    }
+
+    private static Resource getReplicationPropertiesTarget(Resource resource) {
+        Resource contentResource = resource.getChild(JCR_CONTENT);
+        return contentResource != null ? contentResource : resource;
+    }
+
     /**
      * This method deactivates the given resource to deactivate it and then updates
      * the given list of source resources with the replication properties
@@ -187,25 +258,86 @@ public abstract class BaseFileReplicationService
     /** @return Create a folder on the target based on the given Path and return it if it exists **/
     abstract File createTargetFolder(String path) throws ReplicationException;
 
-    private void handleParents(Resource resource) throws ReplicationException {
-        // Go through all its parents and make sure the folder does exist
-        if(!isFolderOnTarget(resource.getPath())) {
+    /**
+     * Sets the number of workers of the replication pipeline. If either of them is 0 or less
+     * the resources are rendered and stored one after the other on the caller's thread.
+     *
+     * @param renderThreads Number of workers rendering the resources
+     * @param storeThreads Number of workers writing the renderings to the target
+     */
+    void setReplicationThreads(int renderThreads, int storeThreads) {
+        this.renderThreads = renderThreads;
+        this.storeThreads = storeThreads;
+    }
+
+    /**
+     * If enabled a rendering is only written if the target does not already hold the same content
+     *
+     * @param skipUnchanged True to compare the digest of the renderings with the ones on the target
+     */
+    void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    private void handleParents(Resource resource, Set<String> handledFolders) throws ReplicationException {
+        // Go through all its parents and make sure the folder does exist, each of them only once per run
+        if(handledFolders.add(resource.getPath()) && !isFolderOnTarget(resource.getPath())) {
             Resource parent = resource.getParent();
             if(parent != null) {
-                handleParents(parent);
+                handleParents(parent, handledFolders);
             }
             createTargetFolder(resource.getPath());
         }
     }
 
-    private void replicateResource(Resource resource) throws ReplicationException {
-        // Need to figure out the type and replicate accordingl
-        String primaryType = PerUtil.getPrimaryType(resource);
-        if(ASSET_PRIMARY_TYPE.equals(primaryType)) {
-            replicateAsset(resource);
+    /**
+     * Renders the given resource into all its export formats
+     * @param resource Resource to be rendered. It must not be shared with other threads while this is running
+     * @return List of renderings to be stored on the target in the given order. They must be closed afterwards
+     * @throws ReplicationException If the rendering of an asset failed
+     */
+    List<Rendering> render(Resource resource) throws ReplicationException {
+        List<Rendering> answer = new ArrayList<>();
+        boolean rendered = false;
+        try {
+            // Need to figure out the type and replicate accordingl
+            String primaryType = PerUtil.getPrimaryType(resource);
+            if(ASSET_PRIMARY_TYPE.equals(primaryType)) {
+                renderAsset(resource, answer);
+            } else {
+                renderPerResource(resource, false, answer);
+            }
+            rendered = true;
+        } finally {
+            if(!rendered) {
+                Rendering.close(answer);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Stores the given rendering of the resource on the target unless the target already holds
+     * the same content
+     * @return Stored Rendition with the path used for the Rendition Ref property
+     * @throws ReplicationException if the writing of the content failed
+     */
+    StoredRendering store(Resource resource, Rendering rendering) throws ReplicationException {
+        String extension = rendering.getExtension();
+        if(skipUnchanged) {
+            String targetPath = getUnchangedRendering(resource, rendering);
+            if(targetPath != null) {
+                log.trace("Rendering: '{}' with Extension: '{}' is unchanged on the target -> skip it", resource.getPath(), extension);
+                return new StoredRendering(targetPath, rendering.isUpdatesReplicationRef(), true);
+            }
+        }
+        String targetPath;
+        if(rendering.isRaw()) {
+            targetPath = storeRendering(resource, rendering);
         } else {
-            replicatePerResource(resource, false);
+            targetPath = storeTextRendering(resource, rendering);
         }
+        return new StoredRendering(targetPath, rendering.isUpdatesReplicationRef(), false);
     }
 
     /** @return Map listing all extensions and the primary types of all nodes that are exported with that extension **/
@@ -213,11 +345,10 @@ public abstract class BaseFileReplicationService
     /** @return A list of all mandatory renditions which are created during the replication if not already there **/
     abstract List<String> getMandatoryRenditions();
 
-    private void replicateAsset(Resource resource) throws ReplicationException {
+    private void renderAsset(Resource resource, List<Rendering> answer) throws ReplicationException {
         try {
             // Get the image data of the resource and write to the target
-            byte[] imageContent = getRenderService().renderRawInternally(resource, "");
-            storeRendering(resource, "", imageContent);
+            answer.add(renderInternally(resource, "", "", false, false));
             // Loop over all existing renditions and write the image data to the target
             List<String> checkRenditions = new ArrayList<>(getMandatoryRenditions());
             Resource renditions = resource.getChild(RENDITIONS);
@@ -225,8 +356,7 @@ public abstract class BaseFileReplicationService
                 for(Resource rendition : renditions.getChildren()) {
                     if(NT_FILE.equals(PerUtil.getPrimaryType(rendition))) {
                         try {
-                            imageContent = getRenderService().renderRawInternally(resource, RENDITION_ACTION + SLASH + rendition.getName());
-                            storeRendering(resource, rendition.getName(), imageContent);
+                            answer.add(renderInternally(resource, RENDITION_ACTION + SLASH + rendition.getName(), rendition.getName(), false, false));
                             checkRenditions.remove(rendition.getName());
                         } catch(RenderException e) {
                             log.warn("Rendition: '{}' failed with message: '{}'", rendition.getPath(), e.getMessage());
@@ -238,16 +368,15 @@ public abstract class BaseFileReplicationService
             // Loop over all remaining mandatory renditions and write the image data to the target
             for(String renditionName : checkRenditions) {
                 try {
-                    imageContent = getRenderService().renderRawInternally(resource, RENDITION_ACTION + SLASH + renditionName);
+                    Rendering rendering = renderInternally(resource, RENDITION_ACTION + SLASH + renditionName, renditionName, false, false);
                     // Get rendition
                     if(renditions == null) {
                         renditions = resource.getChild(RENDITIONS);
                     }
-                    if(renditions != null) {
-                        Resource rendition = renditions.getChild(renditionName);
-                        if(rendition != null) {
-                            storeRendering(resource, rendition.getName(), imageContent);
-                        }
+                    if(renditions != null && renditions.getChild(renditionName) != null) {
+                        answer.add(rendering);
+                    } else {
+                        rendering.close();
                     }
                 } catch(RenderException e) {
                     log.warn("Rendition: '{}' failed with message: '{}'", renditionName, e.getMessage());
@@ -259,24 +388,40 @@ public abstract class BaseFileReplicationService
         }
     }
 
+    /** Streams the rendering of the resource through the Render Service into a Rendering **/
+    private Rendering renderInternally(Resource resource, String renderExtension, String extension, boolean text, boolean updatesReplicationRef)
+        throws RenderException
+    {
+        return Rendering.render(
+            extension, text, updatesReplicationRef,
+            outputStream -> getRenderService().renderInternally(resource, renderExtension, outputStream)
+        );
+    }
+
     /**
      * Store the given Content Rendering on the target
      * @param resource Resource that is exported
-     * @param extension File Extension (without a leading dot)
-     * @param content String content of the rendering
+     * @param rendering Text rendering encoded in UTF-8 with the File Extension (without a leading dot)
      * @return Path to the Stored Rendition used for the Rendition Ref property
      * @throws ReplicationException if the writing of the content failed
      */
-    abstract String storeRendering(Resource resource, String extension, String content) throws ReplicationException;
+    abstract String storeTextRendering(Resource resource, Rendering rendering) throws ReplicationException;
     /**
      * Store the given Asset Rendering on the target
      * @param resource Resource that is exported
-     * @param extension File Extension (without a leading dot)
-     * @param content Asset content of the rendering
+     * @param rendering Asset rendering with the File Extension (without a leading dot)
      * @return Path to the Stored Rendition used for the Rendition Ref property
      * @throws ReplicationException if the writing of the content failed
      */
-    abstract String storeRendering(Resource resource, String extension, byte[] content) throws ReplicationException;
+    abstract String storeRendering(Resource resource, Rendering rendering) throws ReplicationException;
+    /**
+     * Looks for a rendering on the target that has the same content as the given one
+     * @param resource Resource that is exported
+     * @param rendering Rendering as it would be stored with its length and SHA-256 digest
+     * @return Path to the Stored Rendition used for the Rendition Ref property or null if the rendering is missing or differs
+     * @throws ReplicationException if the target could not be checked
+     */
+    abstract String getUnchangedRendering(Resource resource, Rendering rendering) throws ReplicationException;
 
     /**
      * Removes a given resource from the target
@@ -287,7 +432,7 @@ public abstract class BaseFileReplicationService
      */
     abstract void removeReplica(Resource resource, final List<Pattern> namePattern, boolean isFolder) throws ReplicationException;
 
-    private void replicatePerResource(Resource resource, boolean post) throws ReplicationException {
+    private void renderPerResource(Resource resource, boolean post, List<Rendering> answer) {
         log.trace("Replicate Resource: '{}', Post: '{}'", resource.getPath(), post);
         for(ExportExtension exportExtension: getExportExtensions()) {
             String extension = exportExtension.getName();
@@ -300,32 +445,230 @@ public abstract class BaseFileReplicationService
                 extension = "";
             }
             if(exportExtension.supportsResource(resource)) {
-                Object renderingContent = null;
                 try {
-                    if(raw) {
-                        log.trace("Before Rendering Raw Resource With Extension: '{}'", extension);
-                        renderingContent = getRenderService().renderRawInternally(resource, extension);
-                    } else {
-                        log.trace("Before Rendering String Resource With Extension: '{}'", extension);
-                        renderingContent = getRenderService().renderInternally(resource, extension);
-                    }
+                    log.trace("Before Rendering {} Resource With Extension: '{}'", raw ? "Raw" : "Text", extension);
+                    // Text is kept in the UTF-8 encoding of the response rather than decoded into a String
+                    Rendering rendering = renderInternally(resource, extension, extension, !raw, true);
+                    log.trace("Rendered Resource: '{}', Length: {}", resource.getPath(), rendering.getLength());
+                    answer.add(rendering);
                 } catch(RenderException e) {
                     log.warn("Rendering of '{}' failed -> ignore it", resource.getPath());
                 }
-                if(renderingContent != null) {
-                    log.trace("Rendered Resource: {}", renderingContent);
-                    String path;
-                    if(raw) {
-                        path = storeRendering(resource, extension, (byte[]) renderingContent);
-                    } else {
-                        path = storeRendering(resource, extension, (String) renderingContent);
-                    }
-                    Resource contentResource = resource.getChild(JCR_CONTENT);
-                    if(contentResource != null) {
-                        updateReplicationProperties(contentResource, path, null);
-                    } else {
-                        updateReplicationProperties(resource, path, null);
-                    }
+            }
+        }
+    }
+
+    static MessageDigest createMessageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** @return Hex encoded digest of the given content using the given algorithm **/
+    static String digest(String algorithm, byte[] content) {
+        return toHex(createMessageDigest(algorithm).digest(content));
+    }
+
+    /** @return Hex encoded digest of the content of the given stream using the given algorithm **/
+    static String digest(String algorithm, InputStream content) throws IOException {
+        MessageDigest messageDigest = createMessageDigest(algorithm);
+        byte[] buffer = new byte[8192];
+        int length;
+        while((length = content.read(buffer)) >= 0) {
+            messageDigest.update(buffer, 0, length);
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    private static String toHex(byte[] digest) {
+        return String.format("%0" + (digest.length * 2) + "x", new BigInteger(1, digest));
+    }
+
+    /**
+     * Rendered content of a resource in one of its export formats. Small renderings are kept in
+     * memory and larger ones are spooled into a temporary file. The SHA-256 digest is computed
+     * while the content is rendered.
+     *
+     * A rendering must be closed once it is stored to remove its temporary file.
+     */
+    static final class Rendering
+        implements Closeable
+    {
+        // Renderings up to this size are kept in memory
+        static final int MAX_IN_MEMORY_SIZE = 1024 * 1024;
+        private static final String SPOOL_FILE_PREFIX = "rendering-";
+        private static final String SPOOL_FILE_SUFFIX = ".tmp";
+        private static final String FAILED_TO_SPOOL_RENDERING = "Failed to spool the rendering with extension: ";
+
+        private final String extension;
+        private final boolean text;
+        private final boolean updatesReplicationRef;
+        private final byte[] content;
+        private final long length;
+        private final String digest;
+        private Path file;
+
+        Rendering(String extension, String text, boolean updatesReplicationRef) {
+            this(extension, true, updatesReplicationRef, text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8), null, -1, null);
+        }
+
+        private Rendering(String extension, boolean text, boolean updatesReplicationRef, byte[] content, Path file, long length, String digest) {
+            this.extension = extension;
+            this.text = text;
+            this.updatesReplicationRef = updatesReplicationRef;
+            this.content = content;
+            this.file = file;
+            this.length = content != null ? content.length : length;
+            this.digest = digest != null ? digest : BaseFileReplicationService.digest(DIGEST_ALGORITHM, content);
+        }
+
+        /**
+         * Renders the content through the given renderer into a new Rendering
+         * @param extension Extension of the rendering on the target
+         * @param text True if the content is text encoded in UTF-8
+         * @param updatesReplicationRef True if the Replication Ref of the source is to be set to the stored rendering
+         * @param renderer Writes the content into the given stream
+         * @return Rendering with the rendered content
+         * @throws RenderException If the rendering failed or could not be spooled
+         */
+        static Rendering render(String extension, boolean text, boolean updatesReplicationRef, Renderer renderer) throws RenderException {
+            MessageDigest messageDigest = createMessageDigest(DIGEST_ALGORITHM);
+            SpoolingOutputStream spool = new SpoolingOutputStream();
+            boolean rendered = false;
+            try {
+                try(OutputStream outputStream = new DigestOutputStream(spool, messageDigest)) {
+                    renderer.render(outputStream);
+                }
+                rendered = true;
+            } catch(IOException e) {
+                throw new RenderException(FAILED_TO_SPOOL_RENDERING + extension, e);
+            } finally {
+                if(!rendered) {
+                    delete(spool.file);
+                }
+            }
+            return new Rendering(
+                extension, text, updatesReplicationRef,
+                spool.memory == null ? null : spool.memory.toByteArray(), spool.file, spool.length,
+                toHex(messageDigest.digest())
+            );
+        }
+
+        /** Closes all the given renderings **/
+        static void close(Collection<Rendering> renderings) {
+            for(Rendering rendering: renderings) {
+                rendering.close();
+            }
+        }
+
+        String getExtension() {
+            return extension;
+        }
+
+        boolean isRaw() {
+            return !text;
+        }
+
+        /** @return Content decoded as UTF-8 **/
+        String getText() throws IOException {
+            return new String(content != null ? content : Files.readAllBytes(file), StandardCharsets.UTF_8);
+        }
+
+        /** @return Length of the content in bytes **/
+        long getLength() {
+            return length;
+        }
+
+        /** @return Stream of the content as it is stored on the target, text is encoded in UTF-8 **/
+        InputStream openStream() throws IOException {
+            return content != null ? new ByteArrayInputStream(content) : Files.newInputStream(file);
+        }
+
+        /** @return Temporary file holding the content or null if the content is kept in memory **/
+        Path getFile() {
+            return file;
+        }
+
+        /**
+         * Writes the content into the given file. A temporary file is moved there and so
+         * the content cannot be read from this rendering afterwards.
+         */
+        void moveTo(Path target) throws IOException {
+            if(content != null) {
+                Files.write(target, content);
+            } else {
+                Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+                file = null;
+            }
+        }
+
+        /** @return Hex encoded SHA-256 digest of the content **/
+        String getDigest() {
+            return digest;
+        }
+
+        /** @return True if the Replication Ref of the source is to be set to the stored rendering **/
+        boolean isUpdatesReplicationRef() {
+            return updatesReplicationRef;
+        }
+
+        /** Removes the temporary file if there is one **/
+        @Override
+        public void close() {
+            delete(file);
+            file = null;
+        }
+
+        private static void delete(Path file) {
+            if(file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch(IOException e) {
+                    file.toFile().deleteOnExit();
+                }
+            }
+        }
+
+        interface Renderer {
+            void render(OutputStream outputStream) throws RenderException, IOException;
+        }
+
+        /** Keeps the written content in memory until it exceeds the limit and then moves it into a temporary file **/
+        private static final class SpoolingOutputStream
+            extends OutputStream
+        {
+            private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+            private Path file;
+            private OutputStream fileStream;
+            private long length;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int count) throws IOException {
+                if(fileStream == null && memory.size() + count > MAX_IN_MEMORY_SIZE) {
+                    file = Files.createTempFile(SPOOL_FILE_PREFIX, SPOOL_FILE_SUFFIX);
+                    fileStream = new BufferedOutputStream(Files.newOutputStream(file));
+                    memory.writeTo(fileStream);
+                    memory = null;
+                }
+                if(fileStream != null) {
+                    fileStream.write(bytes, offset, count);
+                } else {
+                    memory.write(bytes, offset, count);
+                }
+                length += count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if(fileStream != null) {
+                    fileStream.close();
                 }
             }
         }
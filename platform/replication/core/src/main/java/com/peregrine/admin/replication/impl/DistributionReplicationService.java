@@ -28,6 +28,7 @@ package com.peregrine.admin.replication.impl;
 import com.peregrine.admin.replication.AbstractionReplicationService;
 import com.peregrine.replication.ReferenceLister;
 import com.peregrine.replication.Replication;
+import com.peregrine.commons.util.OrderedResourceSet;
 import com.peregrine.commons.util.PerUtil;
 import com.peregrine.commons.util.PerUtil.ResourceChecker;
 import org.apache.sling.api.resource.PersistenceException;
@@ -133,7 +134,7 @@ public class DistributionReplicationService
         log.trace("Starting Resource: '{}'", startingResource.getPath());
         List<Resource> referenceList = referenceLister.getReferenceList(true, startingResource, true);
         log.trace("Reference List: '{}'", referenceList);
-        List<Resource> replicationList = new ArrayList<>();
+        OrderedResourceSet replicationList = new OrderedResourceSet();
         ResourceChecker resourceChecker = new ResourceChecker() {
             @Override
             public boolean doAdd(Resource resource) { return true; }
@@ -148,7 +149,7 @@ public class DistributionReplicationService
             }
         }
         // This only returns the referenced resources. Now we need to check if there are any JCR Content nodes to be added as well
-        for(Resource reference: new ArrayList<Resource>(replicationList)) {
+        for(Resource reference: replicationList.toList()) {
             PerUtil.listMissingResources(reference, replicationList, resourceChecker, false);
         }
         PerUtil.listMissingResources(startingResource, replicationList, resourceChecker, deep);
@@ -39,9 +39,13 @@ import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -87,6 +91,7 @@ public class LocalFileSystemReplicationService
     public static final String REPLICATION_FOLDER_NO_DIRECTORY = "Replication Target Folder: '%s' is not a directory";
     public static final String REPLICATION_FOLDER_NO_WRITE = "Replication Target Folder: '%s' cannot read or write";
     public static final String CANNOT_WRITE_RENDERING = "Failed to write raw rending content to file: '%s'";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
 
     @ObjectClassDefinition(
         name = "Peregrine: Local FS Replication Service",
@@ -133,6 +138,24 @@ public class LocalFileSystemReplicationService
             required = true
         )
         String[] mandatoryRenditions();
+        @AttributeDefinition(
+            name = "Render Threads",
+            description = "Number of workers rendering the resources during a replication. 0 (default) replicates one resource after the other. Both thread counts must be set to use the parallel replication",
+            required = false
+        )
+        int renderThreads() default 0;
+        @AttributeDefinition(
+            name = "Store Threads",
+            description = "Number of workers writing the rendered resources to the target during a replication. 0 (default) replicates one resource after the other. Both thread counts must be set to use the parallel replication",
+            required = false
+        )
+        int storeThreads() default 0;
+        @AttributeDefinition(
+            name = "Skip Unchanged Renderings",
+            description = "If enabled a rendering is only written when its content differs from the file already in the target folder",
+            required = false
+        )
+        boolean skipUnchanged() default true;
     }
 
     @Activate
@@ -178,6 +201,8 @@ public class LocalFileSystemReplicationService
         }
         log.debug("Mandatory Renditions: '{}'", configuration.mandatoryRenditions());
         mandatoryRenditions = intoList(configuration.mandatoryRenditions());
+        setReplicationThreads(configuration.renderThreads(), configuration.storeThreads());
+        setSkipUnchanged(configuration.skipUnchanged());
         String targetFolderPath = configuration.targetFolder();
         if(targetFolderPath.isEmpty()) {
             throw new IllegalArgumentException(REPLICATION_TARGET_FOLDER_CANNOT_BE_EMPTY);
@@ -255,7 +280,8 @@ public class LocalFileSystemReplicationService
             answer = new File(parent, name + _SCORE);
         }
 
-        if ((answer.exists() && answer.isDirectory()) || answer.mkdir()) {
+        // Another replication worker might have created the folder in the meantime
+        if (answer.isDirectory() || answer.mkdir() || answer.isDirectory()) {
             return answer;
         }
 
@@ -271,29 +297,80 @@ public class LocalFileSystemReplicationService
     }
 
     @Override
-    String storeRendering(Resource resource, String extension, String content) throws ReplicationException {
-        File renderingFile = createRenderingFile(resource, extension);
+    String storeTextRendering(Resource resource, Rendering rendering) throws ReplicationException {
+        return writeRenderingFile(resource, rendering, FAILED_TO_STORE_RENDERING);
+    }
+
+    @Override
+    String storeRendering(Resource resource, Rendering rendering) throws ReplicationException {
+        return writeRenderingFile(resource, rendering, CANNOT_WRITE_RENDERING);
+    }
+
+    /**
+     * Writes the rendering into a temporary file next to the rendering file and then renames it
+     * so that readers of the target never see a partially written rendering
+     */
+    private String writeRenderingFile(Resource resource, Rendering rendering, String failureMessage) throws ReplicationException {
+        File renderingFile = createRenderingFile(resource, rendering.getExtension());
+        Path target = renderingFile.toPath();
+        Path temporary = target.resolveSibling("." + renderingFile.getName() + TEMPORARY_FILE_SUFFIX);
         try {
-            FileWriter fileWriter = new FileWriter(renderingFile);
-            fileWriter.append(content);
-            fileWriter.close();
+            rendering.moveTo(temporary);
+            try {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
         } catch(IOException e) {
-            throw new ReplicationException(String.format(FAILED_TO_STORE_RENDERING, renderingFile.getAbsolutePath()), e);
+            try {
+                Files.deleteIfExists(temporary);
+            } catch(IOException e2) {
+                log.debug("Failed to delete temporary Rendering File: '{}'", temporary, e2);
+            }
+            throw new ReplicationException(String.format(failureMessage, renderingFile.getAbsolutePath()), e);
         }
         return LOCAL_FILE_SYSTEM + renderingFile.getAbsolutePath();
     }
 
     @Override
-    String storeRendering(Resource resource, String extension, byte[] content) throws ReplicationException {
-        File renderingFile = createRenderingFile(resource, extension);
-        try {
-            FileOutputStream fileOutputStream = new FileOutputStream(renderingFile);
-            fileOutputStream.write(content);
-            fileOutputStream.close();
+    String getUnchangedRendering(Resource resource, Rendering rendering) {
+        File directory = getTargetFolder(resource.getParent().getPath());
+        if(directory == null) {
+            return null;
+        }
+        File renderingFile = new File(directory, getRenderingFileName(resource, rendering.getExtension()));
+        // Only files of the same size need to be compared by their digest
+        if(!renderingFile.isFile() || renderingFile.length() != rendering.getLength()) {
+            return null;
+        }
+        try(InputStream inputStream = new FileInputStream(renderingFile)) {
+            if(rendering.getDigest().equals(digest(DIGEST_ALGORITHM, inputStream))) {
+                return LOCAL_FILE_SYSTEM + renderingFile.getAbsolutePath();
+            }
         } catch(IOException e) {
-            throw new ReplicationException(String.format(CANNOT_WRITE_RENDERING, renderingFile.getAbsolutePath()), e);
+            log.debug("Failed to read existing Rendering File: '{}' -> write it again", renderingFile.getAbsolutePath(), e);
         }
-        return LOCAL_FILE_SYSTEM + renderingFile.getAbsolutePath();
+        return null;
+    }
+
+    /** @return The existing folder on the target matching the given path or null if it was not created yet **/
+    private File getTargetFolder(final String path) {
+        File answer = targetFolder;
+        for (final String name: path.split(SLASH)) {
+            if (StringUtils.isNotEmpty(name)) {
+                final String fileName = jcrNameToFileName(name);
+                answer = new File(answer, fileName);
+                if (answer.exists() && !answer.isDirectory()) {
+                    answer = new File(answer.getParentFile(), fileName + _SCORE);
+                }
+
+                if (!answer.isDirectory()) {
+                    return null;
+                }
+            }
+        }
+
+        return answer;
     }
 
     @Override
@@ -352,19 +429,18 @@ public class LocalFileSystemReplicationService
         if(!directory.exists() || !directory.isDirectory()) {
             throw new ReplicationException(String.format(FAILED_STORE_RENDERING_MISSING_PARENT_FOLDER, directory.getAbsolutePath()));
         }
-        String fileName = resource.getName() + (isNotEmpty(extension) ? "." + extension : "");
-        File renderingFile = new File(directory, fileName);
-        if(renderingFile.exists()) {
-            if(renderingFile.isDirectory()) {
-                throw new ReplicationException(String.format(FAILED_STORE_RENDERING_FILE_IS_DIRECTORY, renderingFile.getAbsolutePath()));
-            } else {
-                log.trace("Delete existing Rendering File: '{}'", renderingFile.getAbsolutePath());
-                renderingFile.delete();
-            }
+        File renderingFile = new File(directory, getRenderingFileName(resource, extension));
+        // An existing file is replaced by the rename of the new rendering
+        if(renderingFile.isDirectory()) {
+            throw new ReplicationException(String.format(FAILED_STORE_RENDERING_FILE_IS_DIRECTORY, renderingFile.getAbsolutePath()));
         }
         return renderingFile;
     }
 
+    private static String getRenderingFileName(Resource resource, String extension) {
+        return resource.getName() + (isNotEmpty(extension) ? "." + extension : "");
+    }
+
     public static final String PLACEHOLDER_START_TOKEN = "${";
     public static final String PLACEHOLDER_END_TOKEN = "}";
 
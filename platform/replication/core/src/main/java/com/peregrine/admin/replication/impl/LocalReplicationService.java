@@ -28,6 +28,7 @@ package com.peregrine.admin.replication.impl;
 import com.peregrine.admin.replication.AbstractionReplicationService;
 import com.peregrine.replication.ReferenceLister;
 import com.peregrine.replication.Replication;
+import com.peregrine.commons.util.OrderedResourceSet;
 import com.peregrine.commons.util.PerUtil.MatchingResourceChecker;
 import com.peregrine.commons.util.PerUtil.MissingOrOutdatedResourceChecker;
 import com.peregrine.commons.util.PerUtil.ResourceChecker;
@@ -169,7 +170,7 @@ public class LocalReplicationService
             throw new ReplicationException(String.format(LOCAL_TARGET_NOT_FOUND, localTarget));
         }
         List<Resource> referenceList = referenceLister.getReferenceList(true, startingResource, true, source, target);
-        List<Resource> replicationList = new ArrayList<>();
+        OrderedResourceSet replicationList = new OrderedResourceSet();
         ResourceChecker resourceChecker = new MissingOrOutdatedResourceChecker(source, target);
         // Need to check this list of they need to be replicated first
         for(Resource resource: referenceList) {
@@ -178,7 +179,7 @@ public class LocalReplicationService
             }
         }
         // This only returns the referenced resources. Now we need to check if there are any JCR Content nodes to be added as well
-        for(Resource reference: new ArrayList<Resource>(replicationList)) {
+        for(Resource reference: replicationList.toList()) {
             listMissingResources(reference, replicationList, resourceChecker, false);
         }
         listMissingParents(startingResource, replicationList, source, resourceChecker);
@@ -208,7 +209,7 @@ public class LocalReplicationService
 
     @Override
     public List<Resource> replicate(Collection<Resource> resourceList) throws ReplicationException {
-        List<Resource> handledSources = new ArrayList<>();
+        OrderedResourceSet handledSources = new OrderedResourceSet();
         List<Resource> answer = new ArrayList<>();
         // Replicate the resources
         ResourceResolver resourceResolver = null;
@@ -229,6 +230,7 @@ public class LocalReplicationService
             }
             // Prepare the Mappings for the Properties mapping
             Map<String, String> pathMapping = new HashMap<>();
+            List<Resource> sourceItems = new ArrayList<>();
             for(Resource item: resourceList) {
                 if(item != null) {
                     String relativePath = relativePath(source, item);
@@ -236,21 +238,23 @@ public class LocalReplicationService
                         String targetPath = localTarget + '/' + relativePath;
                         log.trace("Add to Path mappings Source Path: '{}', Target Path: '{}'", item.getPath(), targetPath);
                         pathMapping.put(item.getPath(), targetPath);
-                        // References need to be updated through the Path Mappings therefore we revisit them here
-                        List<Resource> referenceList = referenceLister.getReferenceList(true, item, true, source, target);
-                        for(Resource reference: referenceList) {
-                            relativePath = relativePath(source, reference);
-                            if(relativePath != null) {
-                                targetPath = localTarget + '/' + relativePath;
-                                log.trace("Add to Path mappings Reference Source Path: '{}', Target Path: '{}'", reference.getPath(), targetPath);
-                                pathMapping.put(reference.getPath(), targetPath);
-                            }
-                        }
+                        sourceItems.add(item);
                     } else {
                         log.warn("Given Resource: '{}' path does not start with local source path: '{}' -> ignore", item, localSource);
                     }
                 }
             }
+            // References need to be updated through the Path Mappings therefore we revisit them here
+            // in a single traversal so that references shared by the items are only looked at once
+            List<Resource> referenceList = referenceLister.getReferenceList(true, sourceItems, true, source, target);
+            for(Resource reference: referenceList) {
+                String relativePath = relativePath(source, reference);
+                if(relativePath != null) {
+                    String targetPath = localTarget + '/' + relativePath;
+                    log.trace("Add to Path mappings Reference Source Path: '{}', Target Path: '{}'", reference.getPath(), targetPath);
+                    pathMapping.put(reference.getPath(), targetPath);
+                }
+            }
             Session session = resourceResolver.adaptTo(Session.class);
             for(Resource item: resourceList) {
                 if(item != null) {
@@ -323,7 +327,7 @@ public class LocalReplicationService
         return answer;
     }
 
-    private boolean handleParents(List<Resource> handledSources, Resource resource, List<Resource> resourceList, Map<String, String> pathMapping, ResourceResolver resourceResolver) {
+    private boolean handleParents(OrderedResourceSet handledSources, Resource resource, List<Resource> resourceList, Map<String, String> pathMapping, ResourceResolver resourceResolver) {
         if(!containsResource(handledSources, resource)) {
             String targetPath = pathMapping.get(resource.getPath());
             log.trace("Handle Parents, Resource: '{}', Target Path: '{}'", resource.getPath(), targetPath);
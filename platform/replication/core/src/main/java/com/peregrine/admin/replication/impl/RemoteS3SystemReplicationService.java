@@ -25,18 +25,25 @@ package com.peregrine.admin.replication.impl;
  * #L%
  */
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.SdkClientException;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.regions.Regions;
+import com.amazonaws.retry.PredefinedRetryPolicies;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import com.peregrine.replication.ReferenceLister;
 import com.peregrine.replication.Replication;
 import com.peregrine.render.RenderService;
@@ -46,19 +53,24 @@ import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import static com.peregrine.commons.util.PerConstants.ASSET_PRIMARY_TYPE;
@@ -91,6 +103,16 @@ public class RemoteS3SystemReplicationService
     public static final String HTML = "html";
     public static final String AWS_S3_SYSTEM = "aws-s3-system://";
     public static final String CONNECTION_TO_S3_COULD_NOT_BE_ESTABLISHED = "Connection to S3 could not be established";
+    // User Metadata of the S3 objects holding the SHA-256 digest of their content
+    public static final String CONTENT_DIGEST_METADATA = "sha256";
+    private static final String ETAG_DIGEST_ALGORITHM = "MD5";
+    public static final String UPLOAD_FAILED = "Upload of: '%s' failed";
+    public static final String UPLOAD_INTERRUPTED = "Upload of: '%s' was interrupted";
+    public static final String DELETE_FAILED = "Deletion of the replicas of: '%s' failed";
+    // Maximum number of keys S3 accepts in a single Delete Objects request
+    static final int MAX_KEYS_PER_DELETE = 1000;
+    // Time given to the uploads in flight to finish before an old connection is shut down
+    static final long DISCONNECT_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
 
     @ObjectClassDefinition(
         name = "Peregrine: Remove S3 Replication Service",
@@ -153,6 +175,54 @@ public class RemoteS3SystemReplicationService
             required = false
         )
         String[] mandatoryRenditions();
+        @AttributeDefinition(
+            name = "Render Threads",
+            description = "Number of workers rendering the resources during a replication. 0 (default) replicates one resource after the other. Both thread counts must be set to use the parallel replication",
+            required = false
+        )
+        int renderThreads() default 0;
+        @AttributeDefinition(
+            name = "Store Threads",
+            description = "Number of workers writing the rendered resources to the target during a replication. 0 (default) replicates one resource after the other. Both thread counts must be set to use the parallel replication",
+            required = false
+        )
+        int storeThreads() default 0;
+        @AttributeDefinition(
+            name = "Skip Unchanged Renderings",
+            description = "If enabled a rendering is only uploaded when its content differs from the object already in the bucket",
+            required = false
+        )
+        boolean skipUnchanged() default true;
+        @AttributeDefinition(
+            name = "Service Endpoint",
+            description = "Optional URL of an S3 compatible service (like a local stand-in) used instead of AWS. Its buckets are accessed path style",
+            required = false
+        )
+        String serviceEndpoint() default "";
+        @AttributeDefinition(
+            name = "Multipart Upload Threshold",
+            description = "Size in bytes above which renderings are uploaded in multiple parts",
+            required = false
+        )
+        long multipartUploadThreshold() default 16777216;
+        @AttributeDefinition(
+            name = "Multipart Part Size",
+            description = "Minimum size in bytes of the parts of a multipart upload (S3 requires at least 5MB)",
+            required = false
+        )
+        long multipartPartSize() default 8388608;
+        @AttributeDefinition(
+            name = "Upload Threads",
+            description = "Number of threads uploading objects and parts to S3, shared by all uploads of this service",
+            required = false
+        )
+        int uploadThreads() default 10;
+        @AttributeDefinition(
+            name = "Max Error Retry",
+            description = "Number of retries of a failed S3 request or part upload. The retries are done with an exponential backoff",
+            required = false
+        )
+        int maxErrorRetry() default 5;
     }
 
     @Activate
@@ -161,15 +231,24 @@ public class RemoteS3SystemReplicationService
     @Modified
     @SuppressWarnings("unused")
     void modified(BundleContext context, Configuration configuration) { setup(context, configuration); }
+    @Deactivate
+    @SuppressWarnings("unused")
+    void deactivate() { disconnectS3(); }
 
     private List<ExportExtension> exportExtensions = new ArrayList<>();
     private List<String> mandatoryRenditions = new ArrayList<>();
-    private AmazonS3 s3;
+    // Replaced on reconfiguration while the replication workers might be using it
+    private volatile S3Connection connection;
     private Regions region;
     private String awsBucketName;
     private String awsAccessKey;
     private String awsSecretKey;
     private String awsRegionName;
+    private String serviceEndpoint;
+    private long multipartUploadThreshold;
+    private long multipartPartSize;
+    private int uploadThreads;
+    private int maxErrorRetry;
 
     private void setup(BundleContext context, Configuration configuration) {
         log.trace("Create Remote S3 Replication Service with Name: '{}'", configuration.name());
@@ -203,11 +282,18 @@ public class RemoteS3SystemReplicationService
         }
         log.debug("Mandatory Renditions: '{}'", configuration.mandatoryRenditions());
         mandatoryRenditions = intoList(configuration.mandatoryRenditions());
+        setReplicationThreads(configuration.renderThreads(), configuration.storeThreads());
+        setSkipUnchanged(configuration.skipUnchanged());
 
         awsBucketName = configuration.awsBucketName();
         awsAccessKey = configuration.awsAccessKey();
         awsSecretKey = configuration.awsSecretKey();
         awsRegionName = configuration.awsRegionName();
+        serviceEndpoint = configuration.serviceEndpoint();
+        multipartUploadThreshold = configuration.multipartUploadThreshold();
+        multipartPartSize = configuration.multipartPartSize();
+        uploadThreads = Math.max(1, configuration.uploadThreads());
+        maxErrorRetry = Math.max(0, configuration.maxErrorRetry());
 
         region = null;
         try {
@@ -245,14 +331,11 @@ public class RemoteS3SystemReplicationService
         return true;
     }
 
-    private PutObjectRequest createPutRequest(String bucketName, String key, String extension, String content) {
-        return createPutRequest(bucketName, key, extension, content.getBytes());
-    }
-
     private boolean connectS3() {
         boolean answer = false;
+        S3Connection newConnection = null;
         try {
-            s3 = AmazonS3ClientBuilder.standard()
+            AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
                 .withCredentials(
                     new AWSCredentialsProvider() {
                         @Override
@@ -274,29 +357,90 @@ public class RemoteS3SystemReplicationService
                         public void refresh() {
                         }
                     })
-                .withRegion(region)
+                // Failed requests and parts are retried with an exponential backoff
+                .withClientConfiguration(
+                    new ClientConfiguration()
+                        .withRetryPolicy(PredefinedRetryPolicies.getDefaultRetryPolicyWithCustomMaxRetries(maxErrorRetry))
+                        .withMaxConnections(Math.max(ClientConfiguration.DEFAULT_MAX_CONNECTIONS, uploadThreads))
+                );
+            if(isNotEmpty(serviceEndpoint)) {
+                builder.withEndpointConfiguration(new EndpointConfiguration(serviceEndpoint, awsRegionName))
+                    .withPathStyleAccessEnabled(true);
+            } else {
+                builder.withRegion(region);
+            }
+            AmazonS3 client = builder.build();
+            TransferManager transferManager = TransferManagerBuilder.standard()
+                .withS3Client(client)
+                .withMultipartUploadThreshold(multipartUploadThreshold)
+                .withMinimumUploadPartSize(multipartPartSize)
+                .withExecutorFactory(() -> Executors.newFixedThreadPool(uploadThreads))
+                .withShutDownThreadPools(true)
                 .build();
+            newConnection = new S3Connection(client, transferManager);
             answer = true;
         } catch(SdkClientException e) {
             log.error("Login to S3 failed", e);
         }
+        // New requests use the new connection while the ones in flight finish on the old one
+        S3Connection oldConnection = connection;
+        connection = newConnection;
+        if(oldConnection != null) {
+            oldConnection.close();
+        }
         return answer;
     }
 
-    private PutObjectRequest createPutRequest(String bucketName, String key, String extension, byte[] content) {
+    private void disconnectS3() {
+        S3Connection oldConnection = connection;
+        connection = null;
+        if(oldConnection != null) {
+            oldConnection.close();
+        }
+    }
+
+    /**
+     * @return The current connection which must be released after the request
+     * @throws ReplicationException If there is no connection
+     */
+    private S3Connection acquireConnection() throws ReplicationException {
+        S3Connection current;
+        // A connection closed in the meantime has already been replaced
+        while((current = connection) != null) {
+            if(current.acquire()) {
+                return current;
+            }
+        }
+        throw new ReplicationException(CONNECTION_TO_S3_COULD_NOT_BE_ESTABLISHED);
+    }
+
+    private PutObjectRequest createPutRequest(String bucketName, String key, Rendering rendering) throws ReplicationException {
+        String awsKey = getObjectKey(key, rendering.getExtension());
+        if(awsKey == null) {
+            return null;
+        }
+        ObjectMetadata objectMetadata = new ContentLengthObjectMetadata(rendering.getLength());
+        objectMetadata.addUserMetadata(CONTENT_DIGEST_METADATA, rendering.getDigest());
+        Path file = rendering.getFile();
+        if(file != null) {
+            // Parts of a file are read and uploaded concurrently by the Transfer Manager
+            return new PutObjectRequest(bucketName, awsKey, file.toFile()).withMetadata(objectMetadata);
+        }
+        try {
+            return new PutObjectRequest(bucketName, awsKey, rendering.openStream(), objectMetadata);
+        } catch(IOException e) {
+            throw new ReplicationException(String.format(UPLOAD_FAILED, awsKey), e);
+        }
+    }
+
+    private static String getObjectKey(String key, String extension) {
         if(SLASH.equals(key)) {
             return null;
         }
         if(key.startsWith(SLASH)) {
             key = key.substring(1);
         }
-        String awsKey = key + (isNotEmpty(extension) ? "." + extension : "");
-        return new PutObjectRequest(
-            awsBucketName,
-            awsKey,
-            new ByteArrayInputStream(content == null ? new byte[0] : content),
-            new ContentLengthObjectMetadata(content == null ? 0 : content.length)
-        );
+        return key + (isNotEmpty(extension) ? "." + extension : "");
     }
 
     @Override
@@ -314,44 +458,33 @@ public class RemoteS3SystemReplicationService
     }
 
     @Override
-    String storeRendering(Resource resource, String extension, String content) throws ReplicationException {
-        PutObjectRequest request = createPutRequest(awsBucketName, resource.getPath(), extension, content);
+    String storeTextRendering(Resource resource, Rendering rendering) throws ReplicationException {
+        String extension = rendering.getExtension();
+        PutObjectRequest request = createPutRequest(awsBucketName, resource.getPath(), rendering);
         if(extension.endsWith(JSON)) {
             log.trace("Set JSon Content Type");
-            ObjectMetadata objectMetadata = new ObjectMetadata();
-            objectMetadata.setContentType(JSON_MIME_TYPE);
-            request.setMetadata(objectMetadata);
+            request.getMetadata().setContentType(JSON_MIME_TYPE);
         } else if(extension.endsWith(HTML)) {
             log.trace("Set HTML Content Type");
-            ObjectMetadata objectMetadata = new ObjectMetadata();
-            objectMetadata.setContentType(HTML_MIME_TYPE);
-            request.setMetadata(objectMetadata);
+            request.getMetadata().setContentType(HTML_MIME_TYPE);
         }
-        try {
-            s3.putObject(request);
-        } catch(SdkClientException e) {
-            // Try to reconnect and try again
-            if(connectS3()) {
-                s3.putObject(request);
-            } else {
-                throw new ReplicationException(CONNECTION_TO_S3_COULD_NOT_BE_ESTABLISHED, e);
-            }
-        }
-        log.trace("Send String Request to S3. Resource: '{}', Extension: '{}', Content: '{}'", resource.getPath(), extension, content);
+        upload(request);
+        log.trace("Send Text Request to S3. Resource: '{}', Extension: '{}', Length: {}", resource.getPath(), extension, rendering.getLength());
         return AWS_S3_SYSTEM + resource.getPath();
     }
 
     private static class ContentLengthObjectMetadata
         extends ObjectMetadata
     {
-        public ContentLengthObjectMetadata(int contentLength) {
+        public ContentLengthObjectMetadata(long contentLength) {
             setContentLength(contentLength);
         }
     }
 
     @Override
-    String storeRendering(Resource resource, String extension, byte[] content) throws ReplicationException {
-        PutObjectRequest request = createPutRequest(awsBucketName, resource.getPath(), extension,content);
+    String storeRendering(Resource resource, Rendering rendering) throws ReplicationException {
+        String extension = rendering.getExtension();
+        PutObjectRequest request = createPutRequest(awsBucketName, resource.getPath(), rendering);
         // Check if this is an Asset and if so check for the rendition
         String mimeType = null;
         String primaryType = getPrimaryType(resource);
@@ -370,73 +503,202 @@ public class RemoteS3SystemReplicationService
             mimeType = getMimeType(resource);
         }
         if(isNotEmpty(mimeType)) {
-            ObjectMetadata objectMetadata = new ObjectMetadata();
             log.trace("Set Property Mime Type: '{}'", mimeType);
-            objectMetadata.setContentType(mimeType);
-            request.setMetadata(objectMetadata);
+            request.getMetadata().setContentType(mimeType);
         }
-        log.trace("Send Byte Request to S3. Resource: '{}', Extension: '{}', Content Length: '{}'", resource.getPath(), extension, content.length);
+        log.trace("Send Byte Request to S3. Resource: '{}', Extension: '{}', Content Length: '{}'", resource.getPath(), extension, rendering.getLength());
+        upload(request);
+        return AWS_S3_SYSTEM + resource.getPath();
+    }
+
+    /**
+     * Uploads the given object through the Transfer Manager which splits large objects into parts
+     * that are uploaded concurrently. This call blocks until the upload is completed.
+     */
+    private void upload(PutObjectRequest request) throws ReplicationException {
+        S3Connection current = acquireConnection();
         try {
-            s3.putObject(request);
+            current.transferManager.upload(request).waitForCompletion();
+        } catch(AmazonClientException e) {
+            throw new ReplicationException(String.format(UPLOAD_FAILED, request.getKey()), e);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReplicationException(String.format(UPLOAD_INTERRUPTED, request.getKey()), e);
+        } finally {
+            current.release();
+        }
+    }
+
+    @Override
+    String getUnchangedRendering(Resource resource, Rendering rendering) {
+        String awsKey = getObjectKey(resource.getPath(), rendering.getExtension());
+        if(awsKey == null) {
+            return null;
+        }
+        ObjectMetadata objectMetadata;
+        S3Connection current;
+        try {
+            current = acquireConnection();
+        } catch(ReplicationException e) {
+            // The upload reports the missing connection
+            return null;
+        }
+        try {
+            objectMetadata = current.client.getObjectMetadata(awsBucketName, awsKey);
         } catch(SdkClientException e) {
-            // Try to reconnect and try again
-            if(connectS3()) {
-                s3.putObject(request);
-            } else {
-                throw new ReplicationException(CONNECTION_TO_S3_COULD_NOT_BE_ESTABLISHED, e);
+            // Missing objects are reported as failures as well -> upload it
+            log.trace("Could not obtain the Metadata of: '{}' -> upload it", awsKey);
+            return null;
+        } finally {
+            current.release();
+        }
+        boolean unchanged;
+        String storedDigest = objectMetadata.getUserMetaDataOf(CONTENT_DIGEST_METADATA);
+        if(storedDigest != null) {
+            unchanged = rendering.getDigest().equals(storedDigest);
+        } else if(objectMetadata.getContentLength() == rendering.getLength()) {
+            // Objects uploaded in a single part without the digest metadata have the MD5 digest of their content as ETag
+            try(InputStream inputStream = rendering.openStream()) {
+                unchanged = digest(ETAG_DIGEST_ALGORITHM, inputStream).equalsIgnoreCase(objectMetadata.getETag());
+            } catch(IOException e) {
+                log.debug("Failed to read the Rendering of: '{}' -> upload it", awsKey, e);
+                unchanged = false;
             }
+        } else {
+            unchanged = false;
         }
-        return AWS_S3_SYSTEM + resource.getPath();
+        return unchanged ? AWS_S3_SYSTEM + resource.getPath() : null;
     }
 
     @Override
     void removeReplica(Resource resource, final List<Pattern> namePattern, final boolean isFolder) throws ReplicationException {
+        S3Connection current = acquireConnection();
+        try {
+            removeReplica(current.client, resource, namePattern, isFolder);
+        } finally {
+            current.release();
+        }
+    }
+
+    private void removeReplica(AmazonS3 client, Resource resource, List<Pattern> namePattern, boolean isFolder) throws ReplicationException {
+        String resourceName = resource.getName();
+        String resourceKey = getObjectKey(resource.getPath(), null);
+        if(resourceKey == null) {
+            log.warn("Replicas of the Root cannot be removed");
+            return;
+        }
+        String prefix;
         if(isFolder) {
-            try {
-                s3.deleteObject(new DeleteObjectRequest(awsBucketName, resource.getPath()));
-            } catch(SdkClientException e) {
-                // Try to reconnect and try again
-                if(connectS3()) {
-                    s3.deleteObject(new DeleteObjectRequest(awsBucketName, resource.getPath()));
-                } else {
-                    throw new ReplicationException(CONNECTION_TO_S3_COULD_NOT_BE_ESTABLISHED, e);
-                }
-            }
+            // Remove the folder object if there is one and all objects inside
+            prefix = resourceKey;
         } else {
             // List all objects of the resource parent paths and then match them with the pattern
-//            String resourceName = resource.getName();
             Resource parent = resource.getParent();
-            String parentFolderPath = "";
-            if(parent != null) {
-                parentFolderPath = parent.getPath();
-            }
-            ObjectListing objectListing;
-            try {
-                objectListing = s3.listObjects(new ListObjectsRequest().withBucketName(awsBucketName).withPrefix(parentFolderPath));
-            } catch(SdkClientException e) {
-                // Try to reconnect and try again
-                if(connectS3()) {
-                    objectListing = s3.listObjects(new ListObjectsRequest().withBucketName(awsBucketName).withPrefix(parentFolderPath));
-                } else {
-                    throw new ReplicationException(CONNECTION_TO_S3_COULD_NOT_BE_ESTABLISHED, e);
+            String parentKey = parent == null ? null : getObjectKey(parent.getPath(), null);
+            prefix = parentKey == null ? "" : parentKey + SLASH;
+        }
+        List<KeyVersion> keys = new ArrayList<>();
+        try {
+            ObjectListing objectListing = client.listObjects(new ListObjectsRequest().withBucketName(awsBucketName).withPrefix(prefix));
+            while(true) {
+                for(S3ObjectSummary objectSummary : objectListing.getObjectSummaries()) {
+                    String key = objectSummary.getKey();
+                    if(isFolder) {
+                        if(key.equals(resourceKey) || key.startsWith(resourceKey + SLASH)) {
+                            keys.add(new KeyVersion(key));
+                        }
+                    } else {
+                        String name = key.substring(prefix.length());
+                        if(!name.contains(SLASH) && matchesReplica(name, resourceName, namePattern)) {
+                            keys.add(new KeyVersion(key));
+                        }
+                    }
+                    if(keys.size() == MAX_KEYS_PER_DELETE) {
+                        deleteObjects(client, keys);
+                    }
                 }
-            }
-            for (S3ObjectSummary objectSummary : objectListing.getObjectSummaries()) {
-                String key = objectSummary.getKey();
-                String name = key.substring(parentFolderPath.length());
-                if(name.startsWith(SLASH)) {
-                    name = name.length() > 1 ? name.substring(1) : "";
+                if(!objectListing.isTruncated()) {
+                    break;
                 }
-                if(namePattern == null) {
-                    s3.deleteObject(new DeleteObjectRequest(awsBucketName, key));
-                } else {
-                    for(Pattern pattern : namePattern) {
-                        if(pattern.matcher(name).matches()) {
-                            s3.deleteObject(new DeleteObjectRequest(awsBucketName, key));
-                        }
+                objectListing = client.listNextBatchOfObjects(objectListing);
+            }
+            deleteObjects(client, keys);
+        } catch(AmazonClientException e) {
+            throw new ReplicationException(String.format(DELETE_FAILED, resource.getPath()), e);
+        }
+    }
+
+    /** @return True if the object with the given name (relative to the parent folder) is a replica of the resource **/
+    private static boolean matchesReplica(String name, String resourceName, List<Pattern> namePattern) {
+        if(namePattern == null) {
+            return name.startsWith(resourceName);
+        }
+        for(Pattern pattern : namePattern) {
+            if(pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Deletes the given objects in a single request and clears the list afterwards **/
+    private void deleteObjects(AmazonS3 client, List<KeyVersion> keys) {
+        if(!keys.isEmpty()) {
+            log.trace("Delete S3 Objects: '{}'", keys.size());
+            client.deleteObjects(new DeleteObjectsRequest(awsBucketName).withKeys(new ArrayList<>(keys)).withQuiet(true));
+            keys.clear();
+        }
+    }
+
+    /**
+     * S3 Client and its Transfer Manager. They are replaced together on reconfiguration
+     * and keep track of the requests that are still using them.
+     */
+    private final class S3Connection {
+        private final AmazonS3 client;
+        private final TransferManager transferManager;
+        // Guarded by this
+        private int requests = 0;
+        private boolean closed = false;
+
+        private S3Connection(AmazonS3 client, TransferManager transferManager) {
+            this.client = client;
+            this.transferManager = transferManager;
+        }
+
+        /** @return False if the connection is closed and cannot be used anymore **/
+        private synchronized boolean acquire() {
+            if(closed) {
+                return false;
+            }
+            requests++;
+            return true;
+        }
+
+        private synchronized void release() {
+            requests--;
+            notifyAll();
+        }
+
+        /** Waits for the requests in flight to finish before the Transfer Manager and the Client are shut down **/
+        private void close() {
+            synchronized(this) {
+                closed = true;
+                long end = System.currentTimeMillis() + DISCONNECT_TIMEOUT;
+                long remaining;
+                try {
+                    while(requests > 0 && (remaining = end - System.currentTimeMillis()) > 0) {
+                        wait(remaining);
                     }
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if(requests > 0) {
+                    log.warn("{} S3 requests did not finish in time and are aborted", requests);
                 }
             }
+            // Also shuts down the S3 client
+            transferManager.shutdownNow(true);
         }
     }
 }
@@ -0,0 +1,273 @@
+package com.peregrine.admin.replication.impl;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+import com.peregrine.admin.replication.impl.BaseFileReplicationService.Rendering;
+import com.peregrine.replication.Replication.ReplicationException;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replicates resources in two stages: render workers turn the resources into their renderings
+ * and store workers write them to the target. The stages are connected through bounded queues
+ * so a full queue blocks its producer and the rendered content kept in memory stays limited.
+ *
+ * Like the sequential replication the run stops with the first failure. Every blocking call
+ * is bounded and checks for a failure so a worker that died, even with an Error, cannot leave
+ * the others or the caller waiting forever.
+ *
+ * JCR Sessions must not be shared between threads so every worker uses its own clone of the
+ * caller's Resource Resolver. Only paths and rendered content are passed between the stages.
+ * Every rendering is closed once it is stored or the run is aborted.
+ */
+final class ReplicationPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationPipeline.class);
+
+    private static final String RESOURCE_NOT_FOUND = "Resource: '%s' not found";
+    private static final String REPLICATION_INTERRUPTED = "Replication was interrupted";
+    private static final String REPLICATION_FAILED = "Replication failed";
+    private static final int QUEUE_SIZE_PER_WORKER = 2;
+    // Interval in which waiting threads check if the run failed
+    private static final long POLL_TIMEOUT = 100;
+    // Time given to the workers to finish their current resource after a failure
+    private static final long ABORT_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    // Paths are never empty so this cannot collide with an actual resource
+    private static final String END_OF_RESOURCES = "";
+    private static final RenderedResource END_OF_RENDERINGS = new RenderedResource(END_OF_RESOURCES, Collections.emptyList());
+
+    private final BaseFileReplicationService service;
+    private final int renderThreads;
+    private final int storeThreads;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    ReplicationPipeline(BaseFileReplicationService service, int renderThreads, int storeThreads) {
+        this.service = service;
+        this.renderThreads = renderThreads;
+        this.storeThreads = storeThreads;
+    }
+
+    /**
+     * Renders and stores the given resources. The first failure of any worker stops the run
+     * and is thrown to the caller like it is in the sequential replication.
+     *
+     * @throws LoginException If the Resource Resolver could not be cloned for the workers
+     * @throws ReplicationException If the replication of a resource failed or the run was interrupted
+     */
+    ReplicationReport run(ResourceResolver resourceResolver, List<Resource> resources)
+        throws LoginException, ReplicationException
+    {
+        ReplicationReport report = new ReplicationReport();
+        BlockingQueue<String> renderQueue = new ArrayBlockingQueue<>(renderThreads * QUEUE_SIZE_PER_WORKER);
+        BlockingQueue<RenderedResource> storeQueue = new ArrayBlockingQueue<>(storeThreads * QUEUE_SIZE_PER_WORKER);
+        List<ResourceResolver> resolvers = new ArrayList<>();
+        ExecutorService executor = null;
+        try {
+            for(int i = 0; i < renderThreads + storeThreads; i++) {
+                resolvers.add(resourceResolver.clone(null));
+            }
+            executor = Executors.newFixedThreadPool(resolvers.size());
+            AtomicInteger activeRenderers = new AtomicInteger(renderThreads);
+            for(ResourceResolver resolver: resolvers.subList(0, renderThreads)) {
+                executor.execute(() -> render(resolver, renderQueue, storeQueue, activeRenderers));
+            }
+            for(ResourceResolver resolver: resolvers.subList(renderThreads, resolvers.size())) {
+                executor.execute(() -> store(resolver, storeQueue, report));
+            }
+            for(Resource resource: resources) {
+                if(!offer(renderQueue, resource.getPath())) {
+                    break;
+                }
+            }
+            for(int i = 0; i < renderThreads; i++) {
+                if(!offer(renderQueue, END_OF_RESOURCES)) {
+                    break;
+                }
+            }
+            executor.shutdown();
+            while(!executor.awaitTermination(POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                if(failure.get() != null) {
+                    abort(executor);
+                    break;
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed(new ReplicationException(REPLICATION_INTERRUPTED, e));
+        } finally {
+            if(executor != null) {
+                executor.shutdownNow();
+            }
+            for(ResourceResolver resolver: resolvers) {
+                resolver.close();
+            }
+            // Renderings left behind by an aborted run still hold their temporary files
+            List<RenderedResource> unstored = new ArrayList<>();
+            storeQueue.drainTo(unstored);
+            for(RenderedResource rendered: unstored) {
+                Rendering.close(rendered.renderings);
+            }
+        }
+        throwFailure();
+        return report.finish();
+    }
+
+    /** Gives the workers time to finish the resource they are on before they are interrupted **/
+    private static void abort(ExecutorService executor) throws InterruptedException {
+        if(!executor.awaitTermination(ABORT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+            if(!executor.awaitTermination(POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Replication workers did not stop after the replication failed");
+            }
+        }
+    }
+
+    private void throwFailure() throws ReplicationException {
+        Throwable cause = failure.get();
+        if(cause instanceof ReplicationException) {
+            throw (ReplicationException) cause;
+        } else if(cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if(cause instanceof Error) {
+            throw (Error) cause;
+        } else if(cause != null) {
+            throw new ReplicationException(REPLICATION_FAILED, cause);
+        }
+    }
+
+    /** Records the first failure of the run, later ones are only logged **/
+    private void failed(Throwable cause) {
+        if(!failure.compareAndSet(null, cause)) {
+            LOGGER.debug("Replication already failed, ignore the later failure", cause);
+        }
+    }
+
+    /** @return False if the run failed before the element could be added **/
+    private <T> boolean offer(BlockingQueue<T> queue, T element) throws InterruptedException {
+        while(failure.get() == null) {
+            if(queue.offer(element, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return The next element or null if the run failed before one became available **/
+    private <T> T poll(BlockingQueue<T> queue) throws InterruptedException {
+        while(failure.get() == null) {
+            T answer = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            if(answer != null) {
+                return answer;
+            }
+        }
+        return null;
+    }
+
+    private void render(
+        ResourceResolver resolver, BlockingQueue<String> renderQueue, BlockingQueue<RenderedResource> storeQueue,
+        AtomicInteger activeRenderers
+    ) {
+        String path = null;
+        try {
+            while((path = poll(renderQueue)) != null && !END_OF_RESOURCES.equals(path)) {
+                Resource resource = getResource(resolver, path);
+                List<Rendering> renderings = service.render(resource);
+                if(!offer(storeQueue, new RenderedResource(path, renderings))) {
+                    Rendering.close(renderings);
+                    break;
+                }
+            }
+            if(activeRenderers.decrementAndGet() == 0) {
+                for(int i = 0; i < storeThreads; i++) {
+                    if(!offer(storeQueue, END_OF_RENDERINGS)) {
+                        break;
+                    }
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed(new ReplicationException(REPLICATION_INTERRUPTED, e));
+        } catch(Throwable t) {
+            LOGGER.warn("Rendering of '{}' failed", path, t);
+            failed(t);
+        }
+    }
+
+    private void store(ResourceResolver resolver, BlockingQueue<RenderedResource> storeQueue, ReplicationReport report) {
+        RenderedResource rendered = null;
+        try {
+            while((rendered = poll(storeQueue)) != null && rendered != END_OF_RENDERINGS) {
+                try {
+                    Resource resource = getResource(resolver, rendered.path);
+                    for(Rendering rendering: rendered.renderings) {
+                        report.stored(rendered.path, service.store(resource, rendering));
+                    }
+                } finally {
+                    Rendering.close(rendered.renderings);
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed(new ReplicationException(REPLICATION_INTERRUPTED, e));
+        } catch(Throwable t) {
+            LOGGER.warn("Storing of '{}' failed", rendered == null ? null : rendered.path, t);
+            failed(t);
+        }
+    }
+
+    private static Resource getResource(ResourceResolver resolver, String path) throws ReplicationException {
+        // Pick up the changes committed by the other workers like newly created renditions
+        resolver.refresh();
+        Resource answer = resolver.getResource(path);
+        if(answer == null) {
+            throw new ReplicationException(String.format(RESOURCE_NOT_FOUND, path));
+        }
+        return answer;
+    }
+
+    private static final class RenderedResource {
+        private final String path;
+        private final List<Rendering> renderings;
+
+        private RenderedResource(String path, List<Rendering> renderings) {
+            this.path = path;
+            this.renderings = renderings;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.peregrine.admin.replication.impl;
+
+/*-
+ * #%L
+ * admin base - Core
+ * %%
+ * Copyright (C) 2017 headwire inc.
+ * %%
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aggregates the results of a single replication run
+ */
+final class ReplicationReport {
+
+    private static final String SUMMARY = "Replicated %d resources into %d renderings (%d unchanged) in %d ms";
+
+    private final long start = System.currentTimeMillis();
+    private final Map<String, List<StoredRendering>> storedRenderings = new ConcurrentHashMap<>();
+    private final AtomicInteger renderingsCount = new AtomicInteger();
+    private final AtomicInteger unchangedCount = new AtomicInteger();
+    private long duration = -1;
+
+    void stored(String resourcePath, StoredRendering rendering) {
+        storedRenderings.computeIfAbsent(resourcePath, path -> Collections.synchronizedList(new ArrayList<>()))
+            .add(rendering);
+        renderingsCount.incrementAndGet();
+        if(rendering.isUnchanged()) {
+            unchangedCount.incrementAndGet();
+        }
+    }
+
+    /** @return The renderings stored for the given resource in the order they were stored **/
+    List<StoredRendering> getStoredRenderings(String resourcePath) {
+        List<StoredRendering> answer = storedRenderings.get(resourcePath);
+        return answer == null ? Collections.emptyList() : answer;
+    }
+
+    /** @return Number of renderings that were already on the target and so were not written **/
+    int getUnchangedCount() {
+        return unchangedCount.get();
+    }
+
+    ReplicationReport finish() {
+        duration = System.currentTimeMillis() - start;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(SUMMARY, storedRenderings.size(), renderingsCount.get(), unchangedCount.get(), duration);
+    }
+
+    static final class StoredRendering {
+        private final String targetPath;
+        private final boolean updatesReplicationRef;
+        private final boolean unchanged;
+
+        StoredRendering(String targetPath, boolean updatesReplicationRef, boolean unchanged) {
+            this.targetPath = targetPath;
+            this.updatesReplicationRef = updatesReplicationRef;
+            this.unchanged = unchanged;
+        }
+
+        String getTargetPath() {
+            return targetPath;
+        }
+
+        boolean isUpdatesReplicationRef() {
+            return updatesReplicationRef;
+        }
+
+        /** @return True if the target already held this rendering and it was not written again **/
+        boolean isUnchanged() {
+            return unchanged;
+        }
+    }
+}
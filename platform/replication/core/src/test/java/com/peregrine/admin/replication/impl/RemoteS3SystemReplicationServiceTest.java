@@ -0,0 +1,186 @@
+package com.peregrine.admin.replication.impl;
+
+import com.peregrine.admin.replication.impl.BaseFileReplicationService.Rendering;
+import com.peregrine.admin.replication.impl.RemoteS3SystemReplicationService.Configuration;
+import com.peregrine.admin.replication.impl.ReplicationReport.StoredRendering;
+import org.apache.sling.api.resource.Resource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.peregrine.admin.replication.impl.BaseFileReplicationService.DIGEST_ALGORITHM;
+import static com.peregrine.admin.replication.impl.RemoteS3SystemReplicationService.CONTENT_DIGEST_METADATA;
+import static com.peregrine.admin.replication.impl.RemoteS3SystemReplicationService.MAX_KEYS_PER_DELETE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Replicates against a local S3 stand-in configured through the Service Endpoint
+ */
+public class RemoteS3SystemReplicationServiceTest {
+
+    private static final String PAGE_KEY = "content/site/page.html";
+    private static final int PART_SIZE = 256 * 1024;
+
+    private final RemoteS3SystemReplicationService service = new RemoteS3SystemReplicationService();
+    private final Configuration configuration = mock(Configuration.class);
+    private final Resource page = mockResource("/content/site/page");
+    private S3StandIn standIn;
+
+    @Before
+    public void setUp() throws Exception {
+        standIn = new S3StandIn();
+        when(configuration.name()).thenReturn("s3");
+        when(configuration.description()).thenReturn("S3 Stand-In");
+        when(configuration.awsAccessKey()).thenReturn("access");
+        when(configuration.awsSecretKey()).thenReturn("secret");
+        when(configuration.awsRegionName()).thenReturn("us-east-1");
+        when(configuration.awsBucketName()).thenReturn(S3StandIn.BUCKET);
+        when(configuration.exportExtensions()).thenReturn(new String[] { "html=per:Page" });
+        when(configuration.mandatoryRenditions()).thenReturn(new String[0]);
+        when(configuration.skipUnchanged()).thenReturn(true);
+        when(configuration.serviceEndpoint()).thenReturn(standIn.getEndpoint());
+        when(configuration.multipartUploadThreshold()).thenReturn((long) Rendering.MAX_IN_MEMORY_SIZE);
+        when(configuration.multipartPartSize()).thenReturn((long) PART_SIZE);
+        when(configuration.uploadThreads()).thenReturn(4);
+        when(configuration.maxErrorRetry()).thenReturn(3);
+        service.activate(null, configuration);
+    }
+
+    @After
+    public void tearDown() {
+        service.deactivate();
+        standIn.close();
+    }
+
+    private static Resource mockResource(String path) {
+        Resource answer = mock(Resource.class);
+        when(answer.getPath()).thenReturn(path);
+        when(answer.getName()).thenReturn(path.substring(path.lastIndexOf('/') + 1));
+        return answer;
+    }
+
+    private static Rendering rendering(byte[] content) throws Exception {
+        return Rendering.render("html", true, true, outputStream -> outputStream.write(content));
+    }
+
+    private static byte[] content(int length) {
+        byte[] answer = new byte[length];
+        for(int i = 0; i < length; i++) {
+            answer[i] = (byte) ('a' + i % 26);
+        }
+        return answer;
+    }
+
+    private StoredRendering store(byte[] content) throws Exception {
+        try(Rendering rendering = rendering(content)) {
+            return service.store(page, rendering);
+        }
+    }
+
+    @Test
+    public void store_smallRenderingIsUploadedInOneRequestWithItsDigest() throws Exception {
+        byte[] content = "<html>page</html>".getBytes(StandardCharsets.UTF_8);
+        StoredRendering stored = store(content);
+        assertFalse(stored.isUnchanged());
+        assertEquals(1, standIn.getPutRequests());
+        assertEquals(0, standIn.getPartRequests());
+        S3StandIn.StoredObject object = standIn.getObject(PAGE_KEY);
+        assertArrayEquals(content, object.getContent());
+        assertEquals(BaseFileReplicationService.digest(DIGEST_ALGORITHM, content), object.getMetadata().get(CONTENT_DIGEST_METADATA));
+        assertEquals("text/html", object.getMetadata().get("content-type"));
+    }
+
+    @Test
+    public void store_spooledRenderingIsUploadedInParts() throws Exception {
+        byte[] content = content(Rendering.MAX_IN_MEMORY_SIZE * 2);
+        try(Rendering rendering = rendering(content)) {
+            assertNotNull("Rendering must be spooled into a file", rendering.getFile());
+            service.store(page, rendering);
+        }
+        assertEquals(0, standIn.getPutRequests());
+        assertTrue("Rendering must be uploaded in parts", standIn.getPartRequests() >= content.length / PART_SIZE);
+        S3StandIn.StoredObject object = standIn.getObject(PAGE_KEY);
+        assertArrayEquals(content, object.getContent());
+        assertEquals(BaseFileReplicationService.digest(DIGEST_ALGORITHM, content), object.getMetadata().get(CONTENT_DIGEST_METADATA));
+    }
+
+    @Test
+    public void store_unchangedRenderingIsNotUploadedAgain() throws Exception {
+        byte[] content = content(1000);
+        assertFalse(store(content).isUnchanged());
+        assertTrue(store(content).isUnchanged());
+        assertEquals(1, standIn.getPutRequests());
+
+        content[0] = 'z';
+        assertFalse(store(content).isUnchanged());
+        assertEquals(2, standIn.getPutRequests());
+    }
+
+    @Test
+    public void store_objectWithoutDigestIsComparedByItsETag() throws Exception {
+        byte[] content = content(1000);
+        standIn.putObject(PAGE_KEY, content);
+        assertTrue(store(content).isUnchanged());
+        assertEquals(0, standIn.getPutRequests());
+    }
+
+    @Test
+    public void store_failedRequestsAreRetried() throws Exception {
+        service.setSkipUnchanged(false);
+        byte[] content = content(1000);
+        standIn.failNextRequests(2);
+        store(content);
+        assertArrayEquals(content, standIn.getObject(PAGE_KEY).getContent());
+    }
+
+    @Test
+    public void removeReplica_deletesTheKeysInBatches() throws Exception {
+        int count = MAX_KEYS_PER_DELETE * 2 + 500;
+        for(int i = 0; i < count; i++) {
+            standIn.putObject(String.format("content/site/folder/page-%04d.html", i), new byte[1]);
+        }
+        standIn.putObject("content/site/folder.html", new byte[1]);
+        service.removeReplica(mockResource("/content/site/folder"), null, true);
+        assertEquals(Arrays.asList(MAX_KEYS_PER_DELETE, MAX_KEYS_PER_DELETE, 500), standIn.getDeleteBatches());
+        assertEquals(1, standIn.getObjectCount());
+        assertNotNull(standIn.getObject("content/site/folder.html"));
+    }
+
+    @Test
+    public void modified_waitsForTheUploadsInFlight() throws Exception {
+        byte[] content = content(1000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = standIn.holdNextUpload(release);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<StoredRendering> upload = executor.submit(() -> store(content));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<?> reconfiguration = executor.submit(() -> service.modified(null, configuration));
+            Thread.sleep(200);
+            assertFalse("Reconfiguration must wait for the upload in flight", reconfiguration.isDone());
+
+            release.countDown();
+            assertFalse(upload.get(10, TimeUnit.SECONDS).isUnchanged());
+            reconfiguration.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertArrayEquals(content, standIn.getObject(PAGE_KEY).getContent());
+        // The new connection is used afterwards
+        assertTrue(store(content).isUnchanged());
+    }
+}
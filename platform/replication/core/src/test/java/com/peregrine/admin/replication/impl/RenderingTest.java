@@ -0,0 +1,88 @@
+package com.peregrine.admin.replication.impl;
+
+import com.peregrine.admin.replication.impl.BaseFileReplicationService.Rendering;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.peregrine.admin.replication.impl.BaseFileReplicationService.DIGEST_ALGORITHM;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RenderingTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static byte[] content(int length) {
+        byte[] answer = new byte[length];
+        for(int i = 0; i < length; i++) {
+            answer[i] = (byte) i;
+        }
+        return answer;
+    }
+
+    private static byte[] read(Rendering rendering) throws IOException {
+        try(InputStream inputStream = rendering.openStream()) {
+            byte[] answer = new byte[(int) rendering.getLength()];
+            int offset = 0;
+            int length;
+            while((length = inputStream.read(answer, offset, answer.length - offset)) > 0) {
+                offset += length;
+            }
+            assertEquals(-1, inputStream.read());
+            return answer;
+        }
+    }
+
+    @Test
+    public void smallRenderingIsKeptInMemory() throws Exception {
+        byte[] content = content(1000);
+        try(Rendering rendering = Rendering.render("html", true, true, outputStream -> outputStream.write(content))) {
+            assertNull(rendering.getFile());
+            assertEquals(content.length, rendering.getLength());
+            assertEquals(BaseFileReplicationService.digest(DIGEST_ALGORITHM, content), rendering.getDigest());
+            assertArrayEquals(content, read(rendering));
+        }
+    }
+
+    @Test
+    public void largeRenderingIsSpooledIntoATemporaryFile() throws Exception {
+        byte[] content = content(Rendering.MAX_IN_MEMORY_SIZE + 1);
+        Rendering rendering = Rendering.render("", false, false, outputStream -> {
+            // Written in pieces so the switch to the file happens in the middle of the content
+            outputStream.write(content, 0, 10);
+            outputStream.write(content[10]);
+            outputStream.write(content, 11, content.length - 11);
+        });
+        Path file = rendering.getFile();
+        assertNotNull("Rendering must be spooled", file);
+        assertEquals(content.length, Files.size(file));
+        assertEquals(BaseFileReplicationService.digest(DIGEST_ALGORITHM, content), rendering.getDigest());
+        assertArrayEquals(content, read(rendering));
+        rendering.close();
+        assertFalse("Temporary file must be removed", Files.exists(file));
+    }
+
+    @Test
+    public void moveToHandsTheSpooledFileOver() throws Exception {
+        byte[] content = content(Rendering.MAX_IN_MEMORY_SIZE * 2);
+        Path target = temporaryFolder.getRoot().toPath().resolve("image.png");
+        Files.write(target, new byte[] { 1 });
+        try(Rendering rendering = Rendering.render("png", false, false, outputStream -> outputStream.write(content))) {
+            Path file = rendering.getFile();
+            rendering.moveTo(target);
+            assertFalse(Files.exists(file));
+            assertNull(rendering.getFile());
+        }
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+}
@@ -0,0 +1,111 @@
+package com.peregrine.admin.replication.impl;
+
+import com.peregrine.admin.replication.impl.BaseFileReplicationService.Rendering;
+import com.peregrine.admin.replication.impl.ReplicationReport.StoredRendering;
+import com.peregrine.replication.Replication.ReplicationException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ReplicationPipelineTest {
+
+    private static final String FAILING_PATH = "/content/test/page-3";
+
+    private final BaseFileReplicationService service = mock(BaseFileReplicationService.class);
+    private final ResourceResolver resourceResolver = mock(ResourceResolver.class);
+    private final ResourceResolver workerResolver = mock(ResourceResolver.class);
+    private final List<Resource> resources = new ArrayList<>();
+    private Throwable renderFailure;
+
+    @Before
+    public void setUp() throws Exception {
+        when(resourceResolver.clone(null)).thenReturn(workerResolver);
+        when(workerResolver.getResource(anyString())).thenAnswer(invocation -> mockResource((String) invocation.getArguments()[0]));
+        for(int i = 0; i < 10; i++) {
+            resources.add(mockResource("/content/test/page-" + i));
+        }
+        when(service.render(any(Resource.class))).thenAnswer(invocation -> {
+            Resource resource = (Resource) invocation.getArguments()[0];
+            if(renderFailure != null && FAILING_PATH.equals(resource.getPath())) {
+                throw renderFailure;
+            }
+            return Collections.singletonList(new Rendering("html", resource.getPath(), true));
+        });
+        when(service.store(any(Resource.class), any(Rendering.class))).thenAnswer(invocation -> {
+            Rendering rendering = (Rendering) invocation.getArguments()[1];
+            return new StoredRendering("target:" + rendering.getText(), true, rendering.getText().endsWith("-0"));
+        });
+    }
+
+    private static Resource mockResource(String path) {
+        Resource answer = mock(Resource.class);
+        when(answer.getPath()).thenReturn(path);
+        return answer;
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        ReplicationReport report = new ReplicationPipeline(service, 3, 2).run(resourceResolver, resources);
+        for(Resource resource: resources) {
+            String path = resource.getPath();
+            assertEquals(1, report.getStoredRenderings(path).size());
+            assertEquals("target:" + path, report.getStoredRenderings(path).get(0).getTargetPath());
+        }
+        assertEquals(1, report.getUnchangedCount());
+        verify(resourceResolver, times(5)).clone(null);
+        verify(workerResolver, times(5)).close();
+    }
+
+    @Test(timeout = 10000)
+    public void testRunStopsWithTheFirstFailure() throws Exception {
+        ReplicationException failure = new ReplicationException("Rendering failed");
+        renderFailure = failure;
+        try {
+            new ReplicationPipeline(service, 3, 2).run(resourceResolver, resources);
+            fail("Failure of: " + FAILING_PATH + " must be thrown");
+        } catch(ReplicationException e) {
+            assertSame(failure, e);
+        }
+        verify(workerResolver, times(5)).close();
+    }
+
+    @Test(timeout = 10000)
+    public void testRunEndsAfterAnErrorInARenderWorker() throws Exception {
+        // A single renderer with more resources than fit into the queue: its death must not block the caller
+        AssertionError error = new AssertionError("Render worker died");
+        doThrow(error).when(service).render(any(Resource.class));
+        try {
+            new ReplicationPipeline(service, 1, 1).run(resourceResolver, resources);
+            fail("Error must be thrown");
+        } catch(AssertionError e) {
+            assertSame(error, e);
+        }
+        verify(workerResolver, times(2)).close();
+    }
+
+    @Test(timeout = 10000)
+    public void testRunEndsAfterAnErrorInAStoreWorker() throws Exception {
+        // With the only store worker gone the renderer would wait for space in the store queue forever
+        OutOfMemoryError error = new OutOfMemoryError("Store worker died");
+        doThrow(error).when(service).store(any(Resource.class), any(Rendering.class));
+        try {
+            new ReplicationPipeline(service, 1, 1).run(resourceResolver, resources);
+            fail("Error must be thrown");
+        } catch(OutOfMemoryError e) {
+            assertSame(error, e);
+        }
+        verify(workerResolver, times(2)).close();
+    }
+}
@@ -0,0 +1,370 @@
+package com.peregrine.admin.replication.impl;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal S3 compatible service for tests. It keeps a single bucket in memory and supports
+ * the requests of the S3 Replication: object uploads in one or multiple parts, HEAD, List
+ * Objects and Delete Objects. Requests are addressed path style: /bucket/key.
+ */
+final class S3StandIn
+    implements AutoCloseable
+{
+    static final String BUCKET = "bucket";
+
+    private static final String USER_METADATA_PREFIX = "x-amz-meta-";
+    private static final String CONTENT_SHA256 = "x-amz-content-sha256";
+    private static final String STREAMING_PAYLOAD = "STREAMING-";
+    private static final int MAX_KEYS = 1000;
+    private static final Pattern PART = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+    private static final Pattern KEY = Pattern.compile("<Key>([^<]*)</Key>");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final NavigableMap<String, StoredObject> objects = Collections.synchronizedNavigableMap(new TreeMap<>());
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final List<Integer> deleteBatches = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger putRequests = new AtomicInteger();
+    private final AtomicInteger partRequests = new AtomicInteger();
+    private final AtomicInteger uploadIds = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile CountDownLatch uploadStarted;
+    private volatile CountDownLatch releaseUpload;
+
+    S3StandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String getEndpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /** The next requests fail with an Internal Error **/
+    void failNextRequests(int count) {
+        failures.set(count);
+    }
+
+    /**
+     * Holds the next upload of an object or part until the given latch is counted down
+     * @return Latch counted down when the upload is received
+     */
+    CountDownLatch holdNextUpload(CountDownLatch release) {
+        uploadStarted = new CountDownLatch(1);
+        releaseUpload = release;
+        return uploadStarted;
+    }
+
+    void putObject(String key, byte[] content) {
+        objects.put(key, new StoredObject(content, Collections.emptyMap()));
+    }
+
+    /** @return Stored object or null if there is none with the given key **/
+    StoredObject getObject(String key) {
+        return objects.get(key);
+    }
+
+    int getObjectCount() {
+        return objects.size();
+    }
+
+    /** @return Number of objects uploaded in a single request **/
+    int getPutRequests() {
+        return putRequests.get();
+    }
+
+    /** @return Number of parts uploaded in multipart uploads **/
+    int getPartRequests() {
+        return partRequests.get();
+    }
+
+    /** @return Number of keys of every Delete Objects request in the order they were received **/
+    List<Integer> getDeleteBatches() {
+        return new ArrayList<>(deleteBatches);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if(!path.startsWith("/" + BUCKET)) {
+                send(exchange, 404, error("NoSuchBucket"));
+                return;
+            }
+            String key = path.length() > BUCKET.length() + 2 ? path.substring(BUCKET.length() + 2) : "";
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            byte[] body = readBody(exchange);
+            if(failures.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+                send(exchange, 500, error("InternalError"));
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            if("PUT".equals(method) && query.containsKey("partNumber")) {
+                partRequests.incrementAndGet();
+                holdUpload();
+                uploads.get(query.get("uploadId")).parts.put(Integer.parseInt(query.get("partNumber")), body);
+                exchange.getResponseHeaders().set("ETag", '"' + md5(body) + '"');
+                send(exchange, 200, new byte[0]);
+            } else if("PUT".equals(method)) {
+                putRequests.incrementAndGet();
+                holdUpload();
+                objects.put(key, new StoredObject(body, userMetadata(exchange.getRequestHeaders())));
+                exchange.getResponseHeaders().set("ETag", '"' + md5(body) + '"');
+                send(exchange, 200, new byte[0]);
+            } else if("POST".equals(method) && query.containsKey("uploads")) {
+                String uploadId = "upload-" + uploadIds.incrementAndGet();
+                uploads.put(uploadId, new Upload(userMetadata(exchange.getRequestHeaders())));
+                send(exchange, 200, xml("<InitiateMultipartUploadResult><Bucket>" + BUCKET + "</Bucket><Key>" + key
+                    + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>"));
+            } else if("POST".equals(method) && query.containsKey("uploadId")) {
+                Upload upload = uploads.remove(query.get("uploadId"));
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                Matcher matcher = PART.matcher(new String(body, StandardCharsets.UTF_8));
+                while(matcher.find()) {
+                    content.write(upload.parts.get(Integer.parseInt(matcher.group(1))));
+                }
+                objects.put(key, new StoredObject(content.toByteArray(), upload.metadata));
+                send(exchange, 200, xml("<CompleteMultipartUploadResult><Location>" + getEndpoint() + path + "</Location><Bucket>"
+                    + BUCKET + "</Bucket><Key>" + key + "</Key><ETag>\"" + md5(content.toByteArray()) + "-" + upload.parts.size()
+                    + "\"</ETag></CompleteMultipartUploadResult>"));
+            } else if("GET".equals(method) && query.containsKey("uploadId")) {
+                // The Transfer Manager looks for parts of the upload that are already there
+                send(exchange, 200, xml("<ListPartsResult><Bucket>" + BUCKET + "</Bucket><Key>" + key + "</Key><UploadId>"
+                    + query.get("uploadId") + "</UploadId><IsTruncated>false</IsTruncated></ListPartsResult>"));
+            } else if("DELETE".equals(method) && query.containsKey("uploadId")) {
+                uploads.remove(query.get("uploadId"));
+                send(exchange, 204, null);
+            } else if("POST".equals(method) && query.containsKey("delete")) {
+                Matcher matcher = KEY.matcher(new String(body, StandardCharsets.UTF_8));
+                int count = 0;
+                while(matcher.find()) {
+                    objects.remove(matcher.group(1));
+                    count++;
+                }
+                deleteBatches.add(count);
+                send(exchange, 200, xml("<DeleteResult></DeleteResult>"));
+            } else if("HEAD".equals(method)) {
+                StoredObject object = objects.get(key);
+                if(object == null) {
+                    send(exchange, 404, null);
+                } else {
+                    Headers headers = exchange.getResponseHeaders();
+                    headers.set("ETag", '"' + md5(object.content) + '"');
+                    headers.set("Content-Length", Integer.toString(object.content.length));
+                    for(Entry<String, String> entry: object.metadata.entrySet()) {
+                        headers.set(USER_METADATA_PREFIX + entry.getKey(), entry.getValue());
+                    }
+                    exchange.sendResponseHeaders(200, -1);
+                }
+            } else if("GET".equals(method) && key.isEmpty()) {
+                send(exchange, 200, list(query));
+            } else {
+                send(exchange, 501, error("NotImplemented"));
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 500, error("InternalError"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void holdUpload() throws InterruptedException {
+        CountDownLatch started = uploadStarted;
+        CountDownLatch release = releaseUpload;
+        if(started != null && release != null) {
+            uploadStarted = null;
+            releaseUpload = null;
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /** @return List Objects (V1) response of the keys after the marker with the given prefix **/
+    private byte[] list(Map<String, String> query) {
+        String prefix = query.getOrDefault("prefix", "");
+        String marker = query.get("marker");
+        StringBuilder contents = new StringBuilder();
+        int count = 0;
+        boolean truncated = false;
+        synchronized(objects) {
+            NavigableMap<String, StoredObject> candidates = marker == null ? objects : objects.tailMap(marker, false);
+            for(Entry<String, StoredObject> entry: candidates.entrySet()) {
+                if(entry.getKey().startsWith(prefix)) {
+                    if(count == MAX_KEYS) {
+                        truncated = true;
+                        break;
+                    }
+                    contents.append("<Contents><Key>").append(entry.getKey()).append("</Key><Size>")
+                        .append(entry.getValue().content.length).append("</Size></Contents>");
+                    count++;
+                }
+            }
+        }
+        return xml("<ListBucketResult><Name>" + BUCKET + "</Name><Prefix>" + prefix + "</Prefix><MaxKeys>" + MAX_KEYS
+            + "</MaxKeys><IsTruncated>" + truncated + "</IsTruncated>" + contents + "</ListBucketResult>");
+    }
+
+    /** @return Content of the request, S3 streaming payloads are decoded from their signed chunks **/
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        byte[] body = readAll(exchange.getRequestBody());
+        String contentSha256 = exchange.getRequestHeaders().getFirst(CONTENT_SHA256);
+        if(contentSha256 == null || !contentSha256.startsWith(STREAMING_PAYLOAD)) {
+            return body;
+        }
+        // Each chunk is: <hex size>;chunk-signature=<signature>\r\n<data>\r\n and the last one has size 0
+        ByteArrayOutputStream answer = new ByteArrayOutputStream();
+        int position = 0;
+        while(true) {
+            int headerEnd = indexOf(body, position);
+            String header = new String(body, position, headerEnd - position, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.substring(0, header.indexOf(';')), 16);
+            if(size == 0) {
+                return answer.toByteArray();
+            }
+            answer.write(body, headerEnd + 2, size);
+            position = headerEnd + 2 + size + 2;
+        }
+    }
+
+    private static int indexOf(byte[] content, int from) {
+        for(int i = from; i < content.length - 1; i++) {
+            if(content[i] == '\r' && content[i + 1] == '\n') {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Chunk header not terminated");
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream answer = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while((length = inputStream.read(buffer)) >= 0) {
+            answer.write(buffer, 0, length);
+        }
+        return answer.toByteArray();
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> answer = new HashMap<>();
+        if(query != null) {
+            for(String parameter: query.split("&")) {
+                int index = parameter.indexOf('=');
+                String name = index < 0 ? parameter : parameter.substring(0, index);
+                String value = index < 0 ? "" : URLDecoder.decode(parameter.substring(index + 1), "UTF-8");
+                answer.put(name, value);
+            }
+        }
+        return answer;
+    }
+
+    private static Map<String, String> userMetadata(Headers headers) {
+        Map<String, String> answer = new HashMap<>();
+        for(Entry<String, List<String>> header: headers.entrySet()) {
+            String name = header.getKey().toLowerCase();
+            if(name.startsWith(USER_METADATA_PREFIX)) {
+                answer.put(name.substring(USER_METADATA_PREFIX.length()), header.getValue().get(0));
+            } else if(name.equals("content-type")) {
+                answer.put(name, header.getValue().get(0));
+            }
+        }
+        return answer;
+    }
+
+    private static byte[] error(String code) {
+        return xml("<Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>");
+    }
+
+    private static byte[] xml(String content) {
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + content).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] content) throws IOException {
+        if(content == null || content.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            exchange.getResponseHeaders().set("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(status, content.length);
+            try(OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(content);
+            }
+        }
+    }
+
+    private static String md5(byte[] content) {
+        try {
+            StringBuilder answer = new StringBuilder();
+            for(byte value: MessageDigest.getInstance("MD5").digest(content)) {
+                answer.append(String.format("%02x", value));
+            }
+            return answer.toString();
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static final class StoredObject {
+        private final byte[] content;
+        private final Map<String, String> metadata;
+
+        private StoredObject(byte[] content, Map<String, String> metadata) {
+            this.content = content;
+            this.metadata = metadata;
+        }
+
+        byte[] getContent() {
+            return content;
+        }
+
+        /** @return User Metadata by their name without the prefix and the Content Type **/
+        Map<String, String> getMetadata() {
+            return metadata;
+        }
+    }
+
+    private static final class Upload {
+        private final Map<String, String> metadata;
+        private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+
+        private Upload(Map<String, String> metadata) {
+            this.metadata = metadata;
+        }
+    }
+}